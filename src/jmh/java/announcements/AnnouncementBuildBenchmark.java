@@ -0,0 +1,77 @@
+package announcements;
+
+import net.dv8tion.jda.api.entities.Message;
+import org.openjdk.jmh.annotations.*;
+import utils.Bot;
+import utils.Colors;
+import utils.LinkBuilder;
+import utils.Utils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This compares building an {@link Announcement} and a {@link LinkBuilder} message after every change with getting
+ * the message cached by the last build. The cold cases call a mutator that leaves the message the same but discards
+ * the cached one, so each call builds a new message the way every send did before the cache.
+ * <p>
+ * Run it with <code>./gradlew jmh</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AnnouncementBuildBenchmark {
+    private static final String CONTENT = "The preliminary survey is open! It only takes a few minutes.";
+
+    private Announcement announcement;
+    private LinkBuilder link;
+
+    @Setup
+    public void setup() {
+        Bot.GITHUB = "https://github.com/threehalves-pi/APSurveyBot";
+
+        link = Utils.makeEmbed(
+                "Source Code",
+                "I'm open source! You can view my code and even make pull requests on my github, " +
+                "available at: " + Utils.link(Bot.GITHUB, Bot.GITHUB),
+                Colors.WHITE,
+                "",
+                Bot.GITHUB,
+                "Survey Bot on Github");
+        announcement = new Announcement(link.build())
+                .setContent(CONTENT)
+                .addLink(Bot.GITHUB, "Survey Bot on Github");
+    }
+
+    @Benchmark
+    public Message announcementCold() {
+        return announcement.setContent(CONTENT).build();
+    }
+
+    @Benchmark
+    public Message announcementCached() {
+        return announcement.build();
+    }
+
+    @Benchmark
+    public Message linkBuilderCold() {
+        return link.setColor(Colors.WHITE).buildMessage();
+    }
+
+    @Benchmark
+    public Message linkBuilderCached() {
+        return link.buildMessage();
+    }
+
+    /**
+     * Recurring announcements and broadcasts build the same announcement from several threads, so the cached path is
+     * also measured under contention.
+     */
+    @Benchmark
+    @Threads(4)
+    public Message announcementCachedContended() {
+        return announcement.build();
+    }
+}
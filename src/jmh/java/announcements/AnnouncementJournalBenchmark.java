@@ -0,0 +1,99 @@
+package announcements;
+
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.entities.MessageChannel;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This measures how long startup takes to {@link AnnouncementJournal#open(Path) open} a journal of 100,000 pending
+ * announcements and {@link AnnouncementJournal#replay() replay} it. The journal is written once through
+ * {@link Announcement#queue(MessageChannel, long, TimeUnit)}, and a fresh copy of it is opened for every measurement.
+ * <p>
+ * Run it with <code>./gradlew jmh</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class AnnouncementJournalBenchmark {
+    private static final int ANNOUNCEMENTS = 100_000;
+    private static final long CHANNEL_ID = 42;
+
+    private MessageChannel channel;
+    private Path dir;
+    private Path written;
+    private Path path;
+
+    @Setup
+    public void setup() throws Exception {
+        channel = channel();
+        dir = Files.createTempDirectory("journal-benchmark");
+        path = dir.resolve("announcements.journal");
+        written = dir.resolve("written.journal");
+
+        AnnouncementJournal journal = AnnouncementJournal.open(path);
+        for (int i = 0; i < ANNOUNCEMENTS; i++)
+            new Announcement("Announcement " + i).queue(channel, 1, TimeUnit.HOURS);
+        journal.close();
+        AnnouncementScheduler.get().cancelAll().get(1, TimeUnit.MINUTES);
+        Files.move(path, written);
+    }
+
+    @Setup(Level.Invocation)
+    public void copyJournal() throws IOException {
+        Files.copy(written, path, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @TearDown(Level.Invocation)
+    public void closeJournal() throws Exception {
+        AnnouncementJournal.closeAll();
+        AnnouncementScheduler.get().cancelAll().get(1, TimeUnit.MINUTES);
+    }
+
+    @TearDown
+    public void deleteJournals() throws IOException {
+        try (var files = Files.list(dir)) {
+            for (Path file : files.toList())
+                Files.delete(file);
+        }
+        Files.delete(dir);
+    }
+
+    @Benchmark
+    public int openAndReplay() throws IOException {
+        return AnnouncementJournal.open(path).replay(id -> id == CHANNEL_ID ? channel : null);
+    }
+
+    /**
+     * Make a channel that only answers the calls the journal and scheduler make, since there is no JDA to get one
+     * from.
+     */
+    private static MessageChannel channel() {
+        JDA jda = (JDA) Proxy.newProxyInstance(JDA.class.getClassLoader(), new Class<?>[]{JDA.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "getShardInfo" -> new JDA.ShardInfo(0, 1);
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    default -> null;
+                });
+        return (MessageChannel) Proxy.newProxyInstance(MessageChannel.class.getClassLoader(),
+                new Class<?>[]{MessageChannel.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "getIdLong" -> CHANNEL_ID;
+                    case "getId" -> Long.toString(CHANNEL_ID);
+                    case "getJDA" -> jda;
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    case "toString" -> "MessageChannel:" + CHANNEL_ID;
+                    default -> null;
+                });
+    }
+}
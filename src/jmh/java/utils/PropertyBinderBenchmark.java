@@ -0,0 +1,181 @@
+package utils;
+
+import net.dv8tion.jda.api.OnlineStatus;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This compares three ways of loading the bundled <code>bot.properties</code> into the {@link Bot} fields:
+ * <ul>
+ *     <li><code>declaredField</code>: the original loader, which looked up each field with
+ *     {@link Class#getDeclaredField(String)} and converted its value through a chain of type checks.</li>
+ *     <li><code>binder</code>: {@link PropertyBinder}, which resolves every field once and sets it with
+ *     {@link Field#set(Object, Object)}.</li>
+ *     <li><code>methodHandle</code>: {@link PropertyBinder} parsing, but with the fields set through static setter
+ *     handles adapted with <code>asType()</code>, as a generated setter would be.</li>
+ * </ul>
+ * The <code>Startup</code> benchmarks load the properties once in a new JVM, which is what happens when the bot
+ * starts, so they include resolving the fields and initializing each approach. The <code>Reload</code> benchmarks
+ * measure a warm reload of the file.
+ * <p>
+ * Run it with <code>./gradlew jmh</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PropertyBinderBenchmark {
+    private Properties properties;
+
+    @Setup
+    public void setup() throws IOException {
+        properties = new Properties();
+        try (InputStream stream = Bot.class.getResourceAsStream("/bot.properties")) {
+            properties.load(stream);
+        }
+        // Initialize Bot here so that only the binding is measured
+        Bot.PREFIX = null;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 1)
+    @Fork(20)
+    public Object declaredFieldStartup() throws ReflectiveOperationException {
+        return loadDeclaredField();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 1)
+    @Fork(20)
+    public Object binderStartup() {
+        return loadBinder();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 1)
+    @Fork(20)
+    public Object methodHandleStartup() throws Throwable {
+        return loadMethodHandle();
+    }
+
+    @Benchmark
+    public Object declaredFieldReload() throws ReflectiveOperationException {
+        return loadDeclaredField();
+    }
+
+    @Benchmark
+    public Object binderReload() {
+        return loadBinder();
+    }
+
+    @Benchmark
+    public Object methodHandleReload() throws Throwable {
+        return loadMethodHandle();
+    }
+
+    /**
+     * The loader from before {@link PropertyBinder}: a field lookup to check the field and parse its value, and
+     * another to set it.
+     */
+    private Map<String, Object> loadDeclaredField() throws ReflectiveOperationException {
+        Map<String, Object> values = new HashMap<>();
+        for (String property : properties.stringPropertyNames()) {
+            String name = PropertyBinder.getFieldName(property);
+            Field field = Bot.class.getDeclaredField(name);
+            int modifiers = field.getModifiers();
+            if (Modifier.isPublic(modifiers) && Modifier.isStatic(modifiers) && !Modifier.isFinal(modifiers))
+                values.put(name, cast(properties.getProperty(property), field.getType()));
+        }
+        for (Map.Entry<String, Object> entry : values.entrySet())
+            Bot.class.getDeclaredField(entry.getKey()).set(null, entry.getValue());
+        return values;
+    }
+
+    private Map<String, Object> loadBinder() {
+        Map<String, Object> values = PropertyBinder.parseAll(properties).values();
+        for (Map.Entry<String, Object> entry : values.entrySet())
+            PropertyBinder.set(entry.getKey(), entry.getValue());
+        return values;
+    }
+
+    private Map<String, Object> loadMethodHandle() throws Throwable {
+        Map<String, Object> values = PropertyBinder.parseAll(properties).values();
+        for (Map.Entry<String, Object> entry : values.entrySet())
+            Setters.SETTERS.get(entry.getKey()).invokeExact(entry.getValue());
+        return values;
+    }
+
+    /**
+     * The original conversion of a value from <code>bot.properties</code> into the type of its field.
+     */
+    private static Object cast(String value, Class<?> type) throws ClassNotFoundException {
+        if (type == String.class)
+            return value;
+        else if (type == Boolean.class || type == Boolean.TYPE)
+            return Boolean.parseBoolean(value);
+        else if (type == Integer.class || type == Integer.TYPE)
+            return Integer.parseInt(value);
+        else if (type == Double.class || type == Double.TYPE)
+            return Double.parseDouble(value);
+        else if (type == Long.class || type == Long.TYPE)
+            return Long.parseLong(value);
+        else if (type == Float.class || type == Float.TYPE)
+            return Float.parseFloat(value);
+        else if (type == Short.class || type == Short.TYPE)
+            return Short.parseShort(value);
+        else if (type == Character.class || type == Character.TYPE)
+            return value.charAt(0);
+        else if (type == Byte.class || type == Byte.TYPE)
+            return Byte.valueOf(value);
+        else if (type == OnlineStatus.class)
+            return OnlineStatus.fromKey(value);
+        else if (type == Color.class)
+            return new Color(Integer.parseInt(value, 16));
+
+        throw new ClassNotFoundException("Failed to recognize class type " + type.toGenericString());
+    }
+
+    /**
+     * A setter handle for every settable {@link Bot} field. This is a separate class so that the handles are created
+     * the first time they're used, inside the startup benchmark.
+     */
+    private static class Setters {
+        private static final Map<String, MethodHandle> SETTERS = resolve();
+
+        private static Map<String, MethodHandle> resolve() {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            MethodType type = MethodType.methodType(void.class, Object.class);
+            Map<String, MethodHandle> setters = new HashMap<>();
+            try {
+                for (Field field : Bot.class.getDeclaredFields()) {
+                    int modifiers = field.getModifiers();
+                    if (Modifier.isPublic(modifiers) && Modifier.isStatic(modifiers) && !Modifier.isFinal(modifiers))
+                        setters.put(field.getName(), lookup.unreflectSetter(field).asType(type));
+                }
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+            return Map.copyOf(setters);
+        }
+    }
+}
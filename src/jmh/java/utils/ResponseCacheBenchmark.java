@@ -0,0 +1,85 @@
+package utils;
+
+import net.dv8tion.jda.api.entities.Message;
+import net.dv8tion.jda.api.entities.MessageEmbed;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This compares building the responses of <code>/help</code> and <code>/source</code> on every call with getting
+ * them from a {@link ResponseCache}. The builders are the same as the ones in {@link commands.GlobalCommands}.
+ * <p>
+ * Run it with <code>./gradlew jmh</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseCacheBenchmark {
+    private ResponseCache<MessageEmbed> help;
+    private ResponseCache<Message> source;
+
+    @Setup
+    public void setup() {
+        Bot.BOT_NAME = "AP Survey Bot";
+        Bot.BOT_DESCRIPTION = "I help operate the [AP Survey Project](https://discord.gg/4SADAGEVbm).";
+        Bot.VERSION = "0.0.5_1";
+        Bot.GITHUB = "https://github.com/threehalves-pi/APSurveyBot";
+
+        help = ResponseCache.of(ResponseCacheBenchmark::buildHelp);
+        source = ResponseCache.of(ResponseCacheBenchmark::buildSource);
+    }
+
+    private static MessageEmbed buildHelp() {
+        return Utils.makeEmbed(
+                Bot.BOT_NAME + " Info",
+                "Hi, I'm " + Bot.BOT_NAME + "! " + Bot.BOT_DESCRIPTION,
+                Color.WHITE,
+                Utils.makeEmbedField("Version", "I'm currently running `" + Bot.VERSION + "`.", true)
+        ).build();
+    }
+
+    private static Message buildSource() {
+        return Utils.makeEmbed(
+                "Source Code",
+                "I'm open source! You can view my code and even make pull requests on my github, " +
+                "available at: " + Utils.link(Bot.GITHUB, Bot.GITHUB),
+                Colors.WHITE,
+                "",
+                Bot.GITHUB,
+                "Survey Bot on Github").buildMessage();
+    }
+
+    @Benchmark
+    public MessageEmbed helpUncached() {
+        return buildHelp();
+    }
+
+    @Benchmark
+    public MessageEmbed helpCached() {
+        return help.get();
+    }
+
+    @Benchmark
+    public Message sourceUncached() {
+        return buildSource();
+    }
+
+    @Benchmark
+    public Message sourceCached() {
+        return source.get();
+    }
+
+    /**
+     * Command handlers run on several threads at once, so the cached path is also measured under contention.
+     */
+    @Benchmark
+    @Threads(4)
+    public MessageEmbed helpCachedContended() {
+        return help.get();
+    }
+}
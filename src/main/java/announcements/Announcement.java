@@ -9,14 +9,18 @@ import net.dv8tion.jda.api.events.interaction.SlashCommandEvent;
 import net.dv8tion.jda.api.interactions.components.ActionRow;
 import net.dv8tion.jda.api.interactions.components.Button;
 import net.dv8tion.jda.internal.entities.DataMessage;
+import net.dv8tion.jda.internal.utils.JDALogger;
+import org.slf4j.Logger;
+import utils.MessageCoalescer;
+import utils.OutboundScheduler;
+import utils.OutboundScheduler.Priority;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.TimerTask;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
@@ -24,13 +28,27 @@ import java.util.concurrent.TimeUnit;
  * An {@link Announcement} is fundamentally a {@link DataMessage} ready for sending to Discord.
  */
 public class Announcement {
+    private static final Logger LOG = JDALogger.getLog(Announcement.class);
+
     /**
      * This the message that is sent when the announcement is triggered.
      */
     private final MessageBuilder message;
 
-    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+    /**
+     * The message returned by the last call to {@link #build()}, or <code>null</code> if the announcement has changed
+     * since then. Every mutator resets this, so repeated sends of an unchanged announcement share one immutable
+     * {@link Message}.
+     */
+    @Nullable
+    private volatile Message built;
 
+    /**
+     * Create an announcement from a {@link MessageBuilder}. The builder is used directly, so it must not be modified
+     * after the announcement is created; use the mutators on the announcement instead.
+     *
+     * @param message the message to send
+     */
     public Announcement(MessageBuilder message) {
         this.message = message;
     }
@@ -60,6 +78,7 @@ public class Announcement {
      */
     public Announcement setContent(@Nullable String content) {
         message.setContent(content);
+        built = null;
         return this;
     }
 
@@ -71,6 +90,7 @@ public class Announcement {
      */
     public Announcement setActionRows(@Nullable ActionRow... rows) {
         message.setActionRows(rows);
+        built = null;
         return this;
     }
 
@@ -82,6 +102,7 @@ public class Announcement {
      */
     public Announcement setActionRows(@Nullable Collection<? extends ActionRow> rows) {
         message.setActionRows(rows);
+        built = null;
         return this;
     }
 
@@ -107,6 +128,7 @@ public class Announcement {
     @Nonnull
     public Announcement setEmbeds(@Nonnull MessageEmbed... embeds) {
         message.setEmbeds(embeds);
+        built = null;
         return this;
     }
 
@@ -119,6 +141,7 @@ public class Announcement {
     @Nonnull
     public Announcement setEmbeds(@Nonnull Collection<? extends MessageEmbed> embeds) {
         message.setEmbeds(embeds);
+        built = null;
         return this;
     }
 
@@ -131,17 +154,22 @@ public class Announcement {
      */
     public Announcement setEmbeds(@Nonnull EmbedBuilder... embeds) {
         message.setEmbeds(Arrays.stream(embeds).map(EmbedBuilder::build).toList());
+        built = null;
         return this;
     }
 
     /**
-     * Build and return the {@link #message} for this {@link Announcement}.
+     * Build and return the {@link #message} for this {@link Announcement}. The result is cached until the
+     * announcement is next modified.
      *
      * @return the built {@link Message}
      */
     public @Nonnull
     Message build() {
-        return message.build();
+        Message m = built;
+        if (m == null)
+            built = m = message.build();
+        return m;
     }
 
     /**
@@ -151,26 +179,68 @@ public class Announcement {
      * @param ephemeral whether the reply should be ephemeral (only shown to the user who used the command)
      */
     public void send(@Nonnull SlashCommandEvent event, boolean ephemeral) {
-        event.reply(build()).setEphemeral(ephemeral).queue();
+        OutboundScheduler.queue(Priority.INTERACTION, event.reply(build()).setEphemeral(ephemeral));
     }
 
     /**
-     * This sends the {@link Announcement} to the given {@link MessageChannel}.
+     * This sends the {@link Announcement} to the given {@link MessageChannel}. It goes through the {@link
+     * MessageCoalescer}, so it may be merged with other messages sent to the channel at the same time.
      *
      * @param channel the channel to send the announcement in
      */
     public void send(@Nonnull MessageChannel channel) {
-        channel.sendMessage(build()).queue();
+        MessageCoalescer.queue(channel, build(), Priority.ANNOUNCEMENT);
+    }
+
+    /**
+     * This sends the {@link Announcement} to the given {@link MessageChannel} without blocking. It goes through the
+     * {@link MessageCoalescer}, so it may be merged with other messages sent to the channel at the same time.
+     *
+     * @param channel the channel to send the announcement in
+     * @return a future that completes with the sent {@link Message}
+     */
+    @Nonnull
+    public CompletableFuture<Message> sendAsync(@Nonnull MessageChannel channel) {
+        return MessageCoalescer.send(channel, build());
     }
 
     /**
-     * This sends the {@link Announcement} to the given {@link MessageChannel} and adds it to the channel pins.
+     * This sends the {@link Announcement} to every given {@link MessageChannel} at the {@link Broadcast#DEFAULT_RATE
+     * default rate}. The message is built once and shared by every send.
+     *
+     * @param channels the channels to send the announcement in
+     * @return a future that completes with the {@link Broadcast.Result} once every send has finished
+     * @see Broadcast
+     */
+    @Nonnull
+    public CompletableFuture<Broadcast.Result> broadcast(@Nonnull Collection<? extends MessageChannel> channels) {
+        return broadcast(channels, Broadcast.DEFAULT_RATE);
+    }
+
+    /**
+     * This sends the {@link Announcement} to every given {@link MessageChannel}, starting at most <code>rate</code>
+     * sends per second. The message is built once and shared by every send.
+     *
+     * @param channels the channels to send the announcement in
+     * @param rate     the maximum number of sends to start per second
+     * @return a future that completes with the {@link Broadcast.Result} once every send has finished
+     * @see Broadcast
+     */
+    @Nonnull
+    public CompletableFuture<Broadcast.Result> broadcast(@Nonnull Collection<? extends MessageChannel> channels,
+                                                         double rate) {
+        return new Broadcast(build(), channels, rate).start();
+    }
+
+    /**
+     * This sends the {@link Announcement} to the given {@link MessageChannel} and adds it to the channel pins. It is
+     * sent on its own rather than through the {@link MessageCoalescer}, so that no other message is pinned with it.
      *
      * @param channel the channel to send the announcement in
      */
     public void sendAndPin(@Nonnull MessageChannel channel) {
-        channel.sendMessage(build()).queue(
-                m -> m.pin().queue()
+        OutboundScheduler.submit(Priority.ANNOUNCEMENT, channel.sendMessage(build())).thenAccept(
+                m -> OutboundScheduler.queue(Priority.ANNOUNCEMENT, m.pin())
         );
     }
 
@@ -188,6 +258,10 @@ public class Announcement {
     /**
      * Schedule this {@link Announcement} to be sent after a certain period of time. That schedule can be canceled by
      * calling {@link ScheduledFuture#cancel(boolean)} on the {@link ScheduledFuture} returned by this method.
+     * <p>
+     * All announcements share the process-wide {@link AnnouncementScheduler}, so queueing does not create any
+     * threads. If the {@link AnnouncementJournal} is open, the announcement is also journaled so that it survives a
+     * restart.
      *
      * @param channel the channel to send the announcement in
      * @param delay   the delay after which the announcement should be sent
@@ -195,11 +269,7 @@ public class Announcement {
      * @return the {@link ScheduledFuture} which can be used to cancel sending the {@link Announcement}
      */
     public ScheduledFuture<?> queue(@Nonnull MessageChannel channel, long delay, TimeUnit unit) {
-        return timer.schedule(
-                new AnnouncementTimer(this, channel),
-                delay,
-                unit
-        );
+        return schedule(new AnnouncementTimer(this, channel), delay, unit);
     }
 
     /**
@@ -214,14 +284,91 @@ public class Announcement {
      */
     public ScheduledFuture<?> queue(@Nonnull MessageChannel channel, long delay, TimeUnit unit,
                                     QueueCondition... conditions) {
-        return timer.schedule(
-                new AnnouncementTimer(this, channel),
-                delay,
-                unit
-        );
+        return schedule(new AnnouncementTimer(this, channel, conditions), delay, unit);
+    }
+
+    /**
+     * Schedule this {@link Announcement} to be sent repeatedly according to a {@link Schedule}. The conditions are
+     * checked again every time the announcement fires; if they aren't met, that fire is skipped, but the recurrence
+     * continues. The recurrence runs until it is canceled by calling {@link Recurrence#cancel(boolean)}.
+     * <p>
+     * For example, this sends a reminder every Monday at 9:00, but only if the channel has been active in the last
+     * day:
+     * <pre>{@code
+     * announcement.queueRecurring(channel, Schedule.cron("0 9 * * mon"), QueueCondition.ofActive(1, TimeUnit.DAYS));
+     * }</pre>
+     *
+     * @param channel    the channel to send the announcement in
+     * @param schedule   the schedule that determines when the announcement is sent
+     * @param conditions zero or more conditions required for each announcement to be sent
+     * @return the {@link Recurrence}, which can be used to cancel the announcement
+     */
+    @Nonnull
+    public Recurrence queueRecurring(@Nonnull MessageChannel channel, @Nonnull Schedule schedule,
+                                     QueueCondition... conditions) {
+        return restoreRecurring(channel, schedule, schedule.first(System.currentTimeMillis()), 0, conditions);
+    }
+
+    /**
+     * Schedule a timer with the {@link AnnouncementScheduler} and record it in the {@link AnnouncementJournal}. The
+     * journal holds the nominal fire time; the scheduler's {@link SpreadPolicy} is applied on top of it.
+     */
+    private ScheduledFuture<?> schedule(@Nonnull AnnouncementTimer timer, long delay, TimeUnit unit) {
+        long delayMillis = unit.toMillis(Math.max(delay, 0));
+        long fireAt = System.currentTimeMillis() + delayMillis;
+        AnnouncementScheduler.Timeout timeout = timer.schedule(timer, delayMillis + timer.spread(fireAt));
+
+        long id = AnnouncementJournal.record(timer, fireAt, null, 0);
+        if (id != 0)
+            timeout.whenDone(() -> AnnouncementJournal.remove(timer.getChannel(), id));
+        return timeout;
+    }
+
+    /**
+     * Create an {@link AnnouncementTimer} for this announcement, with or without conditions.
+     */
+    private AnnouncementTimer timer(@Nonnull MessageChannel channel, QueueCondition... conditions) {
+        return conditions.length == 0 ?
+                new AnnouncementTimer(this, channel) :
+                new AnnouncementTimer(this, channel, conditions);
+    }
+
+    /**
+     * Schedule an announcement that was read back from the {@link AnnouncementJournal}. Unlike {@link
+     * #queue(MessageChannel, long, TimeUnit, QueueCondition...) queue()}, this doesn't write a new journal record,
+     * since the announcement is already in the journal.
+     *
+     * @param channel    the channel to send the announcement in
+     * @param delay      the remaining delay in milliseconds, zero or negative to send as soon as possible
+     * @param conditions zero or more conditions required for the announcement to be sent
+     * @return the scheduled timeout
+     */
+    AnnouncementScheduler.Timeout restore(@Nonnull MessageChannel channel, long delay, QueueCondition... conditions) {
+        AnnouncementTimer timer = timer(channel, conditions);
+        long spread = timer.spread(System.currentTimeMillis() + Math.max(delay, 0));
+        return timer.schedule(timer, Math.max(delay, 0) + spread);
+    }
+
+    /**
+     * Start a recurring announcement with a known first fire time. This is used both for new recurrences and ones
+     * read back from the {@link AnnouncementJournal}.
+     *
+     * @param channel    the channel to send the announcement in
+     * @param schedule   the schedule that determines when the announcement is sent
+     * @param firstFire  the time of the first fire, in epoch milliseconds
+     * @param journalId  the id of the recurrence in the journal, or <code>0</code> if it isn't journaled yet
+     * @param conditions zero or more conditions required for each announcement to be sent
+     * @return the started recurrence
+     */
+    @Nonnull
+    Recurrence restoreRecurring(@Nonnull MessageChannel channel, @Nonnull Schedule schedule, long firstFire,
+                                long journalId, QueueCondition... conditions) {
+        Recurrence recurrence = new Recurrence(timer(channel, conditions), schedule, journalId);
+        recurrence.scheduleAt(firstFire);
+        return recurrence;
     }
 
-    public static class AnnouncementTimer extends TimerTask {
+    public static class AnnouncementTimer extends TimerTask implements AnnouncementScheduler.AsyncTask {
         /**
          * The {@link Announcement} associated with this {@link AnnouncementTimer Timer}, which is sent when the timer
          * {@link #run() runs}.
@@ -240,6 +387,11 @@ public class Announcement {
          */
         private QueueCondition[] conditions;
 
+        /**
+         * The {@link #conditions} combined into a single condition, or <code>null</code> if there are none.
+         */
+        private QueueCondition root;
+
         /**
          * Create an {@link AnnouncementTimer AnnouncementTimer} based on the {@link Announcement} to send.
          *
@@ -256,6 +408,10 @@ public class Announcement {
          * QueueCondition QueueConditions} set requirements that are checked at run time and must be met for the
          * announcement to actually be sent. If they are not met, the {@link AnnouncementTimer AnnouncementTimer} fails
          * to send and is canceled.
+         * <p>
+         * The conditions are combined with {@link QueueCondition#allOf(QueueCondition...) allOf()}, so they are
+         * checked from cheapest to most expensive and a failing local check stops the evaluation before any history
+         * is scanned.
          *
          * @param announcement the announcement to send
          * @param channel      where to send the announcement
@@ -264,7 +420,8 @@ public class Announcement {
         private AnnouncementTimer(@Nonnull Announcement announcement, @Nonnull MessageChannel channel,
                                   QueueCondition... conditions) {
             this(announcement, channel);
-            this.conditions = conditions;
+            this.conditions = conditions.clone();
+            this.root = QueueCondition.allOf(this.conditions);
         }
 
         /**
@@ -278,6 +435,81 @@ public class Announcement {
             return channel;
         }
 
+        /**
+         * Get the {@link #conditions} that are checked when this {@link AnnouncementTimer Timer} runs.
+         *
+         * @return the conditions, which may be empty
+         */
+        @Nonnull
+        QueueCondition[] getConditions() {
+            return conditions == null ? new QueueCondition[0] : conditions;
+        }
+
+        /**
+         * Determine whether this {@link AnnouncementTimer Timer} can be written to the {@link AnnouncementJournal},
+         * which is only possible if none of its {@link #conditions} are custom.
+         *
+         * @return <code>true</code> if every condition can be serialized; <code>false</code> otherwise
+         */
+        boolean isSerializable() {
+            if (conditions != null)
+                for (QueueCondition condition : conditions)
+                    if (!condition.isSerializable())
+                        return false;
+            return true;
+        }
+
+        /**
+         * Get the {@link ChannelActivity} record for the {@link #channel}, which {@link QueueCondition QueueConditions}
+         * use to avoid requesting the channel history. The channel is tracked while this timer is
+         * {@link #schedule(Runnable, long) scheduled}; otherwise this returns an empty record that falls back to the
+         * history.
+         *
+         * @return the channel activity
+         */
+        @Nonnull
+        public ChannelActivity getActivity() {
+            ChannelActivity activity = ChannelActivity.get(channel.getIdLong());
+            return activity != null ? activity : new ChannelActivity(channel.getJDA().getShardInfo().getShardId());
+        }
+
+        /**
+         * Schedule a task for this {@link AnnouncementTimer Timer} with the {@link AnnouncementScheduler}. If the
+         * timer has {@link #conditions}, its channel's {@link ChannelActivity} is tracked until the task is done.
+         *
+         * @param task        the task to run, which is either this timer or a fire of its {@link Recurrence}
+         * @param delayMillis the delay in milliseconds
+         * @return the scheduled timeout
+         */
+        @Nonnull
+        AnnouncementScheduler.Timeout schedule(@Nonnull Runnable task, long delayMillis) {
+            if (root == null)
+                return AnnouncementScheduler.get().schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+
+            // Track the channel first, in case the task runs before this returns
+            ChannelActivity.track(channel);
+            AnnouncementScheduler.Timeout timeout;
+            try {
+                timeout = AnnouncementScheduler.get().schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+            } catch (RuntimeException e) {
+                ChannelActivity.untrack(channel.getIdLong());
+                throw e;
+            }
+            timeout.whenDone(() -> ChannelActivity.untrack(channel.getIdLong()));
+            return timeout;
+        }
+
+        /**
+         * Get the delay that the scheduler's {@link SpreadPolicy} adds to a fire of this {@link AnnouncementTimer
+         * Timer}.
+         *
+         * @param fireAt the nominal fire time, in epoch milliseconds
+         * @return the extra delay in milliseconds
+         */
+        long spread(long fireAt) {
+            return AnnouncementScheduler.get().getSpreadPolicy().offset(channel.getIdLong(), fireAt);
+        }
+
         /**
          * Get the {@link #announcement} associated with this {@link AnnouncementTimer Timer}
          *
@@ -291,16 +523,58 @@ public class Announcement {
         /**
          * Runs this {@link AnnouncementTimer Timer}, sending the {@link #announcement} to the {@link #channel},
          * provided that all the {@link #conditions} are met. If the conditions are not met, nothing happens.
+         * <p>
+         * The conditions are checked asynchronously, so this returns as soon as the first check is started and never
+         * blocks the scheduler on a history request.
          */
         @Override
         public void run() {
-            if (conditions != null)
-                // If any conditions fail their check, do not run announcement
-                if (Arrays.stream(conditions).anyMatch(c -> !c.check(this))) {
-                    System.out.println("Conditions failed for sending announcement");
-                    return;
+            fire();
+        }
+
+        /**
+         * Run this {@link AnnouncementTimer Timer} like {@link #run()}, but return a future for the send. The
+         * {@link AnnouncementScheduler} uses this so that the timer's {@link AnnouncementScheduler.Timeout Timeout},
+         * and with it the {@link AnnouncementJournal} record, is only finished once the send has.
+         *
+         * @return a future that completes once the announcement is sent, or once a condition fails
+         */
+        @Nonnull
+        @Override
+        public CompletableFuture<?> runAsync() {
+            return fire();
+        }
+
+        /**
+         * Check the {@link #conditions} and send the {@link #announcement} if they are all met.
+         *
+         * @return a future that completes once the announcement is sent, or once a condition fails
+         */
+        @Nonnull
+        CompletableFuture<Void> fire() {
+            CompletableFuture<Boolean> passed = root == null ?
+                    CompletableFuture.completedFuture(true) :
+                    // Share one history request between all the conditions
+                    root.checkAsync(new ConditionContext(this, root));
+
+            return passed.thenCompose(p -> {
+                if (!p) {
+                    AnnouncementMetrics.recordSkipped();
+                    LOG.debug("Conditions failed for sending announcement in channel {}", channel.getId());
+                    return CompletableFuture.completedFuture(null);
                 }
-            announcement.send(channel);
+
+                long start = System.nanoTime();
+                return announcement.sendAsync(channel).<Void>handle((m, e) -> {
+                    if (e == null) {
+                        AnnouncementMetrics.recordSent(System.nanoTime() - start);
+                    } else {
+                        AnnouncementMetrics.recordFailed();
+                        LOG.warn("Failed to send announcement in channel " + channel.getId(), e);
+                    }
+                    return null;
+                });
+            });
         }
     }
 
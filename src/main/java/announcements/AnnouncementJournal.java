@@ -0,0 +1,553 @@
+package announcements;
+
+import main.Discord;
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.MessageBuilder;
+import net.dv8tion.jda.api.entities.Message;
+import net.dv8tion.jda.api.entities.MessageChannel;
+import net.dv8tion.jda.api.entities.MessageEmbed;
+import net.dv8tion.jda.api.interactions.components.ActionRow;
+import net.dv8tion.jda.api.utils.data.DataArray;
+import net.dv8tion.jda.api.utils.data.DataObject;
+import net.dv8tion.jda.internal.JDAImpl;
+import net.dv8tion.jda.internal.utils.JDALogger;
+import org.slf4j.Logger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongFunction;
+
+/**
+ * This is an append-only file that records every queued {@link Announcement}, so that pending announcements survive a
+ * restart or crash.
+ * <p>
+ * Each line in the journal is a JSON record. An <code>add</code> record holds the serialized message, the channel id,
+ * the time the announcement should fire, and its {@link QueueCondition QueueConditions}. A <code>remove</code> record
+ * is written once the announcement is canceled, or once it fires and its send has finished. Delivery is therefore at
+ * least once: if the process stops while a send is in flight, the announcement is sent again when the journal is
+ * replayed. {@link Recurrence Recurring} announcements also store their
+ * {@link Schedule}, and write a new <code>add</code> record with the same id every time they are rescheduled. When the
+ * journal is {@link #open(Path) opened} on startup, the records are folded together and every announcement that is
+ * still pending can be {@link #replay() replayed}. Combined conditions are stored as nested objects.
+ * <p>
+ * Records are handed to a single writer thread, so journaling never adds file I/O to
+ * {@link Announcement#queue(MessageChannel, long, TimeUnit) Announcement.queue()}. The writer periodically compacts the
+ * file by rewriting it with only the live records.
+ * <p>
+ * Announcements with {@link QueueCondition#ofCustom(java.util.function.Function) custom} conditions can't be
+ * serialized, so they are not journaled.
+ * <p>
+ * In a cluster, each shard has its own journal, {@link #open(Path, int) opened} by the node that runs the shard. An
+ * announcement is journaled with the shard of its channel, so when a shard moves to another node, its journal and the
+ * announcements in it move with it.
+ */
+public class AnnouncementJournal {
+    private static final Logger LOG = JDALogger.getLog(AnnouncementJournal.class);
+
+    /**
+     * The journal is compacted once it holds more than this many dead records, and more dead records than live ones.
+     */
+    private static final int COMPACT_THRESHOLD = 1_000;
+
+    /**
+     * The journal is also compacted at least this often, provided it holds any dead records.
+     */
+    private static final long COMPACT_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    /**
+     * The key of the journal that holds the announcements of every shard, which is used outside a cluster.
+     */
+    public static final int ALL_SHARDS = -1;
+
+    /**
+     * The open journals, keyed by shard id, or by {@link #ALL_SHARDS}.
+     */
+    private static final Map<Integer, AnnouncementJournal> journals = new ConcurrentHashMap<>();
+
+    private final Path path;
+    private final int shardId;
+    private final BlockingQueue<Record> records = new LinkedBlockingQueue<>();
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final Thread writer;
+
+    /**
+     * The live <code>add</code> records, keyed by id. This is only touched by the writer thread after the journal is
+     * opened.
+     */
+    private final Map<Long, String> live = new LinkedHashMap<>();
+
+    /**
+     * The live records read from the file when the journal was opened. These are cleared once they are replayed.
+     */
+    private List<DataObject> recovered = new ArrayList<>();
+
+    private BufferedWriter out;
+    private long lines;
+    private long lastCompaction = System.currentTimeMillis();
+    private volatile boolean closed;
+
+    private AnnouncementJournal(@Nonnull Path path, int shardId) {
+        this.path = path;
+        this.shardId = shardId;
+        this.writer = new Thread(this::runWriter, "AnnouncementJournal-Writer");
+        this.writer.setDaemon(true);
+    }
+
+    /**
+     * Open the journal at the given path, reading any records already in it. This should be called once on startup,
+     * followed by {@link #replay()} once JDA is ready. Until the journal is opened, queued announcements are not
+     * journaled. Once the journal is {@link #close() closed}, this opens it again.
+     *
+     * @param path the path of the journal file
+     * @return the opened journal
+     * @throws IOException if the journal exists but can't be read or rewritten
+     */
+    @Nonnull
+    public static AnnouncementJournal open(@Nonnull Path path) throws IOException {
+        return open(path, ALL_SHARDS);
+    }
+
+    /**
+     * Open the journal of one shard, like {@link #open(Path)}. The journal is kept next to the given path, with the
+     * shard id appended to its name, such as <code>announcements.journal.3</code>. Only announcements in that shard's
+     * channels are written to it, and only those are {@link #replay() replayed} from it.
+     *
+     * @param path    the path shared by the journals of every shard
+     * @param shardId the id of the shard, or {@link #ALL_SHARDS} to open the journal at the path itself
+     * @return the opened journal
+     * @throws IOException if the journal exists but can't be read or rewritten
+     */
+    @Nonnull
+    public static synchronized AnnouncementJournal open(@Nonnull Path path, int shardId) throws IOException {
+        AnnouncementJournal journal = journals.get(shardId);
+        if (journal != null)
+            return journal;
+
+        if (shardId != ALL_SHARDS)
+            path = path.resolveSibling(path.getFileName() + "." + shardId);
+        journal = new AnnouncementJournal(path, shardId);
+        journal.load();
+        journal.writer.start();
+        journals.put(shardId, journal);
+        return journal;
+    }
+
+    /**
+     * Get the open journal that holds every shard's announcements.
+     *
+     * @return the journal, or <code>null</code> if it hasn't been {@link #open(Path) opened}
+     */
+    @Nullable
+    public static AnnouncementJournal get() {
+        return get(ALL_SHARDS);
+    }
+
+    /**
+     * Get the open journal of one shard.
+     *
+     * @param shardId the id of the shard, or {@link #ALL_SHARDS}
+     * @return the journal, or <code>null</code> if it hasn't been {@link #open(Path, int) opened}
+     */
+    @Nullable
+    public static AnnouncementJournal get(int shardId) {
+        return journals.get(shardId);
+    }
+
+    /**
+     * {@link #close() Close} every open journal. This is called when the bot shuts down.
+     */
+    public static void closeAll() {
+        for (AnnouncementJournal journal : List.copyOf(journals.values()))
+            journal.close();
+    }
+
+    /**
+     * Hand a shard's announcements over to the node that now runs the shard. The shard's journal is closed first, and
+     * then every pending announcement in its channels is canceled here, so that they stay in the journal for the other
+     * node to {@link #replay() replay}.
+     *
+     * @param shardId the id of the shard that moved to another node
+     * @return a future that completes with the number of pending announcements that were canceled
+     */
+    @Nonnull
+    public static CompletableFuture<Integer> handOff(int shardId) {
+        AnnouncementJournal journal = journals.get(shardId);
+        if (journal != null)
+            journal.close();
+
+        return AnnouncementScheduler.get().cancelIf(task -> {
+            Announcement.AnnouncementTimer timer;
+            if (task instanceof Announcement.AnnouncementTimer t)
+                timer = t;
+            else if (task instanceof Recurrence.Fire f)
+                timer = f.getTimer();
+            else
+                return false;
+            return shardOf(timer.getChannel()) == shardId;
+        });
+    }
+
+    /**
+     * Get the shard whose journal holds the announcements in a channel. This is the shard of the channel's guild, or
+     * for a private channel, the shard it was opened on.
+     *
+     * @param channel the channel
+     * @return the shard id
+     */
+    static int shardOf(@Nonnull MessageChannel channel) {
+        return channel.getJDA().getShardInfo().getShardId();
+    }
+
+    /**
+     * Find the open journal that announcements in a channel are written to.
+     *
+     * @return the journal, or <code>null</code> if the channel's announcements aren't journaled
+     */
+    @Nullable
+    private static AnnouncementJournal of(@Nonnull MessageChannel channel) {
+        if (journals.isEmpty())
+            return null;
+        AnnouncementJournal journal = journals.get(ALL_SHARDS);
+        return journal != null ? journal : journals.get(shardOf(channel));
+    }
+
+    /**
+     * Record a queued announcement in the open journal, if there is one.
+     *
+     * @param timer    the timer that was queued
+     * @param fireAt   the time the timer should fire, in epoch milliseconds
+     * @param schedule the schedule of a recurring announcement, or <code>null</code> if it only fires once
+     * @param id       the id of an announcement that is already journaled, or <code>0</code> to assign a new id
+     * @return the id of the journal record, or <code>0</code> if the announcement wasn't journaled
+     */
+    static long record(@Nonnull Announcement.AnnouncementTimer timer, long fireAt, @Nullable Schedule schedule,
+                       long id) {
+        if (!timer.isSerializable())
+            return 0;
+        AnnouncementJournal journal = of(timer.getChannel());
+        if (journal == null || journal.closed)
+            return 0;
+
+        if (id == 0)
+            id = journal.nextId.getAndIncrement();
+        journal.records.add(new Record(id, timer, fireAt, schedule));
+        return id;
+    }
+
+    /**
+     * Write a <code>remove</code> record for an announcement that fired or was canceled.
+     *
+     * @param channel the channel of the announcement, which determines the journal it is in
+     * @param id      the id of the journal record, or <code>0</code> to do nothing
+     */
+    static void remove(@Nonnull MessageChannel channel, long id) {
+        AnnouncementJournal journal = id == 0 ? null : of(channel);
+        if (journal != null)
+            journal.remove(id);
+    }
+
+    /**
+     * Write a <code>remove</code> record to this journal, unless it has been closed.
+     *
+     * @param id the id of the journal record
+     */
+    private void remove(long id) {
+        if (!closed)
+            records.add(new Record(id, null, 0, null));
+    }
+
+    /**
+     * Re-queue every announcement that was pending when the journal was opened. Announcements whose fire time has
+     * passed are sent as soon as possible, and announcements whose channel no longer exists are dropped. The journal
+     * of a shard must only be replayed once the shard is ready, since its channels aren't found until then.
+     *
+     * @return the number of announcements that were re-queued
+     */
+    public int replay() {
+        return replay(channelId -> {
+            MessageChannel channel = Discord.getTextChannelById(channelId);
+            return channel != null ? channel : Discord.getPrivateChannelById(channelId);
+        });
+    }
+
+    /**
+     * Re-queue every announcement that was pending when the journal was opened, like {@link #replay()}, looking up
+     * channels with the given function.
+     *
+     * @param channels finds a channel by its id, returning <code>null</code> if it isn't found
+     * @return the number of announcements that were re-queued
+     */
+    synchronized int replay(@Nonnull LongFunction<MessageChannel> channels) {
+        int count = 0;
+        long now = System.currentTimeMillis();
+
+        for (DataObject data : recovered) {
+            long id = data.getLong("id");
+            try {
+                MessageChannel channel = channels.apply(data.getLong("channel"));
+                if (channel == null) {
+                    LOG.warn("Dropping journaled announcement " + id + " because its channel no longer exists");
+                    remove(id);
+                    continue;
+                }
+
+                Message message = readMessage(channel.getJDA(), data.getObject("message"));
+                Announcement announcement = new Announcement(message);
+                DataArray array = data.getArray("conditions");
+                QueueCondition[] conditions = new QueueCondition[array.length()];
+                for (int i = 0; i < conditions.length; i++)
+                    conditions[i] = QueueCondition.fromData(array.getObject(i));
+
+                if (data.hasKey("schedule")) {
+                    announcement.restoreRecurring(channel, Schedule.parse(data.getString("schedule")),
+                            Math.max(data.getLong("fire"), now), id, conditions);
+                } else {
+                    AnnouncementScheduler.Timeout timeout = announcement.restore(
+                            channel, data.getLong("fire") - now, conditions);
+                    timeout.whenDone(() -> remove(id));
+                }
+                count++;
+            } catch (Exception e) {
+                LOG.error("Failed to replay journaled announcement " + id + "; dropping it", e);
+                remove(id);
+            }
+        }
+
+        recovered = new ArrayList<>();
+        LOG.info("Replayed " + count + " announcements from " + path);
+        return count;
+    }
+
+    /**
+     * Stop the writer thread after flushing any pending records. Records added after this are discarded, so pending
+     * announcements that are canceled afterwards stay in the journal for the next process that opens it.
+     */
+    public void close() {
+        // The writer isn't interrupted, since that would close the file channel in the middle of a write
+        closed = true;
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (AnnouncementJournal.class) {
+            journals.remove(shardId, this);
+        }
+    }
+
+    /**
+     * Read the journal file, folding <code>add</code> and <code>remove</code> records into the set of live
+     * announcements. The file is then compacted so that it only holds those announcements.
+     */
+    private void load() throws IOException {
+        long maxId = 0;
+
+        if (Files.exists(path)) {
+            Map<Long, DataObject> entries = new LinkedHashMap<>();
+            int lineNumber = 0;
+            for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+                lineNumber++;
+                if (line.isBlank())
+                    continue;
+                try {
+                    DataObject data = DataObject.fromJson(line);
+                    long id = data.getLong("id");
+                    maxId = Math.max(maxId, id);
+                    if (data.getString("op").equals("add")) {
+                        entries.put(id, data);
+                        live.put(id, line);
+                    } else {
+                        entries.remove(id);
+                        live.remove(id);
+                    }
+                } catch (Exception e) {
+                    // A crash can leave a partially written final line
+                    LOG.warn("Skipping unreadable record on line " + lineNumber + " of " + path);
+                }
+            }
+            recovered = new ArrayList<>(entries.values());
+        }
+
+        nextId.set(maxId + 1);
+        compact();
+    }
+
+    private void runWriter() {
+        try {
+            while (true) {
+                Record record = records.poll(1, TimeUnit.SECONDS);
+                if (record == null && closed)
+                    break;
+
+                // Write everything that's waiting before flushing
+                if (record != null) {
+                    while (record != null) {
+                        write(record);
+                        record = records.poll();
+                    }
+                    out.flush();
+                }
+
+                long dead = lines - live.size();
+                if (dead > COMPACT_THRESHOLD && dead > live.size() ||
+                    dead > 0 && System.currentTimeMillis() - lastCompaction > COMPACT_INTERVAL_MILLIS)
+                    compact();
+            }
+        } catch (IOException e) {
+            LOG.error("Announcement journal writer failed; pending announcements will no longer be journaled", e);
+            closed = true;
+        } catch (InterruptedException e) {
+            LOG.warn("Announcement journal writer was interrupted; pending records may not have been written");
+        } finally {
+            try {
+                out.close();
+            } catch (IOException e) {
+                LOG.error("Failed to close the announcement journal", e);
+            }
+        }
+    }
+
+    private void write(@Nonnull Record record) throws IOException {
+        String line;
+        if (record.timer == null) {
+            if (live.remove(record.id) == null)
+                return;
+            line = DataObject.empty().put("op", "remove").put("id", record.id).toString();
+        } else {
+            try {
+                line = record.toData().toString();
+            } catch (Exception e) {
+                LOG.error("Failed to serialize announcement " + record.id + " for the journal", e);
+                return;
+            }
+            live.put(record.id, line);
+        }
+
+        out.write(line);
+        out.newLine();
+        lines++;
+    }
+
+    /**
+     * Rewrite the journal with only the live records. The new file is written next to the old one and then moved
+     * over it, so a crash during compaction never loses the journal.
+     */
+    private void compact() throws IOException {
+        if (out != null)
+            out.close();
+
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (BufferedWriter w = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            for (String line : live.values()) {
+                w.write(line);
+                w.newLine();
+            }
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        out = Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        lines = live.size();
+        lastCompaction = System.currentTimeMillis();
+    }
+
+    /**
+     * Serialize a {@link Message} into the content, embeds, and action rows needed to rebuild it.
+     */
+    @Nonnull
+    private static DataObject writeMessage(@Nonnull Message message) {
+        DataArray embeds = DataArray.empty();
+        for (MessageEmbed embed : message.getEmbeds())
+            embeds.add(embed.toData());
+
+        DataArray rows = DataArray.empty();
+        for (ActionRow row : message.getActionRows())
+            rows.add(row.toData());
+
+        return DataObject.empty()
+                .put("content", message.getContentRaw())
+                .put("embeds", embeds)
+                .put("components", rows);
+    }
+
+    /**
+     * Rebuild a {@link Message} from the data written by {@link #writeMessage(Message)}.
+     */
+    @Nonnull
+    private static Message readMessage(@Nonnull JDA jda, @Nonnull DataObject data) {
+        MessageBuilder builder = new MessageBuilder();
+
+        String content = data.getString("content", "");
+        if (!content.isEmpty())
+            builder.setContent(content);
+
+        DataArray embeds = data.getArray("embeds");
+        List<MessageEmbed> embedList = new ArrayList<>();
+        for (int i = 0; i < embeds.length(); i++)
+            embedList.add(((JDAImpl) jda).getEntityBuilder().createMessageEmbed(embeds.getObject(i)));
+        builder.setEmbeds(embedList);
+
+        DataArray rows = data.getArray("components");
+        List<ActionRow> rowList = new ArrayList<>();
+        for (int i = 0; i < rows.length(); i++)
+            rowList.add(ActionRow.fromData(rows.getObject(i)));
+        builder.setActionRows(rowList);
+
+        return builder.build();
+    }
+
+    /**
+     * A record waiting to be written by the writer thread. If the {@link #timer} is <code>null</code>, this is a
+     * <code>remove</code> record.
+     */
+    private static class Record {
+        private final long id;
+        private final Announcement.AnnouncementTimer timer;
+        private final Message message;
+        private final long fireAt;
+        private final Schedule schedule;
+
+        private Record(long id, @Nullable Announcement.AnnouncementTimer timer, long fireAt,
+                       @Nullable Schedule schedule) {
+            this.id = id;
+            this.timer = timer;
+            // Build the message now, in case the announcement is modified before the record is written
+            this.message = timer == null ? null : timer.getAnnouncement().build();
+            this.fireAt = fireAt;
+            this.schedule = schedule;
+        }
+
+        @Nonnull
+        private DataObject toData() {
+            DataArray conditions = DataArray.empty();
+            for (QueueCondition condition : timer.getConditions())
+                conditions.add(condition.toData());
+
+            DataObject data = DataObject.empty()
+                    .put("op", "add")
+                    .put("id", id)
+                    .put("channel", timer.getChannel().getIdLong())
+                    .put("fire", fireAt)
+                    .put("message", writeMessage(message))
+                    .put("conditions", conditions);
+            if (schedule != null)
+                data.put("schedule", schedule.toString());
+            return data;
+        }
+    }
+}
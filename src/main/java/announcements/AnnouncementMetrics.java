@@ -0,0 +1,225 @@
+package announcements;
+
+import javax.annotation.Nonnull;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class collects statistics about scheduled {@link Announcement Announcements}: how late the
+ * {@link AnnouncementScheduler} runs them, how often each kind of {@link QueueCondition} passes or fails, and how long
+ * sends take.
+ * <p>
+ * Every counter is a preallocated atomic, so recording a value never allocates or locks. The pending count per channel
+ * isn't recorded at all; it is computed from the scheduler only when {@link #getPendingByChannel()} is called.
+ */
+public class AnnouncementMetrics {
+    /**
+     * The number of milliseconds between each task's deadline and the moment a worker started running it.
+     */
+    public static final Histogram LATENESS = new Histogram();
+
+    /**
+     * The number of milliseconds between starting to send an announcement and Discord confirming it.
+     */
+    public static final Histogram SEND_LATENCY = new Histogram();
+
+    private static final int CONDITION_TYPES = QueueCondition.Condition.values().length;
+    private static final AtomicLongArray CONDITIONS_PASSED = new AtomicLongArray(CONDITION_TYPES);
+    private static final AtomicLongArray CONDITIONS_FAILED = new AtomicLongArray(CONDITION_TYPES);
+
+    private static final AtomicLong SENT = new AtomicLong();
+    private static final AtomicLong SKIPPED = new AtomicLong();
+    private static final AtomicLong FAILED = new AtomicLong();
+
+    /**
+     * Record the result of checking a {@link QueueCondition}.
+     *
+     * @param condition the type of the condition
+     * @param passed    whether the check passed
+     */
+    static void recordCondition(@Nonnull QueueCondition.Condition condition, boolean passed) {
+        (passed ? CONDITIONS_PASSED : CONDITIONS_FAILED).incrementAndGet(condition.ordinal());
+    }
+
+    /**
+     * Record that an announcement was sent successfully.
+     *
+     * @param nanos the time the send took, in nanoseconds
+     */
+    static void recordSent(long nanos) {
+        SENT.incrementAndGet();
+        SEND_LATENCY.record(nanos / 1_000_000);
+    }
+
+    /**
+     * Record that an announcement wasn't sent because its conditions weren't met.
+     */
+    static void recordSkipped() {
+        SKIPPED.incrementAndGet();
+    }
+
+    /**
+     * Record that Discord rejected an announcement.
+     */
+    static void recordFailed() {
+        FAILED.incrementAndGet();
+    }
+
+    /**
+     * Get the number of announcements that were sent successfully.
+     *
+     * @return the sent count
+     */
+    public static long getSentCount() {
+        return SENT.get();
+    }
+
+    /**
+     * Get the number of announcements that weren't sent because their conditions weren't met.
+     *
+     * @return the skipped count
+     */
+    public static long getSkippedCount() {
+        return SKIPPED.get();
+    }
+
+    /**
+     * Get the number of announcements that Discord rejected.
+     *
+     * @return the failed count
+     */
+    public static long getFailedCount() {
+        return FAILED.get();
+    }
+
+    /**
+     * Get the number of checks that passed and failed for each type of {@link QueueCondition}. Types that were never
+     * checked are left out.
+     *
+     * @return a map of condition type names to <code>{passed, failed}</code> pairs
+     */
+    @Nonnull
+    public static Map<String, long[]> getConditionCounts() {
+        Map<String, long[]> counts = new HashMap<>();
+        for (QueueCondition.Condition condition : QueueCondition.Condition.values()) {
+            long passed = CONDITIONS_PASSED.get(condition.ordinal());
+            long failed = CONDITIONS_FAILED.get(condition.ordinal());
+            if (passed != 0 || failed != 0)
+                counts.put(condition.name(), new long[]{passed, failed});
+        }
+        return counts;
+    }
+
+    /**
+     * Count the pending announcements in each channel. This includes one-time announcements that haven't fired yet
+     * and the next fire of every {@link Recurrence}.
+     *
+     * @return a future that completes with a map of channel ids to the number of pending announcements there
+     */
+    @Nonnull
+    public static CompletableFuture<Map<Long, Integer>> getPendingByChannel() {
+        return AnnouncementScheduler.get().getPendingTasks().thenApply(AnnouncementMetrics::countByChannel);
+    }
+
+    @Nonnull
+    private static Map<Long, Integer> countByChannel(@Nonnull List<Runnable> tasks) {
+        Map<Long, Integer> counts = new HashMap<>();
+        for (Runnable task : tasks) {
+            Announcement.AnnouncementTimer timer;
+            if (task instanceof Announcement.AnnouncementTimer t)
+                timer = t;
+            else if (task instanceof Recurrence.Fire f)
+                timer = f.getTimer();
+            else
+                continue;
+
+            counts.merge(timer.getChannel().getIdLong(), 1, Integer::sum);
+        }
+        return counts;
+    }
+
+    /**
+     * A histogram with power-of-two buckets. Bucket <code>0</code> holds the value <code>0</code>, and bucket
+     * <code>i</code> holds the values from <code>2<sup>i-1</sup></code> to <code>2<sup>i</sup> - 1</code>. Negative
+     * values are recorded as <code>0</code>.
+     */
+    public static final class Histogram {
+        private final AtomicLongArray buckets = new AtomicLongArray(64);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong sum = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        /**
+         * Create an empty histogram.
+         */
+        public Histogram() {
+        }
+
+        /**
+         * Add a value to the histogram.
+         *
+         * @param value the value to add
+         */
+        public void record(long value) {
+            value = Math.max(value, 0);
+            buckets.incrementAndGet(Math.min(64 - Long.numberOfLeadingZeros(value), 63));
+            count.incrementAndGet();
+            sum.addAndGet(value);
+            max.accumulateAndGet(value, Math::max);
+        }
+
+        /**
+         * Get the number of values recorded.
+         *
+         * @return the count
+         */
+        public long getCount() {
+            return count.get();
+        }
+
+        /**
+         * Get the mean of the values recorded.
+         *
+         * @return the mean, or <code>0</code> if nothing has been recorded
+         */
+        public double getMean() {
+            long c = count.get();
+            return c == 0 ? 0 : (double) sum.get() / c;
+        }
+
+        /**
+         * Get the largest value recorded.
+         *
+         * @return the maximum, or <code>0</code> if nothing has been recorded
+         */
+        public long getMax() {
+            return max.get();
+        }
+
+        /**
+         * Estimate a percentile of the values recorded. The result is the upper bound of the bucket containing that
+         * percentile, so it is never below the true value and at most about twice it.
+         *
+         * @param percentile the percentile, from <code>0</code> to <code>100</code>
+         * @return the estimated percentile, or <code>0</code> if nothing has been recorded
+         */
+        public long getPercentile(double percentile) {
+            long c = count.get();
+            if (c == 0)
+                return 0;
+
+            long target = (long) Math.ceil(c * percentile / 100);
+            long seen = 0;
+            for (int i = 0; i < 64; i++) {
+                seen += buckets.get(i);
+                if (seen >= Math.max(target, 1))
+                    return Math.min(i == 0 ? 0 : (1L << i) - 1, max.get());
+            }
+            return max.get();
+        }
+    }
+}
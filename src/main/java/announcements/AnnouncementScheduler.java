@@ -0,0 +1,647 @@
+package announcements;
+
+import net.dv8tion.jda.internal.utils.JDALogger;
+import org.slf4j.Logger;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * This is the process-wide scheduler used by every {@link Announcement}. Rather than giving each announcement its own
+ * thread, all pending {@link Announcement.AnnouncementTimer AnnouncementTimers} are stored in a single hashed timing
+ * wheel that is advanced by one ticker thread.
+ * <p>
+ * The wheel is an array of {@link #WHEEL_SIZE} buckets, each covering {@link #TICK_MILLIS} milliseconds. A timeout is
+ * placed in the bucket matching its deadline along with the number of full rotations it must wait. Scheduling and
+ * canceling only push the timeout onto a lock-free queue, so both are <code>O(1)</code> and never block. The ticker
+ * thread moves those timeouts into (or out of) their buckets at the start of every tick.
+ * <p>
+ * Expired timeouts are handed to a small fixed pool of {@link #WORKER_THREADS} threads so that a slow announcement
+ * never delays the wheel. The total thread count is therefore constant no matter how many announcements are pending.
+ * <p>
+ * A task that finishes its work asynchronously, such as an announcement waiting on its send, can implement
+ * {@link AsyncTask}. Its {@link Timeout} is then only done once that work is, rather than as soon as the task returns.
+ */
+public class AnnouncementScheduler {
+    private static final Logger LOG = JDALogger.getLog(AnnouncementScheduler.class);
+
+    /**
+     * The number of milliseconds covered by each bucket in the wheel. Timers fire at most this long after their
+     * deadline.
+     */
+    public static final long TICK_MILLIS = 100;
+
+    /**
+     * The number of buckets in the wheel. This must be a power of two.
+     */
+    public static final int WHEEL_SIZE = 512;
+
+    /**
+     * The number of threads used to run expired timers.
+     */
+    public static final int WORKER_THREADS = 2;
+
+    /**
+     * The maximum number of newly scheduled timeouts moved into the wheel per tick. This prevents a huge burst of
+     * {@link #schedule(Runnable, long, TimeUnit) schedule()} calls from stalling a single tick.
+     */
+    private static final int MAX_TRANSFERS_PER_TICK = 100_000;
+
+    private static final AnnouncementScheduler INSTANCE = new AnnouncementScheduler();
+
+    private final long tickNanos = TimeUnit.MILLISECONDS.toNanos(TICK_MILLIS);
+    private final Bucket[] wheel = new Bucket[WHEEL_SIZE];
+    private final int mask = WHEEL_SIZE - 1;
+
+    private final Queue<Timeout> additions = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout> cancellations = new ConcurrentLinkedQueue<>();
+    private final Queue<CompletableFuture<List<Runnable>>> inspections = new ConcurrentLinkedQueue<>();
+    private final Queue<Purge> purges = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+
+    private volatile SpreadPolicy spreadPolicy = SpreadPolicy.none();
+
+    /**
+     * The scheduler lifecycle: 0 is not yet started, 1 is running, and 2 is shut down.
+     */
+    private final AtomicInteger state = new AtomicInteger();
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final Thread ticker;
+    private final ExecutorService workers;
+
+    /**
+     * The {@link System#nanoTime()} value when the ticker thread started. All deadlines are stored relative to this.
+     */
+    private volatile long startTime;
+
+    /**
+     * The number of ticks processed so far. This is only touched by the ticker thread.
+     */
+    private long tick;
+
+    private AnnouncementScheduler() {
+        for (int i = 0; i < wheel.length; i++)
+            wheel[i] = new Bucket();
+
+        ticker = new Thread(this::runTicker, "AnnouncementScheduler-Ticker");
+        ticker.setDaemon(true);
+
+        AtomicInteger workerCount = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(WORKER_THREADS, r -> {
+            Thread t = new Thread(r, "AnnouncementScheduler-Worker-" + workerCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Get the shared {@link AnnouncementScheduler} instance.
+     *
+     * @return the scheduler
+     */
+    @Nonnull
+    public static AnnouncementScheduler get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Schedule a task to run once after the given delay. The returned {@link Timeout} can be used to cancel the task
+     * before it runs.
+     *
+     * @param task  the task to run
+     * @param delay the delay after which the task should run, zero or negative to run on the next tick
+     * @param unit  the {@link TimeUnit} to convert the specified <code>delay</code>
+     * @return the {@link Timeout} for the scheduled task
+     * @throws RejectedExecutionException if the scheduler has been {@link #shutdown() shut down}
+     */
+    @Nonnull
+    public Timeout schedule(@Nonnull Runnable task, long delay, @Nonnull TimeUnit unit) {
+        start();
+
+        long deadline = System.nanoTime() + Math.max(unit.toNanos(delay), 0) - startTime;
+        // Guard against overflow for extremely long delays
+        if (delay > 0 && deadline < 0)
+            deadline = Long.MAX_VALUE;
+
+        Timeout timeout = new Timeout(task, deadline);
+        pending.incrementAndGet();
+        additions.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Get the number of tasks that are scheduled but have neither run nor been canceled.
+     *
+     * @return the pending task count
+     */
+    public int getPendingCount() {
+        return pending.get();
+    }
+
+    /**
+     * Get the {@link SpreadPolicy} that announcements use to avoid firing all at once.
+     *
+     * @return the spread policy
+     */
+    @Nonnull
+    public SpreadPolicy getSpreadPolicy() {
+        return spreadPolicy;
+    }
+
+    /**
+     * Set the {@link SpreadPolicy} that announcements use to avoid firing all at once. This only affects
+     * announcements scheduled after the call.
+     *
+     * @param policy the new spread policy
+     */
+    public void setSpreadPolicy(@Nonnull SpreadPolicy policy) {
+        this.spreadPolicy = policy;
+    }
+
+    /**
+     * Get a snapshot of every task that is still waiting to run. The wheel is only touched by the ticker thread, so
+     * the snapshot is taken there at the start of the next tick; this costs nothing until it is requested.
+     *
+     * @return a future that completes with the pending tasks, in no particular order
+     */
+    @Nonnull
+    public CompletableFuture<List<Runnable>> getPendingTasks() {
+        if (state.get() != 1)
+            return CompletableFuture.completedFuture(List.of());
+
+        CompletableFuture<List<Runnable>> future = new CompletableFuture<>();
+        inspections.add(future);
+        // The ticker may have stopped since the state was checked
+        if (state.get() != 1)
+            future.complete(List.of());
+        return future;
+    }
+
+    /**
+     * Cancel every task that is still waiting to run, without shutting down the scheduler. Like
+     * {@link #getPendingTasks()}, this is done on the ticker thread at the start of the next tick.
+     *
+     * @return a future that completes with the number of tasks that were canceled
+     */
+    @Nonnull
+    public CompletableFuture<Integer> cancelAll() {
+        return cancelIf(task -> true);
+    }
+
+    /**
+     * Cancel every task that is still waiting to run and matches a filter, without shutting down the scheduler. Like
+     * {@link #getPendingTasks()}, this is done on the ticker thread at the start of the next tick. This is used when
+     * a shard moves to another process in the cluster, which takes over the announcements in its channels.
+     *
+     * @param filter returns <code>true</code> for the tasks to cancel. This is called on the ticker thread, so it
+     *               must be quick.
+     * @return a future that completes with the number of tasks that were canceled
+     */
+    @Nonnull
+    public CompletableFuture<Integer> cancelIf(@Nonnull Predicate<Runnable> filter) {
+        if (state.get() != 1)
+            return CompletableFuture.completedFuture(0);
+
+        CompletableFuture<Integer> future = new CompletableFuture<>();
+        purges.add(new Purge(filter, future));
+        // The ticker may have stopped since the state was checked
+        if (state.get() != 1)
+            future.complete(0);
+        return future;
+    }
+
+    /**
+     * Stop the scheduler. Tasks that have not yet run are canceled, and tasks that are currently running are allowed
+     * to finish. Once shut down, the scheduler rejects any new tasks.
+     */
+    public void shutdown() {
+        if (state.getAndSet(2) == 2)
+            return;
+
+        ticker.interrupt();
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(5, TimeUnit.SECONDS))
+                LOG.warn("Announcement workers did not finish within 5 seconds of shutdown");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Start the ticker thread if it isn't running already.
+     */
+    private void start() {
+        switch (state.get()) {
+            case 0 -> {
+                if (state.compareAndSet(0, 1))
+                    ticker.start();
+            }
+            case 1 -> {
+            }
+            default -> throw new RejectedExecutionException("AnnouncementScheduler has been shut down");
+        }
+
+        // Wait until the ticker thread sets the start time, keeping the caller's interrupt for later
+        boolean interrupted = false;
+        while (startTime == 0)
+            try {
+                started.await();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    private void runTicker() {
+        startTime = System.nanoTime();
+        // Zero is used to indicate an uninitialized start time
+        if (startTime == 0)
+            startTime = 1;
+        started.countDown();
+
+        while (state.get() == 1) {
+            long deadline = waitForNextTick();
+            if (deadline < 0)
+                break;
+
+            Bucket bucket = wheel[(int) (tick & mask)];
+            processCancellations();
+            transferAdditions();
+            bucket.expire(deadline);
+            processInspections();
+            processPurges();
+            tick++;
+        }
+
+        // Cancel everything left over so that anyone waiting on a Timeout is released
+        for (Bucket bucket : wheel)
+            bucket.clear();
+        for (Timeout timeout; (timeout = additions.poll()) != null; )
+            timeout.cancel(false);
+        cancellations.clear();
+        pending.set(0);
+        for (CompletableFuture<List<Runnable>> future; (future = inspections.poll()) != null; )
+            future.complete(List.of());
+        for (Purge purge; (purge = purges.poll()) != null; )
+            purge.future.complete(0);
+    }
+
+    /**
+     * Sleep until the start of the next tick.
+     *
+     * @return the deadline (relative to {@link #startTime}) of the current tick, or <code>-1</code> if the scheduler
+     * was shut down while sleeping
+     */
+    private long waitForNextTick() {
+        long deadline = tickNanos * (tick + 1);
+
+        while (true) {
+            long current = System.nanoTime() - startTime;
+            long sleepMillis = (deadline - current + 999_999) / 1_000_000;
+
+            if (sleepMillis <= 0)
+                return current;
+
+            try {
+                Thread.sleep(sleepMillis);
+            } catch (InterruptedException e) {
+                if (state.get() != 1)
+                    return -1;
+            }
+        }
+    }
+
+    private void transferAdditions() {
+        for (int i = 0; i < MAX_TRANSFERS_PER_TICK; i++) {
+            Timeout timeout = additions.poll();
+            if (timeout == null)
+                return;
+            if (timeout.isCancelled())
+                continue;
+
+            long calculated = timeout.deadline / tickNanos;
+            timeout.remainingRounds = (calculated - tick) / WHEEL_SIZE;
+
+            // If the deadline has already passed, put it in the current bucket so it runs on this tick
+            long ticks = Math.max(calculated, tick);
+            wheel[(int) (ticks & mask)].add(timeout);
+        }
+    }
+
+    private void processInspections() {
+        if (inspections.isEmpty())
+            return;
+
+        List<Runnable> tasks = new ArrayList<>(pending.get());
+        for (Bucket bucket : wheel)
+            for (Timeout timeout = bucket.head; timeout != null; timeout = timeout.next)
+                if (!timeout.isDone())
+                    tasks.add(timeout.task);
+        for (Timeout timeout : additions)
+            if (!timeout.isDone())
+                tasks.add(timeout.task);
+
+        List<Runnable> snapshot = List.copyOf(tasks);
+        for (CompletableFuture<List<Runnable>> future; (future = inspections.poll()) != null; )
+            future.complete(snapshot);
+    }
+
+    private void processPurges() {
+        // Canceling only queues the timeout for removal, so the buckets aren't modified while they're walked
+        for (Purge purge; (purge = purges.poll()) != null; ) {
+            int count = 0;
+            for (Bucket bucket : wheel)
+                for (Timeout timeout = bucket.head; timeout != null; timeout = timeout.next)
+                    if (purge.filter.test(timeout.task) && timeout.cancel(false))
+                        count++;
+            for (Timeout timeout : additions)
+                if (purge.filter.test(timeout.task) && timeout.cancel(false))
+                    count++;
+            purge.future.complete(count);
+        }
+    }
+
+    /**
+     * A request to {@link #cancelIf(Predicate) cancel} the pending tasks that match a filter.
+     */
+    private record Purge(@Nonnull Predicate<Runnable> filter, @Nonnull CompletableFuture<Integer> future) {
+    }
+
+    private void processCancellations() {
+        for (Timeout timeout; (timeout = cancellations.poll()) != null; )
+            if (timeout.bucket != null)
+                timeout.bucket.remove(timeout);
+    }
+
+    /**
+     * A task whose work continues after it returns. When an {@link AsyncTask} is scheduled, its {@link Timeout} stays
+     * running until the future returned by {@link #runAsync()} completes, so callbacks registered with
+     * {@link Timeout#whenDone(Runnable)} only run once that work has finished.
+     */
+    public interface AsyncTask extends Runnable {
+        /**
+         * Start the task. If this returns <code>null</code> anyway, the task counts as finished when it returns.
+         *
+         * @return a future that completes once the task's work has finished
+         */
+        @Nonnull
+        CompletableFuture<?> runAsync();
+
+        @Override
+        default void run() {
+            runAsync();
+        }
+    }
+
+    /**
+     * A single pending task in the {@link AnnouncementScheduler}. This is returned by {@link #schedule(Runnable, long,
+     * TimeUnit)} and can be used to cancel the task or wait for it to run.
+     */
+    public final class Timeout implements ScheduledFuture<Void> {
+        private static final AtomicLong SEQUENCE = new AtomicLong();
+
+        private static final int WAITING = 0;
+        private static final int CANCELED = 1;
+        private static final int RUNNING = 2;
+        private static final int COMPLETED = 3;
+        private static final int FAILED = 4;
+
+        private final Runnable task;
+        private final long deadline;
+        private final long sequence = SEQUENCE.getAndIncrement();
+        private final AtomicInteger state = new AtomicInteger(WAITING);
+        private volatile Throwable failure;
+
+        /**
+         * This is only created when someone actually waits on the {@link Timeout}, which keeps pending timeouts small
+         * and avoids building a stack trace for every cancellation.
+         */
+        private volatile CompletableFuture<Void> completion;
+
+        // These are only touched by the ticker thread
+        private long remainingRounds;
+        private Bucket bucket;
+        private Timeout next;
+        private Timeout prev;
+
+        private Timeout(@Nonnull Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Register a callback that is run once this {@link Timeout} either finishes running its task or is canceled.
+         * For an {@link AsyncTask}, the task is finished once its future completes.
+         *
+         * @param callback the callback to run
+         */
+        public void whenDone(@Nonnull Runnable callback) {
+            completion().whenComplete((v, t) -> callback.run());
+        }
+
+        @Nonnull
+        private CompletableFuture<Void> completion() {
+            CompletableFuture<Void> future = completion;
+            if (future == null) {
+                synchronized (this) {
+                    if ((future = completion) == null)
+                        completion = future = new CompletableFuture<>();
+                }
+                // If the timeout finished before the future existed, settle it now
+                settle(future);
+            }
+            return future;
+        }
+
+        private void settle(CompletableFuture<Void> future) {
+            if (future == null)
+                return;
+            switch (state.get()) {
+                case CANCELED -> future.cancel(false);
+                case COMPLETED -> future.complete(null);
+                case FAILED -> future.completeExceptionally(failure);
+                default -> {
+                }
+            }
+        }
+
+        /**
+         * Hand the task to a worker thread, provided it hasn't been canceled.
+         */
+        private void expire() {
+            if (!state.compareAndSet(WAITING, RUNNING))
+                return;
+            pending.decrementAndGet();
+
+            try {
+                workers.execute(() -> {
+                    AnnouncementMetrics.LATENESS.record((System.nanoTime() - startTime - deadline) / 1_000_000);
+                    CompletableFuture<?> result;
+                    try {
+                        if (task instanceof AsyncTask async) {
+                            // A task that returns null has no more work to wait for
+                            result = async.runAsync();
+                            if (result == null)
+                                result = CompletableFuture.completedFuture(null);
+                        } else {
+                            task.run();
+                            result = CompletableFuture.completedFuture(null);
+                        }
+                    } catch (Throwable t) {
+                        result = CompletableFuture.failedFuture(t);
+                    }
+                    result.whenComplete((v, t) -> finish(t));
+                });
+            } catch (RejectedExecutionException e) {
+                state.set(CANCELED);
+                settle(completion);
+            }
+        }
+
+        /**
+         * Record the outcome of the task once its work has finished.
+         *
+         * @param t the failure, or <code>null</code> if the task succeeded
+         */
+        private void finish(Throwable t) {
+            if (t == null) {
+                state.set(COMPLETED);
+            } else {
+                LOG.error("Scheduled announcement task failed", t);
+                failure = t;
+                state.set(FAILED);
+            }
+            settle(completion);
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            if (!state.compareAndSet(WAITING, CANCELED))
+                return false;
+
+            pending.decrementAndGet();
+            cancellations.add(this);
+            settle(completion);
+            return true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return state.get() == CANCELED;
+        }
+
+        @Override
+        public boolean isDone() {
+            int s = state.get();
+            return s != WAITING && s != RUNNING;
+        }
+
+        @Override
+        public Void get() throws InterruptedException, ExecutionException {
+            return completion().get();
+        }
+
+        @Override
+        public Void get(long timeout, @Nonnull TimeUnit unit)
+                throws InterruptedException, ExecutionException, TimeoutException {
+            return completion().get(timeout, unit);
+        }
+
+        @Override
+        public long getDelay(@Nonnull TimeUnit unit) {
+            return unit.convert(deadline - (System.nanoTime() - startTime), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(@Nonnull Delayed other) {
+            if (other == this)
+                return 0;
+            if (other instanceof Timeout t) {
+                int c = Long.compare(deadline, t.deadline);
+                return c != 0 ? c : Long.compare(sequence, t.sequence);
+            }
+            return Long.compare(getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
+        }
+    }
+
+    /**
+     * One slot in the timing wheel: a doubly linked list of {@link Timeout Timeouts}. Buckets are only accessed by
+     * the ticker thread, so they need no synchronization.
+     */
+    private final class Bucket {
+        private Timeout head;
+        private Timeout tail;
+
+        private void add(@Nonnull Timeout timeout) {
+            timeout.bucket = this;
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        /**
+         * Run every timeout in this bucket whose deadline has been reached, and count down the remaining rounds for
+         * all the others.
+         *
+         * @param deadline the deadline of the current tick
+         */
+        private void expire(long deadline) {
+            Timeout timeout = head;
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.remainingRounds <= 0) {
+                    remove(timeout);
+                    if (timeout.deadline <= deadline)
+                        timeout.expire();
+                    else
+                        // This should be impossible, but re-add it rather than losing the task
+                        additions.add(timeout);
+                } else if (timeout.isCancelled()) {
+                    remove(timeout);
+                } else {
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+        }
+
+        private void remove(@Nonnull Timeout timeout) {
+            if (timeout.bucket != this)
+                return;
+
+            if (timeout.prev != null)
+                timeout.prev.next = timeout.next;
+            if (timeout.next != null)
+                timeout.next.prev = timeout.prev;
+            if (timeout == head)
+                head = timeout.next;
+            if (timeout == tail)
+                tail = timeout.prev;
+
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+
+        private void clear() {
+            for (Timeout timeout = head; timeout != null; ) {
+                Timeout next = timeout.next;
+                timeout.cancel(false);
+                remove(timeout);
+                timeout = next;
+            }
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package announcements;
+
+import net.dv8tion.jda.api.entities.Message;
+import net.dv8tion.jda.api.entities.MessageChannel;
+import utils.MessageCoalescer;
+
+import javax.annotation.Nonnull;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link Broadcast} sends one {@link Message} to many channels. It is created by {@link
+ * Announcement#broadcast(Collection)}.
+ * <p>
+ * Discord limits message sends per route bucket (each channel is its own bucket) as well as globally. Sending to every
+ * channel at once trips the global limit and produces a burst of 429 responses. Instead, a broadcast is paced by the
+ * {@link AnnouncementScheduler}: every tick it starts only as many sends as the target rate allows, and it never has
+ * more than one second's worth of sends in flight. Each channel appears at most once, so no route bucket ever has
+ * more than one send from the broadcast in flight. Sends go through the {@link MessageCoalescer}, so a broadcast that
+ * lands in a channel alongside other announcements is merged with them.
+ */
+public class Broadcast {
+    /**
+     * The default number of sends started per second. This leaves headroom under Discord's global limit of 50
+     * requests per second for the bot's other traffic.
+     */
+    public static final double DEFAULT_RATE = 40;
+
+    private final Message message;
+    private final Deque<MessageChannel> remaining;
+    private final int perTick;
+    private final int maxInFlight;
+    private final long start = System.currentTimeMillis();
+
+    private final Map<Long, Message> sent = new ConcurrentHashMap<>();
+    private final Map<Long, Throwable> failed = new ConcurrentHashMap<>();
+    private final CompletableFuture<Result> result = new CompletableFuture<>();
+
+    private int inFlight;
+
+    Broadcast(@Nonnull Message message, @Nonnull Collection<? extends MessageChannel> channels, double rate) {
+        if (rate <= 0)
+            throw new IllegalArgumentException("The broadcast rate must be positive");
+
+        this.message = message;
+
+        // Remove duplicate channels so that each route bucket only receives one send
+        Map<Long, MessageChannel> unique = new LinkedHashMap<>();
+        for (MessageChannel channel : channels)
+            unique.putIfAbsent(channel.getIdLong(), channel);
+        this.remaining = new ArrayDeque<>(unique.values());
+
+        this.perTick = Math.max(1, (int) (rate * AnnouncementScheduler.TICK_MILLIS / 1000));
+        this.maxInFlight = Math.max(perTick, (int) Math.ceil(rate));
+    }
+
+    /**
+     * Start sending the broadcast.
+     *
+     * @return a future that completes with the {@link Result} once every send has finished
+     */
+    @Nonnull
+    CompletableFuture<Result> start() {
+        pump();
+        return result;
+    }
+
+    /**
+     * Start the next batch of sends, then schedule the next batch for the following tick.
+     */
+    private synchronized void pump() {
+        for (int i = 0; i < perTick && inFlight < maxInFlight && !remaining.isEmpty(); i++) {
+            MessageChannel channel = remaining.poll();
+            inFlight++;
+            try {
+                MessageCoalescer.send(channel, message).whenComplete((m, t) -> finish(channel.getIdLong(), m, t));
+            } catch (Exception e) {
+                // Missing permissions are thrown immediately rather than failing the request
+                finish(channel.getIdLong(), null, e);
+            }
+        }
+
+        if (!remaining.isEmpty())
+            AnnouncementScheduler.get().schedule(this::pump, AnnouncementScheduler.TICK_MILLIS, TimeUnit.MILLISECONDS);
+        else if (inFlight == 0)
+            complete();
+    }
+
+    private synchronized void finish(long channelId, Message message, Throwable error) {
+        if (error == null)
+            sent.put(channelId, message);
+        else
+            failed.put(channelId, error);
+
+        inFlight--;
+        if (inFlight == 0 && remaining.isEmpty())
+            complete();
+    }
+
+    private void complete() {
+        result.complete(new Result(sent, failed, System.currentTimeMillis() - start));
+    }
+
+    /**
+     * The outcome of a {@link Broadcast}, with the result of the send to each channel.
+     */
+    public static class Result {
+        private final Map<Long, Message> sent;
+        private final Map<Long, Throwable> failed;
+        private final long elapsed;
+
+        private Result(@Nonnull Map<Long, Message> sent, @Nonnull Map<Long, Throwable> failed, long elapsed) {
+            this.sent = Collections.unmodifiableMap(sent);
+            this.failed = Collections.unmodifiableMap(failed);
+            this.elapsed = elapsed;
+        }
+
+        /**
+         * Get the messages that were sent successfully.
+         *
+         * @return a map of channel ids to the message sent in that channel
+         */
+        @Nonnull
+        public Map<Long, Message> getSent() {
+            return sent;
+        }
+
+        /**
+         * Get the sends that failed.
+         *
+         * @return a map of channel ids to the reason the send to that channel failed
+         */
+        @Nonnull
+        public Map<Long, Throwable> getFailed() {
+            return failed;
+        }
+
+        /**
+         * Get the total time the broadcast took, from the first send starting to the last one finishing.
+         *
+         * @return the elapsed time in milliseconds
+         */
+        public long getElapsedMillis() {
+            return elapsed;
+        }
+    }
+}
@@ -0,0 +1,331 @@
+package announcements;
+
+import net.dv8tion.jda.api.entities.Message;
+import net.dv8tion.jda.api.entities.MessageChannel;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This is a compact record of the most recent messages in a single {@link MessageChannel}. It is fed by message events
+ * so that {@link QueueCondition QueueConditions} can be checked without requesting the channel history from Discord.
+ * <p>
+ * Each channel stores up to {@link #CAPACITY} messages in a ring buffer of primitive arrays, which hold the message id,
+ * author id, creation time, and whether the message has an image attachment. None of the query methods allocate.
+ * <p>
+ * A buffer is only trusted once it is <i>warm</i>, which happens when it has been {@link #seed(List, int) seeded} from
+ * a history request or has observed enough messages on its own. Until then, {@link #covers(int)} returns
+ * <code>false</code> and callers should fall back to the REST API.
+ * <p>
+ * Records are only kept for channels that are {@link #track(MessageChannel) tracked}, which every pending announcement
+ * with conditions does for its channel. Messages in other channels are ignored, and a record is dropped once the last
+ * announcement for its channel is done, so memory grows with pending announcements rather than with every channel the
+ * bot can see. When a shard {@link #reset(int) reconnects} with a new session, the events it missed are lost, so the
+ * records for its channels are cleared until they are seeded again.
+ */
+public class ChannelActivity {
+    /**
+     * The maximum number of messages stored per channel. This matches the largest history request Discord allows.
+     */
+    public static final int CAPACITY = 100;
+
+    private static final Map<Long, ChannelActivity> CHANNELS = new ConcurrentHashMap<>();
+
+    /**
+     * The id of the shard that receives the channel's message events.
+     */
+    private final int shardId;
+
+    /**
+     * The number of pending announcements tracking this channel. This is only changed while computing the entry in
+     * {@link #CHANNELS}, so that the record is removed atomically once it drops to zero.
+     */
+    private int watchers;
+
+    private final long[] messageIds = new long[CAPACITY];
+    private final long[] authorIds = new long[CAPACITY];
+    private final long[] timestamps = new long[CAPACITY];
+    private final boolean[] images = new boolean[CAPACITY];
+
+    /**
+     * The index of the slot that the next message will be written to.
+     */
+    private int head;
+
+    /**
+     * The number of messages currently stored.
+     */
+    private int size;
+
+    /**
+     * This is <code>true</code> if the buffer holds every message in the channel, meaning that the channel has fewer
+     * than {@link #CAPACITY} messages and the buffer was seeded with all of them.
+     */
+    private boolean complete;
+
+    /**
+     * This is <code>true</code> once the buffer has been seeded from the channel history or filled by events.
+     */
+    private boolean warm;
+
+    ChannelActivity(int shardId) {
+        this.shardId = shardId;
+    }
+
+    /**
+     * Start keeping a record of the messages in a channel, creating an empty one if the channel isn't tracked yet.
+     * Every call must be matched by a call to {@link #untrack(long)}.
+     *
+     * @param channel the channel
+     */
+    static void track(@Nonnull MessageChannel channel) {
+        CHANNELS.compute(channel.getIdLong(), (id, activity) -> {
+            if (activity == null)
+                activity = new ChannelActivity(channel.getJDA().getShardInfo().getShardId());
+            activity.watchers++;
+            return activity;
+        });
+    }
+
+    /**
+     * Undo one call to {@link #track(MessageChannel)}. Once no pending announcement tracks the channel, its record is
+     * dropped.
+     *
+     * @param channelId the id of the channel
+     */
+    static void untrack(long channelId) {
+        CHANNELS.computeIfPresent(channelId, (id, activity) -> --activity.watchers > 0 ? activity : null);
+    }
+
+    /**
+     * Get the {@link ChannelActivity} for a channel if it is tracked.
+     *
+     * @param channelId the id of the channel
+     * @return the activity record for the channel, or <code>null</code> if the channel isn't tracked
+     */
+    @Nullable
+    public static ChannelActivity get(long channelId) {
+        return CHANNELS.get(channelId);
+    }
+
+    /**
+     * Get the number of channels that are tracked.
+     *
+     * @return the channel count
+     */
+    public static int getTrackedCount() {
+        return CHANNELS.size();
+    }
+
+    /**
+     * Record a newly sent message in its channel, if the channel is tracked.
+     *
+     * @param message the message that was sent
+     */
+    public static void record(@Nonnull Message message) {
+        ChannelActivity activity = get(message.getChannel().getIdLong());
+        if (activity != null)
+            activity.add(
+                    message.getIdLong(),
+                    message.getAuthor().getIdLong(),
+                    message.getTimeCreated().toInstant().toEpochMilli(),
+                    hasImage(message));
+    }
+
+    /**
+     * Clear the records of every channel on a shard. This is called when the shard reconnects with a new session,
+     * since the message events it missed while disconnected are never delivered.
+     *
+     * @param shardId the id of the shard
+     */
+    public static void reset(int shardId) {
+        for (ChannelActivity activity : CHANNELS.values())
+            if (activity.shardId == shardId)
+                activity.clear();
+    }
+
+    /**
+     * Remove a deleted message from its channel's record, if it is present.
+     *
+     * @param channelId the id of the channel the message was in
+     * @param messageId the id of the deleted message
+     */
+    public static void forget(long channelId, long messageId) {
+        ChannelActivity activity = get(channelId);
+        if (activity != null)
+            activity.remove(messageId);
+    }
+
+    /**
+     * Determine whether a message has at least one image attachment.
+     *
+     * @param message the message to check
+     * @return <code>true</code> if the message has an image; <code>false</code> otherwise
+     */
+    static boolean hasImage(@Nonnull Message message) {
+        for (Message.Attachment attachment : message.getAttachments())
+            if (attachment.isImage())
+                return true;
+        return false;
+    }
+
+    /**
+     * Append a message to the buffer, overwriting the oldest message if the buffer is full.
+     */
+    private synchronized void add(long messageId, long authorId, long timestamp, boolean image) {
+        messageIds[head] = messageId;
+        authorIds[head] = authorId;
+        timestamps[head] = timestamp;
+        images[head] = image;
+        head = (head + 1) % CAPACITY;
+
+        if (size < CAPACITY)
+            size++;
+        if (size == CAPACITY) {
+            // Once the buffer is full, it holds the latest CAPACITY messages no matter how it got there
+            warm = true;
+            complete = false;
+        }
+    }
+
+    /**
+     * Empty the buffer and mark it as cold, so that it is seeded again before it is trusted.
+     */
+    private synchronized void clear() {
+        head = 0;
+        size = 0;
+        complete = false;
+        warm = false;
+    }
+
+    /**
+     * Remove a message from the buffer, shifting newer messages back to fill the gap.
+     */
+    private synchronized void remove(long messageId) {
+        for (int i = 0; i < size; i++) {
+            int slot = slot(i);
+            if (messageIds[slot] != messageId)
+                continue;
+
+            // Shift every newer message one slot older
+            for (int j = i; j > 0; j--) {
+                int to = slot(j), from = slot(j - 1);
+                messageIds[to] = messageIds[from];
+                authorIds[to] = authorIds[from];
+                timestamps[to] = timestamps[from];
+                images[to] = images[from];
+            }
+            head = (head + CAPACITY - 1) % CAPACITY;
+            size--;
+            return;
+        }
+    }
+
+    /**
+     * Replace the contents of this buffer with messages retrieved from the channel history. Any messages recorded by
+     * events that are newer than the retrieved history are kept.
+     *
+     * @param history   the retrieved messages, newest first, as returned by a history request
+     * @param requested the number of messages that were requested
+     */
+    public synchronized void seed(@Nonnull List<Message> history, int requested) {
+        long newest = history.isEmpty() ? 0 : history.get(0).getIdLong();
+
+        // Hold on to any messages that arrived while the history request was in flight
+        int keep = 0;
+        while (keep < size && messageIds[slot(keep)] > newest)
+            keep++;
+        long[] keptIds = new long[keep], keptAuthors = new long[keep], keptTimes = new long[keep];
+        boolean[] keptImages = new boolean[keep];
+        for (int i = 0; i < keep; i++) {
+            int slot = slot(i);
+            keptIds[i] = messageIds[slot];
+            keptAuthors[i] = authorIds[slot];
+            keptTimes[i] = timestamps[slot];
+            keptImages[i] = images[slot];
+        }
+
+        head = 0;
+        size = 0;
+        for (int i = Math.min(history.size(), CAPACITY) - 1; i >= 0; i--) {
+            Message message = history.get(i);
+            add(message.getIdLong(),
+                    message.getAuthor().getIdLong(),
+                    message.getTimeCreated().toInstant().toEpochMilli(),
+                    hasImage(message));
+        }
+        for (int i = keep - 1; i >= 0; i--)
+            add(keptIds[i], keptAuthors[i], keptTimes[i], keptImages[i]);
+
+        warm = true;
+        if (size < CAPACITY)
+            complete = history.size() < requested;
+    }
+
+    /**
+     * Determine whether this buffer can answer a query about the most recent <code>count</code> messages without
+     * asking Discord.
+     *
+     * @param count the number of recent messages the query looks at
+     * @return <code>true</code> if the buffer is warm and holds at least that many messages (or every message in the
+     * channel); <code>false</code> otherwise
+     */
+    public synchronized boolean covers(int count) {
+        return warm && (complete || size >= count);
+    }
+
+    /**
+     * Determine whether the channel has no messages at all.
+     *
+     * @return <code>true</code> if the channel is empty; <code>false</code> otherwise
+     */
+    public synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Get the creation time of the most recent message in the channel.
+     *
+     * @return the creation time in epoch milliseconds, or <code>-1</code> if the channel is empty
+     */
+    public synchronized long latestTimestamp() {
+        return size == 0 ? -1 : timestamps[slot(0)];
+    }
+
+    /**
+     * Determine whether any of the most recent <code>count</code> messages has an image attachment.
+     *
+     * @param count the number of messages to check
+     * @return <code>true</code> if there is at least one image; <code>false</code> otherwise
+     */
+    public synchronized boolean hasImage(int count) {
+        for (int i = 0, n = Math.min(count, size); i < n; i++)
+            if (images[slot(i)])
+                return true;
+        return false;
+    }
+
+    /**
+     * Determine whether any of the most recent <code>count</code> messages was sent by the given user.
+     *
+     * @param count  the number of messages to check
+     * @param userId the id of the user to look for
+     * @return <code>true</code> if there is at least one message from the user; <code>false</code> otherwise
+     */
+    public synchronized boolean hasAuthor(int count, long userId) {
+        for (int i = 0, n = Math.min(count, size); i < n; i++)
+            if (authorIds[slot(i)] == userId)
+                return true;
+        return false;
+    }
+
+    /**
+     * Convert an age (0 being the newest message) into an index in the ring buffer.
+     */
+    private int slot(int age) {
+        return (head - 1 - age + 2 * CAPACITY) % CAPACITY;
+    }
+}
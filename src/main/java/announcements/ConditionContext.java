@@ -0,0 +1,100 @@
+package announcements;
+
+import net.dv8tion.jda.api.entities.Message;
+import net.dv8tion.jda.api.entities.MessageChannel;
+import utils.OutboundScheduler;
+import utils.OutboundScheduler.Priority;
+
+import javax.annotation.Nonnull;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * This holds the state shared by every {@link QueueCondition} checked during a single run of an {@link
+ * Announcement.AnnouncementTimer AnnouncementTimer}.
+ * <p>
+ * Conditions that can't be answered from the channel's {@link ChannelActivity} need the channel history. Rather than
+ * each of them requesting it separately, the first one to ask retrieves enough messages for <i>every</i> condition in
+ * the evaluation, and the rest reuse that result.
+ */
+class ConditionContext {
+    private final Announcement.AnnouncementTimer timer;
+
+    /**
+     * The largest number of messages required by any condition in this evaluation.
+     */
+    private final int depth;
+
+    /**
+     * The pending or completed request for the channel history, newest first, or <code>null</code> if it hasn't been
+     * requested yet.
+     */
+    private CompletableFuture<List<Message>> messages;
+
+    /**
+     * The number of messages that were requested when {@link #messages} was retrieved.
+     */
+    private int retrieved;
+
+    /**
+     * Create a new {@link ConditionContext} for checking some conditions.
+     *
+     * @param timer      the timer whose conditions are being checked
+     * @param conditions the conditions that will be checked with this context
+     */
+    ConditionContext(@Nonnull Announcement.AnnouncementTimer timer, @Nonnull QueueCondition... conditions) {
+        this.timer = timer;
+
+        int max = 0;
+        for (QueueCondition condition : conditions)
+            max = Math.max(max, condition.getHistoryDepth());
+        this.depth = Math.min(max, ChannelActivity.CAPACITY);
+    }
+
+    /**
+     * Get the timer whose conditions are being checked.
+     *
+     * @return the timer
+     */
+    @Nonnull
+    Announcement.AnnouncementTimer getTimer() {
+        return timer;
+    }
+
+    /**
+     * Determine whether the most recent <code>count</code> messages are available without a request to Discord, either
+     * from the channel's {@link ChannelActivity} or from history that this context has already retrieved.
+     *
+     * @param count the number of messages needed
+     * @return <code>true</code> if the messages are available locally; <code>false</code> otherwise
+     */
+    synchronized boolean isLocal(int count) {
+        if (messages != null && count <= retrieved && messages.isDone())
+            return true;
+        return timer.getActivity().covers(count);
+    }
+
+    /**
+     * Return a list of the most recent <code>count</code> messages from the timer's {@link MessageChannel}. The first
+     * call retrieves enough messages for every condition in this context and seeds the channel's {@link
+     * ChannelActivity} with them; later calls reuse that result.
+     * <p>
+     * The history is requested through the {@link OutboundScheduler} at announcement priority, so this never blocks.
+     *
+     * @param count the number of messages needed
+     * @return a future that completes with the list of messages, newest first
+     */
+    @Nonnull
+    synchronized CompletableFuture<List<Message>> getMessages(int count) {
+        if (messages == null || count > retrieved) {
+            int limit = retrieved = Math.max(depth, count);
+            messages = OutboundScheduler.submit(
+                    Priority.ANNOUNCEMENT, timer.getChannel().getHistory().retrievePast(limit)).thenApply(list -> {
+                timer.getActivity().seed(list, limit);
+                return list;
+            });
+        }
+
+        return messages.thenApply(list -> list.size() <= count ? list : list.subList(0, count));
+    }
+}
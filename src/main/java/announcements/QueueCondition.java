@@ -3,20 +3,66 @@ package announcements;
 import net.dv8tion.jda.api.entities.Message;
 import net.dv8tion.jda.api.entities.MessageChannel;
 import net.dv8tion.jda.api.entities.User;
+import net.dv8tion.jda.api.utils.data.DataArray;
+import net.dv8tion.jda.api.utils.data.DataObject;
 
 import javax.annotation.Nonnull;
-import javax.annotation.Nullable;
 import java.time.Duration;
-import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 
 /**
  * This class represents conditions that a {@link MessageChannel} must meet in order for an {@link Announcement} to be
  * sent there.
+ * <p>
+ * The built-in conditions are answered from the channel's {@link ChannelActivity} whenever possible. Discord is only
+ * asked for the channel history when that record hasn't warmed up yet, and the result is used to seed it.
+ * <p>
+ * Conditions are checked asynchronously with {@link #checkAsync(Announcement.AnnouncementTimer)}, so a history request
+ * never blocks the thread that checks it.
+ * <p>
+ * Conditions can be combined with {@link #allOf(QueueCondition...) allOf()}, {@link #anyOf(QueueCondition...) anyOf()}
+ * and {@link #not(QueueCondition) not()} into a tree. When a combined condition is checked, its branches are checked
+ * from the cheapest to the most expensive, and it stops as soon as the result is decided. For example, this only
+ * looks at the last 20 messages if the channel has been active in the last two hours:
+ * <pre>{@code
+ * QueueCondition.anyOf(
+ *         QueueCondition.ofInactive(2, TimeUnit.HOURS),
+ *         QueueCondition.ofNoUserMessage(20, userId));
+ * }</pre>
  */
 public class QueueCondition {
+    private static final CompletableFuture<Boolean> TRUE = CompletableFuture.completedFuture(true);
+    private static final CompletableFuture<Boolean> FALSE = CompletableFuture.completedFuture(false);
+
+    /**
+     * The result of a check that couldn't be answered, because it threw or returned <code>null</code>. Inside a
+     * combined condition this is kept apart from <code>false</code>, so that negating it doesn't turn it into a pass.
+     */
+    private static final CompletableFuture<Boolean> UNKNOWN = CompletableFuture.completedFuture(null);
+
+    /**
+     * The cost of a condition that can be answered from the {@link ChannelActivity} or from history that has already
+     * been retrieved.
+     */
+    private static final int COST_LOCAL = 0;
+
+    /**
+     * The cost of a {@link Condition#CUSTOM custom} condition, which is unknown. It is assumed to be more expensive
+     * than a local check but cheaper than a request to Discord.
+     */
+    private static final int COST_CUSTOM = 1;
+
+    /**
+     * The base cost of a condition that needs the channel history. The number of messages it scans is added to this.
+     */
+    private static final int COST_HISTORY = 2;
+
     /**
      * The {@link Condition} required for this {@link QueueCondition} to pass a check.
      */
@@ -28,10 +74,10 @@ public class QueueCondition {
     private final Object[] parameters;
 
     /**
-     * If {@link #ofCustom(Function)} was called to initialize this {@link QueueCondition}, this stores the function
-     * that must be checked on
+     * If {@link #ofCustom(Function)} or {@link #ofCustomAsync(Function)} was called to initialize this {@link
+     * QueueCondition}, this stores the function that must be checked on
      */
-    private Function<Announcement.AnnouncementTimer, Boolean> function;
+    private Function<Announcement.AnnouncementTimer, CompletableFuture<Boolean>> function;
 
     private QueueCondition(Condition condition, Object... parameters) {
         this.condition = condition;
@@ -96,7 +142,7 @@ public class QueueCondition {
      * @return the newly created {@link QueueCondition}
      */
     public static QueueCondition ofUserMessage(int messageCount, long userId) {
-        return new QueueCondition(Condition.USER_MESSAGE, messageCount);
+        return new QueueCondition(Condition.USER_MESSAGE, messageCount, userId);
     }
 
     /**
@@ -109,7 +155,7 @@ public class QueueCondition {
      * @return the newly created {@link QueueCondition}
      */
     public static QueueCondition ofNoUserMessage(int messageCount, long userId) {
-        return new QueueCondition(Condition.NO_USER_MESSAGE, messageCount);
+        return new QueueCondition(Condition.NO_USER_MESSAGE, messageCount, userId);
     }
 
     /**
@@ -134,145 +180,516 @@ public class QueueCondition {
 
     /**
      * Create a new {@link QueueCondition} based on {@link QueueCondition.Condition#CUSTOM}. This allows you to provide
-     * your own {@link Function} that is called to {@link #check(Announcement.AnnouncementTimer) check} the {@link
-     * QueueCondition} just before the announcement is sent.
+     * your own {@link Function} that is called to {@link #checkAsync(Announcement.AnnouncementTimer) check} the
+     * {@link QueueCondition} just before the announcement is sent.
      * <p>
      * The function you provide must take a single {@link Announcement.AnnouncementTimer} parameter and return a {@link
      * Boolean}. That boolean should be <code>true</code> if and only if the condition is met, indicating that the
      * {@link Announcement.AnnouncementTimer Timer} should proceed with sending the announcement. If the condition is
-     * not met, indicating that the announcement should not be sent, <code>false</code> should be returned.
+     * not met, indicating that the announcement should not be sent, <code>false</code> should be returned. A
+     * <code>null</code> result also counts as not met.
      * <p>
-     * The custom function is called during {@link #check(Announcement.AnnouncementTimer)}.
+     * The custom function is called during {@link #checkAsync(Announcement.AnnouncementTimer)}. If it needs to wait
+     * on Discord, use {@link #ofCustomAsync(Function)} instead so that it doesn't block.
      *
      * @return the newly created {@link QueueCondition}
      */
     public static QueueCondition ofCustom(@Nonnull Function<Announcement.AnnouncementTimer, Boolean> function) {
         QueueCondition condition = new QueueCondition(Condition.CUSTOM);
+        condition.function = timer -> CompletableFuture.completedFuture(function.apply(timer));
+        return condition;
+    }
+
+    /**
+     * Create a new {@link QueueCondition} based on {@link QueueCondition.Condition#CUSTOM}, using a function that
+     * returns its result asynchronously. This works exactly like {@link #ofCustom(Function)}, except that the function
+     * returns a {@link CompletableFuture} that completes with the result of the check. This makes it possible to use
+     * {@link net.dv8tion.jda.api.requests.RestAction#submit() RestAction.submit()} inside the condition without
+     * blocking.
+     * <p>
+     * If the function returns <code>null</code>, or the future completes exceptionally or with <code>null</code>, the
+     * condition is considered failed.
+     *
+     * @param function the asynchronous function to check
+     * @return the newly created {@link QueueCondition}
+     */
+    public static QueueCondition ofCustomAsync(
+            @Nonnull Function<Announcement.AnnouncementTimer, CompletableFuture<Boolean>> function) {
+        QueueCondition condition = new QueueCondition(Condition.CUSTOM);
         condition.function = function;
         return condition;
     }
 
+    /**
+     * Create a new {@link QueueCondition} based on {@link QueueCondition.Condition#AND}. This requires that every one
+     * of the given conditions is met. If there are no conditions, it always passes.
+     * <p>
+     * The conditions are checked from the cheapest to the most expensive, and the check stops at the first one that
+     * fails.
+     *
+     * @param conditions the conditions that must all be met
+     * @return the newly created {@link QueueCondition}
+     */
+    public static QueueCondition allOf(@Nonnull QueueCondition... conditions) {
+        return new QueueCondition(Condition.AND, requireConditions(conditions));
+    }
+
+    /**
+     * Create a new {@link QueueCondition} based on {@link QueueCondition.Condition#OR}. This requires that at least
+     * one of the given conditions is met. If there are no conditions, it always fails.
+     * <p>
+     * The conditions are checked from the cheapest to the most expensive, and the check stops at the first one that
+     * passes.
+     *
+     * @param conditions the conditions of which at least one must be met
+     * @return the newly created {@link QueueCondition}
+     */
+    public static QueueCondition anyOf(@Nonnull QueueCondition... conditions) {
+        return new QueueCondition(Condition.OR, requireConditions(conditions));
+    }
+
+    /**
+     * Create a new {@link QueueCondition} based on {@link QueueCondition.Condition#NOT}. This requires that the given
+     * condition is not met.
+     *
+     * @param condition the condition that must not be met
+     * @return the newly created {@link QueueCondition}
+     */
+    public static QueueCondition not(@Nonnull QueueCondition condition) {
+        return new QueueCondition(Condition.NOT, (Object) Objects.requireNonNull(condition, "condition"));
+    }
+
+    /**
+     * Copy the conditions passed to a combinator, checking that none of them are <code>null</code>.
+     */
+    @Nonnull
+    private static Object[] requireConditions(@Nonnull QueueCondition[] conditions) {
+        Object[] copy = new Object[conditions.length];
+        for (int i = 0; i < conditions.length; i++)
+            copy[i] = Objects.requireNonNull(conditions[i], "conditions[" + i + "]");
+        return copy;
+    }
+
+    /**
+     * Get the child at the given index of an {@link Condition#AND AND}, {@link Condition#OR OR} or {@link
+     * Condition#NOT NOT} condition.
+     */
+    @Nonnull
+    private QueueCondition child(int index) {
+        return (QueueCondition) parameters[index];
+    }
+
+    /**
+     * Determine whether this {@link QueueCondition} combines other conditions.
+     */
+    private boolean isComposite() {
+        return condition == Condition.AND || condition == Condition.OR || condition == Condition.NOT;
+    }
+
+    /**
+     * Determine whether this {@link QueueCondition} can be written to the {@link AnnouncementJournal}. Every built-in
+     * condition can, but {@link Condition#CUSTOM custom} conditions can't, and neither can a combined condition that
+     * contains one.
+     *
+     * @return <code>true</code> if the condition can be serialized; <code>false</code> otherwise
+     */
+    boolean isSerializable() {
+        if (isComposite()) {
+            for (int i = 0; i < parameters.length; i++)
+                if (!child(i).isSerializable())
+                    return false;
+            return true;
+        }
+
+        return condition != Condition.CUSTOM;
+    }
+
+    /**
+     * Serialize this {@link QueueCondition} for the {@link AnnouncementJournal}.
+     *
+     * @return the serialized condition
+     * @throws IllegalStateException if the condition is not {@link #isSerializable() serializable}
+     */
+    @Nonnull
+    DataObject toData() {
+        DataObject data = DataObject.empty().put("type", condition.name());
+        switch (condition) {
+            case ACTIVE, INACTIVE -> data.put("millis", ((Duration) parameters[0]).toMillis());
+            case IMAGE, NO_IMAGE -> data.put("count", (int) parameters[0]);
+            case USER_MESSAGE, NO_USER_MESSAGE -> data
+                    .put("count", (int) parameters[0])
+                    .put("user", (long) parameters[1]);
+            case EMPTY, NOT_EMPTY -> {
+            }
+            case AND, OR, NOT -> {
+                DataArray children = DataArray.empty();
+                for (int i = 0; i < parameters.length; i++)
+                    children.add(child(i).toData());
+                data.put("of", children);
+            }
+            default -> throw new IllegalStateException("Cannot serialize a " + condition + " condition");
+        }
+        return data;
+    }
+
+    /**
+     * Rebuild a {@link QueueCondition} from the data written by {@link #toData()}.
+     *
+     * @param data the serialized condition
+     * @return the condition
+     * @throws IllegalArgumentException if the data doesn't describe a serializable condition
+     */
+    @Nonnull
+    static QueueCondition fromData(@Nonnull DataObject data) {
+        Condition type = Condition.valueOf(data.getString("type"));
+        return switch (type) {
+            case ACTIVE, INACTIVE -> new QueueCondition(type, Duration.ofMillis(data.getLong("millis")));
+            case IMAGE, NO_IMAGE -> new QueueCondition(type, data.getInt("count"));
+            case USER_MESSAGE, NO_USER_MESSAGE -> new QueueCondition(type, data.getInt("count"), data.getLong("user"));
+            case EMPTY, NOT_EMPTY -> new QueueCondition(type);
+            case AND, OR, NOT -> {
+                DataArray children = data.getArray("of");
+                Object[] parameters = new Object[children.length()];
+                for (int i = 0; i < parameters.length; i++)
+                    parameters[i] = fromData(children.getObject(i));
+                if (type == Condition.NOT && parameters.length != 1)
+                    throw new IllegalArgumentException("A NOT condition must have exactly one child");
+                yield new QueueCondition(type, parameters);
+            }
+            default -> throw new IllegalArgumentException("Cannot deserialize a " + type + " condition");
+        };
+    }
+
+    /**
+     * Get the number of recent messages this {@link QueueCondition} looks at when the channel history is needed. This
+     * is used to retrieve the history once for every condition in a {@link ConditionContext}.
+     *
+     * @return the number of messages needed, or <code>0</code> if the condition doesn't use the history
+     */
+    int getHistoryDepth() {
+        return switch (condition) {
+            case ACTIVE, INACTIVE, EMPTY, NOT_EMPTY -> 1;
+            case IMAGE, NO_IMAGE, USER_MESSAGE, NO_USER_MESSAGE -> (int) parameters[0];
+            case AND, OR, NOT -> {
+                int max = 0;
+                for (int i = 0; i < parameters.length; i++)
+                    max = Math.max(max, child(i).getHistoryDepth());
+                yield max;
+            }
+            default -> 0;
+        };
+    }
+
+    /**
+     * Estimate how expensive this {@link QueueCondition} is to check right now. A condition that can be answered from
+     * the {@link ChannelActivity}, or from history that the context has already retrieved, costs nothing. Custom
+     * conditions come next, and conditions that need a history request get more expensive with the number of messages
+     * they look at. A combined condition costs as much as all of its children.
+     * <p>
+     * The estimate changes during an evaluation: once one condition has retrieved the history, the others that only
+     * need those messages become free.
+     *
+     * @param context the context of the current evaluation
+     * @return the relative cost of checking this condition
+     */
+    int getCost(@Nonnull ConditionContext context) {
+        return switch (condition) {
+            case CUSTOM -> COST_CUSTOM;
+            case AND, OR, NOT -> {
+                int sum = 0;
+                for (int i = 0; i < parameters.length; i++)
+                    sum += child(i).getCost(context);
+                yield sum;
+            }
+            default -> {
+                int depth = getHistoryDepth();
+                yield context.isLocal(depth) ? COST_LOCAL : COST_HISTORY + depth;
+            }
+        };
+    }
+
     /**
      * Check this {@link QueueCondition}. If it passes, return <code>true</code>. If it fails, return
      * <code>false</code>.
+     * <p>
+     * This blocks until the check is finished. Prefer {@link #checkAsync(Announcement.AnnouncementTimer)}, and never
+     * call this from a JDA callback thread.
      *
      * @param timer the {@link Announcement.AnnouncementTimer AnnouncementTimer} associated with this {@link
      *              QueueCondition}
      * @return <code>true</code> if the check passes; <code>false</code> otherwise
      */
     public boolean check(@Nonnull Announcement.AnnouncementTimer timer) {
+        return checkAsync(timer).join();
+    }
+
+    /**
+     * Check this {@link QueueCondition} without blocking. The returned future completes with <code>true</code> if the
+     * check passes and <code>false</code> if it fails. It never completes exceptionally; if an error occurs, the check
+     * is considered failed.
+     *
+     * @param timer the {@link Announcement.AnnouncementTimer AnnouncementTimer} associated with this {@link
+     *              QueueCondition}
+     * @return a future that completes with the result of the check
+     */
+    @Nonnull
+    public CompletableFuture<Boolean> checkAsync(@Nonnull Announcement.AnnouncementTimer timer) {
+        return checkAsync(new ConditionContext(timer, this));
+    }
+
+    /**
+     * Check this {@link QueueCondition} as the root of an evaluation. If the channel history is needed, it is
+     * retrieved through the {@link ConditionContext} so that it can be shared with the other conditions. A check that
+     * couldn't be answered counts as failed.
+     *
+     * @param context the context of the current evaluation
+     * @return a future that completes with the result of the check
+     */
+    @Nonnull
+    CompletableFuture<Boolean> checkAsync(@Nonnull ConditionContext context) {
+        CompletableFuture<Boolean> result = evaluate(context);
+        if (result.isDone())
+            return of(Boolean.TRUE.equals(result.join()));
+        return result.thenApply(Boolean.TRUE::equals);
+    }
+
+    /**
+     * Check this {@link QueueCondition} as part of a larger evaluation. The returned future completes with
+     * <code>true</code> or <code>false</code>, or with <code>null</code> if the check couldn't be answered because it
+     * threw, its history request failed, or a custom function returned <code>null</code>. It never completes
+     * exceptionally. An unanswered child makes {@link Condition#NOT NOT}, {@link Condition#AND AND} and
+     * {@link Condition#OR OR} unanswered too, unless a child checked before it already decided the outcome; only
+     * {@link #checkAsync(ConditionContext)} turns it into a failure, at the root.
+     *
+     * @param context the context of the current evaluation
+     * @return a future that completes with the result of the check, or <code>null</code> if it is unknown
+     */
+    @Nonnull
+    private CompletableFuture<Boolean> evaluate(@Nonnull ConditionContext context) {
+        CompletableFuture<Boolean> result;
+
         try {
-            switch (condition) {
-                case ACTIVE -> {
-                    Duration duration = durationSinceLast(timer.getChannel());
-                    return duration != null && duration.compareTo(((Duration) parameters[0])) < 0;
-                }
-
-                case INACTIVE -> {
-                    Duration duration = durationSinceLast(timer.getChannel());
-                    return duration != null && duration.compareTo(((Duration) parameters[0])) > 0;
-                }
-
-                case IMAGE -> {
-                    return hasImage(timer.getChannel(), ((int) parameters[0]));
-                }
-
-                case NO_IMAGE -> {
-                    return !hasImage(timer.getChannel(), ((int) parameters[0]));
-                }
-
-                case USER_MESSAGE -> {
-                    return hasUserMessage(timer.getChannel(), ((int) parameters[0]), ((long) parameters[1]));
-                }
-
-                case NO_USER_MESSAGE -> {
-                    return !hasUserMessage(timer.getChannel(), ((int) parameters[0]), ((long) parameters[1]));
-                }
-
-                case EMPTY -> {
-                    return getMessages(timer.getChannel(), 1).isEmpty();
-                }
-
-                case NOT_EMPTY -> {
-                    return !getMessages(timer.getChannel(), 1).isEmpty();
-                }
-
-                case CUSTOM -> {
-                    return function.apply(timer);
-                }
-
-                default -> {
-                    // If the check Condition type is unknown, assume that the check failed
-                    return false;
-                }
-            }
+            result = switch (condition) {
+                case ACTIVE -> millisSinceLast(context).thenApply(
+                        millis -> millis >= 0 && millis < ((Duration) parameters[0]).toMillis());
+
+                case INACTIVE -> millisSinceLast(context).thenApply(
+                        millis -> millis >= 0 && millis > ((Duration) parameters[0]).toMillis());
+
+                case IMAGE -> hasImage(context, ((int) parameters[0]));
+
+                case NO_IMAGE -> negate(hasImage(context, ((int) parameters[0])));
+
+                case USER_MESSAGE -> hasUserMessage(context, ((int) parameters[0]), ((long) parameters[1]));
+
+                case NO_USER_MESSAGE -> negate(hasUserMessage(context, ((int) parameters[0]), ((long) parameters[1])));
+
+                case EMPTY -> isEmpty(context);
+
+                case NOT_EMPTY -> negate(isEmpty(context));
+
+                case CUSTOM -> function.apply(context.getTimer());
+
+                case AND -> checkChildren(context, false);
+
+                case OR -> checkChildren(context, true);
+
+                case NOT -> negate(child(0).evaluate(context));
+
+                // If the check Condition type is unknown, the check can't be answered
+                default -> UNKNOWN;
+            };
         } catch (Exception e) {
-            // If an exception is thrown, assume that the check failed
-            return false;
+            // If an exception is thrown, the check can't be answered
+            AnnouncementMetrics.recordCondition(condition, false);
+            return UNKNOWN;
+        }
+
+        // A custom function may return null, or a future that completes with null; both are unknown
+        if (result == null)
+            result = UNKNOWN;
+
+        // Results answered locally are already complete, so they don't need another stage
+        if (result.isDone() && !result.isCompletedExceptionally()) {
+            Boolean passed = result.join();
+            AnnouncementMetrics.recordCondition(condition, Boolean.TRUE.equals(passed));
+            return passed == null ? UNKNOWN : of(passed);
+        }
+
+        return result.handle((passed, e) -> {
+            Boolean p = e == null ? passed : null;
+            AnnouncementMetrics.recordCondition(condition, Boolean.TRUE.equals(p));
+            return p;
+        });
+    }
+
+    /**
+     * Check the children of an {@link Condition#AND AND} or {@link Condition#OR OR} condition, always picking the
+     * cheapest remaining child next. The check stops as soon as a child returns <code>decisive</code>, which is
+     * <code>false</code> for AND and <code>true</code> for OR, or as soon as a child can't be answered.
+     *
+     * @param context  the context of the current evaluation
+     * @param decisive the child result that decides the outcome
+     * @return a future that completes with the result of the check
+     */
+    @Nonnull
+    private CompletableFuture<Boolean> checkChildren(@Nonnull ConditionContext context, boolean decisive) {
+        List<QueueCondition> remaining = new ArrayList<>(parameters.length);
+        for (int i = 0; i < parameters.length; i++)
+            remaining.add(child(i));
+        return checkRemaining(context, remaining, decisive);
+    }
+
+    /**
+     * Check the <code>remaining</code> children, cheapest first. Children that are answered without waiting are
+     * checked in a loop; the first one that has to wait continues the evaluation when it completes.
+     */
+    @Nonnull
+    private static CompletableFuture<Boolean> checkRemaining(@Nonnull ConditionContext context,
+                                                             @Nonnull List<QueueCondition> remaining,
+                                                             boolean decisive) {
+        while (!remaining.isEmpty()) {
+            CompletableFuture<Boolean> result = removeCheapest(context, remaining).evaluate(context);
+
+            if (!result.isDone())
+                return result.thenCompose(b -> b == null ? UNKNOWN : b == decisive ? of(decisive) :
+                        checkRemaining(context, remaining, decisive));
+
+            Boolean b = result.join();
+            if (b == null)
+                return UNKNOWN;
+            if (b == decisive)
+                return of(decisive);
+        }
+
+        return of(!decisive);
+    }
+
+    /**
+     * Remove and return the condition with the lowest {@link #getCost(ConditionContext) cost}. The costs are
+     * recalculated every time, since an earlier check may have retrieved history that makes other conditions free.
+     */
+    @Nonnull
+    private static QueueCondition removeCheapest(@Nonnull ConditionContext context,
+                                                 @Nonnull List<QueueCondition> remaining) {
+        int best = 0;
+        int bestCost = Integer.MAX_VALUE;
+        for (int i = 0; i < remaining.size(); i++) {
+            int cost = remaining.get(i).getCost(context);
+            if (cost < bestCost) {
+                best = i;
+                bestCost = cost;
+            }
+        }
+        return remaining.remove(best);
+    }
+
+    /**
+     * Get a completed future for a boolean result without allocating a new one.
+     */
+    @Nonnull
+    private static CompletableFuture<Boolean> of(boolean result) {
+        return result ? TRUE : FALSE;
+    }
+
+    /**
+     * Negate the result of a future check. A result that is unknown or failed stays that way.
+     */
+    @Nonnull
+    private static CompletableFuture<Boolean> negate(@Nonnull CompletableFuture<Boolean> result) {
+        if (result.isDone() && !result.isCompletedExceptionally()) {
+            Boolean b = result.join();
+            return b == null ? UNKNOWN : of(!b);
         }
+        return result.thenApply(b -> b == null ? null : !b);
     }
 
     /**
-     * This determines whether the given {@link MessageChannel} contains a message with an image attachment in the last
-     * <code>count</code> messages.
+     * This determines whether the timer's {@link MessageChannel} contains a message with an image attachment in the
+     * last <code>count</code> messages.
      *
-     * @param channel the channel to check for images
+     * @param context the context of the current evaluation
      * @param count   the number of messages to check
-     * @return <code>true</code> if there is at least one image; <code>false</code> otherwise
+     * @return a future that completes with <code>true</code> if there is at least one image; <code>false</code>
+     * otherwise
      */
-    private boolean hasImage(@Nonnull MessageChannel channel, int count) {
-        return getMessages(channel, count)
+    @Nonnull
+    private CompletableFuture<Boolean> hasImage(@Nonnull ConditionContext context, int count) {
+        ChannelActivity activity = context.getTimer().getActivity();
+        if (activity.covers(count))
+            return of(activity.hasImage(count));
+
+        return context.getMessages(count).thenApply(messages -> messages
                 .stream()
-                .flatMap(message -> message.getAttachments().stream())
-                .anyMatch(Message.Attachment::isImage);
+                .anyMatch(ChannelActivity::hasImage));
     }
 
     /**
-     * This method functions similarly to {@link #hasImage(MessageChannel, int)}, but it checks for messages from a user
-     * rather than messages containing an image. It determines whether the given {@link MessageChannel} contains a
-     * message sent by the given <code>user</code> in the last <code>count</code> messages
+     * This method functions similarly to {@link #hasImage(ConditionContext, int)}, but it checks for messages from a
+     * user rather than messages containing an image. It determines whether the timer's {@link MessageChannel}
+     * contains a message sent by the given <code>user</code> in the last <code>count</code> messages
      *
-     * @param channel the channel to check for messages from the user
+     * @param context the context of the current evaluation
      * @param count   the number of messages to check
      * @param userId  the id of the user to look for
-     * @return <code>true</code> if there is at least one message sent by the specified user; <code>false</code>
-     * otherwise
+     * @return a future that completes with <code>true</code> if there is at least one message sent by the specified
+     * user; <code>false</code> otherwise
      */
-    private boolean hasUserMessage(@Nonnull MessageChannel channel, int count, long userId) {
-        return getMessages(channel, count)
+    @Nonnull
+    private CompletableFuture<Boolean> hasUserMessage(@Nonnull ConditionContext context, int count, long userId) {
+        ChannelActivity activity = context.getTimer().getActivity();
+        if (activity.covers(count))
+            return of(activity.hasAuthor(count, userId));
+
+        return context.getMessages(count).thenApply(messages -> messages
                 .stream()
                 .map(Message::getAuthor)
                 .map(User::getIdLong)
-                .anyMatch(l -> l.equals(userId));
+                .anyMatch(l -> l.equals(userId)));
     }
 
     /**
-     * Return a list of the most recent <code>count</code> messages from the given {@link MessageChannel}.
+     * This determines whether the timer's {@link MessageChannel} does not contain any messages.
      *
-     * @param channel the channel from which to retrieve messages
-     * @param count   the number of messages to retrieve
-     * @return the list of messages
+     * @param context the context of the current evaluation
+     * @return a future that completes with <code>true</code> if the channel is empty; <code>false</code> otherwise
      */
     @Nonnull
-    private List<Message> getMessages(@Nonnull MessageChannel channel, int count) {
-        return channel.getHistory().retrievePast(count).complete();
+    private CompletableFuture<Boolean> isEmpty(@Nonnull ConditionContext context) {
+        ChannelActivity activity = context.getTimer().getActivity();
+        if (activity.covers(1))
+            return of(activity.isEmpty());
+
+        return context.getMessages(1).thenApply(List::isEmpty);
     }
 
     /**
-     * Get the amount of time between right {@link OffsetDateTime#now() now} and the time the most recent message was
-     * sent in the provided {@link MessageChannel}.
+     * Get the number of milliseconds between right now and the time the most recent message was sent in the timer's
+     * {@link MessageChannel}.
      * <p>
-     * If the channel is empty, <code>null</code> is returned instead.
+     * If the channel is empty, the future completes with <code>-1</code> instead.
      *
-     * @param channel the channel to check
-     * @return the {@link Duration} between the latest message creation time and the current time
+     * @param context the context of the current evaluation
+     * @return a future that completes with the milliseconds elapsed since the latest message was created
      */
-    @Nullable
-    private Duration durationSinceLast(@Nonnull MessageChannel channel) {
-        List<Message> messages = getMessages(channel, 1);
-        if (messages.size() == 0)
-            return null;
-        return Duration.between(OffsetDateTime.now(), messages.get(0).getTimeCreated());
+    @Nonnull
+    private CompletableFuture<Long> millisSinceLast(@Nonnull ConditionContext context) {
+        ChannelActivity activity = context.getTimer().getActivity();
+        if (activity.covers(1))
+            return CompletableFuture.completedFuture(millisSince(activity.latestTimestamp()));
+
+        return context.getMessages(1).thenApply(messages -> millisSince(
+                messages.isEmpty() ? -1 : messages.get(0).getTimeCreated().toInstant().toEpochMilli()));
+    }
+
+    /**
+     * Get the number of milliseconds elapsed since the given time.
+     *
+     * @param timestamp the time in epoch milliseconds, or <code>-1</code> if there is no time
+     * @return the elapsed milliseconds, or <code>-1</code> if there is no time
+     */
+    private static long millisSince(long timestamp) {
+        return timestamp < 0 ? -1 : Math.max(System.currentTimeMillis() - timestamp, 0);
     }
 
     enum Condition {
@@ -321,8 +738,24 @@ public class QueueCondition {
         NOT_EMPTY,
 
         /**
-         * Use your own method to create a custom condition to {@link #check(Announcement.AnnouncementTimer) check}.
+         * Use your own method to create a custom condition to {@link #checkAsync(Announcement.AnnouncementTimer)
+         * check}.
+         */
+        CUSTOM,
+
+        /**
+         * Require that every one of a group of conditions is met.
+         */
+        AND,
+
+        /**
+         * Require that at least one of a group of conditions is met.
+         */
+        OR,
+
+        /**
+         * Require that a condition is not met.
          */
-        CUSTOM
+        NOT
     }
 }
@@ -0,0 +1,149 @@
+package announcements;
+
+import main.Discord;
+import net.dv8tion.jda.api.entities.MessageChannel;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.*;
+
+/**
+ * A {@link Recurrence} is a recurring {@link Announcement}, created by {@link
+ * Announcement#queueRecurring(MessageChannel, Schedule, QueueCondition...) queueRecurring()}. Each time it fires, the
+ * announcement's {@link QueueCondition QueueConditions} are checked again, and the next fire is scheduled according to
+ * its {@link Schedule}.
+ * <p>
+ * A recurrence runs until it is {@link #cancel(boolean) canceled}. It never completes normally, so {@link #get()}
+ * only returns by throwing a {@link CancellationException}.
+ */
+public class Recurrence implements ScheduledFuture<Void> {
+    private final Announcement.AnnouncementTimer timer;
+    private final Schedule schedule;
+    private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+    /**
+     * The timeout for the next fire.
+     */
+    private volatile AnnouncementScheduler.Timeout timeout;
+
+    /**
+     * The time of the next fire, in epoch milliseconds.
+     */
+    private volatile long nextFire;
+
+    /**
+     * The id of this recurrence in the {@link AnnouncementJournal}, or <code>0</code> if it isn't journaled.
+     */
+    private long journalId;
+
+    Recurrence(@Nonnull Announcement.AnnouncementTimer timer, @Nonnull Schedule schedule, long journalId) {
+        this.timer = timer;
+        this.schedule = schedule;
+        this.journalId = journalId;
+    }
+
+    /**
+     * Get the {@link Schedule} that this recurrence follows.
+     *
+     * @return the schedule
+     */
+    @Nonnull
+    public Schedule getSchedule() {
+        return schedule;
+    }
+
+    /**
+     * Get the time that this recurrence will fire next.
+     *
+     * @return the next fire time in epoch milliseconds
+     */
+    public long getNextFire() {
+        return nextFire;
+    }
+
+    /**
+     * Schedule the next fire of this recurrence and record it in the {@link AnnouncementJournal}.
+     *
+     * @param fireAt the time to fire, in epoch milliseconds
+     */
+    synchronized void scheduleAt(long fireAt) {
+        if (done.isDone())
+            return;
+        // If the channel's shard moved to another node while a fire was sending, that node has taken over from here
+        if (Discord.isClustered() && !Discord.ownsShard(AnnouncementJournal.shardOf(timer.getChannel())))
+            return;
+
+        nextFire = fireAt;
+        journalId = AnnouncementJournal.record(timer, fireAt, schedule, journalId);
+        // The next fire is computed from the nominal time, so the spread doesn't accumulate
+        timeout = timer.schedule(new Fire(fireAt), fireAt + timer.spread(fireAt) - System.currentTimeMillis());
+    }
+
+    /**
+     * The task scheduled for a single fire of this recurrence. This is a named class rather than a lambda so that
+     * {@link AnnouncementMetrics} can tell which channel a pending fire belongs to.
+     * <p>
+     * A fire runs the announcement timer, and once it finishes, schedules the next fire. The fire isn't done until the
+     * next one is scheduled, so the channel stays {@link ChannelActivity#track(MessageChannel) tracked} in between.
+     */
+    final class Fire implements AnnouncementScheduler.AsyncTask {
+        private final long scheduled;
+
+        private Fire(long scheduled) {
+            this.scheduled = scheduled;
+        }
+
+        @Nonnull
+        Announcement.AnnouncementTimer getTimer() {
+            return timer;
+        }
+
+        @Nonnull
+        @Override
+        public CompletableFuture<?> runAsync() {
+            return timer.fire().whenComplete(
+                    (v, t) -> scheduleAt(schedule.next(scheduled, System.currentTimeMillis())));
+        }
+    }
+
+    @Override
+    public synchronized boolean cancel(boolean mayInterruptIfRunning) {
+        if (!done.cancel(false))
+            return false;
+
+        if (timeout != null)
+            timeout.cancel(false);
+        AnnouncementJournal.remove(timer.getChannel(), journalId);
+        return true;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return done.isCancelled();
+    }
+
+    @Override
+    public boolean isDone() {
+        return done.isDone();
+    }
+
+    @Override
+    public Void get() throws InterruptedException, ExecutionException {
+        return done.get();
+    }
+
+    @Override
+    public Void get(long timeout, @Nonnull TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        return done.get(timeout, unit);
+    }
+
+    @Override
+    public long getDelay(@Nonnull TimeUnit unit) {
+        return unit.convert(nextFire - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public int compareTo(@Nonnull Delayed other) {
+        return Long.compare(getDelay(TimeUnit.MILLISECONDS), other.getDelay(TimeUnit.MILLISECONDS));
+    }
+}
@@ -0,0 +1,441 @@
+package announcements;
+
+import javax.annotation.Nonnull;
+import java.time.*;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link Schedule} determines when a recurring {@link Announcement} fires. There are three kinds of schedules:
+ * <ul>
+ *     <li>{@link #fixedRate(long, TimeUnit) Fixed rate}, which fires at a constant interval measured from the
+ *     previous scheduled time. If a fire time is missed, the schedule skips ahead rather than firing repeatedly.</li>
+ *     <li>{@link #fixedDelay(long, TimeUnit) Fixed delay}, which fires a constant amount of time after the previous
+ *     run finishes.</li>
+ *     <li>{@link #cron(String) Cron}, which fires at the times matching a standard five-field cron expression.</li>
+ * </ul>
+ * Schedules are compiled when they are created, so computing the next fire time is a handful of arithmetic and bit
+ * operations rather than a search. A cron expression that can never match, such as <code>0 0 31 2 *</code>, is
+ * rejected when it is created.
+ */
+public abstract class Schedule {
+    private Schedule() {
+    }
+
+    /**
+     * Create a {@link Schedule} that fires every <code>period</code>, measured from the previous scheduled fire time.
+     * The first fire is one period from now.
+     *
+     * @param period the time between fires
+     * @param unit   the {@link TimeUnit} to convert the specified <code>period</code>
+     * @return the schedule
+     * @throws IllegalArgumentException if the period is not positive
+     */
+    @Nonnull
+    public static Schedule fixedRate(long period, @Nonnull TimeUnit unit) {
+        return new FixedRate(positive(unit.toMillis(period)));
+    }
+
+    /**
+     * Create a {@link Schedule} that fires <code>delay</code> after the previous run finishes. The first fire is one
+     * delay from now.
+     *
+     * @param delay the time between the end of one run and the next fire
+     * @param unit  the {@link TimeUnit} to convert the specified <code>delay</code>
+     * @return the schedule
+     * @throws IllegalArgumentException if the delay is not positive
+     */
+    @Nonnull
+    public static Schedule fixedDelay(long delay, @Nonnull TimeUnit unit) {
+        return new FixedDelay(positive(unit.toMillis(delay)));
+    }
+
+    /**
+     * Create a {@link Schedule} from a cron expression, evaluated in the system time zone. See {@link #cron(String,
+     * ZoneId)} for the supported syntax.
+     *
+     * @param expression the cron expression
+     * @return the schedule
+     * @throws IllegalArgumentException if the expression is invalid
+     */
+    @Nonnull
+    public static Schedule cron(@Nonnull String expression) {
+        return cron(expression, ZoneId.systemDefault());
+    }
+
+    /**
+     * Create a {@link Schedule} from a standard five-field cron expression: <code>minute hour day-of-month month
+     * day-of-week</code>. Each field may be <code>*</code>, a number, a range (<code>1-5</code>), a step
+     * (<code>*&#47;15</code> or <code>0-30/10</code>), or a comma separated list of these. Days of the week run from
+     * <code>0</code> (Sunday) to <code>7</code> (also Sunday), and may also be written as <code>sun</code> through
+     * <code>sat</code>. Months may be written as <code>jan</code> through <code>dec</code>.
+     * <p>
+     * As in standard cron, if both the day of the month and the day of the week are restricted, a day matches if it
+     * matches either of them.
+     *
+     * @param expression the cron expression
+     * @param zone       the time zone the expression is evaluated in
+     * @return the schedule
+     * @throws IllegalArgumentException if the expression is invalid
+     */
+    @Nonnull
+    public static Schedule cron(@Nonnull String expression, @Nonnull ZoneId zone) {
+        return new Cron(expression, zone);
+    }
+
+    /**
+     * Parse a schedule previously written by {@link #toString()}. This is used by the {@link AnnouncementJournal}.
+     *
+     * @param spec the schedule specification
+     * @return the schedule
+     * @throws IllegalArgumentException if the specification is invalid
+     */
+    @Nonnull
+    static Schedule parse(@Nonnull String spec) {
+        String[] parts = spec.split(":", 2);
+        if (parts.length != 2)
+            throw new IllegalArgumentException("Invalid schedule '" + spec + "'");
+
+        return switch (parts[0]) {
+            case "rate" -> fixedRate(Long.parseLong(parts[1]), TimeUnit.MILLISECONDS);
+            case "delay" -> fixedDelay(Long.parseLong(parts[1]), TimeUnit.MILLISECONDS);
+            case "cron" -> {
+                int split = parts[1].indexOf('@');
+                if (split < 0)
+                    throw new IllegalArgumentException("Invalid cron schedule '" + spec + "'");
+                yield cron(parts[1].substring(split + 1), ZoneId.of(parts[1].substring(0, split)));
+            }
+            default -> throw new IllegalArgumentException("Unknown schedule type in '" + spec + "'");
+        };
+    }
+
+    /**
+     * Get the first time this {@link Schedule} should fire.
+     *
+     * @param now the current time in epoch milliseconds
+     * @return the first fire time in epoch milliseconds
+     */
+    public abstract long first(long now);
+
+    /**
+     * Get the next time this {@link Schedule} should fire after a run.
+     *
+     * @param scheduled the time the previous run was scheduled for, in epoch milliseconds
+     * @param finished  the time the previous run finished, in epoch milliseconds
+     * @return the next fire time in epoch milliseconds, which is always after <code>finished</code>
+     */
+    public abstract long next(long scheduled, long finished);
+
+    /**
+     * Get a specification of this schedule that can be read back with {@link #parse(String)}.
+     *
+     * @return the schedule specification
+     */
+    @Override
+    public abstract String toString();
+
+    private static long positive(long millis) {
+        if (millis <= 0)
+            throw new IllegalArgumentException("The schedule interval must be positive");
+        return millis;
+    }
+
+    private static final class FixedRate extends Schedule {
+        private final long period;
+
+        private FixedRate(long period) {
+            this.period = period;
+        }
+
+        @Override
+        public long first(long now) {
+            return now + period;
+        }
+
+        @Override
+        public long next(long scheduled, long finished) {
+            long next = scheduled + period;
+            // Skip any fires that were missed, rather than firing them all at once
+            if (next <= finished)
+                next += ((finished - next) / period + 1) * period;
+            return next;
+        }
+
+        @Override
+        public String toString() {
+            return "rate:" + period;
+        }
+    }
+
+    private static final class FixedDelay extends Schedule {
+        private final long delay;
+
+        private FixedDelay(long delay) {
+            this.delay = delay;
+        }
+
+        @Override
+        public long first(long now) {
+            return now + delay;
+        }
+
+        @Override
+        public long next(long scheduled, long finished) {
+            return finished + delay;
+        }
+
+        @Override
+        public String toString() {
+            return "delay:" + delay;
+        }
+    }
+
+    /**
+     * A compiled cron expression. Each field is stored as a bit mask of the values it allows. For the days, a mask of
+     * the matching days in a month is built from the day-of-month mask and one of seven precomputed day-of-week
+     * masks (one per weekday the month can start on), so each month is checked with a few bit operations.
+     */
+    private static final class Cron extends Schedule {
+        private static final String[] MONTHS =
+                {"jan", "feb", "mar", "apr", "may", "jun", "jul", "aug", "sep", "oct", "nov", "dec"};
+        private static final String[] DAYS = {"sun", "mon", "tue", "wed", "thu", "fri", "sat"};
+
+        /**
+         * Cron expressions can't match less than once every four years (February 29th), so if nothing matches
+         * within this many months, nothing ever will.
+         */
+        private static final int MAX_MONTHS = 12 * 8 + 1;
+
+        private final String expression;
+        private final ZoneId zone;
+
+        private final long minutes;
+        private final int hours;
+        private final int months;
+
+        /**
+         * Bit <code>d - 1</code> is set if day <code>d</code> of the month matches.
+         */
+        private final int daysOfMonth;
+
+        /**
+         * Index <code>w</code> holds the days (bit <code>d - 1</code> for day <code>d</code>) that match the
+         * day-of-week field in a month whose first day is weekday <code>w</code>, where 0 is Sunday.
+         */
+        private final int[] daysOfWeek = new int[7];
+
+        /**
+         * Whether a day must match both the day-of-month and day-of-week fields, rather than either of them.
+         */
+        private final boolean matchBoth;
+
+        private Cron(@Nonnull String expression, @Nonnull ZoneId zone) {
+            this.expression = expression.trim();
+            this.zone = zone;
+
+            String[] fields = this.expression.toLowerCase(Locale.ROOT).split("\\s+");
+            if (fields.length != 5)
+                throw new IllegalArgumentException(
+                        "Cron expression '" + expression + "' must have exactly five fields");
+
+            minutes = parseField(fields[0], 0, 59, null);
+            hours = (int) parseField(fields[1], 0, 23, null);
+            int dom = (int) (parseField(fields[2], 1, 31, null) >>> 1);
+            months = (int) (parseField(fields[3], 1, 12, MONTHS) >>> 1);
+            long dowField = parseField(fields[4], 0, 7, DAYS);
+            // Both 0 and 7 mean Sunday
+            int dow = (int) ((dowField | dowField >>> 7) & 0x7F);
+
+            boolean anyDom = fields[2].equals("*");
+            boolean anyDow = fields[4].equals("*");
+            matchBoth = anyDom || anyDow;
+            daysOfMonth = anyDom && !anyDow ? 0 : dom;
+
+            for (int first = 0; first < 7; first++) {
+                int mask = 0;
+                if (!(anyDow && !anyDom))
+                    for (int day = 0; day < 31; day++)
+                        if ((dow & 1 << (first + day) % 7) != 0)
+                            mask |= 1 << day;
+                daysOfWeek[first] = mask;
+            }
+
+            if (minutes == 0 || hours == 0 || !matchesAnyDay())
+                throw new IllegalArgumentException("Cron expression '" + expression + "' never matches");
+        }
+
+        /**
+         * Check whether any day matches, such as February 29th for <code>0 0 29 2 *</code> but nothing for
+         * <code>0 0 31 2 *</code>. Every month starts on every weekday in some year, and February has 29 days in
+         * some of them, so it's enough to try each allowed month at its longest with each first weekday.
+         */
+        private boolean matchesAnyDay() {
+            for (Month month : Month.values())
+                if ((months & 1 << month.getValue() - 1) != 0)
+                    for (int first = 0; first < 7; first++)
+                        if (days(first, month.maxLength()) != 0)
+                            return true;
+            return false;
+        }
+
+        @Override
+        public long first(long now) {
+            return after(now);
+        }
+
+        @Override
+        public long next(long scheduled, long finished) {
+            return after(Math.max(scheduled, finished));
+        }
+
+        /**
+         * Find the first matching minute strictly after the given time.
+         */
+        private long after(long time) {
+            LocalDateTime start = LocalDateTime.ofInstant(Instant.ofEpochMilli(time), zone)
+                    .withSecond(0)
+                    .withNano(0)
+                    .plusMinutes(1);
+
+            int year = start.getYear(), month = start.getMonthValue(), day = start.getDayOfMonth();
+            int hour = start.getHour(), minute = start.getMinute();
+
+            for (int i = 0; i < MAX_MONTHS; i++) {
+                if ((months & 1 << month - 1) != 0) {
+                    int days = daysIn(year, month) & -1 << day - 1;
+
+                    while (days != 0) {
+                        int d = Integer.numberOfTrailingZeros(days) + 1;
+                        if (d != day) {
+                            day = d;
+                            hour = 0;
+                            minute = 0;
+                        }
+
+                        int h = nextBit(hours, hour);
+                        if (h == hour) {
+                            int m = nextBit(minutes, minute);
+                            if (m >= 0)
+                                return toEpochMillis(year, month, day, hour, m);
+                            h = nextBit(hours, hour + 1);
+                        }
+                        if (h >= 0) {
+                            int m = nextBit(minutes, 0);
+                            return toEpochMillis(year, month, day, h, m);
+                        }
+
+                        // Nothing left today; try the next matching day
+                        days &= days - 1;
+                        hour = 0;
+                        minute = 0;
+                    }
+                }
+
+                // Nothing left this month; move to the start of the next one
+                day = 1;
+                hour = 0;
+                minute = 0;
+                if (++month > 12) {
+                    month = 1;
+                    year++;
+                }
+            }
+
+            throw new IllegalStateException("Cron expression '" + expression + "' has no future matches");
+        }
+
+        /**
+         * Get the mask of matching days in the given month.
+         */
+        private int daysIn(int year, int month) {
+            return days(LocalDate.of(year, month, 1).getDayOfWeek().getValue() % 7,
+                    YearMonth.of(year, month).lengthOfMonth());
+        }
+
+        /**
+         * Get the mask of matching days in a month that starts on weekday <code>first</code> (0 being Sunday) and has
+         * <code>length</code> days.
+         */
+        private int days(int first, int length) {
+            int dom = daysOfMonth, dow = daysOfWeek[first];
+            int days = matchBoth ? (dom == 0 ? dow : dow == 0 ? dom : dom & dow) : dom | dow;
+            return days & (int) ((1L << length) - 1);
+        }
+
+        private long toEpochMillis(int year, int month, int day, int hour, int minute) {
+            return LocalDateTime.of(year, month, day, hour, minute).atZone(zone).toInstant().toEpochMilli();
+        }
+
+        /**
+         * Get the lowest set bit in the mask at or above <code>from</code>, or <code>-1</code> if there is none.
+         */
+        private static int nextBit(long mask, int from) {
+            if (from >= 64)
+                return -1;
+            long remaining = mask & -1L << from;
+            return remaining == 0 ? -1 : Long.numberOfTrailingZeros(remaining);
+        }
+
+        /**
+         * Parse a single cron field into a mask where bit <code>n</code> is set if value <code>n</code> is allowed.
+         */
+        private static long parseField(@Nonnull String field, int min, int max, String[] names) {
+            long mask = 0;
+
+            for (String part : field.split(",")) {
+                int step = 1;
+                int slash = part.indexOf('/');
+                if (slash >= 0) {
+                    step = parseValue(part.substring(slash + 1), 1, max, null);
+                    part = part.substring(0, slash);
+                }
+
+                int low, high;
+                if (part.equals("*")) {
+                    low = min;
+                    high = max;
+                } else {
+                    int dash = part.indexOf('-');
+                    if (dash >= 0) {
+                        low = parseValue(part.substring(0, dash), min, max, names);
+                        high = parseValue(part.substring(dash + 1), min, max, names);
+                    } else {
+                        low = parseValue(part, min, max, names);
+                        // A single value with a step, like 5/15, runs to the end of the range
+                        high = slash >= 0 ? max : low;
+                    }
+                }
+
+                if (low > high)
+                    throw new IllegalArgumentException("Invalid cron range '" + part + "'");
+                for (int value = low; value <= high; value += step)
+                    mask |= 1L << value;
+            }
+
+            return mask;
+        }
+
+        private static int parseValue(@Nonnull String value, int min, int max, String[] names) {
+            if (names != null)
+                for (int i = 0; i < names.length; i++)
+                    if (names[i].equals(value))
+                        // Month names start at 1, day names start at 0
+                        return i + min;
+
+            try {
+                int parsed = Integer.parseInt(value);
+                if (parsed < min || parsed > max)
+                    throw new IllegalArgumentException(
+                            "Cron value " + parsed + " is outside the range " + min + "-" + max);
+                return parsed;
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid cron value '" + value + "'");
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "cron:" + zone.getId() + "@" + expression;
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package announcements;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link SpreadPolicy} delays announcements that are due at the same moment so that they don't all fire at once.
+ * <p>
+ * Without spreading, queueing one reminder per channel for 9:00 makes every one of them check its conditions and send
+ * within the same tick, and the history requests and sends all pile into Discord's rate limits together. A policy
+ * moves each fire to somewhere inside a tolerance window after its nominal time. Announcements are never moved
+ * earlier, and never more than the window later.
+ * <p>
+ * The policy is set with {@link AnnouncementScheduler#setSpreadPolicy(SpreadPolicy)} and applies to one-time
+ * announcements, each fire of a {@link Recurrence}, and announcements replayed from the {@link AnnouncementJournal}.
+ * Recurrences compute their next fire from the nominal time, so spreading never makes them drift.
+ */
+public abstract class SpreadPolicy {
+    private static final SpreadPolicy NONE = new SpreadPolicy() {
+        @Override
+        public long offset(long channelId, long fireAt) {
+            return 0;
+        }
+
+        @Override
+        public String toString() {
+            return "none";
+        }
+    };
+
+    /**
+     * Get the policy that fires every announcement exactly on time. This is the default.
+     *
+     * @return the policy
+     */
+    @Nonnull
+    public static SpreadPolicy none() {
+        return NONE;
+    }
+
+    /**
+     * Create a policy that delays each fire by a random amount of up to <code>windowMillis</code>.
+     *
+     * @param windowMillis the tolerance window in milliseconds
+     * @return the policy
+     */
+    @Nonnull
+    public static SpreadPolicy jitter(long windowMillis) {
+        return new Jitter(requireWindow(windowMillis));
+    }
+
+    /**
+     * Create a policy that delays each fire by an offset of up to <code>windowMillis</code> derived from its channel
+     * id. A channel always gets the same offset, so its announcements keep a stable rhythm from one day to the next.
+     *
+     * @param windowMillis the tolerance window in milliseconds
+     * @return the policy
+     */
+    @Nonnull
+    public static SpreadPolicy perChannel(long windowMillis) {
+        return new PerChannel(requireWindow(windowMillis));
+    }
+
+    /**
+     * Create a policy that keeps the number of fires at or below <code>perSecond</code>. Time is divided into slots of
+     * one or more {@link AnnouncementScheduler#TICK_MILLIS ticks}, and each fire takes the earliest slot at or after
+     * its nominal time that still has room. The rate can only be exceeded when more announcements are due than the
+     * window can hold; the overflow is then spread across the window by channel, as with {@link #perChannel(long)}.
+     *
+     * @param windowMillis the tolerance window in milliseconds
+     * @param perSecond    the target number of fires per second
+     * @return the policy
+     */
+    @Nonnull
+    public static SpreadPolicy rateLimited(long windowMillis, double perSecond) {
+        if (perSecond <= 0)
+            throw new IllegalArgumentException("The target rate must be positive");
+        return new RateLimited(requireWindow(windowMillis), perSecond);
+    }
+
+    /**
+     * Parse a policy from a configuration string. The accepted formats are <code>none</code>,
+     * <code>jitter:[window]</code>, <code>channel:[window]</code>, and <code>rate:[window]:[per second]</code>, with
+     * the window in milliseconds. A blank string means <code>none</code>.
+     *
+     * @param spec the configuration string
+     * @return the policy
+     * @throws IllegalArgumentException if the string isn't a valid policy
+     */
+    @Nonnull
+    public static SpreadPolicy parse(String spec) {
+        if (spec == null || spec.isBlank() || spec.equals("none"))
+            return NONE;
+
+        String[] parts = spec.trim().split(":");
+        try {
+            return switch (parts[0]) {
+                case "jitter" -> jitter(Long.parseLong(parts[1]));
+                case "channel" -> perChannel(Long.parseLong(parts[1]));
+                case "rate" -> rateLimited(Long.parseLong(parts[1]), Double.parseDouble(parts[2]));
+                default -> throw new IllegalArgumentException("Unknown spread policy '" + spec + "'");
+            };
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid spread policy '" + spec + "'", e);
+        }
+    }
+
+    /**
+     * Get an offset from <code>0</code> to <code>window</code> that is fixed for a channel and spread evenly across
+     * channels.
+     */
+    private static long hashOffset(long channelId, long window) {
+        // Snowflakes that are close together differ mostly in their low bits, so mix them before reducing
+        long h = channelId;
+        h = (h ^ (h >>> 33)) * 0xff51afd7ed558ccdL;
+        h = (h ^ (h >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return Math.floorMod(h, window + 1);
+    }
+
+    private static long requireWindow(long windowMillis) {
+        if (windowMillis <= 0)
+            throw new IllegalArgumentException("The spread window must be positive");
+        return windowMillis;
+    }
+
+    /**
+     * Get the number of milliseconds to delay an announcement past its nominal fire time.
+     *
+     * @param channelId the id of the channel the announcement is sent in
+     * @param fireAt    the nominal fire time, in epoch milliseconds
+     * @return the delay in milliseconds, from <code>0</code> up to the policy's window
+     */
+    public abstract long offset(long channelId, long fireAt);
+
+    private static class Jitter extends SpreadPolicy {
+        private final long window;
+
+        private Jitter(long window) {
+            this.window = window;
+        }
+
+        @Override
+        public long offset(long channelId, long fireAt) {
+            return ThreadLocalRandom.current().nextLong(window + 1);
+        }
+
+        @Override
+        public String toString() {
+            return "jitter:" + window;
+        }
+    }
+
+    private static class PerChannel extends SpreadPolicy {
+        private final long window;
+
+        private PerChannel(long window) {
+            this.window = window;
+        }
+
+        @Override
+        public long offset(long channelId, long fireAt) {
+            return hashOffset(channelId, window);
+        }
+
+        @Override
+        public String toString() {
+            return "channel:" + window;
+        }
+    }
+
+    private static class RateLimited extends SpreadPolicy {
+        /**
+         * Once this many slots are tracked, the ones that have already passed are discarded.
+         */
+        private static final int CLEANUP_THRESHOLD = 4096;
+
+        private final long window;
+        private final double perSecond;
+
+        /**
+         * The length of each slot. This is a whole number of scheduler ticks, long enough to hold at least one fire at
+         * the target rate.
+         */
+        private final long slotMillis;
+
+        /**
+         * The number of fires allowed in each slot.
+         */
+        private final int perSlot;
+
+        /**
+         * The number of fires assigned to each slot, keyed by the slot's index since the epoch.
+         */
+        private final ConcurrentHashMap<Long, AtomicInteger> slots = new ConcurrentHashMap<>();
+
+        private RateLimited(long window, double perSecond) {
+            this.window = window;
+            this.perSecond = perSecond;
+
+            long tick = AnnouncementScheduler.TICK_MILLIS;
+            long ticks = Math.max(1, (long) Math.ceil(1000 / perSecond / tick));
+            this.slotMillis = ticks * tick;
+            this.perSlot = Math.max(1, (int) (perSecond * slotMillis / 1000));
+        }
+
+        @Override
+        public long offset(long channelId, long fireAt) {
+            if (slots.size() > CLEANUP_THRESHOLD) {
+                long now = System.currentTimeMillis() / slotMillis;
+                slots.keySet().removeIf(slot -> slot < now);
+            }
+
+            long first = fireAt / slotMillis;
+            long last = (fireAt + window) / slotMillis;
+            for (long slot = first; slot < last; slot++) {
+                AtomicInteger count = slots.computeIfAbsent(slot, t -> new AtomicInteger());
+                if (count.incrementAndGet() <= perSlot)
+                    return Math.max(slot * slotMillis - fireAt, 0);
+                count.decrementAndGet();
+            }
+
+            // The window is full, so the rate will be exceeded; at least keep the overflow from landing all at once
+            return hashOffset(channelId, window);
+        }
+
+        @Override
+        public String toString() {
+            return "rate:" + window + ":" + perSecond;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package cluster;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * A {@link ClusterCoordinator} lets several bot processes split one shard range between them. Each process is a node
+ * in the cluster. The coordinator tracks which nodes are alive and gives each one an {@link Assignment}: a contiguous
+ * range of shards, computed the same way on every node from the same ordered list of nodes. When a node joins or dies,
+ * every node computes its new range and passes it to the callback given to {@link #join(Consumer)}.
+ * <p>
+ * The node that owns the shard of the development guild is the only one that receives its slash commands, so admin
+ * commands like <code>/update</code> are routed to it by Discord itself. Announcement timers are run by the node with
+ * the shard of their channel's guild, and move with the shard when the cluster is rebalanced.
+ * <p>
+ * {@link FileLockCoordinator} coordinates the processes on one host. Other implementations can coordinate across
+ * hosts, as long as every node sees the same nodes in the same order.
+ */
+public interface ClusterCoordinator {
+    /**
+     * Join the cluster. This blocks until the list of nodes has settled, so that nodes started together agree on their
+     * ranges before connecting to Discord.
+     *
+     * @param onRebalance called with the new assignment each time the shards are rebalanced
+     * @return the initial assignment of this node
+     * @throws IOException if the node can't join the cluster
+     */
+    @NotNull
+    Assignment join(@NotNull Consumer<Assignment> onRebalance) throws IOException;
+
+    /**
+     * Get the current assignment of this node.
+     *
+     * @return the assignment
+     * @throws IllegalStateException if the node hasn't joined the cluster
+     */
+    @NotNull
+    Assignment getAssignment();
+
+    /**
+     * Leave the cluster, so that the other nodes take over this node's shards. This does nothing if the node hasn't
+     * joined.
+     */
+    void leave();
+
+    /**
+     * The shards that one node runs.
+     *
+     * @param node  the name of the node
+     * @param nodes the names of every live node, in the order the shards are split between them
+     * @param total the total number of shards in the cluster
+     */
+    record Assignment(@NotNull String node, @NotNull List<String> nodes, int total) {
+        public Assignment {
+            nodes = List.copyOf(nodes);
+        }
+
+        /**
+         * Get the first shard that this node runs.
+         *
+         * @return the shard id
+         */
+        public int first() {
+            int index = nodes.indexOf(node);
+            return index < 0 ? 0 : (int) ((long) index * total / nodes.size());
+        }
+
+        /**
+         * Get the last shard that this node runs. This is less than {@link #first()} if the node has no shards, which
+         * happens when there are more nodes than shards.
+         *
+         * @return the shard id
+         */
+        public int last() {
+            int index = nodes.indexOf(node);
+            return index < 0 ? -1 : (int) ((long) (index + 1) * total / nodes.size()) - 1;
+        }
+
+        /**
+         * Get the number of shards that this node runs.
+         *
+         * @return the shard count
+         */
+        public int size() {
+            return Math.max(last() - first() + 1, 0);
+        }
+
+        /**
+         * Get the id of every shard that this node runs.
+         *
+         * @return a new list of the shard ids, in order
+         */
+        @NotNull
+        public List<Integer> getShards() {
+            List<Integer> shards = new ArrayList<>(size());
+            for (int id = first(); id <= last(); id++)
+                shards.add(id);
+            return shards;
+        }
+
+        /**
+         * Check whether this node runs a shard.
+         *
+         * @param shardId the id of the shard
+         * @return <code>true</code> if the shard is in this node's range
+         */
+        public boolean owns(int shardId) {
+            return shardId >= first() && shardId <= last();
+        }
+
+        /**
+         * Check whether this node runs the shard that receives a guild's events.
+         *
+         * @param guildId the id of the guild
+         * @return <code>true</code> if the guild's shard is in this node's range
+         */
+        public boolean ownsGuild(long guildId) {
+            return owns((int) ((guildId >>> 22) % total));
+        }
+
+        /**
+         * Describe the assignment, such as <code>node-1 runs shards 0-3 of 8 (2 nodes)</code>.
+         *
+         * @return the description
+         */
+        @NotNull
+        @Override
+        public String toString() {
+            String shards = size() == 0 ? "no shards" : size() == 1 ? "shard " + first() :
+                    "shards " + first() + "-" + last();
+            return String.format("%s runs %s of %d (%d nodes)", node, shards, total, nodes.size());
+        }
+    }
+}
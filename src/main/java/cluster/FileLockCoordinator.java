@@ -0,0 +1,290 @@
+package cluster;
+
+import net.dv8tion.jda.internal.utils.JDALogger;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * A {@link FileLockCoordinator} coordinates the bot processes on one host through a shared directory.
+ * <p>
+ * Each node creates a file named after itself in the directory, writes the time it joined, and holds an exclusive
+ * {@link FileLock} on it for as long as it runs. The operating system releases the lock the moment the process exits,
+ * even if it crashes, so a node is alive exactly when its file is locked. There are no heartbeats to tune. A node that
+ * finds an unlocked file removes it.
+ * <p>
+ * Nodes are ordered by the time they joined, so a new node takes shards from the end of the range rather than
+ * reshuffling every node. Every node polls the directory each {@link #POLL_INTERVAL} milliseconds, and rebalances
+ * once the list of nodes has been the same for {@link #SETTLE_POLLS} polls in a row, so that several nodes starting or
+ * stopping together cause one rebalance rather than several.
+ * <p>
+ * Joining the cluster and checking for dead nodes both hold a lock on a shared <code>cluster.lock</code> file, so a
+ * node is never mistaken for dead between creating its file and locking it.
+ */
+public class FileLockCoordinator implements ClusterCoordinator {
+    private static final Logger LOG = JDALogger.getLog(FileLockCoordinator.class);
+
+    /**
+     * The number of milliseconds between checks for nodes that joined or died.
+     */
+    public static final long POLL_INTERVAL = 1_000;
+
+    /**
+     * The number of polls in a row that must see the same nodes before the shards are rebalanced.
+     */
+    public static final int SETTLE_POLLS = 2;
+
+    private static final String NODE_SUFFIX = ".node";
+
+    /**
+     * File locks are held by the whole JVM, so two coordinators in one JVM that lock <code>cluster.lock</code> at once
+     * would get an {@link OverlappingFileLockException} rather than waiting. They take turns on this first.
+     */
+    private static final Object JVM_LOCK = new Object();
+
+    private final Path directory;
+    private final String node;
+    private final int total;
+
+    private FileChannel channel;
+    private FileLock lock;
+    private long joined;
+    private Thread poller;
+    private volatile Assignment assignment;
+
+    /**
+     * Create a coordinator for one node. The node doesn't join until {@link #join(Consumer)} is called.
+     *
+     * @param directory the directory shared by every node on this host
+     * @param node      the name of this node, which must be unique in the cluster
+     * @param total     the total number of shards, which must be the same on every node
+     */
+    public FileLockCoordinator(@NotNull Path directory, @NotNull String node, int total) {
+        if (total <= 0)
+            throw new IllegalArgumentException("A cluster needs a positive shard count, not " + total);
+        if (node.isBlank() || !node.equals(Path.of(node).getFileName().toString()))
+            throw new IllegalArgumentException("Invalid node name '" + node + "'");
+
+        this.directory = directory;
+        this.node = node;
+        this.total = total;
+    }
+
+    @NotNull
+    @Override
+    public synchronized Assignment join(@NotNull Consumer<Assignment> onRebalance) throws IOException {
+        if (channel != null)
+            throw new IllegalStateException("Node " + node + " has already joined the cluster");
+
+        Files.createDirectories(directory);
+        withClusterLock(() -> {
+            channel = FileChannel.open(getNodeFile(node), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            try {
+                lock = channel.tryLock();
+            } catch (OverlappingFileLockException e) {
+                lock = null;
+            }
+            if (lock == null) {
+                channel.close();
+                channel = null;
+                throw new IOException("Node " + node + " is already running in " + directory);
+            }
+
+            joined = System.currentTimeMillis();
+            channel.truncate(0);
+            channel.write(ByteBuffer.wrap(Long.toString(joined).getBytes(StandardCharsets.UTF_8)));
+            channel.force(true);
+        });
+
+        // Wait for the nodes to settle, so that nodes started together agree on the split before connecting
+        List<String> nodes = getNodes();
+        for (int stable = 1; stable < SETTLE_POLLS; ) {
+            try {
+                Thread.sleep(POLL_INTERVAL);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            List<String> current = getNodes();
+            stable = current.equals(nodes) ? stable + 1 : 1;
+            nodes = current;
+        }
+
+        assignment = new Assignment(node, nodes, total);
+        LOG.info("Joined the cluster in " + directory + ": " + assignment);
+
+        poller = new Thread(() -> poll(onRebalance), "Cluster-Coordinator");
+        poller.setDaemon(true);
+        poller.start();
+        return assignment;
+    }
+
+    @NotNull
+    @Override
+    public Assignment getAssignment() {
+        Assignment current = assignment;
+        if (current == null)
+            throw new IllegalStateException("Node " + node + " hasn't joined the cluster");
+        return current;
+    }
+
+    @Override
+    public synchronized void leave() {
+        if (channel == null)
+            return;
+
+        poller.interrupt();
+        try {
+            withClusterLock(() -> {
+                lock.release();
+                channel.close();
+                Files.deleteIfExists(getNodeFile(node));
+            });
+            LOG.info("Node " + node + " left the cluster");
+        } catch (IOException e) {
+            // The lock is released when the process exits anyway, so the other nodes still take over
+            LOG.error("Failed to leave the cluster cleanly", e);
+        }
+        channel = null;
+    }
+
+    /**
+     * Check for nodes that joined or died until the node leaves, rebalancing whenever the nodes change.
+     */
+    private void poll(@NotNull Consumer<Assignment> onRebalance) {
+        List<String> pending = assignment.nodes();
+        int stable = SETTLE_POLLS;
+
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Thread.sleep(POLL_INTERVAL);
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            List<String> nodes;
+            try {
+                nodes = getNodes();
+            } catch (IOException | RuntimeException e) {
+                // Keep polling, since a poller that dies would never rebalance again
+                LOG.error("Failed to check the nodes in " + directory, e);
+                continue;
+            }
+
+            stable = nodes.equals(pending) ? stable + 1 : 1;
+            pending = nodes;
+            if (stable < SETTLE_POLLS || nodes.equals(assignment.nodes()))
+                continue;
+
+            Assignment previous = assignment;
+            assignment = new Assignment(node, nodes, total);
+            LOG.info(String.format("Rebalanced the cluster from %d to %d nodes: %s", previous.nodes().size(),
+                    nodes.size(), assignment));
+            try {
+                onRebalance.accept(assignment);
+            } catch (Exception e) {
+                LOG.error("Failed to apply the rebalanced shards", e);
+            }
+        }
+    }
+
+    /**
+     * Get every live node in the order they joined, removing the files of any dead nodes.
+     *
+     * @return the names of the live nodes
+     */
+    @NotNull
+    private synchronized List<String> getNodes() throws IOException {
+        List<Member> members = new ArrayList<>();
+        withClusterLock(() -> {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + NODE_SUFFIX)) {
+                for (Path file : files) {
+                    String name = file.getFileName().toString();
+                    name = name.substring(0, name.length() - NODE_SUFFIX.length());
+
+                    if (name.equals(node)) {
+                        members.add(new Member(name, joined));
+                    } else if (isLocked(file)) {
+                        members.add(new Member(name, readJoined(file)));
+                    } else {
+                        Files.deleteIfExists(file);
+                        LOG.info("Removed node " + name + ", which is no longer running");
+                    }
+                }
+            }
+        });
+
+        members.sort(Comparator.comparingLong(Member::joined).thenComparing(Member::name));
+        return members.stream().map(Member::name).toList();
+    }
+
+    /**
+     * Check whether another process holds the lock on a node file.
+     */
+    private static boolean isLocked(@NotNull Path file) throws IOException {
+        try (FileChannel other = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            FileLock probe = other.tryLock();
+            if (probe == null)
+                return true;
+            probe.release();
+            return false;
+        } catch (OverlappingFileLockException e) {
+            // Another coordinator in this JVM holds it
+            return true;
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Read the time a node joined from its file. A node that is still writing its file is treated as the newest.
+     */
+    private static long readJoined(@NotNull Path file) {
+        try {
+            return Long.parseLong(Files.readString(file, StandardCharsets.UTF_8).trim());
+        } catch (IOException | NumberFormatException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Run a task while holding the lock on <code>cluster.lock</code>, which every node on this host shares.
+     */
+    private void withClusterLock(@NotNull IOTask task) throws IOException {
+        synchronized (JVM_LOCK) {
+            try (FileChannel shared = FileChannel.open(directory.resolve("cluster.lock"),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                 FileLock ignored = shared.lock()) {
+                task.run();
+            }
+        }
+    }
+
+    @NotNull
+    private Path getNodeFile(@NotNull String name) {
+        return directory.resolve(name + NODE_SUFFIX);
+    }
+
+    @FunctionalInterface
+    private interface IOTask {
+        void run() throws IOException;
+    }
+
+    private record Member(@NotNull String name, long joined) {
+    }
+}
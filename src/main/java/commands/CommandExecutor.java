@@ -0,0 +1,210 @@
+package commands;
+
+import net.dv8tion.jda.api.events.interaction.SlashCommandEvent;
+import net.dv8tion.jda.internal.utils.JDALogger;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import utils.Bot;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * This class runs slash command handlers off the JDA event thread.
+ * <p>
+ * JDA dispatches every gateway event from a single thread, so a handler that blocks on a request stalls every other
+ * event until it finishes. Instead, {@link events.OnSlash} passes each command here, and it runs on a fixed pool of
+ * {@link Bot#COMMAND_THREADS} threads. A command can also be given a concurrency limit with {@link #configure(String,
+ * int, boolean)}. Commands over their limit wait in a queue of their own rather than occupying a pool thread, so a
+ * burst of <code>/purge</code> commands can never crowd out <code>/id</code>. A handler that starts asynchronous work,
+ * like a purge, returns a future for it, and the command holds its place under the limit until that future completes.
+ * <p>
+ * Discord expects a response to every command within three seconds. If a handler hasn't responded within {@link
+ * Bot#COMMAND_DEFER_BUDGET} milliseconds of the command arriving, whether because it is slow or because it is still
+ * waiting for a thread, the command is deferred automatically. Handlers respond through {@link Replies}, which sends
+ * the response as a follow-up once a command has been deferred.
+ */
+public class CommandExecutor {
+    private static final Logger LOG = JDALogger.getLog(CommandExecutor.class);
+
+    /**
+     * The number of pool threads used if {@link Bot#COMMAND_THREADS} isn't set.
+     */
+    private static final int DEFAULT_THREADS = 8;
+
+    /**
+     * The latency budget used if {@link Bot#COMMAND_DEFER_BUDGET} isn't set. This leaves time for the deferral to
+     * reach Discord before its three-second deadline.
+     */
+    private static final long DEFAULT_DEFER_BUDGET = 1500;
+
+    private static final Map<String, Limit> limits = new ConcurrentHashMap<>();
+
+    private static final AtomicInteger threadCount = new AtomicInteger();
+
+    /**
+     * The number of commands that have been dispatched but haven't started running yet.
+     */
+    private static final AtomicInteger waiting = new AtomicInteger();
+
+    private static volatile ThreadPoolExecutor pool;
+
+    /**
+     * Set how a command is run. The {@link CommandRegistry} calls this for every command from its {@link SlashCommand}
+     * annotation.
+     *
+     * @param command       the name of the command
+     * @param maxConcurrent the maximum number of instances that can run at once, or <code>0</code> for no limit
+     * @param ephemeral     whether the command is deferred ephemerally if it exceeds the latency budget
+     */
+    public static void configure(@NotNull String command, int maxConcurrent, boolean ephemeral) {
+        if (maxConcurrent < 0)
+            throw new IllegalArgumentException("The concurrency limit of /" + command + " can't be negative");
+        limits.put(command, new Limit(maxConcurrent == 0 ? Integer.MAX_VALUE : maxConcurrent, ephemeral));
+    }
+
+    /**
+     * Run a slash command handler on the command pool. The command counts against its concurrency limit until the
+     * future returned by the handler completes.
+     *
+     * @param event   the command
+     * @param handler the handler to run, which returns a future that completes once all of its work is done
+     */
+    public static void execute(@NotNull SlashCommandEvent event,
+                               @NotNull Function<SlashCommandEvent, ? extends CompletableFuture<?>> handler) {
+        Limit limit = limits.get(event.getName());
+        boolean ephemeral = limit == null || limit.ephemeral;
+
+        long budget = Bot.COMMAND_DEFER_BUDGET > 0 ? Bot.COMMAND_DEFER_BUDGET : DEFAULT_DEFER_BUDGET;
+        ScheduledFuture<?> deferral = event.getJDA().getRateLimitPool().schedule(
+                () -> Replies.defer(event, ephemeral), budget, TimeUnit.MILLISECONDS);
+
+        Runnable task = () -> {
+            waiting.decrementAndGet();
+            CompletableFuture<?> result;
+            try {
+                result = handler.apply(event);
+            } catch (Exception e) {
+                result = CompletableFuture.failedFuture(e);
+            }
+
+            (result == null ? CompletableFuture.completedFuture(null) : result).whenComplete((v, error) -> {
+                if (error != null) {
+                    LOG.error("Failed to run command /" + event.getName(), error);
+                    Replies.reply(event, "Sorry, something went wrong while running that command.", true);
+                }
+                if (event.isAcknowledged())
+                    deferral.cancel(false);
+                if (limit != null)
+                    limit.release();
+            });
+        };
+
+        waiting.incrementAndGet();
+        if (limit == null)
+            getPool().execute(task);
+        else
+            limit.submit(task);
+    }
+
+    /**
+     * Get the number of commands waiting to start, either for a pool thread or for their command's concurrency limit.
+     *
+     * @return the queue depth
+     */
+    public static int getQueueDepth() {
+        return waiting.get();
+    }
+
+    /**
+     * Get the number of commands currently running on the pool.
+     *
+     * @return the active count
+     */
+    public static int getActiveCount() {
+        ThreadPoolExecutor p = pool;
+        return p == null ? 0 : p.getActiveCount();
+    }
+
+    /**
+     * Stop accepting commands and let the ones already queued finish.
+     */
+    public static void shutdown() {
+        ThreadPoolExecutor p = pool;
+        if (p != null)
+            p.shutdown();
+    }
+
+    /**
+     * Get the command pool, creating it on first use. It isn't created earlier because {@link Bot#COMMAND_THREADS} is
+     * only loaded once the bot is ready.
+     */
+    @NotNull
+    private static ThreadPoolExecutor getPool() {
+        ThreadPoolExecutor p = pool;
+        if (p != null)
+            return p;
+
+        synchronized (CommandExecutor.class) {
+            if (pool == null) {
+                int threads = Bot.COMMAND_THREADS > 0 ? Bot.COMMAND_THREADS : DEFAULT_THREADS;
+                pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                        r -> {
+                            Thread thread = new Thread(r, "Command-Worker-" + threadCount.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+                LOG.info("Started command pool with " + threads + " threads");
+            }
+            return pool;
+        }
+    }
+
+    /**
+     * The concurrency limit of a single command. Instances over the limit are held here, in order, until a running one
+     * finishes.
+     */
+    private static class Limit {
+        private final int maxConcurrent;
+        private final boolean ephemeral;
+        private final Deque<Runnable> pending = new ArrayDeque<>();
+        private int running;
+
+        private Limit(int maxConcurrent, boolean ephemeral) {
+            this.maxConcurrent = maxConcurrent;
+            this.ephemeral = ephemeral;
+        }
+
+        private void submit(@NotNull Runnable task) {
+            synchronized (this) {
+                if (running >= maxConcurrent) {
+                    pending.add(task);
+                    return;
+                }
+                running++;
+            }
+            getPool().execute(task);
+        }
+
+        private void release() {
+            Runnable next;
+            synchronized (this) {
+                next = pending.poll();
+                if (next == null) {
+                    running--;
+                    return;
+                }
+            }
+            getPool().execute(next);
+        }
+    }
+}
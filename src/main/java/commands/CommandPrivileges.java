@@ -0,0 +1,97 @@
+package commands;
+
+import net.dv8tion.jda.api.interactions.commands.privileges.CommandPrivilege;
+import org.jetbrains.annotations.NotNull;
+import utils.Bot;
+
+import java.util.*;
+
+/**
+ * This class reads the slash command privileges from {@link Bot#COMMAND_PRIVILEGES}. Privileges grant users and roles
+ * access to commands that aren't {@link SlashCommand#defaultEnabled() enabled by default}.
+ * <p>
+ * The property lists each command followed by its grants, with commands separated by semicolons:
+ * <p>
+ * <code>update=user:314889189856378882;purge=role:admin,user:123</code>
+ * <p>
+ * Each grant is <code>user:[id]</code> or <code>role:[id]</code>, and the role <code>admin</code> stands for
+ * {@link Bot#ADMIN_ROLE}. A grant can be prefixed with <code>!</code> to deny access instead.
+ */
+public class CommandPrivileges {
+    /**
+     * Parse {@link Bot#COMMAND_PRIVILEGES}.
+     *
+     * @return a map of command names to their privileges, sorted by name
+     * @throws IllegalArgumentException if the property isn't valid
+     */
+    @NotNull
+    public static SortedMap<String, List<CommandPrivilege>> load() {
+        return parse(Bot.COMMAND_PRIVILEGES);
+    }
+
+    /**
+     * Parse a privilege configuration string.
+     *
+     * @param spec the configuration string
+     * @return a map of command names to their privileges, sorted by name
+     * @throws IllegalArgumentException if the string isn't valid
+     */
+    @NotNull
+    public static SortedMap<String, List<CommandPrivilege>> parse(String spec) {
+        SortedMap<String, List<CommandPrivilege>> privileges = new TreeMap<>();
+        if (spec == null || spec.isBlank())
+            return privileges;
+
+        for (String entry : spec.split(";")) {
+            if (entry.isBlank())
+                continue;
+
+            String[] parts = entry.split("=", 2);
+            if (parts.length != 2 || parts[0].isBlank())
+                throw new IllegalArgumentException("Invalid command privileges '" + entry.trim() + "'");
+
+            List<CommandPrivilege> grants = privileges.computeIfAbsent(parts[0].trim(), c -> new ArrayList<>());
+            for (String grant : parts[1].split(","))
+                grants.add(parseGrant(grant.trim()));
+        }
+        return privileges;
+    }
+
+    /**
+     * Describe a list of privileges as a string, so that changes can be detected by comparing hashes.
+     *
+     * @param privileges the privileges of every command, sorted by name
+     * @return the signature
+     */
+    @NotNull
+    static String getSignature(@NotNull SortedMap<String, List<CommandPrivilege>> privileges) {
+        StringBuilder s = new StringBuilder();
+        privileges.forEach((command, grants) -> {
+            s.append(command);
+            for (CommandPrivilege grant : grants)
+                s.append(' ').append(grant.getType()).append(':').append(grant.getId()).append(':')
+                        .append(grant.isEnabled());
+            s.append('\n');
+        });
+        return s.toString();
+    }
+
+    @NotNull
+    private static CommandPrivilege parseGrant(@NotNull String grant) {
+        boolean enabled = !grant.startsWith("!");
+        String[] parts = (enabled ? grant : grant.substring(1)).split(":", 2);
+        if (parts.length != 2)
+            throw new IllegalArgumentException("Invalid privilege '" + grant + "'");
+
+        try {
+            return switch (parts[0]) {
+                case "user" -> new CommandPrivilege(CommandPrivilege.Type.USER, enabled, Long.parseLong(parts[1]));
+                case "role" -> new CommandPrivilege(CommandPrivilege.Type.ROLE, enabled,
+                        parts[1].equals("admin") ? Bot.ADMIN_ROLE : Long.parseLong(parts[1]));
+                default -> throw new IllegalArgumentException("Unknown privilege type in '" + grant + "'");
+            };
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid id in privilege '" + grant + "'", e);
+        }
+    }
+}
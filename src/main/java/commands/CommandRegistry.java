@@ -0,0 +1,263 @@
+package commands;
+
+import announcements.AnnouncementMetrics.Histogram;
+import main.Main;
+import net.dv8tion.jda.api.events.interaction.SlashCommandEvent;
+import net.dv8tion.jda.api.interactions.commands.build.CommandData;
+import net.dv8tion.jda.internal.utils.JDALogger;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import utils.Bot;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * This class holds every slash command the bot supports. It is the single place that commands are defined, and it
+ * dispatches them to their handlers. {@link CommandSync} uses it to register the commands with Discord.
+ * <p>
+ * When the class loads, it scans the {@link #HANDLER_CLASSES} for methods annotated with {@link SlashCommand} and
+ * builds an immutable map from command names to {@link Handler Handlers}. A broken handler, such as one with the wrong
+ * signature or a duplicate name, stops the bot at startup rather than failing when the command is first used.
+ * <p>
+ * Each handler records how many times it has run, how many runs failed, and a histogram of how long each run took. A
+ * handler that returns a {@link CompletableFuture} is timed until the future completes.
+ */
+public class CommandRegistry {
+    private static final Logger LOG = JDALogger.getLog(CommandRegistry.class);
+
+    /**
+     * The classes that contain {@link SlashCommand} handlers. New handler classes must be added here.
+     */
+    private static final List<Class<?>> HANDLER_CLASSES = List.of(GlobalCommands.class, LocalCommands.class);
+
+    private static final Map<String, Handler> handlers = discover();
+
+    private static final AtomicBoolean servedFirst = new AtomicBoolean();
+
+    /**
+     * Pass a slash command to its handler on the {@link CommandExecutor}.
+     *
+     * @param event the slash command
+     */
+    public static void dispatch(@NotNull SlashCommandEvent event) {
+        if (!servedFirst.getAndSet(true))
+            LOG.info(String.format("Received the first command, /%s, %d ms after logging in",
+                    event.getName(), (System.nanoTime() - Main.STARTED) / 1_000_000));
+
+        Handler handler = handlers.get(event.getName());
+        if (handler == null)
+            Replies.reply(event, "Sorry, I don't recognize that command. Please try again later.", true);
+        else
+            CommandExecutor.execute(event, handler);
+    }
+
+    /**
+     * Get the handler for a command.
+     *
+     * @param name the name of the command
+     * @return the handler, or <code>null</code> if there is no such command
+     */
+    public static Handler getHandler(@NotNull String name) {
+        return handlers.get(name);
+    }
+
+    /**
+     * Get every registered handler.
+     *
+     * @return an immutable collection of the handlers
+     */
+    @NotNull
+    public static Collection<Handler> getHandlers() {
+        return handlers.values();
+    }
+
+    /**
+     * Get the handlers for every command in a scope.
+     *
+     * @param scope the scope of the commands
+     * @return the handlers, sorted by name
+     */
+    @NotNull
+    public static List<Handler> getHandlers(@NotNull SlashCommand.Scope scope) {
+        List<Handler> inScope = new ArrayList<>();
+        for (Handler handler : handlers.values())
+            if (handler.getScope() == scope)
+                inScope.add(handler);
+        inScope.sort(Comparator.comparing(Handler::getName));
+        return inScope;
+    }
+
+    /**
+     * Find every {@link SlashCommand} method in the {@link #HANDLER_CLASSES}.
+     */
+    @NotNull
+    private static Map<String, Handler> discover() {
+        Map<String, Handler> found = new HashMap<>();
+        MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+        MethodType sync = MethodType.methodType(void.class, SlashCommandEvent.class);
+        MethodType async = MethodType.methodType(CompletableFuture.class, SlashCommandEvent.class);
+
+        for (Class<?> handlerClass : HANDLER_CLASSES)
+            for (Method method : handlerClass.getDeclaredMethods()) {
+                SlashCommand command = method.getAnnotation(SlashCommand.class);
+                if (command == null)
+                    continue;
+
+                String where = handlerClass.getSimpleName() + "." + method.getName();
+                if (!Modifier.isStatic(method.getModifiers()) || !Modifier.isPublic(method.getModifiers()))
+                    throw new IllegalStateException(where + " must be public and static to handle /" + command.name());
+
+                MethodHandle handle;
+                try {
+                    handle = lookup.unreflect(method);
+                } catch (IllegalAccessException e) {
+                    throw new IllegalStateException("Unable to access " + where, e);
+                }
+                if (!handle.type().equals(sync) && !handle.type().equals(async))
+                    throw new IllegalStateException(
+                            where + " must take a single SlashCommandEvent and return void or a CompletableFuture");
+
+                if (found.put(command.name(), new Handler(command, handle, handle.type().equals(async))) != null)
+                    throw new IllegalStateException("More than one handler for /" + command.name());
+                CommandExecutor.configure(command.name(), command.maxConcurrent(), command.ephemeral());
+            }
+
+        return Map.copyOf(found);
+    }
+
+    /**
+     * A {@link Handler} runs one slash command and keeps its statistics.
+     */
+    public static final class Handler implements Function<SlashCommandEvent, CompletableFuture<?>> {
+        private final SlashCommand command;
+        private final MethodHandle handle;
+
+        /**
+         * Whether the handler returns a {@link CompletableFuture} for work that continues after it returns.
+         */
+        private final boolean async;
+
+        private final AtomicLong invocations = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private final Histogram latency = new Histogram();
+
+        private Handler(@NotNull SlashCommand command, @NotNull MethodHandle handle, boolean async) {
+            this.command = command;
+            this.handle = handle;
+            this.async = async;
+        }
+
+        /**
+         * Run the handler, recording its latency and whether it failed once all of its work is done.
+         *
+         * @param event the slash command
+         * @return a future that completes when the handler's work is done. This is already complete for handlers that
+         * return <code>void</code>.
+         */
+        @NotNull
+        @Override
+        public CompletableFuture<?> apply(@NotNull SlashCommandEvent event) {
+            long start = System.nanoTime();
+            invocations.incrementAndGet();
+
+            CompletableFuture<?> result;
+            try {
+                if (async) {
+                    result = (CompletableFuture<?>) handle.invokeExact(event);
+                    if (result == null)
+                        result = CompletableFuture.completedFuture(null);
+                } else {
+                    handle.invokeExact(event);
+                    result = CompletableFuture.completedFuture(null);
+                }
+            } catch (RuntimeException | Error e) {
+                failures.incrementAndGet();
+                latency.record((System.nanoTime() - start) / 1_000_000);
+                throw e;
+            } catch (Throwable e) {
+                failures.incrementAndGet();
+                latency.record((System.nanoTime() - start) / 1_000_000);
+                throw new RuntimeException(e);
+            }
+
+            return result.whenComplete((v, error) -> {
+                if (error != null)
+                    failures.incrementAndGet();
+                latency.record((System.nanoTime() - start) / 1_000_000);
+            });
+        }
+
+        @NotNull
+        public String getName() {
+            return command.name();
+        }
+
+        @NotNull
+        SlashCommand.Scope getScope() {
+            return command.scope();
+        }
+
+        /**
+         * Get the number of times the command has run.
+         *
+         * @return the invocation count
+         */
+        public long getInvocations() {
+            return invocations.get();
+        }
+
+        /**
+         * Get the number of runs that threw an exception or whose future failed.
+         *
+         * @return the failure count
+         */
+        public long getFailures() {
+            return failures.get();
+        }
+
+        /**
+         * Get the number of milliseconds each run of the handler took, including any asynchronous work whose future the
+         * handler returned, such as a purge.
+         *
+         * @return the latency histogram
+         */
+        @NotNull
+        public Histogram getLatency() {
+            return latency;
+        }
+
+        /**
+         * Describe everything Discord stores about this command as a string. Two handlers have the same signature
+         * exactly when their {@link CommandData} is the same, so this is used to detect changed commands.
+         */
+        @NotNull
+        String getSignature() {
+            StringBuilder s = new StringBuilder(command.name())
+                    .append('\n').append(command.description().replace("{bot_name}", Bot.BOT_NAME))
+                    .append('\n').append(command.defaultEnabled());
+            for (SlashCommand.Option option : command.options())
+                s.append('\n').append(option.type()).append(' ').append(option.name()).append(' ')
+                        .append(option.required()).append(' ').append(option.description());
+            return s.toString();
+        }
+
+        @NotNull
+        CommandData toCommandData() {
+            String description = command.description().replace("{bot_name}", Bot.BOT_NAME);
+            CommandData data = new CommandData(command.name(), description)
+                    .setDefaultEnabled(command.defaultEnabled());
+            for (SlashCommand.Option option : command.options())
+                data.addOption(option.type(), option.name(), option.description(), option.required());
+            return data;
+        }
+    }
+}
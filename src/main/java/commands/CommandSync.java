@@ -0,0 +1,397 @@
+package commands;
+
+import commands.CommandRegistry.Handler;
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.exceptions.ErrorResponseException;
+import net.dv8tion.jda.api.interactions.commands.Command;
+import net.dv8tion.jda.api.interactions.commands.build.CommandData;
+import net.dv8tion.jda.api.interactions.commands.privileges.CommandPrivilege;
+import net.dv8tion.jda.api.requests.ErrorResponse;
+import net.dv8tion.jda.api.requests.RestAction;
+import net.dv8tion.jda.api.requests.restaction.CommandListUpdateAction;
+import net.dv8tion.jda.internal.utils.JDALogger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import utils.Bot;
+import utils.OutboundScheduler;
+import utils.OutboundScheduler.Priority;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.LongFunction;
+import java.util.function.Supplier;
+
+/**
+ * This class registers the commands in the {@link CommandRegistry} with Discord, sending only what changed since the
+ * last time the bot started.
+ * <p>
+ * The id of every registered command is stored in {@link Bot#COMMAND_SYNC_FILE}, along with a hash of its definition.
+ * On startup each command is compared with its stored hash. New and changed commands are upserted, and commands that
+ * no longer have a handler are deleted. The {@link CommandPrivileges} of each guild are also hashed, and if they
+ * changed they are pushed in a single batched request. When nothing changed, no requests are sent at all, so it is
+ * safe to leave {@link Bot#LOAD_GLOBAL_COMMANDS} and {@link Bot#LOAD_LOCAL_COMMANDS} on.
+ * <p>
+ * If a scope has never been synced, or the sync file has been deleted, every command in the scope is overwritten
+ * with a single bulk update. This also removes any commands that were registered before the file existed.
+ * <p>
+ * A command that fails to upsert or delete is logged and tried again on the next startup, since its stored hash is
+ * left as it was. It doesn't stop the other commands or the privileges from syncing. Deleting a command that Discord
+ * no longer knows about, for example because it was removed by hand, counts as a successful delete.
+ */
+public class CommandSync {
+    private static final Logger LOG = JDALogger.getLog(CommandSync.class);
+
+    /**
+     * The number of times a privileges update is attempted before giving up.
+     */
+    private static final int PRIVILEGE_ATTEMPTS = 4;
+
+    /**
+     * The delay before the first retry of a privileges update. Each later retry waits twice as long.
+     */
+    private static final long RETRY_DELAY = 1000;
+
+    private static final Properties state = new Properties();
+    private static boolean loaded;
+
+    /**
+     * Sync the {@link SlashCommand.Scope#GLOBAL global} commands.
+     *
+     * @param jda the JDA instance
+     * @return a future that completes once the sync finishes
+     */
+    @NotNull
+    public static CompletableFuture<Void> syncGlobal(@NotNull JDA jda) {
+        return sync(new Target("global", null, jda::updateCommands, jda::upsertCommand, jda::deleteCommandById),
+                CommandRegistry.getHandlers(SlashCommand.Scope.GLOBAL));
+    }
+
+    /**
+     * Sync the {@link SlashCommand.Scope#LOCAL local} commands and their privileges in a guild.
+     *
+     * @param guild the guild
+     * @return a future that completes once the sync finishes
+     */
+    @NotNull
+    public static CompletableFuture<Void> syncLocal(@NotNull Guild guild) {
+        return sync(new Target("local." + guild.getId(), guild,
+                        guild::updateCommands, guild::upsertCommand, guild::deleteCommandById),
+                CommandRegistry.getHandlers(SlashCommand.Scope.LOCAL));
+    }
+
+    @NotNull
+    private static CompletableFuture<Void> sync(@NotNull Target target, @NotNull List<Handler> handlers) {
+        Set<String> stored;
+        synchronized (state) {
+            load();
+            if (state.getProperty(target.prefix + ".synced") == null)
+                return overwrite(target, handlers);
+            stored = storedNames(target.prefix);
+        }
+
+        // Each request handles its own failure, so one bad command doesn't stop the rest or the privileges sync
+        List<CompletableFuture<?>> requests = new ArrayList<>();
+        AtomicInteger upserted = new AtomicInteger();
+        AtomicInteger deleted = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+
+        for (Handler handler : handlers) {
+            String name = handler.getName();
+            String hash = hash(handler.getSignature());
+
+            if (!stored.contains(name) || !hash.equals(get(target, name + ".hash")))
+                requests.add(submit(() -> target.upsert.apply(handler.toCommandData())).handle((command, error) -> {
+                    if (error == null) {
+                        upserted.incrementAndGet();
+                        record(target, name, command.getIdLong(), hash);
+                    } else {
+                        failed.incrementAndGet();
+                        LOG.error("Failed to upsert /" + name + " in " + target.prefix, error);
+                    }
+                    return null;
+                }));
+        }
+
+        // Delete commands whose handlers were removed
+        Set<String> wanted = new HashSet<>();
+        for (Handler handler : handlers)
+            wanted.add(handler.getName());
+        for (String name : stored)
+            if (!wanted.contains(name)) {
+                long id;
+                try {
+                    id = Long.parseLong(get(target, name + ".id"));
+                } catch (NumberFormatException e) {
+                    LOG.warn("The stored id of /" + name + " in " + target.prefix + " is invalid; forgetting it");
+                    forget(target, name);
+                    continue;
+                }
+
+                requests.add(submit(() -> target.delete.apply(id)).handle((v, error) -> {
+                    Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                    if (cause == null || cause instanceof ErrorResponseException e
+                                         && e.getErrorResponse() == ErrorResponse.UNKNOWN_COMMAND) {
+                        // A command that Discord doesn't know about is already gone, which is all a delete wants
+                        deleted.incrementAndGet();
+                        forget(target, name);
+                    } else {
+                        failed.incrementAndGet();
+                        LOG.error("Failed to delete /" + name + " from " + target.prefix, cause);
+                    }
+                    return null;
+                }));
+            }
+
+        return CompletableFuture.allOf(requests.toArray(new CompletableFuture[0]))
+                .thenCompose(v -> syncPrivileges(target))
+                .whenComplete((privileged, error) -> {
+                    save();
+                    if (error != null)
+                        LOG.error("Failed to sync " + target.prefix + " slash command privileges", error);
+                    else
+                        LOG.info(String.format(
+                                "Synced %s slash commands: %d unchanged, %d upserted, %d deleted, %d failed, "
+                                + "privileges %s", target.prefix, handlers.size() - upserted.get() - failed.get(),
+                                upserted.get(), deleted.get(), failed.get(), privileged ? "updated" : "unchanged"));
+                })
+                .<Void>thenApply(privileged -> null);
+    }
+
+    /**
+     * Submit a request at {@link Priority#LOG log} priority. A request that throws before it is sent fails the
+     * returned future instead, so that it's handled like any other failed request.
+     */
+    @NotNull
+    private static <T> CompletableFuture<T> submit(@NotNull Supplier<RestAction<T>> request) {
+        try {
+            return OutboundScheduler.submit(Priority.LOG, request.get());
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Replace every command in a scope with one bulk update, and record the ids Discord assigns.
+     */
+    @NotNull
+    private static CompletableFuture<Void> overwrite(@NotNull Target target, @NotNull List<Handler> handlers) {
+        List<CommandData> data = new ArrayList<>();
+        Map<String, Handler> byName = new HashMap<>();
+        for (Handler handler : handlers) {
+            data.add(handler.toCommandData());
+            byName.put(handler.getName(), handler);
+        }
+
+        return OutboundScheduler.submit(Priority.LOG, target.overwrite.get().addCommands(data))
+                .thenCompose(commands -> {
+                    synchronized (state) {
+                        for (Command command : commands) {
+                            Handler handler = byName.get(command.getName());
+                            if (handler != null)
+                                record(target, handler.getName(), command.getIdLong(), hash(handler.getSignature()));
+                        }
+                        state.setProperty(target.prefix + ".synced", "true");
+                    }
+                    return syncPrivileges(target);
+                })
+                .whenComplete((privileged, error) -> {
+                    save();
+                    if (error != null)
+                        LOG.error("Failed to register " + target.prefix + " slash commands", error);
+                    else
+                        LOG.info("Registered all " + handlers.size() + " " + target.prefix + " slash commands");
+                })
+                .<Void>thenApply(privileged -> null);
+    }
+
+    /**
+     * Push the privileges of every command in a guild with a single request, if they differ from the ones last pushed.
+     * Discord replaces all the privileges in the guild at once, so the request includes every configured command, not
+     * just the ones that changed. Global commands don't have privileges.
+     *
+     * @return a future that completes with <code>true</code> if the privileges were pushed
+     */
+    @NotNull
+    private static CompletableFuture<Boolean> syncPrivileges(@NotNull Target target) {
+        if (target.guild == null)
+            return CompletableFuture.completedFuture(false);
+
+        SortedMap<String, List<CommandPrivilege>> config;
+        try {
+            config = CommandPrivileges.load();
+        } catch (IllegalArgumentException e) {
+            LOG.error("Invalid command privileges; privileges were not updated", e);
+            return CompletableFuture.completedFuture(false);
+        }
+
+        // Only commands that are registered here can be given privileges, and they are sent by id
+        Map<String, Collection<CommandPrivilege>> byId = new HashMap<>();
+        SortedMap<String, List<CommandPrivilege>> applied = new TreeMap<>();
+        config.forEach((name, privileges) -> {
+            String id = get(target, name + ".id");
+            if (id == null) {
+                LOG.warn("Privileges are configured for /" + name + ", but it isn't registered in " + target.prefix);
+                return;
+            }
+            byId.put(id, privileges);
+            applied.put(name, privileges);
+        });
+
+        // The ids are part of the signature, since recreating a command loses its privileges
+        StringBuilder signature = new StringBuilder(CommandPrivileges.getSignature(applied));
+        applied.keySet().forEach(name -> signature.append(get(target, name + ".id")).append('\n'));
+        String hash = hash(signature.toString());
+        if (hash.equals(get(target, "privileges")))
+            return CompletableFuture.completedFuture(false);
+
+        return withRetries(() -> OutboundScheduler.submit(Priority.LOG,
+                target.guild.updateCommandPrivileges(byId)), PRIVILEGE_ATTEMPTS).thenApply(result -> {
+            synchronized (state) {
+                state.setProperty(target.prefix + ".privileges", hash);
+            }
+            return true;
+        });
+    }
+
+    /**
+     * Run a request, retrying it with exponential backoff if it fails.
+     */
+    @NotNull
+    private static <T> CompletableFuture<T> withRetries(@NotNull Supplier<CompletableFuture<T>> request, int attempts) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        attempt(request, attempts, RETRY_DELAY, result);
+        return result;
+    }
+
+    private static <T> void attempt(@NotNull Supplier<CompletableFuture<T>> request, int attemptsLeft, long delay,
+                                    @NotNull CompletableFuture<T> result) {
+        request.get().whenComplete((value, error) -> {
+            if (error == null) {
+                result.complete(value);
+            } else if (attemptsLeft <= 1) {
+                result.completeExceptionally(error);
+            } else {
+                LOG.warn("Failed to update command privileges; retrying in " + delay + " ms", error);
+                CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS)
+                        .execute(() -> attempt(request, attemptsLeft - 1, delay * 2, result));
+            }
+        });
+    }
+
+    /**
+     * Hash a signature. Only the first 16 bytes of the SHA-256 digest are kept, which is plenty to detect changes.
+     */
+    @NotNull
+    private static String hash(@NotNull String signature) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(signature.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @NotNull
+    private static Set<String> storedNames(@NotNull String prefix) {
+        Set<String> names = new HashSet<>();
+        for (String key : state.stringPropertyNames())
+            if (key.startsWith(prefix + ".") && key.endsWith(".id"))
+                names.add(key.substring(prefix.length() + 1, key.length() - 3));
+        return names;
+    }
+
+    @Nullable
+    private static String get(@NotNull Target target, @NotNull String key) {
+        synchronized (state) {
+            return state.getProperty(target.prefix + "." + key);
+        }
+    }
+
+    private static void record(@NotNull Target target, @NotNull String name, long id, @NotNull String hash) {
+        String key = target.prefix + "." + name + ".";
+        synchronized (state) {
+            state.setProperty(key + "id", String.valueOf(id));
+            state.setProperty(key + "hash", hash);
+        }
+    }
+
+    private static void forget(@NotNull Target target, @NotNull String name) {
+        String key = target.prefix + "." + name + ".";
+        synchronized (state) {
+            state.remove(key + "id");
+            state.remove(key + "hash");
+        }
+    }
+
+    /**
+     * Read the sync file the first time it's needed. This must be called while holding the lock on {@link #state}.
+     */
+    private static void load() {
+        if (loaded)
+            return;
+        loaded = true;
+
+        Path path = getPath();
+        if (path == null || !Files.exists(path))
+            return;
+
+        try (InputStream in = Files.newInputStream(path)) {
+            state.load(in);
+        } catch (IOException e) {
+            LOG.error("Failed to read the command sync file; all commands will be re-registered", e);
+            state.clear();
+        }
+    }
+
+    /**
+     * Write the sync file. It is written to a temporary file first so that a crash can't leave it half written.
+     */
+    private static void save() {
+        Path path = getPath();
+        if (path == null)
+            return;
+
+        synchronized (state) {
+            try {
+                Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+                try (OutputStream out = Files.newOutputStream(temp)) {
+                    state.store(out, "Registered slash commands. Delete this file to re-register every command.");
+                }
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                LOG.error("Failed to write the command sync file", e);
+            }
+        }
+    }
+
+    @Nullable
+    private static Path getPath() {
+        return Bot.COMMAND_SYNC_FILE == null || Bot.COMMAND_SYNC_FILE.isBlank() ? null : Path.of(Bot.COMMAND_SYNC_FILE);
+    }
+
+    /**
+     * The place a set of commands is registered: either globally or in one guild.
+     */
+    private record Target(String prefix,
+                          @Nullable Guild guild,
+                          Supplier<CommandListUpdateAction> overwrite,
+                          Function<CommandData, RestAction<Command>> upsert,
+                          LongFunction<RestAction<Void>> delete) {
+    }
+}
@@ -1,102 +1,153 @@
 package commands;
 
-import events.OnStartup;
-import net.dv8tion.jda.api.entities.Guild;
+import announcements.AnnouncementMetrics;
+import announcements.AnnouncementScheduler;
+import events.ShardMonitor;
 import net.dv8tion.jda.api.entities.MessageChannel;
 import net.dv8tion.jda.api.events.interaction.SlashCommandEvent;
-import net.dv8tion.jda.api.interactions.commands.Command;
 import net.dv8tion.jda.api.interactions.commands.OptionMapping;
 import net.dv8tion.jda.api.interactions.commands.OptionType;
-import net.dv8tion.jda.api.interactions.commands.build.CommandData;
-import net.dv8tion.jda.api.interactions.commands.privileges.CommandPrivilege;
-import net.dv8tion.jda.api.requests.restaction.CommandListUpdateAction;
-import utils.Bot;
+import utils.Colors;
+import utils.OutboundScheduler;
+import utils.OutboundScheduler.Priority;
 import utils.Utils;
 
 import javax.annotation.Nonnull;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Objects;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
 
 public class LocalCommands {
-    public static void registerLocalSlashCommands(CommandListUpdateAction action) {
-        List<CommandData> commands = new ArrayList<>();
-
-        // Generic commands
-        commands.add(
-                new CommandData("id", "Get a user's Discord ID")
-                        .addOption(OptionType.USER, "user", "The user whose ID you want")
-        );
-
-        // Admin/private commands
-        commands.add(
-                new CommandData("update", "Update official channels")
-                        .addOption(OptionType.CHANNEL, "channel", "The channel to update", true)
-                        .setDefaultEnabled(false)
-        );
-        commands.add(
-                new CommandData("purge", "Purge channel messages")
-                        .addOption(OptionType.INTEGER, "count",
-                                "The number of messages to purge", true)
-                        .setDefaultEnabled(false)
-        );
-
-        // Send slash commands and update permissions
-        action.addCommands(commands).queue(
-                c -> setCommandPrivileges(c, Bot.DEVELOPMENT_GUILD)
-        );
-        OnStartup.LOG.info("Registered local slash commands");
-
-    }
-
-    public static void setCommandPrivileges(List<Command> commands, Guild guild) {
-        for (Command command : commands) {
-            switch (command.getName()) {
-                case "update" -> guild.updateCommandPrivilegesById(
-                        command.getId(), CommandPrivilege.enableUser(314889189856378882L)).queue();
-                case "purge" -> guild.updateCommandPrivilegesById(
-                        command.getIdLong(), CommandPrivilege.enableRole(Bot.ADMIN_ROLE)).queue();
-                default -> {
-                }
-            }
-        }
-    }
-
+    @SlashCommand(name = "id", description = "Get a user's Discord ID",
+            options = @SlashCommand.Option(type = OptionType.USER, name = "user",
+                    description = "The user whose ID you want"))
     public static void id(@Nonnull SlashCommandEvent event) {
         OptionMapping user = event.getOption("user");
 
         if (user == null)
-            event.reply("Your Discord id is: `" + event.getUser().getId() + "`").setEphemeral(true).queue();
+            Replies.reply(event, "Your Discord id is: `" + event.getUser().getId() + "`", true);
         else
-            event.reply(user.getAsUser().getAsMention() + "'s Discord id is: `" +
-                        user.getAsUser().getId() + "`").setEphemeral(true).queue();
+            Replies.reply(event, user.getAsUser().getAsMention() + "'s Discord id is: `" +
+                                 user.getAsUser().getId() + "`", true);
     }
 
-    public static void update(@Nonnull SlashCommandEvent event) {
+    @SlashCommand(name = "update", description = "Update official channels",
+            options = @SlashCommand.Option(type = OptionType.CHANNEL, name = "channel",
+                    description = "The channel to update", required = true),
+            defaultEnabled = false, maxConcurrent = 1, ephemeral = false)
+    public static CompletableFuture<?> update(@Nonnull SlashCommandEvent event) {
         MessageChannel channel;
 
         try {
             channel = Objects.requireNonNull(event.getOption("channel")).getAsMessageChannel();
             assert channel != null;
         } catch (Exception e) {
-            event.reply("Error: Failed to retrieve the channel").setEphemeral(true).queue();
-            return;
+            Replies.reply(event, "Error: Failed to retrieve the channel", true);
+            return CompletableFuture.completedFuture(null);
         }
 
-        switch (channel.getId()) {
-            case "865690906929922069" -> ProjectServerManagement.updateInfoEmbeds(event, true);
-            case "865690380199264257" -> ProjectServerManagement.updateRulesEmbeds(event, true);
-            case "866343297965228083" -> ProjectServerManagement.updateContributorInfo(event, true);
-            default -> event
-                    .reply("There is nothing to update in " + Utils.mentionChannel(channel.getIdLong()) + ".")
-                    .queue();
-        }
+        return switch (channel.getId()) {
+            case "865690906929922069" -> ProjectServerManagement.updateInfoEmbeds(event);
+            case "865690380199264257" -> ProjectServerManagement.updateRulesEmbeds(event);
+            case "866343297965228083" -> ProjectServerManagement.updateContributorInfo(event);
+            default -> {
+                Replies.reply(event,
+                        "There is nothing to update in " + Utils.mentionChannel(channel.getIdLong()) + ".", false);
+                yield CompletableFuture.completedFuture(null);
+            }
+        };
     }
 
-    public static void purge(@Nonnull SlashCommandEvent event) {
+    @SlashCommand(name = "purge", description = "Purge channel messages",
+            options = @SlashCommand.Option(type = OptionType.INTEGER, name = "count",
+                    description = "The number of messages to purge", required = true),
+            defaultEnabled = false, maxConcurrent = 1)
+    public static CompletableFuture<?> purge(@Nonnull SlashCommandEvent event) {
         long count = Objects.requireNonNull(event.getOption("count")).getAsLong();
-        event.reply("Purging " + count + " messages from " + event.getChannel().getName() + "...")
-                .setEphemeral(true).queue();
-        event.getChannel().purgeMessages(event.getChannel().getHistory().retrievePast((int) count).complete());
+        if (count <= 0) {
+            Replies.reply(event, "The number of messages must be positive.", true);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return PurgeJob.start(event, event.getChannel(), (int) Math.min(count, Integer.MAX_VALUE));
+    }
+
+    @SlashCommand(name = "scheduler", description = "Show announcement scheduler statistics",
+            defaultEnabled = false)
+    public static void scheduler(@Nonnull SlashCommandEvent event) {
+        Replies.defer(event, true);
+
+        AnnouncementMetrics.getPendingByChannel().thenAccept(pending -> OutboundScheduler.queue(
+                Priority.INTERACTION, event.getHook().sendMessageEmbeds(
+                Utils.makeEmbed(
+                        "Announcement Scheduler",
+                        "There are `" + AnnouncementScheduler.get().getPendingCount() + "` pending tasks.",
+                        Colors.BLURPLE,
+                        Utils.makeEmbedField("Pending by channel", formatPending(pending)),
+                        Utils.makeEmbedField("Announcements", String.format(
+                                "Sent: `%d`\nSkipped: `%d`\nFailed: `%d`",
+                                AnnouncementMetrics.getSentCount(),
+                                AnnouncementMetrics.getSkippedCount(),
+                                AnnouncementMetrics.getFailedCount()), true),
+                        Utils.makeEmbedField("Lateness", formatHistogram(AnnouncementMetrics.LATENESS), true),
+                        Utils.makeEmbedField("Send latency", formatHistogram(AnnouncementMetrics.SEND_LATENCY), true),
+                        Utils.makeEmbedField("Conditions (passed / failed)", formatConditions()),
+                        Utils.makeEmbedField("Outbound requests", formatOutbound(), true),
+                        Utils.makeEmbedField("Commands", String.format("Running: `%d`\nWaiting: `%d`",
+                                CommandExecutor.getActiveCount(), CommandExecutor.getQueueDepth()), true),
+                        Utils.makeEmbedField("Command latency", formatCommands()),
+                        Utils.makeEmbedField("Shards", ShardMonitor.formatHealth())
+                ).build())));
+    }
+
+    private static String formatPending(Map<Long, Integer> pending) {
+        if (pending.isEmpty())
+            return "None";
+
+        // Only show the busiest channels so that the field stays under Discord's length limit
+        return pending.entrySet().stream()
+                .sorted(Map.Entry.<Long, Integer>comparingByValue().reversed())
+                .limit(15)
+                .map(e -> Utils.mentionChannel(e.getKey()) + ": `" + e.getValue() + "`")
+                .collect(Collectors.joining("\n"));
+    }
+
+    private static String formatHistogram(AnnouncementMetrics.Histogram histogram) {
+        return String.format("Count: `%d`\nMean: `%.1f ms`\np50: `%d ms`\np99: `%d ms`\nMax: `%d ms`",
+                histogram.getCount(),
+                histogram.getMean(),
+                histogram.getPercentile(50),
+                histogram.getPercentile(99),
+                histogram.getMax());
+    }
+
+    private static String formatOutbound() {
+        int[] queued = OutboundScheduler.getQueueLengths();
+        StringBuilder s = new StringBuilder("In flight: `" + OutboundScheduler.getInFlight() + "`");
+        for (Priority priority : Priority.values())
+            s.append("\n").append(priority).append(" queued: `").append(queued[priority.ordinal()]).append("`");
+        return s.toString();
+    }
+
+    private static String formatCommands() {
+        String commands = CommandRegistry.getHandlers().stream()
+                .filter(h -> h.getInvocations() > 0)
+                .sorted(Comparator.comparing(CommandRegistry.Handler::getName))
+                .map(h -> String.format("`/%s`: %d runs, %d failed, p50 `%d ms`, p99 `%d ms`",
+                        h.getName(), h.getInvocations(), h.getFailures(),
+                        h.getLatency().getPercentile(50), h.getLatency().getPercentile(99)))
+                .collect(Collectors.joining("\n"));
+        return commands.isEmpty() ? "None run" : commands;
+    }
+
+    private static String formatConditions() {
+        Map<String, long[]> counts = AnnouncementMetrics.getConditionCounts();
+        if (counts.isEmpty())
+            return "None checked";
+
+        return counts.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .map(e -> "`" + e.getKey() + "`: " + e.getValue()[0] + " / " + e.getValue()[1])
+                .collect(Collectors.joining("\n"));
     }
 }
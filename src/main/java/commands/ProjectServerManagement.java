@@ -1,43 +1,97 @@
 package commands;
 
+import main.Discord;
+import net.dv8tion.jda.api.MessageBuilder;
 import net.dv8tion.jda.api.Permission;
 import net.dv8tion.jda.api.entities.Category;
+import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.entities.Message;
+import net.dv8tion.jda.api.entities.MessageEmbed;
 import net.dv8tion.jda.api.entities.Role;
 import net.dv8tion.jda.api.entities.TextChannel;
 import net.dv8tion.jda.api.events.interaction.SlashCommandEvent;
 import utils.Bot;
 import utils.Colors;
+import utils.ManagedMessages;
+import utils.ResponseCache;
 import utils.Utils;
 
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * This class contains some seldom-used methods for composing the info messages, updating the rules, and other
  * single-use moderation tools in the AP Survey Project Discord server.
  */
 public class ProjectServerManagement {
+    private static final ResponseCache<List<Message>> CONTRIBUTOR_INFO =
+            ResponseCache.of(ProjectServerManagement::contributorInfoMessages);
+    private static final ResponseCache<List<Message>> RULES = ResponseCache.of(ProjectServerManagement::rulesMessages);
+    private static final ResponseCache<List<Message>> INFO = ResponseCache.of(ProjectServerManagement::infoMessages);
+
+    /**
+     * This updates the embeds in #contributor-info that help new contributors understand what this project is all
+     * about, how it will function, and what they can do to help.
+     *
+     * @param event the slash command that triggered this update
+     * @return a future that completes once the update has finished and been reported
+     */
+    public static CompletableFuture<?> updateContributorInfo(SlashCommandEvent event) {
+        return update(event, "contributor-info", 866343297965228083L, CONTRIBUTOR_INFO.get());
+    }
+
+    /**
+     * This updates the embeds in #rules that list the server rules.
+     *
+     * @param event the slash command that triggered this update
+     * @return a future that completes once the update has finished and been reported
+     */
+    public static CompletableFuture<?> updateRulesEmbeds(SlashCommandEvent event) {
+        return update(event, "rules", 865690380199264257L, RULES.get());
+    }
+
     /**
-     * This sends the embeds in #contributor-info that help new contributors understand what this project is all about,
-     * how it will function, and what they can do to help.
+     * This updates the embeds in #info that explain what the AP Survey Project is and how people can get involved.
      *
      * @param event the slash command that triggered this update
-     * @param clearChannel true if the old messages in the channel should be cleared first; false if not
+     * @return a future that completes once the update has finished and been reported
+     */
+    public static CompletableFuture<?> updateInfoEmbeds(SlashCommandEvent event) {
+        return update(event, "info", 865690906929922069L, INFO.get());
+    }
+
+    /**
+     * This brings the {@link ManagedMessages} section for a channel up to date, editing only the messages that
+     * changed, and reports the result to the user. The returned future never fails, since failures are reported in the
+     * reply.
      */
-    public static void updateContributorInfo(SlashCommandEvent event, boolean clearChannel) {
-        TextChannel contributorInfo = Bot.DEVELOPMENT_GUILD.getTextChannelById(866343297965228083L);
-        if (contributorInfo == null) {
-            event.reply("Failed to locate #contributor-info in the AP Survey Project server").queue();
-            return;
+    private static CompletableFuture<?> update(SlashCommandEvent event, String name, long channelId,
+                                               List<Message> messages) {
+        Guild guild = Discord.getDevelopmentGuild();
+        TextChannel channel = guild == null ? null : guild.getTextChannelById(channelId);
+        if (channel == null) {
+            Replies.reply(event, "Failed to locate #" + name + " in the AP Survey Project server", false);
+            return CompletableFuture.completedFuture(null);
         }
 
-        event.reply("Updating #contributor-info...").queue();
+        Replies.defer(event, false);
+        return ManagedMessages.sync(name, channel, messages).handle((result, error) -> {
+            if (error == null)
+                Replies.reply(event, "Updated #" + name + ": " + result + ".", false);
+            else
+                Replies.reply(event, "Failed to update #" + name + ": " + error.getMessage(), false);
+            return null;
+        });
+    }
 
-        // First clear out the old messages in the channel
-        if (clearChannel)
-            contributorInfo.purgeMessages(contributorInfo.getHistory().retrievePast(10).complete());
+    private static Message embed(MessageEmbed embed) {
+        return new MessageBuilder().setEmbeds(embed).build();
+    }
 
-        contributorInfo.sendMessageEmbeds(
-                Utils.makeEmbed(
+    private static List<Message> contributorInfoMessages() {
+        return List.of(
+                embed(Utils.makeEmbed(
                         "How does this project work?",
                         "Our goal here is to make FAQ documents for every single AP course and make them " +
                         "available in the AP Students Discord server. That's a big project, so here's the plan:",
@@ -70,10 +124,8 @@ public class ProjectServerManagement {
                                 "so we need you to help write high-quality informative answers to each question. " +
                                 "Once that's all done, we'll begin distributing the FAQs with AP Survey Bot and " +
                                 "pinning them to AP channels.")
-                ).build()
-        ).queue();
+                ).build()),
 
-        contributorInfo.sendMessage(
                 Utils.makeEmbed("Getting started!",
                         "Check out the contributor channels for each of the APs you signed up for. Help " +
                         "brainstorm questions to ask, and be sure to fill out the " +
@@ -83,32 +135,12 @@ public class ProjectServerManagement {
                         Bot.PRELIMINARY_SURVEY,
                         "Preliminary survey"
                 ).buildMessage()
-        ).queue();
-
-        event.getHook().sendMessage("Successfully updated embeds.").queue();
+        );
     }
 
-    /**
-     * This sends the embeds in #rules that list the server rules.
-     *
-     * @param event the slash command that triggered this update
-     * @param clearChannel true if the old messages in the channel should be cleared first; false if not
-     */
-    public static void updateRulesEmbeds(SlashCommandEvent event, boolean clearChannel) {
-        TextChannel rulesChannel = Bot.DEVELOPMENT_GUILD.getTextChannelById(865690380199264257L);
-        if (rulesChannel == null) {
-            event.reply("Failed to locate #rules in the AP Survey Project server").queue();
-            return;
-        }
-
-        event.reply("Updating #rules...").queue();
-
-        // First clear out the old messages in the channel
-        if (clearChannel)
-            rulesChannel.purgeMessages(rulesChannel.getHistory().retrievePast(10).complete());
-
-        rulesChannel.sendMessageEmbeds(
-                Utils.makeEmbed(
+    private static List<Message> rulesMessages() {
+        return List.of(
+                embed(Utils.makeEmbed(
                         "Rules",
                         "`1` Be respectful of others\n" +
                         "`2` No spam, advertising, or NSFW content\n" +
@@ -116,33 +148,13 @@ public class ProjectServerManagement {
                         "`4` No impersonation or triggering usernames\n" +
                         "`5` Abide by Discord's ToS",
                         Colors.YELLOW,
-                        "Adapted from the AP Students Discord").build()
-        ).queue();
-
-        event.getHook().sendMessage("Successfully updated embeds.").queue();
+                        "Adapted from the AP Students Discord").build())
+        );
     }
 
-    /**
-     * This sends the embeds in #info that explain what the AP Survey Project is and how people can get involved.
-     *
-     * @param event the slash command that triggered this update
-     * @param clearChannel true if the old messages in the channel should be cleared first; false if not
-     */
-    public static void updateInfoEmbeds(SlashCommandEvent event, boolean clearChannel) {
-        TextChannel infoChannel = Bot.DEVELOPMENT_GUILD.getTextChannelById(865690906929922069L);
-        if (infoChannel == null) {
-            event.reply("Failed to locate #rules in the AP Survey Project server").queue();
-            return;
-        }
-
-        event.reply("Updating #info...").queue();
-
-        // First clear out the old messages in the channel
-        if (clearChannel)
-            infoChannel.purgeMessages(infoChannel.getHistory().retrievePast(10).complete());
-
-        infoChannel.sendMessageEmbeds(
-                Utils.makeEmbed(
+    private static List<Message> infoMessages() {
+        return List.of(
+                embed(Utils.makeEmbed(
                         "About Us",
                         "The AP Survey Project is a group-led effort to produce high quality, informative " +
                         "documents to help AP students.\n\n" +
@@ -152,10 +164,8 @@ public class ProjectServerManagement {
                         "Developers then work with us to produce a comprehensive survey for each course, which we " +
                         "use to help answer those questions. We administer the survey to as many past students as " +
                         "possible, and use the data to write high-quality answers in an official FAQ.",
-                        Colors.WHITE).build()
-        ).queue();
+                        Colors.WHITE).build()),
 
-        infoChannel.sendMessage(
                 Utils.makeEmbed(
                         "Become a Developer",
                         "Are you an experienced AP student interested in helping us write FAQs for a " +
@@ -164,31 +174,26 @@ public class ProjectServerManagement {
                         Colors.GREEN,
                         Bot.FAQ_VOLUNTEER_FORM,
                         "Become an FAQ Dev")
-                        .buildMessage()
-        ).queue();
+                        .buildMessage(),
 
-        infoChannel.sendMessageEmbeds(
-                Utils.makeEmbed(
+                embed(Utils.makeEmbed(
                         "Background",
                         "This project was inspired by the AP Statistics Survey and FAQ, a month-long " +
                         "project where we surveyed over 100 AP students. We analyzed the results and " +
                         "compiled this " + Utils.link(Bot.AP_STATS_FAQ, "22 page FAQ") +
                         " currently pinned in " + Utils.mentionChannel(689902917070749787L) + ".",
-                        Colors.WHITE).build()
-        ).queue();
+                        Colors.WHITE).build()),
 
-        infoChannel.sendMessageEmbeds(
-                Utils.makeEmbed(
+                embed(Utils.makeEmbed(
                         "Server Invite Link",
                         Bot.SERVER_INVITE,
-                        Colors.WHITE).build()
-        ).queue();
-
-        event.getHook().sendMessage("Successfully updated embeds.").queue();
+                        Colors.WHITE).build())
+        );
     }
 
     public static void createDevChannels() {
-        Category devCategory = Bot.DEVELOPMENT_GUILD.getCategoryById(865703868364619826L);
+        Guild guild = Objects.requireNonNull(Discord.getDevelopmentGuild());
+        Category devCategory = guild.getCategoryById(865703868364619826L);
         assert devCategory != null;
 
         String[] names = {
@@ -233,7 +238,7 @@ public class ProjectServerManagement {
         };
 
         Role[] roles = new Role[names.length];
-        List<Role> allRoles = Bot.DEVELOPMENT_GUILD.getRoles();
+        List<Role> allRoles = guild.getRoles();
 
         System.out.println("Loading roles...");
         // Get all the roles
@@ -0,0 +1,181 @@
+package commands;
+
+import net.dv8tion.jda.api.entities.Message;
+import net.dv8tion.jda.api.entities.MessageChannel;
+import net.dv8tion.jda.api.entities.MessageHistory;
+import net.dv8tion.jda.api.entities.TextChannel;
+import net.dv8tion.jda.api.events.interaction.SlashCommandEvent;
+import org.jetbrains.annotations.NotNull;
+import utils.OutboundScheduler;
+import utils.OutboundScheduler.Priority;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link PurgeJob} deletes the most recent messages in a channel for the <code>/purge</code> command.
+ * <p>
+ * Discord only returns 100 messages per history request, so the job works through the history one page at a time.
+ * The request for the next page is sent as soon as the current page arrives, so it is already on its way while the
+ * current page is being deleted. Messages younger than 14 days are bulk deleted in a single request per page; older
+ * ones can't be bulk deleted, so they are deleted one by one.
+ * <p>
+ * Every step is asynchronous and goes through the {@link OutboundScheduler} at {@link Priority#MODERATION moderation}
+ * priority, so even a very large purge never blocks the JDA event thread or holds up replies to other commands.
+ * Progress is reported by editing the deferred reply.
+ */
+class PurgeJob {
+    /**
+     * The maximum number of messages Discord returns per history request and accepts per bulk delete.
+     */
+    private static final int PAGE_SIZE = 100;
+
+    /**
+     * Discord refuses to bulk delete messages older than 14 days. This leaves a small margin for clock differences.
+     */
+    private static final long BULK_DELETE_MAX_AGE = TimeUnit.DAYS.toMillis(14) - TimeUnit.MINUTES.toMillis(5);
+
+    /**
+     * The minimum time between progress updates, to avoid spending requests on edits.
+     */
+    private static final long PROGRESS_INTERVAL = 2000;
+
+    private final SlashCommandEvent event;
+    private final MessageChannel channel;
+    private final MessageHistory history;
+    private final int total;
+
+    private final AtomicInteger deleted = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private int fetched;
+    private int lastLimit;
+    private long lastProgress;
+
+    private PurgeJob(@NotNull SlashCommandEvent event, @NotNull MessageChannel channel, int total) {
+        this.event = event;
+        this.channel = channel;
+        this.history = channel.getHistory();
+        this.total = total;
+    }
+
+    /**
+     * Start purging the most recent messages in a channel. The slash command is deferred, and its reply is updated with
+     * the progress until the purge finishes.
+     *
+     * @param event   the <code>/purge</code> command
+     * @param channel the channel to purge
+     * @param count   the number of messages to delete
+     * @return a future that completes once the purge has finished and its result has been reported. It never fails;
+     * errors are reported in the reply.
+     */
+    @NotNull
+    static CompletableFuture<Void> start(@NotNull SlashCommandEvent event, @NotNull MessageChannel channel, int count) {
+        Replies.defer(event, true);
+
+        PurgeJob job = new PurgeJob(event, channel, count);
+        return job.process(job.fetch()).handle((v, error) -> {
+            job.finish(error);
+            return null;
+        });
+    }
+
+    /**
+     * Request the next page of history.
+     */
+    @NotNull
+    private CompletableFuture<List<Message>> fetch() {
+        int limit = Math.min(PAGE_SIZE, total - fetched);
+        fetched += limit;
+        lastLimit = limit;
+        return OutboundScheduler.submit(Priority.MODERATION, history.retrievePast(limit));
+    }
+
+    /**
+     * Wait for a page of history, request the page after it, and delete this one. This continues until the requested
+     * number of messages have been fetched or the channel runs out of messages.
+     */
+    @NotNull
+    private CompletableFuture<Void> process(@NotNull CompletableFuture<List<Message>> page) {
+        return page.thenCompose(messages -> {
+            // A short page means the channel has no older messages
+            boolean more = messages.size() == lastLimit && fetched < total;
+            CompletableFuture<List<Message>> next = more ? fetch() : null;
+
+            return delete(messages).thenCompose(v -> {
+                reportProgress();
+                return next == null ? CompletableFuture.completedFuture(null) : process(next);
+            });
+        });
+    }
+
+    /**
+     * Delete one page of messages, bulk deleting the recent ones and deleting the rest individually.
+     */
+    @NotNull
+    private CompletableFuture<Void> delete(@NotNull List<Message> messages) {
+        if (messages.isEmpty())
+            return CompletableFuture.completedFuture(null);
+
+        if (!(channel instanceof TextChannel textChannel)) {
+            // Only text channels support bulk deletes, so let JDA delete each message
+            return track(messages.size(), OutboundScheduler.submit(Priority.MODERATION, () -> CompletableFuture.allOf(
+                    channel.purgeMessages(messages).toArray(new CompletableFuture[0]))));
+        }
+
+        long cutoff = System.currentTimeMillis() - BULK_DELETE_MAX_AGE;
+        List<String> recent = new ArrayList<>();
+        List<CompletableFuture<Void>> deletions = new ArrayList<>();
+
+        for (Message message : messages) {
+            if (message.getTimeCreated().toInstant().toEpochMilli() > cutoff)
+                recent.add(message.getId());
+            else
+                deletions.add(track(1, OutboundScheduler.submit(
+                        Priority.MODERATION, textChannel.deleteMessageById(message.getIdLong()))));
+        }
+
+        if (recent.size() == 1)
+            deletions.add(track(1, OutboundScheduler.submit(
+                    Priority.MODERATION, textChannel.deleteMessageById(recent.get(0)))));
+        else if (recent.size() > 1)
+            deletions.add(track(recent.size(), OutboundScheduler.submit(
+                    Priority.MODERATION, textChannel.deleteMessagesByIds(recent))));
+
+        return CompletableFuture.allOf(deletions.toArray(new CompletableFuture[0]));
+    }
+
+    /**
+     * Count the messages removed by a deletion once it finishes. The returned future never fails, so one failed
+     * deletion doesn't stop the rest of the purge.
+     */
+    @NotNull
+    private CompletableFuture<Void> track(int count, @NotNull CompletableFuture<?> deletion) {
+        return deletion.handle((v, error) -> {
+            (error == null ? deleted : failed).addAndGet(count);
+            return null;
+        });
+    }
+
+    private synchronized void reportProgress() {
+        long now = System.currentTimeMillis();
+        if (now - lastProgress < PROGRESS_INTERVAL)
+            return;
+        lastProgress = now;
+
+        OutboundScheduler.queue(Priority.INTERACTION, event.getHook().editOriginal(
+                "Purging messages from " + channel.getName() + "... `" + deleted.get() + "/" + total + "`"));
+    }
+
+    private void finish(Throwable error) {
+        String result = "Purged `" + deleted.get() + "` messages from " + channel.getName() + ".";
+        if (failed.get() > 0)
+            result += " Failed to delete `" + failed.get() + "` messages.";
+        if (error != null)
+            result += " Stopped early: " + error.getMessage();
+
+        OutboundScheduler.queue(Priority.INTERACTION, event.getHook().editOriginal(result));
+    }
+}
@@ -0,0 +1,94 @@
+package commands;
+
+import net.dv8tion.jda.api.entities.Message;
+import net.dv8tion.jda.api.entities.MessageEmbed;
+import net.dv8tion.jda.api.events.interaction.SlashCommandEvent;
+import org.jetbrains.annotations.NotNull;
+import utils.OutboundScheduler;
+import utils.OutboundScheduler.Priority;
+
+import java.util.Arrays;
+
+/**
+ * This class sends responses to slash commands, whether or not the command has already been deferred.
+ * <p>
+ * The {@link CommandExecutor} defers any command that hasn't replied within its latency budget, and a deferred command
+ * can't be replied to again; its response has to be sent through the interaction hook instead. Handlers should
+ * therefore respond through these methods rather than calling {@link SlashCommandEvent#reply(String)} directly, so that
+ * they work the same way no matter how long they take.
+ * <p>
+ * Each method locks on the event, so a reply and an automatic deferral can never both acknowledge the same command.
+ * Every response is sent at {@link Priority#INTERACTION interaction} priority.
+ */
+public class Replies {
+    /**
+     * Respond to a command with a text message.
+     *
+     * @param event     the command to respond to
+     * @param content   the text of the response
+     * @param ephemeral true if only the user who ran the command should see the response. This is ignored if the
+     *                  command was already deferred, since the deferral decided it.
+     */
+    public static void reply(@NotNull SlashCommandEvent event, @NotNull String content, boolean ephemeral) {
+        synchronized (event) {
+            if (event.isAcknowledged())
+                OutboundScheduler.queue(Priority.INTERACTION, event.getHook().sendMessage(content));
+            else
+                OutboundScheduler.queue(Priority.INTERACTION, event.reply(content).setEphemeral(ephemeral));
+        }
+    }
+
+    /**
+     * Respond to a command with a message.
+     *
+     * @param event     the command to respond to
+     * @param message   the response
+     * @param ephemeral true if only the user who ran the command should see the response
+     * @see #reply(SlashCommandEvent, String, boolean)
+     */
+    public static void reply(@NotNull SlashCommandEvent event, @NotNull Message message, boolean ephemeral) {
+        synchronized (event) {
+            if (event.isAcknowledged())
+                OutboundScheduler.queue(Priority.INTERACTION, event.getHook().sendMessage(message));
+            else
+                OutboundScheduler.queue(Priority.INTERACTION, event.reply(message).setEphemeral(ephemeral));
+        }
+    }
+
+    /**
+     * Respond to a command with one or more embeds.
+     *
+     * @param event     the command to respond to
+     * @param ephemeral true if only the user who ran the command should see the response
+     * @param embeds    the embeds to send
+     * @see #reply(SlashCommandEvent, String, boolean)
+     */
+    public static void replyEmbeds(@NotNull SlashCommandEvent event, boolean ephemeral,
+                                   @NotNull MessageEmbed... embeds) {
+        synchronized (event) {
+            if (event.isAcknowledged())
+                OutboundScheduler.queue(Priority.INTERACTION, event.getHook().sendMessageEmbeds(embeds[0],
+                        Arrays.copyOfRange(embeds, 1, embeds.length)));
+            else
+                OutboundScheduler.queue(Priority.INTERACTION, event.replyEmbeds(embeds[0],
+                        Arrays.copyOfRange(embeds, 1, embeds.length)).setEphemeral(ephemeral));
+        }
+    }
+
+    /**
+     * Defer a command, showing the user that the bot is working on it. This does nothing if the command was already
+     * acknowledged.
+     *
+     * @param event     the command to defer
+     * @param ephemeral true if the eventual response should only be visible to the user who ran the command
+     * @return <code>true</code> if this call deferred the command; <code>false</code> if it was already acknowledged
+     */
+    public static boolean defer(@NotNull SlashCommandEvent event, boolean ephemeral) {
+        synchronized (event) {
+            if (event.isAcknowledged())
+                return false;
+            OutboundScheduler.queue(Priority.INTERACTION, event.deferReply(ephemeral));
+            return true;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package commands;
+
+import net.dv8tion.jda.api.interactions.commands.OptionType;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * This marks a method as the handler for a slash command. The {@link CommandRegistry} finds every annotated method
+ * once at startup and uses the annotation to register the command with Discord and dispatch it. Privileges are set
+ * separately by {@link CommandPrivileges}.
+ * <p>
+ * The method must be <code>public static</code> and take a single
+ * {@link net.dv8tion.jda.api.events.interaction.SlashCommandEvent SlashCommandEvent}. It returns either
+ * <code>void</code> or a {@link java.util.concurrent.CompletableFuture CompletableFuture} for work that continues after
+ * it returns, such as a purge. The command counts against its {@link #maxConcurrent()} limit until that future
+ * completes.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface SlashCommand {
+    /**
+     * The name of the command.
+     */
+    String name();
+
+    /**
+     * The description shown in the Discord client. <code>{bot_name}</code> is replaced with {@link utils.Bot#BOT_NAME}.
+     */
+    String description();
+
+    /**
+     * Whether the command is registered globally or only in the
+     * {@link utils.Bot#DEVELOPMENT_GUILD_ID development guild}.
+     */
+    Scope scope() default Scope.LOCAL;
+
+    /**
+     * The command's options, in the order they are shown.
+     */
+    Option[] options() default {};
+
+    /**
+     * Whether everyone can use the command. If this is <code>false</code>, only the users and roles granted access in
+     * {@link utils.Bot#COMMAND_PRIVILEGES} can use it.
+     */
+    boolean defaultEnabled() default true;
+
+    /**
+     * The maximum number of instances of the command that can run at once, or <code>0</code> for no limit. An instance
+     * is running until its handler returns, or until the future it returns completes.
+     */
+    int maxConcurrent() default 0;
+
+    /**
+     * Whether the command's response is only visible to the user who ran it if the command has to be deferred.
+     */
+    boolean ephemeral() default true;
+
+    enum Scope {
+        GLOBAL,
+        LOCAL
+    }
+
+    /**
+     * An option for a slash command.
+     */
+    @Retention(RetentionPolicy.RUNTIME)
+    @Target({})
+    @interface Option {
+        OptionType type();
+
+        String name();
+
+        String description();
+
+        boolean required() default false;
+    }
+}
@@ -1,6 +1,10 @@
 package events;
 
+import announcements.ChannelActivity;
 import net.dv8tion.jda.api.entities.*;
+import net.dv8tion.jda.api.events.ReconnectedEvent;
+import net.dv8tion.jda.api.events.message.MessageBulkDeleteEvent;
+import net.dv8tion.jda.api.events.message.MessageDeleteEvent;
 import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
 import net.dv8tion.jda.api.hooks.ListenerAdapter;
 import org.jetbrains.annotations.NotNull;
@@ -8,6 +12,9 @@ import utils.Bot;
 
 public class OnMessage extends ListenerAdapter {
     public void onMessageReceived(@NotNull MessageReceivedEvent event) {
+        // Track channel activity for announcement conditions, including messages from the bot
+        ChannelActivity.record(event.getMessage());
+
         // Ignore messages from the bot
         if (event.getAuthor().getIdLong() == Bot.BOT_ID)
             return;
@@ -15,4 +22,18 @@ public class OnMessage extends ListenerAdapter {
         Message message = event.getMessage();
         String content = message.getContentDisplay();
     }
+
+    public void onMessageDelete(@NotNull MessageDeleteEvent event) {
+        ChannelActivity.forget(event.getChannel().getIdLong(), event.getMessageIdLong());
+    }
+
+    public void onMessageBulkDelete(@NotNull MessageBulkDeleteEvent event) {
+        for (String id : event.getMessageIds())
+            ChannelActivity.forget(event.getChannel().getIdLong(), Long.parseLong(id));
+    }
+
+    public void onReconnected(@NotNull ReconnectedEvent event) {
+        // A new session doesn't replay the messages sent while the shard was disconnected
+        ChannelActivity.reset(event.getJDA().getShardInfo().getShardId());
+    }
 }
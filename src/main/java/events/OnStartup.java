@@ -1,10 +1,14 @@
 package events;
 
-import commands.GlobalCommands;
-import commands.LocalCommands;
+import announcements.AnnouncementJournal;
+import announcements.AnnouncementScheduler;
+import announcements.SpreadPolicy;
+import cluster.ClusterCoordinator.Assignment;
+import commands.CommandSync;
+import main.Discord;
 import main.Main;
-import net.dv8tion.jda.api.OnlineStatus;
-import net.dv8tion.jda.api.entities.Activity;
+import net.dv8tion.jda.api.MessageBuilder;
+import net.dv8tion.jda.api.entities.Guild;
 import net.dv8tion.jda.api.events.ReadyEvent;
 import net.dv8tion.jda.api.hooks.ListenerAdapter;
 import net.dv8tion.jda.internal.utils.JDALogger;
@@ -12,55 +16,159 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import utils.Bot;
+import utils.BotConfig;
+import utils.MessageCoalescer;
+import utils.OutboundScheduler.Priority;
+import utils.StartupPipeline;
 import utils.Utils;
 
 import java.awt.*;
-import java.io.IOException;
-import java.io.InputStream;
-import java.lang.reflect.Field;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class OnStartup extends ListenerAdapter {
     public static final Logger LOG = JDALogger.getLog(OnStartup.class);
 
     /**
-     * This method is called once when the bot initially starts. It performs basic setup tasks including loading the bot
-     * properties and updating the bot's presence. It also lists the basic information provided with the {@link
-     * ReadyEvent}, sending the guild counts to the console.
+     * Whether the startup pipeline has been started. Shards that become ready after this were moved to this node when
+     * the cluster was rebalanced.
+     */
+    private static volatile boolean started;
+
+    /**
+     * The shards whose announcements this process runs, or {@link AnnouncementJournal#ALL_SHARDS} outside a cluster.
+     * In a cluster, each node runs the announcements in the channels of its own shards.
+     */
+    private static final Set<Integer> announcementShards = ConcurrentHashMap.newKeySet();
+
+    private final int shardId;
+
+    /**
+     * Create the startup listener for a shard.
+     *
+     * @param shardId the id of the shard
+     */
+    public OnStartup(int shardId) {
+        this.shardId = shardId;
+    }
+
+    /**
+     * This method is called once for each shard when it finishes connecting. The properties were already loaded by
+     * {@link Main} before connecting, so the bot's presence is sent with the login. Once every shard in this process is
+     * ready, this runs the remaining setup as a {@link StartupPipeline}, where stages that don't depend on each other
+     * run at the same time. It also lists the basic information provided with the {@link ReadyEvent}, sending the
+     * guild counts to the console.
+     * <p>
+     * In a cluster, each node runs this for its own shards, and runs the announcements in their channels. Global
+     * commands are synced by the node with shard 0, and the node with the development guild syncs the local commands
+     * and sends the startup log message. If the development guild's shard moves to this node later, this node takes
+     * over those duties.
      *
      * @param event the startup event
      */
     public void onReady(@NotNull ReadyEvent event) {
-        System.out.println();
-        LOG.info("Running startup processes...");
-
-        LOG.info(String.format("ReadyEvent count: %d available guilds; %d unavailable guilds. Total: %d",
+        LOG.info(String.format("Shard %d ReadyEvent count: %d available guilds; %d unavailable guilds. Total: %d",
+                shardId,
                 event.getGuildAvailableCount(),
                 event.getGuildUnavailableCount(),
                 event.getGuildTotalCount()));
 
-        // Load bot.properties
-        Map<String, Boolean> propertyImportResults = loadProperties();
+        // The rest of startup needs every shard, since announcements and commands can be in any guild
+        if (!Discord.markReady(shardId)) {
+            if (started)
+                onShardMoved(event);
+            return;
+        }
+
+        started = true;
+        System.out.println();
+        LOG.info("Running startup processes for " + Discord.getShardCount() + " shards...");
+        Discord.addRebalanceListener(OnStartup::onRebalance);
+
+        Guild developmentGuild = Discord.getDevelopmentGuild();
+        if (developmentGuild == null && Discord.ownsDevelopmentGuild())
+            LOG.error("Unable to find the development guild " + Bot.DEVELOPMENT_GUILD_ID);
+        else if (developmentGuild == null)
+            LOG.info("The development guild is handled by another node");
 
-        // Set bot status and activity
-        Main.JDA.getPresence().setPresence(Bot.STATUS, Bot.ACTIVITY);
-        LOG.info("Updated bot presence");
+        StartupPipeline pipeline = new StartupPipeline()
+                // Spread out announcements that are due together, then re-queue any that were pending when the bot
+                // last stopped
+                .stage("Spread policy", OnStartup::setAnnouncementSpread)
+                .stage("Journal replay", OnStartup::replayAnnouncementJournals, "Spread policy")
+                // Sync slash commands, if applicable
+                .asyncStage("Global commands", () -> Bot.LOAD_GLOBAL_COMMANDS && Discord.ownsShard(0)
+                        ? CommandSync.syncGlobal(Discord.getPrimary()) : CompletableFuture.completedFuture(null))
+                .asyncStage("Local commands", () -> Bot.LOAD_LOCAL_COMMANDS && developmentGuild != null
+                        ? CommandSync.syncLocal(developmentGuild) : CompletableFuture.completedFuture(null))
+                // Apply later changes to bot.properties without restarting
+                .stage("Config watcher", () -> BotConfig.watch(OnStartup::onReload));
 
-        // Load slash commands, if applicable
-        if (Bot.LOAD_GLOBAL_COMMANDS)
-            GlobalCommands.registerGlobalSlashCommands(Main.JDA.updateCommands());
+        pipeline.run().thenRun(() -> {
+            long ready = (System.nanoTime() - Main.STARTED) / 1_000_000;
+            LOG.info("Startup timings:\n" + pipeline.formatTimings());
+
+            // If a startup log message was enabled, send it from the node with the log channel
+            if (Bot.ENABLE_STARTUP_MESSAGE && developmentGuild != null) {
+                BotConfig config = BotConfig.get();
+                sendLogMessage(config == null ? null : config.getResults(), pipeline, ready);
+            }
+
+            // Create break in console now that setup has finished
+            LOG.info("Finished startup processes " + ready + " ms after logging in");
+            System.out.println();
+        });
+    }
+
+    /**
+     * This is called when a shard that was moved to this node by a rebalance becomes ready. Shards started after
+     * startup were built with the presence from startup, so it is updated here. This node takes over the shard's
+     * announcements from the node that ran it before, and if the shard holds the development guild, its local
+     * commands too.
+     *
+     * @param event the ready event of the moved shard
+     */
+    private void onShardMoved(@NotNull ReadyEvent event) {
+        event.getJDA().getPresence().setPresence(Bot.STATUS, Bot.ACTIVITY);
+        CompletableFuture.runAsync(() -> replayAnnouncementJournal(shardId));
+
+        Guild developmentGuild = event.getJDA().getGuildById(Bot.DEVELOPMENT_GUILD_ID);
+        if (developmentGuild == null)
+            return;
+
+        LOG.info("Shard " + shardId + " moved here with the development guild; taking over its local commands");
         if (Bot.LOAD_LOCAL_COMMANDS)
-            LocalCommands.registerLocalSlashCommands(Bot.DEVELOPMENT_GUILD.updateCommands());
+            CommandSync.syncLocal(developmentGuild);
+    }
 
-        // If a startup log message was enabled, send it
-        if (Bot.ENABLE_STARTUP_MESSAGE)
-            sendLogMessage(propertyImportResults);
+    /**
+     * This is called when the cluster is rebalanced. The announcements of each shard that moved to another node are
+     * run by that node from now on, so they are stopped here. Each shard's journal is closed first, so the
+     * announcements that are canceled stay in it for the other node to replay.
+     *
+     * @param assignment the new assignment of this node
+     */
+    private static void onRebalance(@NotNull Assignment assignment) {
+        for (int shard : announcementShards)
+            if (shard != AnnouncementJournal.ALL_SHARDS && !assignment.owns(shard) && announcementShards.remove(shard))
+                AnnouncementJournal.handOff(shard).thenAccept(count -> LOG.info("Shard " + shard + " moved to " +
+                        "another node; stopped " + count + " pending announcements here"));
+    }
 
-        // Create break in console now that setup has finished
-        LOG.info("Finished startup processes");
-        System.out.println();
+    /**
+     * This is called when <code>bot.properties</code> is changed while the bot is running. It rebuilds the state that
+     * is derived from the properties, such as the bot's presence, over the existing gateway connection.
+     *
+     * @param config the new configuration, which has already been copied into {@link Bot}
+     */
+    private static void onReload(@NotNull BotConfig config) {
+        Discord.setPresence(config.getStatus(), config.getActivity());
+        setAnnouncementSpread();
+        LOG.info("Applied bot.properties version " + config.getVersion());
     }
 
     /**
@@ -70,8 +178,11 @@ public class OnStartup extends ListenerAdapter {
      * <p>
      * If the list of property import results is null, something went seriously wrong, and a warning startup message is
      * sent.
+     * <p>
+     * It also includes how long each startup stage took, and how long it took from logging in until startup finished.
      */
-    private static void sendLogMessage(@Nullable Map<String, Boolean> results) {
+    private static void sendLogMessage(@Nullable Map<String, Boolean> results, @NotNull StartupPipeline pipeline,
+                                       long ready) {
         StringBuilder log = new StringBuilder();
 
         // Build the startup checklist for each of the properties, or assign it to an error message if loading failed
@@ -87,11 +198,11 @@ public class OnStartup extends ListenerAdapter {
 
         // Send the message
         try {
-            Objects.requireNonNull(Objects.requireNonNull(Bot.DEVELOPMENT_GUILD)
-                    .getTextChannelById(Bot.LOG_CHANNEL))
-                    .sendMessageEmbeds(
+            MessageCoalescer.queue(Objects.requireNonNull(Objects.requireNonNull(
+                    Discord.getDevelopmentGuild()).getTextChannelById(Bot.LOG_CHANNEL)),
+                    new MessageBuilder().setEmbeds(
                             Utils.makeEmbed(
-                                    Main.JDA.getSelfUser().getName() + " Startup Log",
+                                    Discord.getPrimary().getSelfUser().getName() + " Startup Log",
                                     "Bot started on " +
                                     DateTimeFormatter.ofPattern("MM/dd 'at' HH:mm:ss").format(LocalDateTime.now()),
                                     results == null ? Color.RED : Color.WHITE,
@@ -100,177 +211,87 @@ public class OnStartup extends ListenerAdapter {
                                             log.substring(1)),
                                     Utils.makeEmbedField(
                                             "Slash Commands",
-                                            booleanEmoji(Bot.LOAD_GLOBAL_COMMANDS) + " Loaded global commands\n" +
-                                            booleanEmoji(Bot.LOAD_LOCAL_COMMANDS) + " Loaded local commands")
-                            ).build())
-                    .queue();
+                                            booleanEmoji(Bot.LOAD_GLOBAL_COMMANDS) + " Synced global commands\n" +
+                                            booleanEmoji(Bot.LOAD_LOCAL_COMMANDS) + " Synced local commands"),
+                                    Utils.makeEmbedField(
+                                            "Startup",
+                                            "Ready " + ready + " ms after logging in\n```\n" +
+                                            pipeline.formatTimings() + "```")
+                            ).build()).build(),
+                    Priority.LOG);
         } catch (Exception e) {
             LOG.error("Failed to send startup message to log channel", e);
         }
     }
 
     /**
-     * Returns an emoji corresponding to a boolean. If the boolean is true, <code>:white_check_mark:</code> is returned.
-     * If it is false, <code>:no_entry_sign:</code> is returned.
-     *
-     * @param bool the boolean to use
-     * @return a check mark emoji if the boolean is true, or a no entry sign emoji if the boolean is false
+     * This sets the {@link SpreadPolicy} from {@link Bot#ANNOUNCEMENT_SPREAD}. It runs before the journal is replayed,
+     * since the recovered announcements are exactly the kind of burst the policy is meant to spread out.
      */
-    private static String booleanEmoji(boolean bool) {
-        return bool ? "\u2705" : "\uD83D\uDEAB";
+    private static void setAnnouncementSpread() {
+        try {
+            SpreadPolicy policy = SpreadPolicy.parse(Bot.ANNOUNCEMENT_SPREAD);
+            AnnouncementScheduler.get().setSpreadPolicy(policy);
+            LOG.info("Set announcement spread policy to " + policy);
+        } catch (IllegalArgumentException e) {
+            LOG.error("Invalid announcement spread policy; announcements will fire exactly on time", e);
+        }
     }
 
     /**
-     * This loads the configuration settings from the <code>bot.properties</code> resource file and stores the data as
-     * instance variables within {@link Bot}.
+     * This opens the {@link AnnouncementJournal} at {@link Bot#ANNOUNCEMENT_JOURNAL} and re-queues every announcement
+     * that was still pending when the bot last stopped. If no journal path is set, announcements are not journaled.
+     * <p>
+     * In a cluster, each shard has its own journal, and this replays the journal of every shard on this node, so that
+     * each announcement fires on exactly one node.
      */
-    private static Map<String, Boolean> loadProperties() {
-        Properties prop = new Properties();
-        Class<Bot> botClass = Bot.class;
-        Map<String, Boolean> map = new HashMap<>();
-
-        // Attempt to load bot.properties
-        try {
-            InputStream stream = botClass.getResourceAsStream("/bot.properties");
-            if (stream == null) {
-                LOG.error("Unable to locate bot.properties. Confirm that it is located in the " +
-                          "resources folder for the module containing Bot.java.");
-                return null;
-            }
-            prop.load(stream);
-        } catch (IOException e) {
-            LOG.error("Failed to read bot.properties on startup.", e);
-            return null;
-        }
-
-
-        // Iterate through each of the properties in bot.properties and set the corresponding Bot class field
-
-        boolean success = false;
-        for (String property : prop.stringPropertyNames())
-            try {
-                success = false;
-                // Attempt to set the field
-                Field field = botClass.getDeclaredField(property.toUpperCase(Locale.ROOT));
-                field.set(null, cast(prop.getProperty(property), field.getType()));
-
-                success = true;
-            } catch (NoSuchFieldException e) {
-                LOG.error("Unable to find a static Bot field '" + property.toUpperCase(Locale.ROOT) +
-                          "'. This property was not set.");
-            } catch (SecurityException |
-                    IllegalAccessException |
-                    IllegalArgumentException |
-                    NullPointerException e) {
-                LOG.error("Unable to set the '" + property.toUpperCase(Locale.ROOT) + "' property " +
-                          "within Bot.class. Is it marked public, static, and not final?");
-            } catch (ClassNotFoundException e) {
-                LOG.error("Unable to set the '" + property.toUpperCase(Locale.ROOT) + "' property " +
-                          "within Bot.class. " + e.getMessage());
-            } catch (Exception e) {
-                LOG.error("Unable to set the '" + property.toUpperCase(Locale.ROOT) + "' property " +
-                          "within Bot.class. Cause is unknown.");
-                e.printStackTrace();
-            } finally {
-                // Record whether the property was imported properly
-                map.put(property, success);
-            }
-
-        try {
-            // Generate Activity from activity types
-            Bot.ACTIVITY = getActivity(
-                    Bot.ACTIVITY_TYPE,
-                    Bot.ACTIVITY_TEXT,
-                    Bot.ACTIVITY_URL);
-        } catch (Exception e) {
-            LOG.error("Invalid status. Failed to compile activity properly", e);
+    private static void replayAnnouncementJournals() {
+        if (Bot.ANNOUNCEMENT_JOURNAL == null || Bot.ANNOUNCEMENT_JOURNAL.isBlank()) {
+            LOG.info("No announcement journal set; queued announcements will not survive a restart");
+            return;
         }
 
-        // Get development server
-        Bot.DEVELOPMENT_GUILD = Main.JDA.getGuildById(Bot.DEVELOPMENT_GUILD_ID);
-        assert Bot.DEVELOPMENT_GUILD != null;
-
-        // Log result to console
-        int successes = map.values().stream().mapToInt(v -> (v ? 1 : 0)).sum();
-        LOG.info(String.format("Loaded %d properties with %d failures from bot.properties",
-                successes,
-                prop.stringPropertyNames().size() - successes));
-
-        return map;
+        Assignment assignment = Discord.getAssignment();
+        if (assignment == null)
+            replayAnnouncementJournal(AnnouncementJournal.ALL_SHARDS);
+        else
+            for (int shard : assignment.getShards())
+                replayAnnouncementJournal(shard);
     }
 
     /**
-     * This returns an {@link Activity} based on the type of activity and the text associated with it. If the activity
-     * type is '<code>default</code>', '<code>0</code>', or not recognized, <code>null</code> is returned instead.
-     * <p>
-     * Activity types are based on the names and keys of {@link Activity.ActivityType} enums. The following activity
-     * type values are recognized:
-     * <ul>
-     *     <li>'<code>default</code>' or '<code>0</code>'</li>
-     *     <li>'<code>streaming</code>' or '<code>1</code>'</li>
-     *     <li>'<code>listening</code>' or '<code>2</code>'</li>
-     *     <li>'<code>watching</code>' or '<code>3</code>'</li>
-     *     <li>'<code>competing</code>' or '<code>5</code>'</li>
-     *     <li>'<code>playing</code>'</li>
-     * </ul>
+     * This opens the {@link AnnouncementJournal} of one shard and re-queues its pending announcements, unless this
+     * process already runs them or no journal path is set.
      *
-     * @param type the name of the desired {@link Activity.ActivityType} enum, or its key
-     * @param text the text (if applicable) associated with the desired {@link Activity.ActivityType}
-     * @param url  the streaming url (only relevant if the activity is <code>"streaming"</code>)
-     * @return the newly created {@link Activity}, or <code>null</code>> if the activity type was '<code>default</code>'
-     * or unknown
+     * @param shard the id of the shard, or {@link AnnouncementJournal#ALL_SHARDS} outside a cluster
      */
-    private static @Nullable Activity getActivity(
-            @NotNull String type, @NotNull String text, @Nullable String url) {
-        return switch (type.toLowerCase(Locale.ROOT)) {
-            case "streaming", "1" -> Activity.streaming(text, url);
-            case "playing" -> Activity.playing(text);
-            case "listening", "2" -> Activity.listening(text);
-            case "watching", "3" -> Activity.watching(text);
-            case "competing", "5" -> Activity.competing(text);
-            default -> null;
-        };
+    private static void replayAnnouncementJournal(int shard) {
+        if (Bot.ANNOUNCEMENT_JOURNAL == null || Bot.ANNOUNCEMENT_JOURNAL.isBlank())
+            return;
+        // A shard that moved away again before it became ready is replayed by its new node instead
+        if ((shard != AnnouncementJournal.ALL_SHARDS && !Discord.ownsShard(shard)) || !announcementShards.add(shard))
+            return;
+
+        try {
+            long start = System.currentTimeMillis();
+            int count = AnnouncementJournal.open(Path.of(Bot.ANNOUNCEMENT_JOURNAL), shard).replay();
+            LOG.info(String.format("Recovered %d announcements%s in %d ms", count,
+                    shard == AnnouncementJournal.ALL_SHARDS ? "" : " for shard " + shard,
+                    System.currentTimeMillis() - start));
+        } catch (Exception e) {
+            announcementShards.remove(shard);
+            LOG.error("Failed to open the announcement journal at " + Bot.ANNOUNCEMENT_JOURNAL, e);
+        }
     }
 
     /**
-     * Attempt to parse/cast the {@link String} value obtained from <code>bot.properties</code> into the requested
-     * type.
+     * Returns an emoji corresponding to a boolean. If the boolean is true, <code>:white_check_mark:</code> is returned.
+     * If it is false, <code>:no_entry_sign:</code> is returned.
      *
-     * @param value the value to parse/cast
-     * @param type  the type to convert it to
-     * @return the converted object matching the Java type of the type parameter
+     * @param bool the boolean to use
+     * @return a check mark emoji if the boolean is true, or a no entry sign emoji if the boolean is false
      */
-    private static Object cast(String value, Class<?> type) throws ClassNotFoundException {
-        if (type == String.class)
-            return value;
-
-            // Check primitive types
-        else if (type == Boolean.class || type == Boolean.TYPE)
-            return Boolean.parseBoolean(value);
-        else if (type == Integer.class || type == Integer.TYPE)
-            return Integer.parseInt(value);
-        else if (type == Double.class || type == Double.TYPE)
-            return Double.parseDouble(value);
-        else if (type == Long.class || type == Long.TYPE)
-            return Long.parseLong(value);
-        else if (type == Float.class || type == Float.TYPE)
-            return Float.parseFloat(value);
-        else if (type == Short.class || type == Short.TYPE)
-            return Short.parseShort(value);
-        else if (type == Character.class || type == Character.TYPE)
-            return value.charAt(0);
-        else if (type == Byte.class || type == Byte.TYPE)
-            return Byte.valueOf(value);
-
-            // Check JDA types
-        else if (type == OnlineStatus.class)
-            return OnlineStatus.fromKey(value);
-
-            // Check misc types
-        else if (type == Color.class)
-            return new Color(Integer.parseInt(value, 16));
-
-        throw new ClassNotFoundException("Failed to recognize class type " + type.toGenericString());
+    private static String booleanEmoji(boolean bool) {
+        return bool ? "\u2705" : "\uD83D\uDEAB";
     }
-
 }
@@ -0,0 +1,106 @@
+package events;
+
+import cluster.ClusterCoordinator;
+import main.Discord;
+import main.Main;
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.events.DisconnectEvent;
+import net.dv8tion.jda.api.events.GenericEvent;
+import net.dv8tion.jda.api.events.ReadyEvent;
+import net.dv8tion.jda.api.events.ReconnectedEvent;
+import net.dv8tion.jda.api.events.ResumedEvent;
+import net.dv8tion.jda.api.hooks.ListenerAdapter;
+import net.dv8tion.jda.internal.utils.JDALogger;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link ShardMonitor} records the health of one shard: when it became ready, how many events it has received, and
+ * how often its connection dropped. One is registered per shard, and {@link #formatHealth()} combines them with each
+ * shard's live status and gateway ping.
+ */
+public class ShardMonitor extends ListenerAdapter {
+    private static final Logger LOG = JDALogger.getLog(ShardMonitor.class);
+
+    /**
+     * The most shards listed by {@link #formatHealth()}, so that it fits in an embed field.
+     */
+    private static final int MAX_LISTED = 8;
+
+    private static final Map<Integer, ShardMonitor> monitors = new ConcurrentHashMap<>();
+
+    private final int shardId;
+    private final AtomicLong events = new AtomicLong();
+    private final AtomicLong disconnects = new AtomicLong();
+    private final AtomicLong resumes = new AtomicLong();
+    private final AtomicLong reconnects = new AtomicLong();
+
+    /**
+     * The number of milliseconds after logging in that the shard became ready, or -1 if it isn't ready yet.
+     */
+    private volatile long readyAfter = -1;
+
+    public ShardMonitor(int shardId) {
+        this.shardId = shardId;
+        monitors.put(shardId, this);
+    }
+
+    public void onGenericEvent(@NotNull GenericEvent event) {
+        events.incrementAndGet();
+    }
+
+    public void onReady(@NotNull ReadyEvent event) {
+        readyAfter = (System.nanoTime() - Main.STARTED) / 1_000_000;
+        LOG.info(String.format("Shard %d ready after %d ms with %d guilds", shardId, readyAfter,
+                event.getGuildTotalCount()));
+    }
+
+    public void onDisconnect(@NotNull DisconnectEvent event) {
+        disconnects.incrementAndGet();
+        LOG.warn("Shard " + shardId + " disconnected" + (event.isClosedByServer() ? " by Discord" : ""));
+    }
+
+    public void onResumed(@NotNull ResumedEvent event) {
+        resumes.incrementAndGet();
+    }
+
+    public void onReconnected(@NotNull ReconnectedEvent event) {
+        reconnects.incrementAndGet();
+    }
+
+    /**
+     * Describe the health of the shards in this process, one line per shard. If there are too many shards to list,
+     * only the first few are listed, followed by a count of how many are connected. In a cluster, this starts with the
+     * shards assigned to this node.
+     *
+     * @return the description
+     */
+    @NotNull
+    public static String formatHealth() {
+        List<JDA> shards = Discord.getShards();
+        StringBuilder s = new StringBuilder();
+        ClusterCoordinator.Assignment assignment = Discord.getAssignment();
+        if (assignment != null)
+            s.append("\nNode `").append(assignment).append("`");
+        for (JDA shard : shards.subList(0, Math.min(shards.size(), MAX_LISTED))) {
+            int id = shard.getShardInfo().getShardId();
+            ShardMonitor monitor = monitors.get(id);
+            s.append(String.format("\n`%d` %s, ping `%d ms`", id, shard.getStatus(), shard.getGatewayPing()));
+            if (monitor != null)
+                s.append(String.format(", ready `%s`, events `%d`, drops `%d` (`%d` resumed, `%d` new sessions)",
+                        monitor.readyAfter < 0 ? "no" : monitor.readyAfter + " ms", monitor.events.get(),
+                        monitor.disconnects.get(), monitor.resumes.get(), monitor.reconnects.get()));
+        }
+        if (shards.size() > MAX_LISTED) {
+            long connected = shards.stream().filter(shard -> shard.getStatus() == JDA.Status.CONNECTED).count();
+            s.append(String.format("\n...and %d more. `%d/%d` shards connected.", shards.size() - MAX_LISTED,
+                    connected, shards.size()));
+        }
+        return s.length() == 0 ? "Not connected" : s.substring(1);
+    }
+}
@@ -0,0 +1,432 @@
+package main;
+
+import cluster.ClusterCoordinator;
+import cluster.ClusterCoordinator.Assignment;
+import cluster.FileLockCoordinator;
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.JDABuilder;
+import net.dv8tion.jda.api.OnlineStatus;
+import net.dv8tion.jda.api.entities.Activity;
+import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.entities.PrivateChannel;
+import net.dv8tion.jda.api.entities.TextChannel;
+import net.dv8tion.jda.api.requests.GatewayIntent;
+import net.dv8tion.jda.api.sharding.DefaultShardManagerBuilder;
+import net.dv8tion.jda.api.sharding.ShardManager;
+import net.dv8tion.jda.internal.utils.JDALogger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import utils.Bot;
+
+import javax.security.auth.login.LoginException;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+/**
+ * This class owns the bot's connection to Discord, and is the one place to look up shards, guilds, and channels.
+ * <p>
+ * Depending on {@link Bot#SHARD_COUNT}, the bot connects either as a single {@link JDA} instance or through a
+ * {@link ShardManager} that runs each shard as its own {@link JDA} instance. Either way, every shard gets its own
+ * instances of the event listeners, and the lookups here find the shard that holds a guild or channel. Outside of
+ * this class, nothing should assume that there is only one {@link JDA} instance; code that handles an event should
+ * use <code>event.getJDA()</code>.
+ * <p>
+ * If {@link Bot#CLUSTER_DIRECTORY} is set, this process is one node in a cluster of processes that split the shards
+ * between them through a {@link ClusterCoordinator}. The process then only runs the shards in its {@link Assignment},
+ * and starts and stops shards as the cluster is rebalanced. Lookups for guilds and channels on other nodes return
+ * <code>null</code>, and {@link #ownsGuild(long)} tells whether a guild is handled here.
+ */
+public class Discord {
+    private static final Logger LOG = JDALogger.getLog(Discord.class);
+
+    /**
+     * When the cluster is rebalanced, shards taken from another node are started this many milliseconds later, so that
+     * the other node has stopped them first. Otherwise both nodes would handle the same events for a moment. This also
+     * applies when a node joins a running cluster, since the other nodes only stop its shards once they see it.
+     */
+    private static final long HANDOFF_DELAY = 2 * FileLockCoordinator.POLL_INTERVAL;
+
+    private static volatile JDA jda;
+    private static volatile ShardManager shardManager;
+    private static volatile ClusterCoordinator coordinator;
+    private static final List<Consumer<Assignment>> rebalanceListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * The number of shards that this process runs.
+     */
+    private static volatile int expectedShards;
+    private static final Set<Integer> readyShards = new HashSet<>();
+
+    /**
+     * The shards started by this node in a cluster. A shard that is still waiting in the shard manager's queue has no
+     * {@link JDA} instance yet, so this is tracked separately.
+     */
+    private static final Set<Integer> startedShards = new HashSet<>();
+    private static boolean allReady;
+
+    /**
+     * Connect to Discord. This must be called once, after the properties are loaded.
+     *
+     * @param token     the bot token
+     * @param listeners a provider for each event listener. Each provider is called once per shard with the shard's
+     *                  id, so every shard gets its own listener instances.
+     * @throws LoginException if the token is invalid
+     */
+    public static synchronized void start(@NotNull String token, @NotNull List<IntFunction<Object>> listeners)
+            throws LoginException {
+        if (jda != null || shardManager != null)
+            throw new IllegalStateException("Already connected to Discord");
+
+        OnlineStatus status = Bot.STATUS == null ? OnlineStatus.ONLINE : Bot.STATUS;
+
+        if (Bot.CLUSTER_DIRECTORY != null && !Bot.CLUSTER_DIRECTORY.isBlank()) {
+            startNode(token, listeners, status);
+            return;
+        }
+
+        if (Bot.SHARD_COUNT == 0) {
+            expectedShards = 1;
+            jda = JDABuilder.createDefault(token)
+                    .setStatus(status)
+                    .setActivity(Bot.ACTIVITY)
+                    .enableIntents(GatewayIntent.GUILD_MEMBERS)
+                    .addEventListeners(listeners.stream().map(provider -> provider.apply(0)).toArray())
+                    .build();
+            return;
+        }
+
+        // A shard count of -1 uses the number of shards recommended by Discord
+        shardManager = DefaultShardManagerBuilder.createDefault(token)
+                .setShardsTotal(Bot.SHARD_COUNT)
+                .setStatus(status)
+                .setActivity(Bot.ACTIVITY)
+                .enableIntents(GatewayIntent.GUILD_MEMBERS)
+                .addEventListenerProviders(listeners)
+                .build();
+        expectedShards = shardManager.getShardsTotal();
+        LOG.info("Starting " + expectedShards + " shards");
+    }
+
+    /**
+     * Join the cluster, then start only the shards assigned to this node. The shard manager is built without logging
+     * in so that shards can be started and stopped one at a time as the cluster is rebalanced. If other nodes are
+     * already running, they take a few polls to notice this node and give up its shards, so the shards are started
+     * after {@link #HANDOFF_DELAY}.
+     */
+    private static void startNode(@NotNull String token, @NotNull List<IntFunction<Object>> listeners,
+                                  @NotNull OnlineStatus status) throws LoginException {
+        if (Bot.SHARD_COUNT <= 0)
+            throw new IllegalStateException("A cluster needs a positive shard_count, not " + Bot.SHARD_COUNT);
+
+        String node = Bot.CLUSTER_NODE == null || Bot.CLUSTER_NODE.isBlank()
+                ? "node-" + ProcessHandle.current().pid() : Bot.CLUSTER_NODE;
+        ClusterCoordinator cluster = new FileLockCoordinator(Path.of(Bot.CLUSTER_DIRECTORY), node, Bot.SHARD_COUNT);
+        Assignment assignment;
+        try {
+            assignment = cluster.join(Discord::rebalance);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to join the cluster in " + Bot.CLUSTER_DIRECTORY, e);
+        }
+
+        synchronized (Discord.class) {
+            coordinator = cluster;
+            shardManager = DefaultShardManagerBuilder.createDefault(token)
+                    .setShardsTotal(Bot.SHARD_COUNT)
+                    .setStatus(status)
+                    .setActivity(Bot.ACTIVITY)
+                    .enableIntents(GatewayIntent.GUILD_MEMBERS)
+                    .addEventListenerProviders(listeners)
+                    .build(false);
+
+            // A rebalance may have happened while the shard manager was being built
+            assignment = cluster.getAssignment();
+            expectedShards = assignment.size();
+        }
+
+        if (assignment.size() == 0) {
+            LOG.warn("There are more nodes than shards; " + node + " will wait until a node leaves");
+        } else if (assignment.nodes().size() == 1) {
+            LOG.info("Starting " + assignment);
+            startAssigned(0);
+        } else {
+            LOG.info("Starting " + assignment + " once the other nodes have stopped its shards");
+            startAssigned(HANDOFF_DELAY);
+        }
+    }
+
+    /**
+     * Start every shard in this node's current assignment that hasn't been started yet. Shards that moved away in the
+     * meantime are skipped.
+     *
+     * @param delay the number of milliseconds to wait first
+     */
+    private static void startAssigned(long delay) {
+        CompletableFuture.runAsync(() -> {
+            synchronized (Discord.class) {
+                for (int shardId : coordinator.getAssignment().getShards())
+                    if (startedShards.add(shardId))
+                        shardManager.start(shardId);
+            }
+        }, CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Apply a new assignment from the {@link ClusterCoordinator}. Shards that moved to another node are stopped right
+     * away, and shards that moved here are started after {@link #HANDOFF_DELAY}.
+     */
+    private static void rebalance(@NotNull Assignment assignment) {
+        List<Integer> gained = new ArrayList<>();
+        synchronized (Discord.class) {
+            if (shardManager == null)
+                return;
+
+            expectedShards = assignment.size();
+            for (int shardId : List.copyOf(startedShards))
+                if (!assignment.owns(shardId)) {
+                    LOG.info("Stopping shard " + shardId + ", which moved to another node");
+                    shardManager.shutdown(shardId);
+                    startedShards.remove(shardId);
+                    readyShards.remove(shardId);
+                }
+            for (int shardId : assignment.getShards())
+                if (!startedShards.contains(shardId))
+                    gained.add(shardId);
+        }
+
+        for (Consumer<Assignment> listener : rebalanceListeners)
+            try {
+                listener.accept(assignment);
+            } catch (Exception e) {
+                LOG.error("Failed to notify a listener of the rebalanced shards", e);
+            }
+
+        if (gained.isEmpty())
+            return;
+        CompletableFuture.runAsync(() -> {
+            synchronized (Discord.class) {
+                Assignment current = coordinator.getAssignment();
+                for (int shardId : gained)
+                    if (current.owns(shardId) && startedShards.add(shardId)) {
+                        LOG.info("Starting shard " + shardId + ", which moved to this node");
+                        shardManager.start(shardId);
+                    }
+            }
+        }, CompletableFuture.delayedExecutor(HANDOFF_DELAY, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Register a listener that is called each time the cluster is rebalanced, after the shards that moved away have
+     * been stopped. The listener is called on the coordinator's thread. This is never called if the bot isn't in a
+     * cluster.
+     *
+     * @param listener the listener, which receives the new assignment of this node
+     */
+    public static void addRebalanceListener(@NotNull Consumer<Assignment> listener) {
+        rebalanceListeners.add(listener);
+    }
+
+    /**
+     * Leave the cluster, if this process is in one, so that the other nodes take over its shards. This is called when
+     * the bot shuts down.
+     */
+    public static void leaveCluster() {
+        ClusterCoordinator cluster = coordinator;
+        if (cluster != null)
+            cluster.leave();
+    }
+
+    /**
+     * Check whether this process is one node in a cluster.
+     *
+     * @return <code>true</code> if the shards are split with other processes
+     */
+    public static boolean isClustered() {
+        return coordinator != null;
+    }
+
+    /**
+     * Get the shards assigned to this node.
+     *
+     * @return the assignment, or <code>null</code> if this process isn't in a cluster
+     */
+    @Nullable
+    public static Assignment getAssignment() {
+        ClusterCoordinator cluster = coordinator;
+        return cluster == null ? null : cluster.getAssignment();
+    }
+
+    /**
+     * Check whether this process runs a shard.
+     *
+     * @param shardId the id of the shard
+     * @return <code>true</code> if the shard is assigned to this process, which is always the case outside a cluster
+     */
+    public static boolean ownsShard(int shardId) {
+        Assignment assignment = getAssignment();
+        return assignment == null || assignment.owns(shardId);
+    }
+
+    /**
+     * Check whether this process runs the shard that receives a guild's events.
+     *
+     * @param guildId the id of the guild
+     * @return <code>true</code> if the guild is handled by this process, which is always the case outside a cluster
+     */
+    public static boolean ownsGuild(long guildId) {
+        Assignment assignment = getAssignment();
+        return assignment == null || assignment.ownsGuild(guildId);
+    }
+
+    /**
+     * Check whether this process handles the development guild. That process receives the admin commands and sends to
+     * the log channel.
+     *
+     * @return <code>true</code> if the development guild is handled by this process
+     */
+    public static boolean ownsDevelopmentGuild() {
+        return ownsGuild(Bot.DEVELOPMENT_GUILD_ID);
+    }
+
+    /**
+     * Record that a shard has finished connecting.
+     *
+     * @param shardId the id of the shard
+     * @return <code>true</code> exactly once, when the last shard that this process runs becomes ready. In a cluster,
+     * shards that move here after that are started without returning <code>true</code> again.
+     */
+    public static synchronized boolean markReady(int shardId) {
+        readyShards.add(shardId);
+        if (allReady || expectedShards == 0 || readyShards.size() < expectedShards)
+            return false;
+        allReady = true;
+        return true;
+    }
+
+    /**
+     * Get the number of shards that this process runs.
+     *
+     * @return the shard count. This is 1 when the bot isn't sharded.
+     */
+    public static int getShardCount() {
+        return expectedShards;
+    }
+
+    /**
+     * Get every shard that has been started, sorted by id.
+     *
+     * @return a new list of the shards
+     */
+    @NotNull
+    public static List<JDA> getShards() {
+        if (jda != null)
+            return List.of(jda);
+        if (shardManager == null)
+            return Collections.emptyList();
+
+        List<JDA> shards = new ArrayList<>(shardManager.getShards());
+        shards.sort(Comparator.comparingInt(shard -> shard.getShardInfo().getShardId()));
+        return shards;
+    }
+
+    /**
+     * Get the first shard. Use this for things that are the same on every shard, such as the bot's own user and
+     * global slash commands.
+     *
+     * @return the shard with the lowest id
+     * @throws IllegalStateException if no shards have started
+     */
+    @NotNull
+    public static JDA getPrimary() {
+        List<JDA> shards = getShards();
+        if (shards.isEmpty())
+            throw new IllegalStateException("Not connected to Discord");
+        return shards.get(0);
+    }
+
+    /**
+     * Get the shard that receives events for a guild.
+     *
+     * @param guildId the id of the guild
+     * @return the shard, or <code>null</code> if this process doesn't run it
+     */
+    @Nullable
+    public static JDA getShardFor(long guildId) {
+        if (jda != null)
+            return jda;
+        if (shardManager == null)
+            return null;
+        return shardManager.getShardById((int) ((guildId >>> 22) % shardManager.getShardsTotal()));
+    }
+
+    /**
+     * Get a guild from the shard that holds it.
+     *
+     * @param guildId the id of the guild
+     * @return the guild, or <code>null</code> if it isn't in the cache of any shard in this process
+     */
+    @Nullable
+    public static Guild getGuildById(long guildId) {
+        JDA shard = getShardFor(guildId);
+        return shard == null ? null : shard.getGuildById(guildId);
+    }
+
+    /**
+     * Get the AP Survey Project server. This is looked up each time, since the {@link Guild} object is replaced if its
+     * shard has to start a new session.
+     *
+     * @return the development guild, or <code>null</code> if it isn't available
+     */
+    @Nullable
+    public static Guild getDevelopmentGuild() {
+        return getGuildById(Bot.DEVELOPMENT_GUILD_ID);
+    }
+
+    /**
+     * Find a text channel on any shard.
+     *
+     * @param channelId the id of the channel
+     * @return the channel, or <code>null</code> if it isn't in the cache of any shard in this process
+     */
+    @Nullable
+    public static TextChannel getTextChannelById(long channelId) {
+        if (jda != null)
+            return jda.getTextChannelById(channelId);
+        return shardManager == null ? null : shardManager.getTextChannelById(channelId);
+    }
+
+    /**
+     * Find a cached private channel on any shard.
+     *
+     * @param channelId the id of the channel
+     * @return the channel, or <code>null</code> if it isn't cached
+     */
+    @Nullable
+    public static PrivateChannel getPrivateChannelById(long channelId) {
+        if (jda != null)
+            return jda.getPrivateChannelById(channelId);
+        return shardManager == null ? null : shardManager.getPrivateChannelById(channelId);
+    }
+
+    /**
+     * Set the presence on every shard.
+     *
+     * @param status   the online status
+     * @param activity the activity, or <code>null</code> for none
+     */
+    public static void setPresence(@Nullable OnlineStatus status, @Nullable Activity activity) {
+        for (JDA shard : getShards())
+            shard.getPresence().setPresence(status, activity);
+    }
+}
@@ -1,20 +1,26 @@
 package main;
 
+import announcements.AnnouncementJournal;
+import announcements.AnnouncementScheduler;
+import commands.CommandExecutor;
 import events.OnMessage;
 import events.OnSlash;
 import events.OnStartup;
-import net.dv8tion.jda.api.JDA;
-import net.dv8tion.jda.api.JDABuilder;
-import net.dv8tion.jda.api.requests.GatewayIntent;
+import events.ShardMonitor;
 import net.dv8tion.jda.internal.utils.JDALogger;
 import org.slf4j.Logger;
+import utils.BotConfig;
 
 import javax.security.auth.login.LoginException;
 import java.io.IOException;
+import java.util.List;
 import java.util.Objects;
 
 public class Main {
-    public static JDA JDA;
+    /**
+     * The {@link System#nanoTime()} when the bot started logging in. Startup times are measured from here.
+     */
+    public static long STARTED;
     public static final Logger LOG = JDALogger.getLog(Main.class);
 
     public static void main(String[] args) throws IOException, LoginException {
@@ -22,11 +28,25 @@ public class Main {
                 Objects.requireNonNull(Main.class.getResourceAsStream("/bot.token")).readAllBytes()
         );
 
-        JDA = JDABuilder.createDefault(token)
-                .enableIntents(GatewayIntent.GUILD_MEMBERS)
-                .addEventListeners(new OnMessage())
-                .addEventListeners(new OnStartup())
-                .addEventListeners(new OnSlash())
-                .build();
+        // Load bot.properties before connecting, so that the presence is sent with the login and the properties are
+        // ready as soon as events arrive
+        STARTED = System.nanoTime();
+        BotConfig.load();
+
+        // Each shard gets its own instance of every listener
+        Discord.start(token, List.of(
+                shardId -> new OnMessage(),
+                OnStartup::new,
+                shardId -> new OnSlash(),
+                ShardMonitor::new));
+
+        // Stop the command and announcement threads when the bot shuts down, flushing the journals first. The cluster
+        // is left last, so the journals are complete before other nodes take over the announcements.
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            CommandExecutor.shutdown();
+            AnnouncementJournal.closeAll();
+            AnnouncementScheduler.get().shutdown();
+            Discord.leaveCluster();
+        }));
     }
 }
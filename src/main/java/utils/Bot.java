@@ -1,16 +1,15 @@
 package utils;
 
-import events.OnStartup;
 import net.dv8tion.jda.api.OnlineStatus;
 import net.dv8tion.jda.api.entities.Activity;
-import net.dv8tion.jda.api.entities.Guild;
 
 import java.awt.Color;
 
 /**
  * This class is designed to work with the <code>bot.properties</code> resource file associated with this Discord bot.
- * All the properties contained in that file have a matching instance variable here that is set with
- * <code>loadProperties()</code> in {@link OnStartup}.
+ * All the properties contained in that file have a matching instance variable here that is set by {@link BotConfig}
+ * when the properties are loaded or reloaded. The fields are volatile so that every thread sees the latest values;
+ * code that needs several properties to come from the same version of the file should read {@link BotConfig#get()}.
  * <p>
  * To create a new property, add a line to <code>bot.properties</code> in the following format:
  * <p>
@@ -18,11 +17,11 @@ import java.awt.Color;
  * <p>
  * Then create a field in {@link Bot} with the <i>same name</i> as the property. Ensure that the {@link Bot} field is
  * all uppercase; the property name is case-insensitive in <code>bot.properties</code>. Make sure that the {@link Bot}
- * field is <code>public</code> and <code>static</code>, but <i>not</i> <code>final</code>.
+ * field is <code>public</code>, <code>static</code>, and <code>volatile</code>, but <i>not</i> <code>final</code>.
  * <p>
- * The property will automatically be loaded from <code>bot.properties</code> to the {@link Bot} field by the private
- * <code>loadProperties()</code> method in {@link OnStartup}. If you use a non-standard field type, you will need to
- * modify the <code>cast()</code> method in {@link OnStartup} to support that type. By default, it supports:
+ * The property will automatically be loaded from <code>bot.properties</code> to the {@link Bot} field by
+ * {@link BotConfig}. If you use a non-standard field type, you will need to add a parser for that type to
+ * {@link PropertyBinder}. By default, it supports:
  * <ul>
  *     <li>{@link String}</li>
  *     <li>{@link Character}</li>
@@ -39,36 +38,48 @@ import java.awt.Color;
  */
 public class Bot {
     // Generic bot config
-    public static String PREFIX;
-    public static boolean ENABLE_STARTUP_MESSAGE;
-    public static String BOT_NAME;
-    public static String BOT_DESCRIPTION;
-    public static String VERSION;
+    public static volatile String PREFIX;
+    public static volatile boolean ENABLE_STARTUP_MESSAGE;
+    public static volatile String BOT_NAME;
+    public static volatile String BOT_DESCRIPTION;
+    public static volatile String VERSION;
+    public static volatile int SHARD_COUNT;
+    public static volatile long COALESCE_WINDOW;
+    public static volatile String MANAGED_MESSAGES_FILE;
+
+    // Cluster
+    public static volatile String CLUSTER_DIRECTORY;
+    public static volatile String CLUSTER_NODE;
+
+    // Announcements
+    public static volatile String ANNOUNCEMENT_JOURNAL;
+    public static volatile String ANNOUNCEMENT_SPREAD;
 
     // Slash commands
-    public static boolean LOAD_GLOBAL_COMMANDS;
-    public static boolean LOAD_LOCAL_COMMANDS;
+    public static volatile boolean LOAD_GLOBAL_COMMANDS;
+    public static volatile boolean LOAD_LOCAL_COMMANDS;
+    public static volatile String COMMAND_SYNC_FILE;
+    public static volatile String COMMAND_PRIVILEGES;
+    public static volatile int COMMAND_THREADS;
+    public static volatile long COMMAND_DEFER_BUDGET;
 
     // Status
-    public static OnlineStatus STATUS;
-    public static String ACTIVITY_TYPE;
-    public static String ACTIVITY_TEXT;
-    public static String ACTIVITY_URL;
-    public static Activity ACTIVITY;
+    public static volatile OnlineStatus STATUS;
+    public static volatile String ACTIVITY_TYPE;
+    public static volatile String ACTIVITY_TEXT;
+    public static volatile String ACTIVITY_URL;
+    public static volatile Activity ACTIVITY;
 
     // Links
-    public static String FAQ_VOLUNTEER_FORM;
-    public static String AP_STATS_FAQ;
-    public static String SERVER_INVITE;
-    public static String GITHUB;
-    public static String PRELIMINARY_SURVEY;
+    public static volatile String FAQ_VOLUNTEER_FORM;
+    public static volatile String AP_STATS_FAQ;
+    public static volatile String SERVER_INVITE;
+    public static volatile String GITHUB;
+    public static volatile String PRELIMINARY_SURVEY;
 
     // Discord Ids
-    public static long BOT_ID;
-    public static long DEVELOPMENT_GUILD_ID;
-    public static long LOG_CHANNEL;
-    public static long ADMIN_ROLE;
-
-    // Discord entities
-    public static Guild DEVELOPMENT_GUILD;
+    public static volatile long BOT_ID;
+    public static volatile long DEVELOPMENT_GUILD_ID;
+    public static volatile long LOG_CHANNEL;
+    public static volatile long ADMIN_ROLE;
 }
@@ -0,0 +1,362 @@
+package utils;
+
+import net.dv8tion.jda.api.OnlineStatus;
+import net.dv8tion.jda.api.entities.Activity;
+import net.dv8tion.jda.internal.utils.JDALogger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * A {@link BotConfig} is an immutable snapshot of <code>bot.properties</code>. Each snapshot is parsed in full before
+ * it is published through a single volatile reference, so {@link #get()} always returns a complete and consistent
+ * configuration. Publishing a snapshot also copies its values into the matching {@link Bot} fields, which are volatile,
+ * and invalidates every {@link ResponseCache}.
+ * <p>
+ * The properties are read from the file named by the <code>bot.properties</code> system property, which defaults to
+ * <code>bot.properties</code> in the working directory. If there is no such file, the copy bundled in the resources
+ * folder is used instead. Once {@link #watch(Consumer)} is called, changes to the file are picked up within
+ * milliseconds and applied without reconnecting to Discord. A reload with any invalid property is rejected as a whole,
+ * and the previous snapshot stays in place. A reload that removes a property is accepted, and resets that property's
+ * {@link Bot} field to the value it had before any properties were loaded, so the field and {@link #getValue(String)}
+ * never disagree.
+ * <p>
+ * Some properties, such as {@link Bot#COMMAND_THREADS} and {@link Bot#ANNOUNCEMENT_JOURNAL}, are only read during
+ * startup. Reloading them updates the {@link Bot} field but has no effect until the bot restarts.
+ */
+public class BotConfig {
+    private static final Logger LOG = JDALogger.getLog(BotConfig.class);
+
+    /**
+     * Editors often write a file in several steps, so the watcher waits this many milliseconds after a change for the
+     * file to settle before reading it.
+     */
+    private static final long SETTLE_DELAY = 50;
+
+    private static volatile BotConfig current;
+    private static long nextVersion = 1;
+    private static Thread watcher;
+
+    private final long version;
+    private final Map<String, Object> values;
+    private final Map<String, Boolean> results;
+    @Nullable
+    private final Activity activity;
+
+    private BotConfig(long version, @NotNull Map<String, Object> values, @NotNull Map<String, Boolean> results,
+                      @Nullable Activity activity) {
+        this.version = version;
+        this.values = values;
+        this.results = results;
+        this.activity = activity;
+    }
+
+    /**
+     * Get the current configuration.
+     *
+     * @return the most recently published snapshot, or <code>null</code> if the properties haven't been loaded yet
+     */
+    @Nullable
+    public static BotConfig get() {
+        return current;
+    }
+
+    /**
+     * Read and publish the properties. This is called once during startup. Unlike a reload, properties that fail to
+     * parse are skipped rather than rejecting the whole file, so that the bot can still start.
+     *
+     * @return the published snapshot, or <code>null</code> if the properties couldn't be read at all
+     */
+    @Nullable
+    public static synchronized BotConfig load() {
+        Properties properties = read();
+        if (properties == null)
+            return null;
+
+        BotConfig config = parse(properties);
+        publish(config);
+        LOG.info(String.format("Loaded %d properties with %d failures from bot.properties",
+                config.values.size(), config.results.size() - config.values.size()));
+        return config;
+    }
+
+    /**
+     * Start watching the properties file for changes. Each valid change is published and passed to the listener. This
+     * does nothing if the properties were loaded from the bundled resource, or if the file is already being watched.
+     *
+     * @param onReload called on the watcher thread with each new snapshot
+     */
+    public static synchronized void watch(@NotNull Consumer<BotConfig> onReload) {
+        Path path = getPath();
+        if (watcher != null || !Files.isRegularFile(path)) {
+            if (watcher == null)
+                LOG.info("Using the bundled bot.properties; changes won't be reloaded until restart");
+            return;
+        }
+
+        WatchService service;
+        Path directory = path.toAbsolutePath().getParent();
+        try {
+            service = FileSystems.getDefault().newWatchService();
+            directory.register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            LOG.error("Unable to watch " + path + " for changes", e);
+            return;
+        }
+
+        watcher = new Thread(() -> {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    WatchKey key = service.take();
+                    boolean changed = false;
+                    for (WatchEvent<?> event : key.pollEvents())
+                        if (path.getFileName().equals(event.context()))
+                            changed = true;
+                    key.reset();
+
+                    if (!changed)
+                        continue;
+
+                    // Let the write finish, and fold in any further events it causes
+                    TimeUnit.MILLISECONDS.sleep(SETTLE_DELAY);
+                    WatchKey extra;
+                    while ((extra = service.poll()) != null) {
+                        extra.pollEvents();
+                        extra.reset();
+                    }
+
+                    BotConfig config = reload();
+                    if (config != null)
+                        try {
+                            onReload.accept(config);
+                        } catch (Exception e) {
+                            LOG.error("Failed to apply reloaded bot.properties", e);
+                        }
+                }
+            } catch (InterruptedException ignored) {
+            } finally {
+                try {
+                    service.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }, "Config-Watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+        LOG.info("Watching " + path + " for changes");
+    }
+
+    /**
+     * Re-read the properties file and publish it if it changed and every property is valid.
+     *
+     * @return the new snapshot, or <code>null</code> if nothing was published
+     */
+    @Nullable
+    private static synchronized BotConfig reload() {
+        long start = System.nanoTime();
+        Properties properties = read();
+        if (properties == null)
+            return null;
+
+        BotConfig config = parse(properties);
+        List<String> failed = new ArrayList<>();
+        config.results.forEach((property, success) -> {
+            if (!success)
+                failed.add(property);
+        });
+        if (!failed.isEmpty()) {
+            LOG.error("Rejected reloaded bot.properties; invalid properties: " + String.join(", ", failed));
+            return null;
+        }
+
+        BotConfig old = current;
+        List<String> changed = new ArrayList<>();
+        for (Map.Entry<String, Object> entry : config.values.entrySet())
+            if (old == null || !entry.getValue().equals(old.values.get(entry.getKey())))
+                changed.add(entry.getKey());
+        if (old != null)
+            for (String field : old.values.keySet())
+                if (!config.values.containsKey(field))
+                    changed.add(field + " (removed)");
+        if (changed.isEmpty())
+            return null;
+
+        publish(config);
+        LOG.info(String.format("Reloaded bot.properties in %.1f ms; changed: %s",
+                (System.nanoTime() - start) / 1e6, changed.isEmpty() ? "none" : String.join(", ", changed)));
+        return config;
+    }
+
+    /**
+     * Copy a snapshot into the {@link Bot} fields and make it the current one. Fields that the previous snapshot set
+     * but this one doesn't are reset to their initial values.
+     */
+    private static void publish(@NotNull BotConfig config) {
+        BotConfig old = current;
+        if (old != null)
+            for (String field : old.values.keySet())
+                if (!config.values.containsKey(field))
+                    PropertyBinder.reset(field);
+        for (Map.Entry<String, Object> entry : config.values.entrySet())
+            PropertyBinder.set(entry.getKey(), entry.getValue());
+        Bot.ACTIVITY = config.activity;
+
+        current = config;
+        ResponseCache.invalidateAll();
+    }
+
+    /**
+     * Read the properties file, or the bundled resource if there is no file.
+     *
+     * @return the properties, or <code>null</code> if they couldn't be read
+     */
+    @Nullable
+    private static Properties read() {
+        Properties properties = new Properties();
+        Path path = getPath();
+        try (InputStream stream = Files.isRegularFile(path)
+                ? Files.newInputStream(path) : Bot.class.getResourceAsStream("/bot.properties")) {
+            if (stream == null) {
+                LOG.error("Unable to locate bot.properties. Confirm that it is located in the " +
+                          "resources folder for the module containing Bot.java.");
+                return null;
+            }
+            properties.load(stream);
+            return properties;
+        } catch (IOException e) {
+            LOG.error("Failed to read bot.properties", e);
+            return null;
+        }
+    }
+
+    /**
+     * Parse every property into the type of its {@link Bot} field. Nothing is written to {@link Bot}.
+     */
+    @NotNull
+    private static BotConfig parse(@NotNull Properties properties) {
+        PropertyBinder.Parsed parsed = PropertyBinder.parseAll(properties);
+        Map<String, Object> values = parsed.values();
+
+        // Record whether each property was imported properly, and report every problem together
+        Map<String, Boolean> results = new TreeMap<>();
+        for (String property : properties.stringPropertyNames())
+            results.put(property, !parsed.problems().containsKey(property));
+        if (!parsed.problems().isEmpty()) {
+            StringBuilder log = new StringBuilder("Unable to set " + parsed.problems().size() + " properties:");
+            parsed.problems().forEach((property, problem) -> log.append("\n    ").append(property).append(": ")
+                    .append(problem));
+            LOG.error(log.toString());
+        }
+
+        Activity activity = null;
+        try {
+            // Generate Activity from activity types
+            activity = getActivity(
+                    (String) values.getOrDefault("ACTIVITY_TYPE", "default"),
+                    (String) values.getOrDefault("ACTIVITY_TEXT", ""),
+                    (String) values.get("ACTIVITY_URL"));
+        } catch (Exception e) {
+            LOG.error("Invalid status. Failed to compile activity properly", e);
+        }
+
+        synchronized (BotConfig.class) {
+            return new BotConfig(nextVersion++, values, Collections.unmodifiableMap(results), activity);
+        }
+    }
+
+    @NotNull
+    private static Path getPath() {
+        return Path.of(System.getProperty("bot.properties", "bot.properties"));
+    }
+
+    /**
+     * Get the version of this snapshot. Versions start at 1 and increase with each snapshot that is parsed.
+     *
+     * @return the version
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Get whether each property in the file was parsed successfully.
+     *
+     * @return an immutable map of property names to their results, sorted by name
+     */
+    @NotNull
+    public Map<String, Boolean> getResults() {
+        return results;
+    }
+
+    /**
+     * Get the value of a property in this snapshot.
+     *
+     * @param field the name of the {@link Bot} field, such as <code>"GITHUB"</code>
+     * @return the value, or <code>null</code> if the property isn't set
+     */
+    @Nullable
+    public Object getValue(@NotNull String field) {
+        return values.get(field);
+    }
+
+    /**
+     * Get the activity built from the <code>activity_type</code>, <code>activity_text</code>, and
+     * <code>activity_url</code> properties.
+     *
+     * @return the activity, or <code>null</code> if there isn't one
+     */
+    @Nullable
+    public Activity getActivity() {
+        return activity;
+    }
+
+    /**
+     * Get the online status from the <code>status</code> property.
+     *
+     * @return the status, or <code>null</code> if it isn't set
+     */
+    @Nullable
+    public OnlineStatus getStatus() {
+        return (OnlineStatus) values.get("STATUS");
+    }
+
+    /**
+     * This returns an {@link Activity} based on the type of activity and the text associated with it. If the activity
+     * type is '<code>default</code>', '<code>0</code>', or not recognized, <code>null</code> is returned instead.
+     * <p>
+     * Activity types are based on the names and keys of {@link Activity.ActivityType} enums. The following activity
+     * type values are recognized:
+     * <ul>
+     *     <li>'<code>default</code>' or '<code>0</code>'</li>
+     *     <li>'<code>streaming</code>' or '<code>1</code>'</li>
+     *     <li>'<code>listening</code>' or '<code>2</code>'</li>
+     *     <li>'<code>watching</code>' or '<code>3</code>'</li>
+     *     <li>'<code>competing</code>' or '<code>5</code>'</li>
+     *     <li>'<code>playing</code>'</li>
+     * </ul>
+     *
+     * @param type the name of the desired {@link Activity.ActivityType} enum, or its key
+     * @param text the text (if applicable) associated with the desired {@link Activity.ActivityType}
+     * @param url  the streaming url (only relevant if the activity is <code>"streaming"</code>)
+     * @return the newly created {@link Activity}, or <code>null</code>> if the activity type was '<code>default</code>'
+     * or unknown
+     */
+    private static @Nullable Activity getActivity(
+            @NotNull String type, @NotNull String text, @Nullable String url) {
+        return switch (type.toLowerCase(Locale.ROOT)) {
+            case "streaming", "1" -> Activity.streaming(text, url);
+            case "playing" -> Activity.playing(text);
+            case "listening", "2" -> Activity.listening(text);
+            case "watching", "3" -> Activity.watching(text);
+            case "competing", "5" -> Activity.competing(text);
+            default -> null;
+        };
+    }
+}
@@ -22,7 +22,22 @@ import java.util.List;
  * To build a {@link LinkBuilder} with an attached link for sending to Discord, use {@link #buildMessage()}.
  */
 public class LinkBuilder extends EmbedBuilder {
-    public final List<Button> buttons = new ArrayList<>();
+    private final List<Button> buttons = new ArrayList<>();
+
+    /**
+     * The message returned by the last call to {@link #buildMessage()}, or <code>null</code> if the builder has changed
+     * since then. Every mutator resets this, so repeated builds of an unchanged {@link LinkBuilder} return the same
+     * immutable {@link Message}.
+     */
+    @Nullable
+    private Message built;
+
+    /**
+     * Set when the mutable {@link #getDescriptionBuilder() description} or {@link #getFields() field list} is handed
+     * out. Changes to those can't be detected, so from then on every call to {@link #buildMessage()} builds a new
+     * message.
+     */
+    private boolean exposed;
 
     public LinkBuilder() {
     }
@@ -56,121 +71,163 @@ public class LinkBuilder extends EmbedBuilder {
      */
     public LinkBuilder addButton(String url, String label) {
         buttons.add(Button.link(url, label));
-        return this;
+        return changed();
     }
 
+    /**
+     * Build the embed and its link buttons into a {@link Message}. The result is cached until this builder is next
+     * modified.
+     *
+     * @return the built {@link Message}
+     */
     public @Nonnull
     Message buildMessage() {
-        return new MessageBuilder().setEmbeds(super.build()).setActionRows(
-                ActionRow.of(buttons)
-        ).build();
+        Message message = built;
+        if (message == null) {
+            message = new MessageBuilder().setEmbeds(super.build()).setActionRows(
+                    ActionRow.of(buttons)
+            ).build();
+            if (!exposed)
+                built = message;
+        }
+        return message;
+    }
+
+    /**
+     * Discard the cached {@link #buildMessage() message} after a change to this builder.
+     *
+     * @return this {@link LinkBuilder} instance for chaining
+     */
+    private LinkBuilder changed() {
+        built = null;
+        return this;
+    }
+
+    @NotNull
+    public LinkBuilder setDescription(@Nullable CharSequence description) {
+        super.setDescription(description);
+        return changed();
+    }
+
+    @NotNull
+    public StringBuilder getDescriptionBuilder() {
+        exposed = true;
+        changed();
+        return super.getDescriptionBuilder();
+    }
+
+    @NotNull
+    public List<MessageEmbed.Field> getFields() {
+        exposed = true;
+        changed();
+        return super.getFields();
     }
 
     @NotNull
     public LinkBuilder clear() {
         super.clear();
-        return this;
+        return changed();
     }
 
     @NotNull
     public LinkBuilder setTitle(@Nullable String title) {
         super.setTitle(title);
-        return this;
+        return changed();
     }
 
     @NotNull
     public LinkBuilder setTitle(@Nullable String title, @Nullable String url) {
         super.setTitle(title, url);
-        return this;
+        return changed();
     }
 
     @NotNull
     public LinkBuilder appendDescription(@NotNull CharSequence description) {
         super.appendDescription(description);
-        return this;
+        return changed();
     }
 
     @NotNull
     public LinkBuilder setTimestamp(@Nullable TemporalAccessor temporal) {
         super.setTimestamp(temporal);
-        return this;
+        return changed();
     }
 
     @NotNull
     public LinkBuilder setColor(@Nullable Color color) {
         super.setColor(color);
-        return this;
+        return changed();
     }
 
     @NotNull
     public LinkBuilder setColor(int color) {
         super.setColor(color);
-        return this;
+        return changed();
     }
 
     @NotNull
     public LinkBuilder setThumbnail(@Nullable String url) {
         super.setThumbnail(url);
-        return this;
+        return changed();
     }
 
     @NotNull
     public LinkBuilder setImage(@Nullable String url) {
         super.setImage(url);
-        return this;
+        return changed();
     }
 
     @NotNull
     public LinkBuilder setAuthor(@Nullable String name) {
         super.setAuthor(name);
-        return this;
+        return changed();
     }
 
     @NotNull
     public LinkBuilder setAuthor(@Nullable String name, @Nullable String url) {
         super.setAuthor(name, url);
-        return this;
+        return changed();
     }
 
     @NotNull
     public LinkBuilder setAuthor(@Nullable String name, @Nullable String url, @Nullable String iconUrl) {
         super.setAuthor(name, url, iconUrl);
-        return this;
+        return changed();
     }
 
     @NotNull
     public LinkBuilder setFooter(@Nullable String text) {
         super.setFooter(text);
-        return this;
+        return changed();
     }
 
     @NotNull
     public LinkBuilder setFooter(@Nullable String text, @Nullable String iconUrl) {
         super.setFooter(text, iconUrl);
-        return this;
+        return changed();
     }
 
     @NotNull
     public LinkBuilder addField(@Nullable MessageEmbed.Field field) {
         super.addField(field);
-        return this;
+        return changed();
     }
 
     @NotNull
     public LinkBuilder addField(@Nullable String name, @Nullable String value, boolean inline) {
         super.addField(name, value, inline);
-        return this;
+        return changed();
     }
 
     @NotNull
     public LinkBuilder addBlankField(boolean inline) {
         super.addBlankField(inline);
-        return this;
+        return changed();
     }
 
     @NotNull
     public LinkBuilder clearFields() {
         super.clearFields();
-        return this;
+        return changed();
     }
 }
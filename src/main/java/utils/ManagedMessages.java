@@ -0,0 +1,327 @@
+package utils;
+
+import net.dv8tion.jda.api.entities.Message;
+import net.dv8tion.jda.api.entities.MessageEmbed;
+import net.dv8tion.jda.api.entities.TextChannel;
+import net.dv8tion.jda.api.exceptions.ErrorResponseException;
+import net.dv8tion.jda.api.interactions.components.ActionRow;
+import net.dv8tion.jda.api.requests.ErrorResponse;
+import net.dv8tion.jda.internal.utils.JDALogger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import utils.OutboundScheduler.Priority;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class keeps sections of bot-owned messages, such as the embeds in #rules, in sync with their definitions.
+ * <p>
+ * For every message in a section, the id of the posted message and a hash of its content are stored in
+ * {@link Bot#MANAGED_MESSAGES_FILE}. When a section is {@link #sync(String, TextChannel, List) synced}, each message is
+ * compared with its stored hash and only the ones that changed are edited in place. Messages added to the end of a
+ * section are sent, and messages removed from the end are deleted. If nothing changed, no requests are made, and since
+ * messages are edited rather than reposted, members aren't notified of updates.
+ * <p>
+ * The first time a section is synced, or if one of its messages has been deleted by hand, the section is rebuilt: the
+ * most recent messages in the channel are cleared and every message is sent again.
+ */
+public class ManagedMessages {
+    private static final Logger LOG = JDALogger.getLog(ManagedMessages.class);
+
+    /**
+     * The number of recent messages cleared from a channel when a section is rebuilt.
+     */
+    private static final int REBUILD_CLEAR_COUNT = 10;
+
+    private static final Properties state = new Properties();
+    private static boolean loaded;
+
+    /**
+     * Bring a section of messages in a channel up to date.
+     *
+     * @param section  the name of the section. This must be unique across the bot.
+     * @param channel  the channel the section is posted in
+     * @param messages the messages that make up the section, in order
+     * @return a future that completes with what was changed
+     */
+    @NotNull
+    public static CompletableFuture<Result> sync(@NotNull String section, @NotNull TextChannel channel,
+                                                 @NotNull List<Message> messages) {
+        List<String> hashes = new ArrayList<>(messages.size());
+        for (Message message : messages)
+            hashes.add(hash(message));
+
+        int storedCount;
+        synchronized (state) {
+            load();
+            storedCount = getStoredCount(section, channel);
+        }
+
+        if (storedCount < 0)
+            return rebuild(section, channel, messages, hashes);
+
+        Result result = new Result();
+        List<CompletableFuture<?>> requests = new ArrayList<>();
+
+        // Edit the messages that changed
+        for (int i = 0; i < Math.min(storedCount, messages.size()); i++) {
+            int index = i;
+            if (hashes.get(i).equals(get(section, i, "hash"))) {
+                result.unchanged.incrementAndGet();
+                continue;
+            }
+
+            long id = Long.parseLong(get(section, i, "id"));
+            requests.add(OutboundScheduler.submit(Priority.ANNOUNCEMENT, channel.editMessageById(id, messages.get(i)))
+                    .thenRun(() -> {
+                        result.edited.incrementAndGet();
+                        record(section, index, id, hashes.get(index));
+                    }));
+        }
+
+        // Delete the messages that were removed from the end of the section
+        for (int i = messages.size(); i < storedCount; i++) {
+            long id = Long.parseLong(get(section, i, "id"));
+            requests.add(OutboundScheduler.submit(Priority.ANNOUNCEMENT, channel.deleteMessageById(id))
+                    .thenRun(() -> result.deleted.incrementAndGet()));
+        }
+
+        return CompletableFuture.allOf(requests.toArray(new CompletableFuture[0]))
+                // New messages go at the end, so they're only sent once the edits are done
+                .thenCompose(v -> sendInOrder(section, channel, messages, hashes, storedCount, result))
+                .thenApply(v -> {
+                    synchronized (state) {
+                        for (int i = messages.size(); i < storedCount; i++)
+                            forget(section, i);
+                        state.setProperty(section + ".count", String.valueOf(messages.size()));
+                    }
+                    return result;
+                })
+                // Save whatever was recorded, even if a request failed part way through
+                .whenComplete((r, error) -> save())
+                .exceptionallyCompose(error -> {
+                    Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                    if (cause instanceof ErrorResponseException e
+                        && e.getErrorResponse() == ErrorResponse.UNKNOWN_MESSAGE) {
+                        LOG.warn("A message in the " + section + " section was deleted; rebuilding the section");
+                        return rebuild(section, channel, messages, hashes);
+                    }
+                    return CompletableFuture.failedFuture(cause);
+                });
+    }
+
+    /**
+     * Clear the most recent messages in the channel and send the whole section again.
+     */
+    @NotNull
+    private static CompletableFuture<Result> rebuild(@NotNull String section, @NotNull TextChannel channel,
+                                                     @NotNull List<Message> messages, @NotNull List<String> hashes) {
+        Result result = new Result();
+        return OutboundScheduler.submit(Priority.MODERATION, channel.getHistory().retrievePast(REBUILD_CLEAR_COUNT))
+                .thenCompose(old -> {
+                    result.deleted.addAndGet(old.size());
+                    return OutboundScheduler.submit(Priority.MODERATION, () -> CompletableFuture.allOf(
+                            channel.purgeMessages(old).toArray(new CompletableFuture[0])));
+                })
+                .thenCompose(v -> {
+                    synchronized (state) {
+                        state.setProperty(section + ".channel", channel.getId());
+                        state.setProperty(section + ".count", "0");
+                    }
+                    return sendInOrder(section, channel, messages, hashes, 0, result);
+                })
+                .thenApply(v -> result)
+                .whenComplete((r, error) -> save());
+    }
+
+    /**
+     * Send the messages of a section from <code>start</code> onwards, one at a time so that they appear in order. The
+     * stored count is raised after each message, so if a send fails, the next sync sends only the messages that are
+     * still missing.
+     */
+    @NotNull
+    private static CompletableFuture<Void> sendInOrder(@NotNull String section, @NotNull TextChannel channel,
+                                                       @NotNull List<Message> messages, @NotNull List<String> hashes,
+                                                       int start, @NotNull Result result) {
+        CompletableFuture<Void> chain = CompletableFuture.completedFuture(null);
+        for (int i = start; i < messages.size(); i++) {
+            int index = i;
+            chain = chain.thenCompose(v -> OutboundScheduler.submit(
+                    Priority.ANNOUNCEMENT, channel.sendMessage(messages.get(index)))).thenAccept(sent -> {
+                result.sent.incrementAndGet();
+                synchronized (state) {
+                    record(section, index, sent.getIdLong(), hashes.get(index));
+                    state.setProperty(section + ".count", String.valueOf(index + 1));
+                }
+            });
+        }
+        return chain;
+    }
+
+    /**
+     * Hash everything about a message that is shown in Discord.
+     */
+    @NotNull
+    private static String hash(@NotNull Message message) {
+        StringBuilder s = new StringBuilder(message.getContentRaw());
+        for (MessageEmbed embed : message.getEmbeds())
+            s.append('\n').append(embed.toData());
+        for (ActionRow row : message.getActionRows())
+            s.append('\n').append(row.toData());
+
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(s.toString().getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Get the number of messages stored for a section, or <code>-1</code> if the section must be rebuilt: it was never
+     * posted, it was posted in another channel, or the id of one of its messages is missing. This must be called while
+     * holding the lock on {@link #state}.
+     */
+    private static int getStoredCount(@NotNull String section, @NotNull TextChannel channel) {
+        if (!channel.getId().equals(state.getProperty(section + ".channel")))
+            return -1;
+
+        try {
+            int count = Integer.parseInt(state.getProperty(section + ".count", "-1"));
+            for (int i = 0; i < count; i++)
+                Long.parseLong(state.getProperty(section + "." + i + ".id"));
+            return count;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    @Nullable
+    private static String get(@NotNull String section, int index, @NotNull String field) {
+        synchronized (state) {
+            return state.getProperty(section + "." + index + "." + field);
+        }
+    }
+
+    private static void record(@NotNull String section, int index, long id, @NotNull String hash) {
+        synchronized (state) {
+            state.setProperty(section + "." + index + ".id", String.valueOf(id));
+            state.setProperty(section + "." + index + ".hash", hash);
+        }
+    }
+
+    private static void forget(@NotNull String section, int index) {
+        synchronized (state) {
+            state.remove(section + "." + index + ".id");
+            state.remove(section + "." + index + ".hash");
+        }
+    }
+
+    /**
+     * Read the registry file the first time it's needed. This must be called while holding the lock on
+     * {@link #state}.
+     */
+    private static void load() {
+        if (loaded)
+            return;
+        loaded = true;
+
+        Path path = getPath();
+        if (path == null || !Files.exists(path))
+            return;
+
+        try (InputStream in = Files.newInputStream(path)) {
+            state.load(in);
+        } catch (IOException e) {
+            LOG.error("Failed to read the managed message registry; every section will be rebuilt", e);
+            state.clear();
+        }
+    }
+
+    /**
+     * Write the registry file. It is written to a temporary file first so that a crash can't leave it half written.
+     */
+    private static void save() {
+        Path path = getPath();
+        if (path == null)
+            return;
+
+        synchronized (state) {
+            try {
+                Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+                try (OutputStream out = Files.newOutputStream(temp)) {
+                    state.store(out, "Messages posted by the bot. Delete this file to repost every section.");
+                }
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                LOG.error("Failed to write the managed message registry", e);
+            }
+        }
+    }
+
+    @Nullable
+    private static Path getPath() {
+        return Bot.MANAGED_MESSAGES_FILE == null || Bot.MANAGED_MESSAGES_FILE.isBlank()
+                ? null : Path.of(Bot.MANAGED_MESSAGES_FILE);
+    }
+
+    /**
+     * The changes made by a sync.
+     */
+    public static class Result {
+        private final AtomicInteger unchanged = new AtomicInteger();
+        private final AtomicInteger edited = new AtomicInteger();
+        private final AtomicInteger sent = new AtomicInteger();
+        private final AtomicInteger deleted = new AtomicInteger();
+
+        public int getUnchanged() {
+            return unchanged.get();
+        }
+
+        public int getEdited() {
+            return edited.get();
+        }
+
+        public int getSent() {
+            return sent.get();
+        }
+
+        public int getDeleted() {
+            return deleted.get();
+        }
+
+        /**
+         * Get the number of messages edited, sent, or deleted.
+         *
+         * @return the request count
+         */
+        public int getRequests() {
+            return getEdited() + getSent() + getDeleted();
+        }
+
+        @Override
+        public String toString() {
+            if (getRequests() == 0)
+                return "nothing changed";
+            return String.format("%d edited, %d sent, %d deleted, %d unchanged",
+                    getEdited(), getSent(), getDeleted(), getUnchanged());
+        }
+    }
+}
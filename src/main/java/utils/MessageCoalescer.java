@@ -0,0 +1,270 @@
+package utils;
+
+import net.dv8tion.jda.api.MessageBuilder;
+import net.dv8tion.jda.api.entities.Message;
+import net.dv8tion.jda.api.entities.MessageChannel;
+import net.dv8tion.jda.api.entities.MessageEmbed;
+import net.dv8tion.jda.api.interactions.components.ActionRow;
+import net.dv8tion.jda.api.requests.RestAction;
+import net.dv8tion.jda.internal.entities.DataMessage;
+import org.jetbrains.annotations.NotNull;
+import utils.OutboundScheduler.Priority;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class merges messages sent to the same channel in quick succession into fewer sends. Rather than sending each
+ * message immediately, it is held for {@link Bot#COALESCE_WINDOW} milliseconds. Everything queued for the channel in
+ * that time is then packed into as few messages as possible, each with up to {@value #MAX_EMBEDS} embeds and
+ * {@value #MAX_EMBED_LENGTH} characters of embed text.
+ * <p>
+ * Messages are always sent in the order they were queued, and they only merge when the result looks the same as
+ * sending them separately: text content can only appear on the first message of a merged send (since Discord shows it
+ * above every embed), and buttons can only appear on the last one (since Discord shows them below every embed).
+ * Messages with different text-to-speech or allowed mention settings are never merged, so each send keeps the
+ * settings of every message in it.
+ * <p>
+ * Announcements, including each send of a {@link announcements.Broadcast Broadcast}, and log channel messages are sent
+ * through here, so announcements that come due in the same channel together, or a burst of log messages, take fewer
+ * sends. Messages whose ids are tracked one by one, such as those kept by {@link ManagedMessages}, are sent directly,
+ * since a merged send only has one id.
+ * <p>
+ * The window timer runs on JDA's rate limit pool, so the coalescer doesn't need threads of its own. A channel's queue
+ * is dropped once it is flushed, so channels that are no longer sent to don't keep one. If the window is
+ * <code>0</code>, messages are sent immediately.
+ */
+public class MessageCoalescer {
+    /**
+     * The maximum number of embeds Discord allows in one message.
+     */
+    public static final int MAX_EMBEDS = 10;
+
+    /**
+     * The maximum total length of all the embeds in one message.
+     */
+    public static final int MAX_EMBED_LENGTH = 6000;
+
+    private static final Map<Long, ChannelQueue> queues = new ConcurrentHashMap<>();
+
+    /**
+     * Queue a message to be sent in a channel, merging it with any others sent there within the window.
+     *
+     * @param channel the channel to send the message in
+     * @param message the message to send
+     * @return a future that completes with the sent {@link Message}. If this message was merged with others, every one
+     * of them completes with the same merged message.
+     */
+    public static CompletableFuture<Message> send(@NotNull MessageChannel channel, @NotNull Message message) {
+        return send(channel, message, Priority.ANNOUNCEMENT);
+    }
+
+    /**
+     * Queue a message to be sent in a channel with the given {@link Priority}, merging it with any others sent there
+     * within the window. A merged send uses the most important priority of the messages in it.
+     *
+     * @param channel  the channel to send the message in
+     * @param message  the message to send
+     * @param priority the priority class of the send
+     * @return a future that completes with the sent {@link Message}. If this message was merged with others, every one
+     * of them completes with the same merged message.
+     */
+    public static CompletableFuture<Message> send(@NotNull MessageChannel channel, @NotNull Message message,
+                                                  @NotNull Priority priority) {
+        if (Bot.COALESCE_WINDOW <= 0)
+            return OutboundScheduler.submit(priority, channel.sendMessage(message));
+
+        CompletableFuture<Message> future = new CompletableFuture<>();
+        while (true) {
+            ChannelQueue queue = queues.computeIfAbsent(channel.getIdLong(), id -> new ChannelQueue());
+            synchronized (queue) {
+                // A queue that was flushed and removed in the meantime is replaced by a new one
+                if (queue.removed)
+                    continue;
+
+                queue.entries.add(new Entry(message, priority, future));
+                queue.channel = channel;
+                if (!queue.scheduled) {
+                    queue.scheduled = true;
+                    channel.getJDA().getRateLimitPool().schedule(
+                            () -> flush(queue), Bot.COALESCE_WINDOW, TimeUnit.MILLISECONDS);
+                }
+            }
+            return future;
+        }
+    }
+
+    /**
+     * Queue one or more embeds to be sent in a channel as a single message, merging it with any others sent there
+     * within the window.
+     *
+     * @param channel the channel to send the embeds in
+     * @param embeds  the embeds to send
+     * @return a future that completes with the sent {@link Message}
+     * @see #send(MessageChannel, Message)
+     */
+    public static CompletableFuture<Message> send(@NotNull MessageChannel channel, @NotNull MessageEmbed... embeds) {
+        return send(channel, new MessageBuilder().setEmbeds(embeds).build());
+    }
+
+    /**
+     * Queue a message like {@link #send(MessageChannel, Message, Priority)}, but without a result. Failures are passed
+     * to JDA's {@link RestAction#getDefaultFailure() default failure handler}, just like {@link RestAction#queue()}.
+     *
+     * @param channel  the channel to send the message in
+     * @param message  the message to send
+     * @param priority the priority class of the send
+     */
+    public static void queue(@NotNull MessageChannel channel, @NotNull Message message, @NotNull Priority priority) {
+        try {
+            send(channel, message, priority).whenComplete((sent, error) -> {
+                if (error != null)
+                    RestAction.getDefaultFailure().accept(error);
+            });
+        } catch (Exception e) {
+            RestAction.getDefaultFailure().accept(e);
+        }
+    }
+
+    /**
+     * Get the number of channels that have messages waiting for their window to end.
+     *
+     * @return the channel count
+     */
+    static int getWaitingChannels() {
+        return queues.size();
+    }
+
+    /**
+     * Send everything queued for a channel, merging as many consecutive messages as possible into each send.
+     */
+    private static void flush(@NotNull ChannelQueue queue) {
+        List<Entry> entries;
+        MessageChannel channel;
+        synchronized (queue) {
+            entries = queue.entries;
+            channel = queue.channel;
+            queue.entries = new ArrayList<>();
+            queue.scheduled = false;
+            // The queue is empty now, so it's removed until the channel is sent to again
+            queue.removed = queues.remove(channel.getIdLong(), queue);
+        }
+
+        int start = 0;
+        while (start < entries.size()) {
+            int end = start + 1;
+            while (end < entries.size() && canMerge(entries, start, end))
+                end++;
+
+            send(channel, entries.subList(start, end));
+            start = end;
+        }
+    }
+
+    /**
+     * Determine whether the entry at index <code>next</code> can be added to the send made up of the entries from
+     * <code>start</code> up to <code>next</code>.
+     */
+    private static boolean canMerge(@NotNull List<Entry> entries, int start, int next) {
+        Message candidate = entries.get(next).message;
+        if (!candidate.getContentRaw().isEmpty() || candidate.getEmbeds().isEmpty())
+            return false;
+        if (!sameSettings(entries.get(start).message, candidate))
+            return false;
+
+        int embeds = candidate.getEmbeds().size();
+        int length = embedLength(candidate);
+        for (int i = start; i < next; i++) {
+            Message message = entries.get(i).message;
+            // Buttons have to stay below every embed they were sent with
+            if (!message.getActionRows().isEmpty())
+                return false;
+            embeds += message.getEmbeds().size();
+            length += embedLength(message);
+        }
+
+        return embeds <= MAX_EMBEDS && length <= MAX_EMBED_LENGTH;
+    }
+
+    /**
+     * Determine whether two messages have the same settings apart from their content, embeds, and buttons. Only then
+     * does a merged send behave like sending them separately.
+     */
+    private static boolean sameSettings(@NotNull Message a, @NotNull Message b) {
+        if (a.isTTS() != b.isTTS())
+            return false;
+        if (a instanceof DataMessage x && b instanceof DataMessage y)
+            return Objects.equals(x.getAllowedMentions(), y.getAllowedMentions())
+                   && Set.of(x.getMentionedUsersWhitelist()).equals(Set.of(y.getMentionedUsersWhitelist()))
+                   && Set.of(x.getMentionedRolesWhitelist()).equals(Set.of(y.getMentionedRolesWhitelist()));
+        return !(a instanceof DataMessage) && !(b instanceof DataMessage);
+    }
+
+    private static int embedLength(@NotNull Message message) {
+        int length = 0;
+        for (MessageEmbed embed : message.getEmbeds())
+            length += embed.getLength();
+        return length;
+    }
+
+    /**
+     * Send a group of entries as one message, and complete each entry's future with the result.
+     */
+    private static void send(@NotNull MessageChannel channel, @NotNull List<Entry> batch) {
+        Message message;
+        if (batch.size() == 1) {
+            message = batch.get(0).message;
+        } else {
+            List<MessageEmbed> embeds = new ArrayList<>();
+            for (Entry entry : batch)
+                embeds.addAll(entry.message.getEmbeds());
+
+            // Copying the first message keeps its settings, which every message in the batch shares
+            Message first = batch.get(0).message;
+            List<ActionRow> rows = batch.get(batch.size() - 1).message.getActionRows();
+            message = new MessageBuilder(first)
+                    .setContent(first.getContentRaw().isEmpty() ? null : first.getContentRaw())
+                    .setEmbeds(embeds)
+                    .setActionRows(rows)
+                    .build();
+        }
+
+        List<CompletableFuture<Message>> futures = new ArrayList<>(batch.size());
+        Priority priority = batch.get(0).priority;
+        for (Entry entry : batch) {
+            futures.add(entry.future);
+            if (entry.priority.ordinal() < priority.ordinal())
+                priority = entry.priority;
+        }
+
+        // The outbound scheduler and JDA both send requests in the order they are queued, so batches stay in order
+        try {
+            OutboundScheduler.submit(priority, channel.sendMessage(message)).whenComplete((sent, e) -> {
+                for (CompletableFuture<Message> future : futures)
+                    if (e == null)
+                        future.complete(sent);
+                    else
+                        future.completeExceptionally(e);
+            });
+        } catch (Exception e) {
+            for (CompletableFuture<Message> future : futures)
+                future.completeExceptionally(e);
+        }
+    }
+
+    private record Entry(Message message, Priority priority, CompletableFuture<Message> future) {
+    }
+
+    private static class ChannelQueue {
+        private List<Entry> entries = new ArrayList<>();
+        private MessageChannel channel;
+        private boolean scheduled;
+        private boolean removed;
+    }
+}
@@ -0,0 +1,220 @@
+package utils;
+
+import net.dv8tion.jda.api.requests.RestAction;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * This class sits in front of JDA for every outbound request that isn't latency-critical, so that a big purge or
+ * broadcast can't hold up replies to slash commands.
+ * <p>
+ * JDA sends requests in the order they are queued, and everything shares Discord's global rate limit. If a thousand
+ * announcement sends are queued at once, a command reply queued after them waits for all of them. Instead, requests are
+ * submitted here with a {@link Priority}, and only {@link #MAX_IN_FLIGHT} of them are handed to JDA at a time. When
+ * one finishes, the next request is taken from the highest priority class with work waiting. Lower classes yield in two
+ * ways: they never start while a higher class is waiting, and each is limited to a share of the budget, so there is
+ * always room for more important work to start immediately.
+ * <p>
+ * {@link Priority#INTERACTION Interaction} responses are never held back. They start immediately, but still count
+ * against the budget so that lower classes back off while they are in flight.
+ */
+public class OutboundScheduler {
+    /**
+     * The maximum number of requests handed to JDA at once, excluding interaction responses.
+     */
+    public static final int MAX_IN_FLIGHT = 16;
+
+    public enum Priority {
+        /**
+         * Replies to slash commands and other interactions. Discord expects these within three seconds.
+         */
+        INTERACTION(1),
+
+        /**
+         * Moderation actions, such as deleting messages.
+         */
+        MODERATION(1),
+
+        /**
+         * Announcements and other channel posts.
+         */
+        ANNOUNCEMENT(0.75),
+
+        /**
+         * Log messages, which can wait the longest.
+         */
+        LOG(0.5);
+
+        /**
+         * The number of requests that can be in flight before this class stops starting new ones.
+         */
+        private final int limit;
+
+        Priority(double share) {
+            this.limit = Math.max(1, (int) (MAX_IN_FLIGHT * share));
+        }
+    }
+
+    private static final Priority[] PRIORITIES = Priority.values();
+
+    @SuppressWarnings("unchecked")
+    private static final Deque<Task<?>>[] queues = new Deque[PRIORITIES.length];
+
+    static {
+        for (int i = 0; i < queues.length; i++)
+            queues[i] = new ArrayDeque<>();
+    }
+
+    /**
+     * The number of requests started but not yet finished. This is guarded by {@link #queues}.
+     */
+    private static int inFlight;
+
+    /**
+     * Submit a request with the given priority. It is handed to JDA once there is room in the budget and no more
+     * important request is waiting.
+     *
+     * @param priority the priority class of the request
+     * @param action   the request to send
+     * @param <T>      the type of the result
+     * @return a future that completes with the result of the request
+     */
+    public static <T> CompletableFuture<T> submit(@NotNull Priority priority, @NotNull RestAction<T> action) {
+        return submit(priority, action::submit);
+    }
+
+    /**
+     * Submit a request with the given priority, like {@link #submit(Priority, RestAction)}, but without a result.
+     * Failures are passed to JDA's {@link RestAction#getDefaultFailure() default failure handler}, just like {@link
+     * RestAction#queue()}.
+     *
+     * @param priority the priority class of the request
+     * @param action   the request to send
+     */
+    public static void queue(@NotNull Priority priority, @NotNull RestAction<?> action) {
+        submit(priority, action).whenComplete((result, error) -> {
+            if (error != null)
+                RestAction.getDefaultFailure().accept(error);
+        });
+    }
+
+    /**
+     * Submit a request that is started by a {@link Supplier} rather than a {@link RestAction}. This is useful for JDA
+     * methods that issue several requests at once, such as purging messages.
+     *
+     * @param priority the priority class of the request
+     * @param request  starts the request and returns a future for its result
+     * @param <T>      the type of the result
+     * @return a future that completes with the result of the request
+     */
+    public static <T> CompletableFuture<T> submit(@NotNull Priority priority,
+                                                  @NotNull Supplier<CompletableFuture<T>> request) {
+        Task<T> task = new Task<>(request);
+
+        boolean immediate = priority == Priority.INTERACTION;
+        synchronized (queues) {
+            if (immediate)
+                inFlight++;
+            else
+                queues[priority.ordinal()].add(task);
+        }
+
+        if (immediate)
+            task.start();
+        else
+            drain();
+
+        return task.future;
+    }
+
+    /**
+     * Get the number of requests waiting in each priority class.
+     *
+     * @return the queue lengths, indexed by {@link Priority#ordinal()}
+     */
+    public static int[] getQueueLengths() {
+        synchronized (queues) {
+            int[] lengths = new int[queues.length];
+            for (int i = 0; i < queues.length; i++)
+                lengths[i] = queues[i].size();
+            return lengths;
+        }
+    }
+
+    /**
+     * Get the number of requests that have been handed to JDA and haven't finished yet.
+     *
+     * @return the in-flight count
+     */
+    public static int getInFlight() {
+        synchronized (queues) {
+            return inFlight;
+        }
+    }
+
+    /**
+     * Start as many waiting requests as the budget allows, highest priority first.
+     */
+    private static void drain() {
+        List<Task<?>> ready = new ArrayList<>();
+
+        synchronized (queues) {
+            for (Priority priority : PRIORITIES) {
+                Deque<Task<?>> queue = queues[priority.ordinal()];
+                while (!queue.isEmpty() && inFlight < priority.limit) {
+                    ready.add(queue.poll());
+                    inFlight++;
+                }
+
+                // Lower classes don't start anything while a more important request is waiting
+                if (!queue.isEmpty())
+                    break;
+            }
+        }
+
+        for (Task<?> task : ready)
+            task.start();
+    }
+
+    private static void release() {
+        synchronized (queues) {
+            inFlight--;
+        }
+        drain();
+    }
+
+    private static final class Task<T> {
+        private final Supplier<CompletableFuture<T>> request;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+
+        private Task(@NotNull Supplier<CompletableFuture<T>> request) {
+            this.request = request;
+        }
+
+        private void start() {
+            CompletableFuture<T> result;
+            try {
+                result = request.get();
+            } catch (Exception e) {
+                // Some requests fail before they are sent, for example because of missing permissions
+                release();
+                future.completeExceptionally(e);
+                return;
+            }
+
+            result.whenComplete((value, error) -> {
+                release();
+                if (error == null)
+                    future.complete(value);
+                else
+                    future.completeExceptionally(error);
+            });
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package utils;
+
+import net.dv8tion.jda.api.OnlineStatus;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.awt.Color;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.*;
+
+/**
+ * This class binds the properties in <code>bot.properties</code> to the fields in {@link Bot}. Each field is resolved
+ * once, when the class loads, into a parser for its type and the {@link Field} that sets it. Loading the properties is
+ * then a map lookup, a parse, and a field write per property, with no field lookups or chain of type checks.
+ * <p>
+ * The fields are set through {@link Field#set(Object, Object)} rather than a {@link java.lang.invoke.MethodHandle}.
+ * <code>PropertyBinderBenchmark</code> measures both: in a new JVM, creating a setter handle for each {@link Bot}
+ * field and adapting it with <code>asType()</code> made the first load about 43 ms instead of 7 ms, while a warm
+ * reload took 7 to 9 us either way, within the error of the measurement.
+ * <p>
+ * Parsers are registered by type in {@link Parser}. To support a new field type, add a parser there. Fields whose
+ * type has no parser, like {@link Bot#ACTIVITY}, are computed from other properties and can't be set from the file.
+ * <p>
+ * {@link #parseAll(Properties)} checks every property in one pass and reports every problem at once: unknown
+ * properties, fields of an unsupported type, and values that don't parse. Parsing is strict, so a boolean must be
+ * <code>true</code> or <code>false</code> and a status must be one JDA can set.
+ */
+public class PropertyBinder {
+    private static final Map<Class<?>, Class<?>> WRAPPERS = Map.of(
+            boolean.class, Boolean.class,
+            int.class, Integer.class,
+            double.class, Double.class,
+            long.class, Long.class,
+            float.class, Float.class,
+            short.class, Short.class,
+            char.class, Character.class,
+            byte.class, Byte.class
+    );
+
+    /**
+     * Every {@link Bot} field, keyed by its name.
+     */
+    private static final Map<String, Binding> bindings = resolve();
+
+    /**
+     * Parse every property into the type of its {@link Bot} field, checking them all in one pass. Nothing is written
+     * to {@link Bot}.
+     *
+     * @param properties the properties to parse
+     * @return the parsed values and every problem found
+     */
+    @NotNull
+    public static Parsed parseAll(@NotNull Properties properties) {
+        Map<String, Object> values = new HashMap<>();
+        SortedMap<String, String> problems = new TreeMap<>();
+        for (String property : properties.stringPropertyNames())
+            try {
+                values.put(getFieldName(property), parse(property, properties.getProperty(property)));
+            } catch (IllegalArgumentException e) {
+                problems.put(property, e.getMessage());
+            }
+        return new Parsed(Map.copyOf(values), Collections.unmodifiableSortedMap(problems));
+    }
+
+    /**
+     * Parse the value of a property into the type of its {@link Bot} field.
+     *
+     * @param property the name of the property, in any case
+     * @param value    the value from the file
+     * @return the parsed value
+     * @throws IllegalArgumentException if there is no such field, the field can't be set from the file, or the value
+     *                                  is invalid
+     */
+    @NotNull
+    public static Object parse(@NotNull String property, @NotNull String value) {
+        Binding binding = bindings.get(getFieldName(property));
+        if (binding == null)
+            throw new IllegalArgumentException("There is no static Bot field '" + getFieldName(property) + "'");
+        if (binding.field() == null)
+            throw new IllegalArgumentException("The Bot field '" + binding.name() + "' must be public, static, and " +
+                                               "not final");
+        if (binding.parser() == null)
+            throw new IllegalArgumentException("The Bot field '" + binding.name() + "' has unsupported type " +
+                                               binding.type().getSimpleName());
+
+        try {
+            return binding.parser().parse(value);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("The value '" + value + "' is not a valid " +
+                                               binding.type().getSimpleName(), e);
+        }
+    }
+
+    /**
+     * Set a {@link Bot} field to a value returned by {@link #parse(String, String)}.
+     *
+     * @param property the name of the property, in any case
+     * @param value    the parsed value
+     */
+    public static void set(@NotNull String property, @NotNull Object value) {
+        Binding binding = bindings.get(getFieldName(property));
+        if (binding == null || binding.field() == null)
+            throw new IllegalArgumentException("The Bot field '" + getFieldName(property) + "' can't be set");
+
+        try {
+            binding.field().set(null, value);
+        } catch (IllegalAccessException e) {
+            // resolve() only keeps fields that are public and not final
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Set a {@link Bot} field back to the value it had before any properties were loaded. This is used when a property
+     * is removed from the file.
+     *
+     * @param property the name of the property, in any case
+     */
+    public static void reset(@NotNull String property) {
+        Binding binding = bindings.get(getFieldName(property));
+        if (binding == null || binding.field() == null)
+            throw new IllegalArgumentException("The Bot field '" + getFieldName(property) + "' can't be set");
+
+        try {
+            binding.field().set(null, binding.initial());
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Get the name of the {@link Bot} field for a property.
+     *
+     * @param property the name of the property, in any case
+     * @return the field name
+     */
+    @NotNull
+    public static String getFieldName(@NotNull String property) {
+        return property.toUpperCase(Locale.ROOT);
+    }
+
+    /**
+     * Resolve the parser of every {@link Bot} field, and record its initial value. Problems are left on the binding
+     * rather than thrown, so that they are only reported for fields that the properties actually use.
+     */
+    @NotNull
+    private static Map<String, Binding> resolve() {
+        Map<String, Binding> resolved = new HashMap<>();
+
+        for (Field field : Bot.class.getDeclaredFields()) {
+            int modifiers = field.getModifiers();
+            Class<?> type = field.getType();
+            String name = field.getName();
+
+            boolean settable = Modifier.isPublic(modifiers) && Modifier.isStatic(modifiers)
+                               && !Modifier.isFinal(modifiers);
+            Object initial = null;
+            if (settable)
+                try {
+                    // Nothing has been loaded yet, since every property is set through this class
+                    initial = field.get(null);
+                } catch (IllegalAccessException e) {
+                    throw new IllegalStateException(e);
+                }
+            resolved.put(name, new Binding(name, type, Parser.forType(WRAPPERS.getOrDefault(type, type)),
+                    settable ? field : null, initial));
+        }
+
+        return Map.copyOf(resolved);
+    }
+
+    /**
+     * The result of {@link #parseAll(Properties)}.
+     *
+     * @param values   the parsed value of each valid property, keyed by {@link Bot} field name
+     * @param problems a description of why each invalid property couldn't be parsed, keyed by property name
+     */
+    public record Parsed(@NotNull Map<String, Object> values, @NotNull SortedMap<String, String> problems) {
+    }
+
+    /**
+     * How to set one {@link Bot} field. The <code>parser</code> is <code>null</code> if the type isn't supported, and
+     * the <code>field</code> is <code>null</code> if it can't be set. The <code>initial</code> value is the one the
+     * field had when this class loaded.
+     */
+    private record Binding(@NotNull String name, @NotNull Class<?> type, @Nullable Parser parser,
+                           @Nullable Field field, @Nullable Object initial) {
+    }
+
+    /**
+     * The parser for each supported field type. Primitive fields use the parser of their wrapper type.
+     * <p>
+     * This is an enum rather than a map of lambdas so that loading it doesn't bootstrap a lambda for every type during
+     * startup.
+     */
+    private enum Parser {
+        STRING(String.class),
+        BOOLEAN(Boolean.class),
+        INTEGER(Integer.class),
+        DOUBLE(Double.class),
+        LONG(Long.class),
+        FLOAT(Float.class),
+        SHORT(Short.class),
+        CHARACTER(Character.class),
+        BYTE(Byte.class),
+        ONLINE_STATUS(OnlineStatus.class),
+        COLOR(Color.class);
+
+        private final Class<?> type;
+
+        Parser(@NotNull Class<?> type) {
+            this.type = type;
+        }
+
+        /**
+         * Parse a value from <code>bot.properties</code>.
+         *
+         * @param value the value
+         * @return the parsed value
+         * @throws RuntimeException if the value is invalid
+         */
+        @NotNull
+        Object parse(@NotNull String value) {
+            return switch (this) {
+                case STRING -> value;
+                case BOOLEAN -> parseBoolean(value);
+                case INTEGER -> Integer.parseInt(value);
+                case DOUBLE -> Double.parseDouble(value);
+                case LONG -> Long.parseLong(value);
+                case FLOAT -> Float.parseFloat(value);
+                case SHORT -> Short.parseShort(value);
+                case CHARACTER -> parseCharacter(value);
+                case BYTE -> Byte.valueOf(value);
+                case ONLINE_STATUS -> parseOnlineStatus(value);
+                case COLOR -> new Color(Integer.parseInt(value, 16));
+            };
+        }
+
+        /**
+         * Parse <code>true</code> or <code>false</code>, in any case. Unlike {@link Boolean#parseBoolean(String)},
+         * anything else is rejected rather than read as <code>false</code>, so a typo like <code>ture</code> doesn't
+         * quietly turn a setting off.
+         */
+        private static boolean parseBoolean(@NotNull String value) {
+            if (value.equalsIgnoreCase("true"))
+                return true;
+            if (value.equalsIgnoreCase("false"))
+                return false;
+            throw new IllegalArgumentException("Expected true or false");
+        }
+
+        private static char parseCharacter(@NotNull String value) {
+            if (value.length() != 1)
+                throw new IllegalArgumentException("Expected a single character");
+            return value.charAt(0);
+        }
+
+        /**
+         * Parse an {@link OnlineStatus} from its key, such as <code>dnd</code>. {@link OnlineStatus#fromKey(String)}
+         * returns {@link OnlineStatus#UNKNOWN} for anything it doesn't recognize, which JDA can't set, so that is
+         * rejected.
+         */
+        @NotNull
+        private static OnlineStatus parseOnlineStatus(@NotNull String value) {
+            OnlineStatus status = OnlineStatus.fromKey(value);
+            if (status == OnlineStatus.UNKNOWN)
+                throw new IllegalArgumentException("Expected online, idle, dnd, invisible, or offline");
+            return status;
+        }
+
+        /**
+         * Get the parser for a type.
+         *
+         * @param type the type, which must not be primitive
+         * @return the parser, or <code>null</code> if the type isn't supported
+         */
+        @Nullable
+        static Parser forType(@NotNull Class<?> type) {
+            for (Parser parser : values())
+                if (parser.type == type)
+                    return parser;
+            return null;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package utils;
+
+import events.OnStartup;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * A {@link ResponseCache} holds a response that depends only on the {@link Bot} configuration, such as the embed sent
+ * by <code>/help</code>. The response is built the first time it's needed and reused until the configuration changes.
+ * <p>
+ * Every cache is tied to a global config version, which {@link OnStartup} increments with {@link #invalidateAll()}
+ * whenever the properties are loaded. The next {@link #get()} after that rebuilds the response. Cached values are
+ * shared between threads, so they must be immutable, like a built {@link net.dv8tion.jda.api.entities.MessageEmbed}
+ * or {@link net.dv8tion.jda.api.entities.Message}.
+ *
+ * @param <T> the type of the response
+ */
+public class ResponseCache<T> {
+    private static final AtomicLong configVersion = new AtomicLong();
+
+    private final Supplier<T> builder;
+    private volatile Entry<T> entry;
+
+    private ResponseCache(@NotNull Supplier<T> builder) {
+        this.builder = builder;
+    }
+
+    /**
+     * Create a cache for a response.
+     *
+     * @param builder builds the response from the current configuration. It must not return <code>null</code>.
+     * @param <T>     the type of the response
+     * @return the new cache
+     */
+    @NotNull
+    public static <T> ResponseCache<T> of(@NotNull Supplier<T> builder) {
+        return new ResponseCache<>(builder);
+    }
+
+    /**
+     * Mark every cached response as out of date. This must be called after the {@link Bot} configuration changes.
+     */
+    public static void invalidateAll() {
+        configVersion.incrementAndGet();
+    }
+
+    /**
+     * Get the current config version. It starts at 0 and increases by 1 each time the configuration is loaded.
+     *
+     * @return the config version
+     */
+    public static long getConfigVersion() {
+        return configVersion.get();
+    }
+
+    /**
+     * Get the response, building it if the configuration has changed since it was last built. Two threads may both
+     * rebuild an out of date response at once, in which case either result is kept.
+     *
+     * @return the response
+     */
+    @NotNull
+    public T get() {
+        long version = configVersion.get();
+        Entry<T> current = entry;
+        if (current == null || current.version() != version) {
+            current = new Entry<>(version, builder.get());
+            entry = current;
+        }
+        return current.value();
+    }
+
+    private record Entry<T>(long version, @NotNull T value) {
+    }
+}
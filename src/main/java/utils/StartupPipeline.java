@@ -0,0 +1,195 @@
+package utils;
+
+import net.dv8tion.jda.internal.utils.JDALogger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * A {@link StartupPipeline} runs the bot's startup tasks as a graph of named stages. Each stage starts as soon as every
+ * stage it depends on has finished, so independent stages run at the same time on a small pool of startup threads.
+ * <p>
+ * A stage can be a plain task, or an asynchronous one that returns a future, such as a request to Discord. Either way,
+ * the time from when the stage starts to when it finishes is recorded as a {@link Timing}. If a stage fails, the
+ * error is logged and every stage that depends on it is skipped.
+ */
+public class StartupPipeline {
+    private static final Logger LOG = JDALogger.getLog(StartupPipeline.class);
+
+    /**
+     * The number of threads that run the stages. Most startup work waits on Discord, so a few threads are enough.
+     */
+    private static final int THREADS = 4;
+
+    private final Map<String, Stage> stages = new LinkedHashMap<>();
+    private final List<Timing> timings = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * Add a stage that runs a task.
+     *
+     * @param name  the name of the stage
+     * @param task  the task
+     * @param after the names of the stages that must finish first. They must already have been added.
+     * @return this {@link StartupPipeline} instance for chaining
+     */
+    @NotNull
+    public StartupPipeline stage(@NotNull String name, @NotNull Runnable task, @NotNull String... after) {
+        return asyncStage(name, () -> {
+            task.run();
+            return CompletableFuture.completedFuture(null);
+        }, after);
+    }
+
+    /**
+     * Add a stage that starts asynchronous work. The stage finishes when the returned future completes.
+     *
+     * @param name  the name of the stage
+     * @param task  starts the work and returns a future for it
+     * @param after the names of the stages that must finish first. They must already have been added.
+     * @return this {@link StartupPipeline} instance for chaining
+     */
+    @NotNull
+    public StartupPipeline asyncStage(@NotNull String name, @NotNull Supplier<CompletableFuture<?>> task,
+                                      @NotNull String... after) {
+        for (String dependency : after)
+            if (!stages.containsKey(dependency))
+                throw new IllegalArgumentException("Stage '" + name + "' depends on unknown stage '" + dependency +
+                                                   "'");
+        if (stages.putIfAbsent(name, new Stage(task, List.of(after))) != null)
+            throw new IllegalArgumentException("Duplicate startup stage '" + name + "'");
+        return this;
+    }
+
+    /**
+     * Run every stage. Since dependencies must be added first, the stages are added in an order where every
+     * dependency is started before the stages that need it.
+     *
+     * @return a future that completes once every stage has finished or been skipped. It never completes
+     * exceptionally.
+     */
+    @NotNull
+    public CompletableFuture<Void> run() {
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS, r -> {
+            Thread thread = new Thread(r, "Startup-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        long origin = System.nanoTime();
+        Map<String, CompletableFuture<Void>> futures = new HashMap<>();
+        stages.forEach((name, stage) -> {
+            CompletableFuture<?>[] dependencies = stage.after.stream()
+                    .map(futures::get)
+                    .toArray(CompletableFuture[]::new);
+
+            futures.put(name, CompletableFuture.allOf(dependencies).thenComposeAsync(v -> {
+                long start = System.nanoTime();
+                CompletableFuture<?> work;
+                try {
+                    work = stage.task.get();
+                } catch (Exception e) {
+                    work = CompletableFuture.failedFuture(e);
+                }
+                return work.handle((result, error) -> {
+                    long end = System.nanoTime();
+                    timings.add(new Timing(name, (start - origin) / 1_000_000, (end - start) / 1_000_000,
+                            error == null));
+                    if (error != null) {
+                        LOG.error("Startup stage '" + name + "' failed", error);
+                        throw new StageFailedException();
+                    }
+                    return null;
+                });
+            }, executor));
+        });
+
+        return CompletableFuture.allOf(futures.values().toArray(new CompletableFuture[0]))
+                .handle((v, error) -> {
+                    executor.shutdown();
+                    futures.forEach((name, future) -> {
+                        if (future.isCompletedExceptionally() && getTiming(name) == null)
+                            LOG.warn("Skipped startup stage '" + name + "' because a stage it depends on failed");
+                    });
+                    return null;
+                });
+    }
+
+    /**
+     * Get the timing of every stage that has run, in the order they started.
+     *
+     * @return a new list of the timings
+     */
+    @NotNull
+    public List<Timing> getTimings() {
+        List<Timing> sorted;
+        synchronized (timings) {
+            sorted = new ArrayList<>(timings);
+        }
+        sorted.sort(Comparator.comparingLong(Timing::start).thenComparing(Timing::name));
+        return sorted;
+    }
+
+    /**
+     * Format the timings as a table for a Discord code block.
+     *
+     * @return the table
+     */
+    @NotNull
+    public String formatTimings() {
+        List<Timing> sorted = getTimings();
+        int width = "Stage".length();
+        for (Timing timing : sorted)
+            width = Math.max(width, timing.name().length());
+
+        StringBuilder table = new StringBuilder(String.format("%-" + width + "s %5s    %4s%n", "Stage", "Start",
+                "Took"));
+        for (Timing timing : sorted)
+            table.append(String.format("%-" + width + "s %5d ms %4d ms%s%n", timing.name(), timing.start(),
+                    timing.duration(), timing.success() ? "" : " (failed)"));
+        for (String name : stages.keySet())
+            if (getTiming(name) == null)
+                table.append(String.format("%-" + width + "s  skipped%n", name));
+        return table.toString();
+    }
+
+    @Nullable
+    private Timing getTiming(@NotNull String name) {
+        synchronized (timings) {
+            for (Timing timing : timings)
+                if (timing.name().equals(name))
+                    return timing;
+        }
+        return null;
+    }
+
+    /**
+     * How long a stage took.
+     *
+     * @param name     the name of the stage
+     * @param start    the number of milliseconds after the pipeline started that the stage started
+     * @param duration the number of milliseconds the stage took
+     * @param success  whether the stage finished without an error
+     */
+    public record Timing(@NotNull String name, long start, long duration, boolean success) {
+    }
+
+    private record Stage(@NotNull Supplier<CompletableFuture<?>> task, @NotNull List<String> after) {
+    }
+
+    /**
+     * Marks a stage as failed so that its dependents are skipped. The actual error has already been logged.
+     */
+    private static class StageFailedException extends RuntimeException {
+        StageFailedException() {
+            super(null, null, false, false);
+        }
+    }
+}
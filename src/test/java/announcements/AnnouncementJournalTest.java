@@ -0,0 +1,241 @@
+package announcements;
+
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.entities.Message;
+import net.dv8tion.jda.api.entities.MessageChannel;
+import net.dv8tion.jda.api.requests.restaction.MessageAction;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class AnnouncementJournalTest {
+    private static final long CHANNEL_ID = 42;
+
+    @TempDir
+    Path dir;
+
+    @AfterEach
+    void close() throws Exception {
+        AnnouncementJournal.closeAll();
+        AnnouncementScheduler.get().cancelAll().get(1, TimeUnit.SECONDS);
+    }
+
+    private static MessageChannel channel(long id) {
+        MessageChannel channel = mock(MessageChannel.class);
+        when(channel.getIdLong()).thenReturn(id);
+        when(channel.getId()).thenReturn(Long.toString(id));
+        when(channel.getJDA()).thenReturn(mock(JDA.class));
+        return channel;
+    }
+
+    private static MessageChannel channel(long id, int shardId) {
+        JDA jda = mock(JDA.class);
+        when(jda.getShardInfo()).thenReturn(new JDA.ShardInfo(shardId, 2));
+        MessageChannel channel = channel(id);
+        when(channel.getJDA()).thenReturn(jda);
+        return channel;
+    }
+
+    private static List<String> lines(Path path) throws IOException {
+        return Files.readAllLines(path, StandardCharsets.UTF_8).stream().filter(line -> !line.isBlank()).toList();
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "Timed out waiting for the journal");
+            Thread.sleep(50);
+        }
+    }
+
+    private static List<String> pendingContent(MessageChannel channel) throws Exception {
+        return AnnouncementScheduler.get().getPendingTasks().get(1, TimeUnit.SECONDS).stream()
+                .filter(task -> task instanceof Announcement.AnnouncementTimer timer && timer.getChannel() == channel)
+                .map(task -> ((Announcement.AnnouncementTimer) task).getAnnouncement().build().getContentRaw())
+                .toList();
+    }
+
+    @Test
+    void replaysOnlyPendingAnnouncements() throws Exception {
+        Path path = dir.resolve("journal");
+        MessageChannel channel = channel(CHANNEL_ID);
+
+        AnnouncementJournal.open(path);
+        ScheduledFuture<?> canceled = new Announcement("first").queue(channel, 1, TimeUnit.HOURS);
+        new Announcement("second").queue(channel, 1, TimeUnit.HOURS);
+        canceled.cancel(false);
+        AnnouncementJournal.get().close();
+        AnnouncementScheduler.get().cancelAll().get(1, TimeUnit.SECONDS);
+
+        AnnouncementJournal journal = AnnouncementJournal.open(path);
+        assertEquals(1, lines(path).size());
+        assertEquals(1, journal.replay(id -> id == CHANNEL_ID ? channel : null));
+        assertEquals(List.of("second"), pendingContent(channel));
+    }
+
+    @Test
+    void dropsAnnouncementsWhoseChannelIsGone() throws Exception {
+        Path path = dir.resolve("journal");
+        AnnouncementJournal.open(path);
+        new Announcement("orphan").queue(channel(CHANNEL_ID), 1, TimeUnit.HOURS);
+        AnnouncementJournal.get().close();
+
+        assertEquals(0, AnnouncementJournal.open(path).replay(id -> null));
+        AnnouncementJournal.get().close();
+
+        AnnouncementJournal.open(path);
+        assertEquals(List.of(), lines(path));
+    }
+
+    @Test
+    void skipsTornFinalLine() throws Exception {
+        Path path = dir.resolve("journal");
+        MessageChannel channel = channel(CHANNEL_ID);
+        AnnouncementJournal.open(path);
+        new Announcement("kept").queue(channel, 1, TimeUnit.HOURS);
+        AnnouncementJournal.get().close();
+        AnnouncementScheduler.get().cancelAll().get(1, TimeUnit.SECONDS);
+        Files.writeString(path, "{\"op\":\"add\",\"id\":9", StandardOpenOption.APPEND);
+
+        assertEquals(1, AnnouncementJournal.open(path).replay(id -> channel));
+        assertEquals(List.of("kept"), pendingContent(channel));
+        assertEquals(1, lines(path).size());
+    }
+
+    @Test
+    void compactsDeadRecords() throws Exception {
+        Path path = dir.resolve("journal");
+        MessageChannel channel = channel(CHANNEL_ID);
+        AnnouncementJournal.open(path);
+
+        new Announcement("live").queue(channel, 1, TimeUnit.HOURS);
+        for (int i = 0; i < 1_500; i++)
+            new Announcement("dead " + i).queue(channel, 1, TimeUnit.HOURS).cancel(false);
+        new Announcement("last").queue(channel, 1, TimeUnit.HOURS);
+
+        // 3,002 lines are written, of which two are live. The writer may compact partway through, which can leave up
+        // to 1,000 dead lines behind, but never more.
+        await(() -> {
+            try {
+                List<String> lines = lines(path);
+                return lines.size() <= 1_002 && lines.stream().anyMatch(line -> line.contains("last"));
+            } catch (IOException e) {
+                return false;
+            }
+        });
+        assertTrue(lines(path).get(0).contains("live"));
+    }
+
+    @Test
+    void queueDoesNotWaitForTheWriter() throws Exception {
+        Path path = dir.resolve("journal");
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        MessageChannel stalled = channel(CHANNEL_ID);
+        when(stalled.getIdLong()).thenAnswer(invocation -> {
+            if (Thread.currentThread().getName().equals("AnnouncementJournal-Writer")) {
+                writing.countDown();
+                release.await();
+            }
+            return CHANNEL_ID;
+        });
+        MessageChannel channel = channel(CHANNEL_ID + 1);
+
+        AnnouncementJournal.open(path);
+        try {
+            new Announcement("stalled").queue(stalled, 1, TimeUnit.HOURS);
+            assertTrue(writing.await(5, TimeUnit.SECONDS));
+
+            // The writer is stuck serializing the first record, so these only return if queue() leaves it the I/O
+            assertTimeoutPreemptively(Duration.ofSeconds(1), () -> {
+                for (int i = 0; i < 500; i++)
+                    new Announcement("queued " + i).queue(channel, 1, TimeUnit.HOURS);
+            });
+            assertEquals(List.of(), lines(path));
+        } finally {
+            release.countDown();
+        }
+
+        await(() -> {
+            try {
+                return lines(path).size() == 501;
+            } catch (IOException e) {
+                return false;
+            }
+        });
+    }
+
+    @Test
+    void removesAnnouncementOnlyAfterItIsSent() throws Exception {
+        Path path = dir.resolve("journal");
+        CompletableFuture<Message> send = new CompletableFuture<>();
+        MessageAction action = mock(MessageAction.class);
+        when(action.submit()).thenReturn(send);
+        MessageChannel channel = channel(CHANNEL_ID);
+        when(channel.sendMessage(any(Message.class))).thenReturn(action);
+
+        AnnouncementJournal.open(path);
+        ScheduledFuture<?> timeout = new Announcement("now").queue(channel, 0, TimeUnit.MILLISECONDS);
+        verify(channel, timeout(1_000)).sendMessage(any(Message.class));
+
+        // Give the writer time to flush anything it was handed
+        Thread.sleep(1_500);
+        assertFalse(timeout.isDone());
+        assertEquals(1, lines(path).size());
+
+        send.complete(mock(Message.class));
+        timeout.get(1, TimeUnit.SECONDS);
+        await(() -> {
+            try {
+                return lines(path).stream().anyMatch(line -> line.contains("\"remove\""));
+            } catch (IOException e) {
+                return false;
+            }
+        });
+    }
+
+    @Test
+    void handsOffOneShardsAnnouncements() throws Exception {
+        Path path = dir.resolve("journal");
+        MessageChannel kept = channel(1, 0);
+        MessageChannel moved = channel(2, 1);
+        AnnouncementJournal.open(path, 0);
+        AnnouncementJournal.open(path, 1);
+        new Announcement("kept").queue(kept, 1, TimeUnit.HOURS);
+        new Announcement("moved").queue(moved, 1, TimeUnit.HOURS);
+
+        // Shard 1 moves to another node, so only its announcement stops here
+        assertEquals(1, AnnouncementJournal.handOff(1).get(1, TimeUnit.SECONDS));
+        assertNull(AnnouncementJournal.get(1));
+        assertEquals(List.of("kept"), pendingContent(kept));
+        assertEquals(List.of(), pendingContent(moved));
+
+        AnnouncementJournal.closeAll();
+        AnnouncementScheduler.get().cancelAll().get(1, TimeUnit.SECONDS);
+        assertFalse(Files.exists(path));
+        assertTrue(lines(dir.resolve("journal.0")).get(0).contains("kept"));
+        assertEquals(1, lines(dir.resolve("journal.0")).size());
+
+        // The canceled announcement is still in the shard's journal for the node that takes it over
+        assertEquals(1, lines(dir.resolve("journal.1")).size());
+        assertEquals(1, AnnouncementJournal.open(path, 1).replay(id -> id == 2 ? moved : null));
+        assertEquals(List.of("moved"), pendingContent(moved));
+    }
+}
@@ -0,0 +1,147 @@
+package announcements;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AnnouncementSchedulerTest {
+    private final AnnouncementScheduler scheduler = AnnouncementScheduler.get();
+
+    @Test
+    void runsTaskAfterDelay() throws Exception {
+        CountDownLatch ran = new CountDownLatch(1);
+        long start = System.nanoTime();
+        AnnouncementScheduler.Timeout timeout = scheduler.schedule(ran::countDown, 300, TimeUnit.MILLISECONDS);
+
+        assertTrue(ran.await(2, TimeUnit.SECONDS));
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(elapsed >= 300, "Ran after " + elapsed + " ms");
+        assertTrue(elapsed < 300 + 5 * AnnouncementScheduler.TICK_MILLIS, "Ran after " + elapsed + " ms");
+
+        timeout.get(1, TimeUnit.SECONDS);
+        assertTrue(timeout.isDone());
+        assertFalse(timeout.isCancelled());
+    }
+
+    @Test
+    void runsTasksInDeadlineOrder() throws Exception {
+        List<Integer> order = new ArrayList<>();
+        CountDownLatch ran = new CountDownLatch(3);
+        for (int delay : new int[]{500, 100, 300})
+            scheduler.schedule(() -> {
+                synchronized (order) {
+                    order.add(delay);
+                }
+                ran.countDown();
+            }, delay, TimeUnit.MILLISECONDS);
+
+        assertTrue(ran.await(2, TimeUnit.SECONDS));
+        assertEquals(List.of(100, 300, 500), order);
+    }
+
+    @Test
+    void canceledTaskNeverRuns() throws Exception {
+        AtomicBoolean ran = new AtomicBoolean();
+        int before = scheduler.getPendingCount();
+        AnnouncementScheduler.Timeout timeout = scheduler.schedule(() -> ran.set(true), 200, TimeUnit.MILLISECONDS);
+
+        CountDownLatch done = new CountDownLatch(1);
+        timeout.whenDone(done::countDown);
+        assertTrue(timeout.cancel(false));
+        assertFalse(timeout.cancel(false));
+        assertTrue(timeout.isCancelled());
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        assertEquals(before, scheduler.getPendingCount());
+
+        Thread.sleep(500);
+        assertFalse(ran.get());
+    }
+
+    @Test
+    void waitsForRemainingRounds() throws Exception {
+        // This lands two buckets ahead of the current one, but a full rotation of the wheel later
+        long delay = AnnouncementScheduler.WHEEL_SIZE * AnnouncementScheduler.TICK_MILLIS
+                     + 2 * AnnouncementScheduler.TICK_MILLIS;
+        AtomicBoolean ran = new AtomicBoolean();
+        AnnouncementScheduler.Timeout timeout = scheduler.schedule(() -> ran.set(true), delay, TimeUnit.MILLISECONDS);
+
+        Thread.sleep(10 * AnnouncementScheduler.TICK_MILLIS);
+        assertFalse(ran.get());
+        assertFalse(timeout.isDone());
+        assertTrue(timeout.getDelay(TimeUnit.MILLISECONDS) > delay - 20 * AnnouncementScheduler.TICK_MILLIS);
+        assertTrue(timeout.cancel(false));
+    }
+
+    @Test
+    void pendingTasksDoNotAddThreads() throws Exception {
+        int threads = Thread.activeCount();
+        int before = scheduler.getPendingCount();
+
+        List<AnnouncementScheduler.Timeout> timeouts = new ArrayList<>();
+        for (int i = 0; i < 100_000; i++)
+            timeouts.add(scheduler.schedule(() -> {
+            }, 10 + i % 600, TimeUnit.MINUTES));
+
+        assertEquals(before + 100_000, scheduler.getPendingCount());
+        assertTrue(Thread.activeCount() <= threads + AnnouncementScheduler.WORKER_THREADS + 1);
+        assertTrue(scheduler.getPendingTasks().get(5, TimeUnit.SECONDS).size() >= 100_000);
+
+        for (AnnouncementScheduler.Timeout timeout : timeouts)
+            timeout.cancel(false);
+        assertEquals(before, scheduler.getPendingCount());
+    }
+
+    @Test
+    void asyncTaskIsDoneWhenItsFutureCompletes() throws Exception {
+        CompletableFuture<Void> work = new CompletableFuture<>();
+        CountDownLatch started = new CountDownLatch(1);
+        AnnouncementScheduler.AsyncTask task = () -> {
+            started.countDown();
+            return work;
+        };
+
+        AnnouncementScheduler.Timeout timeout = scheduler.schedule(task, 0, TimeUnit.MILLISECONDS);
+        CountDownLatch done = new CountDownLatch(1);
+        timeout.whenDone(done::countDown);
+
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+        Thread.sleep(3 * AnnouncementScheduler.TICK_MILLIS);
+        assertFalse(timeout.isDone());
+        assertEquals(1, done.getCount());
+
+        work.complete(null);
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        assertTrue(timeout.isDone());
+        assertFalse(timeout.isCancelled());
+    }
+
+    @Test
+    void failedAsyncTaskFailsTheTimeout() throws Exception {
+        AnnouncementScheduler.AsyncTask task = () -> CompletableFuture.failedFuture(new IllegalStateException("send"));
+        AnnouncementScheduler.Timeout timeout = scheduler.schedule(task, 0, TimeUnit.MILLISECONDS);
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> timeout.get(1, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalStateException.class, e.getCause());
+        assertTrue(timeout.isDone());
+    }
+
+    @Test
+    void asyncTaskReturningNullIsDone() throws Exception {
+        AnnouncementScheduler.AsyncTask task = () -> null;
+        AnnouncementScheduler.Timeout timeout = scheduler.schedule(task, 0, TimeUnit.MILLISECONDS);
+        CountDownLatch done = new CountDownLatch(1);
+        timeout.whenDone(done::countDown);
+
+        timeout.get(1, TimeUnit.SECONDS);
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        assertFalse(timeout.isCancelled());
+    }
+}
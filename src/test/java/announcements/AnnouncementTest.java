@@ -0,0 +1,50 @@
+package announcements;
+
+import net.dv8tion.jda.api.EmbedBuilder;
+import net.dv8tion.jda.api.entities.Message;
+import net.dv8tion.jda.api.entities.MessageEmbed;
+import net.dv8tion.jda.api.interactions.components.ActionRow;
+import net.dv8tion.jda.api.interactions.components.Button;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AnnouncementTest {
+    @Test
+    void reusesBuiltMessageUntilModified() {
+        Announcement announcement = new Announcement("hello");
+        Message first = announcement.build();
+        assertSame(first, announcement.build());
+
+        announcement.setContent("goodbye");
+        Message second = announcement.build();
+        assertNotSame(first, second);
+        assertEquals("hello", first.getContentRaw());
+        assertEquals("goodbye", second.getContentRaw());
+        assertSame(second, announcement.build());
+    }
+
+    @Test
+    void everyMutatorDiscardsBuiltMessage() {
+        Announcement announcement = new Announcement("hello");
+        MessageEmbed embed = new EmbedBuilder().setDescription("embed").build();
+
+        Runnable[] mutators = {
+                () -> announcement.setContent("content"),
+                () -> announcement.setActionRows(ActionRow.of(Button.link("https://example.com", "Open"))),
+                () -> announcement.setActionRows(List.of()),
+                () -> announcement.addLink("https://example.com", "Open"),
+                () -> announcement.setEmbeds(embed),
+                () -> announcement.setEmbeds(List.of(embed)),
+                () -> announcement.setEmbeds(new EmbedBuilder().setDescription("built"))
+        };
+        for (int i = 0; i < mutators.length; i++) {
+            Message before = announcement.build();
+            mutators[i].run();
+            assertNotSame(before, announcement.build(), "Mutator " + i + " kept the built message");
+        }
+        assertEquals("built", announcement.build().getEmbeds().get(0).getDescription());
+    }
+}
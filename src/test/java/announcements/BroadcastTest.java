@@ -0,0 +1,115 @@
+package announcements;
+
+import net.dv8tion.jda.api.entities.Message;
+import net.dv8tion.jda.api.entities.MessageChannel;
+import net.dv8tion.jda.api.requests.restaction.MessageAction;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class BroadcastTest {
+    /**
+     * The sends started so far, in order, each with the future that finishes it.
+     */
+    private final List<CompletableFuture<Message>> sends = new ArrayList<>();
+
+    private MessageChannel channel(long id, boolean finishImmediately) {
+        MessageAction action = mock(MessageAction.class);
+        when(action.submit()).thenAnswer(invocation -> {
+            CompletableFuture<Message> send = finishImmediately
+                    ? CompletableFuture.completedFuture(mock(Message.class))
+                    : new CompletableFuture<>();
+            synchronized (sends) {
+                sends.add(send);
+            }
+            return send;
+        });
+
+        MessageChannel channel = mock(MessageChannel.class);
+        when(channel.getIdLong()).thenReturn(id);
+        when(channel.sendMessage(any(Message.class))).thenReturn(action);
+        return channel;
+    }
+
+    private List<MessageChannel> channels(int count, boolean finishImmediately) {
+        List<MessageChannel> channels = new ArrayList<>();
+        for (int id = 1; id <= count; id++)
+            channels.add(channel(id, finishImmediately));
+        return channels;
+    }
+
+    private int started() {
+        synchronized (sends) {
+            return sends.size();
+        }
+    }
+
+    @Test
+    void startsOneTicksWorthOfSendsAtATime() throws Exception {
+        double rate = 100;
+        int perTick = (int) (rate * AnnouncementScheduler.TICK_MILLIS / 1000);
+
+        CompletableFuture<Broadcast.Result> result = new Announcement("hello").broadcast(channels(100, true), rate);
+        // The first batch starts right away, and every later one waits for a tick
+        assertEquals(perTick, started());
+
+        Broadcast.Result done = result.get(5, TimeUnit.SECONDS);
+        assertEquals(100, done.getSent().size());
+        assertTrue(done.getFailed().isEmpty());
+        long ticks = 100 / perTick - 1;
+        assertTrue(done.getElapsedMillis() >= (ticks - 1) * AnnouncementScheduler.TICK_MILLIS,
+                "Finished after " + done.getElapsedMillis() + " ms");
+    }
+
+    @Test
+    void keepsAtMostOneSecondOfSendsInFlight() throws Exception {
+        // Five sends per second start one per tick, and at most five are in flight
+        CompletableFuture<Broadcast.Result> result = new Announcement("hello").broadcast(channels(20, false), 5);
+
+        Thread.sleep(15 * AnnouncementScheduler.TICK_MILLIS);
+        assertEquals(5, started());
+        assertFalse(result.isDone());
+
+        // Finishing the sends lets the rest start, one per tick
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!result.isDone()) {
+            assertTrue(System.currentTimeMillis() < deadline, "Timed out waiting for the broadcast");
+            synchronized (sends) {
+                assertTrue(sends.stream().filter(send -> !send.isDone()).count() <= 5);
+                sends.forEach(send -> send.complete(mock(Message.class)));
+            }
+            Thread.sleep(AnnouncementScheduler.TICK_MILLIS / 2);
+        }
+        assertEquals(20, result.get().getSent().size());
+        assertEquals(20, started());
+    }
+
+    @Test
+    void sendsOncePerChannelAndReportsFailures() throws Exception {
+        MessageChannel ok = channel(1, true);
+        MessageChannel rejected = mock(MessageChannel.class);
+        when(rejected.getIdLong()).thenReturn(2L);
+        when(rejected.sendMessage(any(Message.class))).thenThrow(new IllegalStateException("Missing permission"));
+        MessageChannel failing = channel(3, false);
+
+        CompletableFuture<Broadcast.Result> result =
+                new Announcement("hello").broadcast(List.of(ok, rejected, ok, failing, ok), 40);
+        synchronized (sends) {
+            sends.get(sends.size() - 1).completeExceptionally(new ExecutionException("Unknown channel", null));
+        }
+
+        Broadcast.Result done = result.get(5, TimeUnit.SECONDS);
+        assertEquals(List.of(1L), List.copyOf(done.getSent().keySet()));
+        assertEquals(2, done.getFailed().size());
+        assertInstanceOf(IllegalStateException.class, done.getFailed().get(2L));
+        verify(ok, times(1)).sendMessage(any(Message.class));
+    }
+}
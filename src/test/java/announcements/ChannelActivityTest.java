@@ -0,0 +1,80 @@
+package announcements;
+
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.entities.Message;
+import net.dv8tion.jda.api.entities.MessageChannel;
+import net.dv8tion.jda.api.entities.User;
+import org.junit.jupiter.api.Test;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ChannelActivityTest {
+    private static MessageChannel channel(long id, int shardId) {
+        JDA jda = mock(JDA.class);
+        when(jda.getShardInfo()).thenReturn(new JDA.ShardInfo(shardId, 4));
+        MessageChannel channel = mock(MessageChannel.class);
+        when(channel.getIdLong()).thenReturn(id);
+        when(channel.getJDA()).thenReturn(jda);
+        return channel;
+    }
+
+    private static Message message(MessageChannel channel, long id) {
+        User author = mock(User.class);
+        when(author.getIdLong()).thenReturn(7L);
+        Message message = mock(Message.class);
+        when(message.getChannel()).thenReturn(channel);
+        when(message.getIdLong()).thenReturn(id);
+        when(message.getAuthor()).thenReturn(author);
+        when(message.getTimeCreated()).thenReturn(OffsetDateTime.now());
+        when(message.getAttachments()).thenReturn(List.of());
+        return message;
+    }
+
+    @Test
+    void ignoresUntrackedChannels() {
+        int before = ChannelActivity.getTrackedCount();
+        for (long id = 1_000; id < 2_000; id++)
+            ChannelActivity.record(message(channel(id, 0), id));
+
+        assertEquals(before, ChannelActivity.getTrackedCount());
+        assertNull(ChannelActivity.get(1_000));
+    }
+
+    @Test
+    void dropsRecordOnceLastWatcherIsDone() {
+        MessageChannel channel = channel(2_001, 0);
+        ChannelActivity.track(channel);
+        ChannelActivity.track(channel);
+        ChannelActivity.record(message(channel, 10));
+        assertFalse(ChannelActivity.get(2_001).isEmpty());
+
+        ChannelActivity.untrack(2_001);
+        assertNotNull(ChannelActivity.get(2_001));
+        ChannelActivity.untrack(2_001);
+        assertNull(ChannelActivity.get(2_001));
+    }
+
+    @Test
+    void reconnectClearsOnlyThatShard() {
+        MessageChannel first = channel(3_001, 1);
+        MessageChannel second = channel(3_002, 2);
+        ChannelActivity.track(first);
+        ChannelActivity.track(second);
+        ChannelActivity.get(3_001).seed(List.of(message(first, 20)), 100);
+        ChannelActivity.get(3_002).seed(List.of(message(second, 21)), 100);
+        assertTrue(ChannelActivity.get(3_001).covers(10));
+
+        ChannelActivity.reset(1);
+        assertFalse(ChannelActivity.get(3_001).covers(1));
+        assertTrue(ChannelActivity.get(3_001).isEmpty());
+        assertTrue(ChannelActivity.get(3_002).covers(10));
+
+        ChannelActivity.untrack(3_001);
+        ChannelActivity.untrack(3_002);
+    }
+}
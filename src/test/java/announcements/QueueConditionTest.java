@@ -0,0 +1,86 @@
+package announcements;
+
+import net.dv8tion.jda.api.entities.Message;
+import net.dv8tion.jda.api.entities.MessageChannel;
+import net.dv8tion.jda.api.entities.MessageHistory;
+import net.dv8tion.jda.api.requests.RestAction;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.*;
+
+class QueueConditionTest {
+    private static boolean check(QueueCondition condition) throws Exception {
+        return condition.checkAsync(new ConditionContext(null, condition)).get(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void customConditionReturningNullFails() throws Exception {
+        assertFalse(check(QueueCondition.ofCustom(timer -> null)));
+        assertFalse(check(QueueCondition.ofCustomAsync(timer -> null)));
+        assertFalse(check(QueueCondition.ofCustomAsync(timer -> CompletableFuture.completedFuture(null))));
+    }
+
+    @Test
+    void customConditionCompletingLaterWithNullFails() throws Exception {
+        CompletableFuture<Boolean> later = new CompletableFuture<>();
+        QueueCondition condition = QueueCondition.ofCustomAsync(timer -> later);
+        CompletableFuture<Boolean> result = condition.checkAsync(new ConditionContext(null, condition));
+
+        assertFalse(result.isDone());
+        later.complete(null);
+        assertFalse(result.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void unknownResultFailsEveryCombinator() throws Exception {
+        QueueCondition unknown = QueueCondition.ofCustom(timer -> null);
+        QueueCondition passes = QueueCondition.ofCustom(timer -> true);
+        QueueCondition fails = QueueCondition.ofCustom(timer -> false);
+
+        assertFalse(check(QueueCondition.not(unknown)));
+        assertFalse(check(QueueCondition.not(QueueCondition.not(unknown))));
+        assertFalse(check(QueueCondition.anyOf(unknown, passes)));
+        assertFalse(check(QueueCondition.allOf(passes, unknown)));
+        assertFalse(check(QueueCondition.not(QueueCondition.allOf(passes, unknown))));
+
+        // A child checked before the unknown one can still decide the outcome
+        assertTrue(check(QueueCondition.anyOf(passes, unknown)));
+        assertTrue(check(QueueCondition.not(QueueCondition.allOf(fails, unknown))));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void failedHistoryRequestFailsNegatedCondition() throws Exception {
+        RestAction<List<Message>> request = mock(RestAction.class);
+        when(request.submit()).thenReturn(CompletableFuture.failedFuture(new IllegalStateException("history")));
+        MessageHistory history = mock(MessageHistory.class);
+        when(history.retrievePast(anyInt())).thenReturn(request);
+        MessageChannel channel = mock(MessageChannel.class);
+        when(channel.getHistory()).thenReturn(history);
+        Announcement.AnnouncementTimer timer = mock(Announcement.AnnouncementTimer.class);
+        when(timer.getChannel()).thenReturn(channel);
+        when(timer.getActivity()).thenReturn(new ChannelActivity(0));
+
+        for (QueueCondition condition : List.of(QueueCondition.ofImage(10), QueueCondition.ofNoImage(10),
+                QueueCondition.not(QueueCondition.ofImage(10)),
+                QueueCondition.anyOf(QueueCondition.not(QueueCondition.ofImage(10)), QueueCondition.ofEmpty())))
+            assertFalse(condition.checkAsync(new ConditionContext(timer, condition)).get(1, TimeUnit.SECONDS),
+                    condition.toString());
+        verify(history, atLeastOnce()).retrievePast(anyInt());
+    }
+
+    @Test
+    void failingCustomConditionFails() throws Exception {
+        assertFalse(check(QueueCondition.ofCustom(timer -> {
+            throw new IllegalStateException();
+        })));
+        assertFalse(check(QueueCondition.ofCustomAsync(
+                timer -> CompletableFuture.failedFuture(new IllegalStateException()))));
+    }
+}
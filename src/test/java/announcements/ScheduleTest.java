@@ -0,0 +1,188 @@
+package announcements;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ScheduleTest {
+    private static final long START = epochMillis(LocalDateTime.of(2026, 1, 1, 0, 0));
+    private static final long END = epochMillis(LocalDateTime.of(2027, 1, 1, 0, 0));
+
+    private static long epochMillis(LocalDateTime time) {
+        return time.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    private static LocalDateTime time(long epochMillis) {
+        return LocalDateTime.ofEpochSecond(epochMillis / 1000, 0, ZoneOffset.UTC);
+    }
+
+    /**
+     * Collect every fire of a cron expression in 2026 after midnight on January 1st, checking each day and each listed
+     * hour and minute directly. This doesn't share any code with {@link Schedule}, so it's used to check the masks.
+     */
+    private static List<Long> expectedFires(List<Integer> minutes, List<Integer> hours, DayMatcher days) {
+        List<Long> fires = new ArrayList<>();
+        for (LocalDate day = LocalDate.of(2026, 1, 1); day.getYear() == 2026; day = day.plusDays(1))
+            if (days.matches(day))
+                for (int hour : hours)
+                    for (int minute : minutes)
+                        fires.add(epochMillis(day.atTime(hour, minute)));
+        // Schedules fire strictly after the time they start from
+        fires.remove(Long.valueOf(START));
+        return fires;
+    }
+
+    private static List<Integer> range(int from, int to, int step) {
+        List<Integer> values = new ArrayList<>();
+        for (int value = from; value <= to; value += step)
+            values.add(value);
+        return values;
+    }
+
+    /**
+     * Run a schedule from the start of 2026 to the end of it, as a recurrence would, with each fire finishing a random
+     * few seconds after it starts.
+     */
+    private static List<Long> simulate(Schedule schedule, Random random) {
+        List<Long> fires = new ArrayList<>();
+        for (long next = schedule.first(START); next < END; ) {
+            fires.add(next);
+            next = schedule.next(next, next + random.nextInt(30_000));
+        }
+        return fires;
+    }
+
+    @FunctionalInterface
+    private interface DayMatcher {
+        boolean matches(LocalDate day);
+    }
+
+    private record Case(String expression, List<Long> fires) {
+    }
+
+    @Test
+    void yearOfRecurrencesAcrossManyChannels() {
+        List<Case> cases = List.of(
+                new Case("*/15 * * * *", expectedFires(range(0, 45, 15), range(0, 23, 1), day -> true)),
+                new Case("0 9 * * mon-fri", expectedFires(List.of(0), List.of(9),
+                        day -> day.getDayOfWeek().getValue() <= 5)),
+                new Case("30 18 13 * fri", expectedFires(List.of(30), List.of(18),
+                        day -> day.getDayOfMonth() == 13 || day.getDayOfWeek() == DayOfWeek.FRIDAY)),
+                new Case("0 0 1 * *", expectedFires(List.of(0), List.of(0), day -> day.getDayOfMonth() == 1)),
+                new Case("5 4 * * sun", expectedFires(List.of(5), List.of(4),
+                        day -> day.getDayOfWeek() == DayOfWeek.SUNDAY)),
+                new Case("0 */6 1,15 * *", expectedFires(List.of(0), range(0, 23, 6),
+                        day -> day.getDayOfMonth() == 1 || day.getDayOfMonth() == 15)),
+                new Case("0 12 * jan,jul *", expectedFires(List.of(0), List.of(12),
+                        day -> day.getMonthValue() == 1 || day.getMonthValue() == 7)),
+                new Case("0 0 31 * *", expectedFires(List.of(0), List.of(0), day -> day.getDayOfMonth() == 31)),
+                new Case("10-20/5 8-17 * * 1,3,5", expectedFires(range(10, 20, 5), range(8, 17, 1),
+                        day -> day.getDayOfWeek().getValue() % 2 == 1 && day.getDayOfWeek() != DayOfWeek.SUNDAY)),
+                new Case("0 0 29 2 *", List.of()));
+
+        Random random = new Random(500);
+        Map<String, List<Long>> seen = new HashMap<>();
+        for (int channel = 0; channel < 500; channel++) {
+            Case c = cases.get(channel % cases.size());
+            Schedule schedule = Schedule.cron(c.expression(), ZoneOffset.UTC);
+            List<Long> fires = simulate(schedule, random);
+
+            assertEquals(c.fires(), fires, "Channel " + channel + " with " + c.expression());
+            // Every channel with the same expression fires at the same times, however long its sends take
+            assertEquals(fires, seen.computeIfAbsent(c.expression(), e -> fires));
+        }
+        assertEquals(52 * 5 + 1, seen.get("0 9 * * mon-fri").size());
+        assertEquals(7, seen.get("0 0 31 * *").size());
+    }
+
+    @Test
+    void dayOfMonthOrDayOfWeekWhenBothAreRestricted() {
+        Schedule schedule = Schedule.cron("0 0 13 * fri", ZoneOffset.UTC);
+        long fire = schedule.first(START);
+        List<LocalDateTime> fires = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            fires.add(time(fire));
+            fire = schedule.next(fire, fire);
+        }
+
+        // January 2026 starts on a Thursday, and the 13th is a Tuesday
+        assertEquals(List.of(LocalDateTime.of(2026, 1, 2, 0, 0), LocalDateTime.of(2026, 1, 9, 0, 0),
+                LocalDateTime.of(2026, 1, 13, 0, 0), LocalDateTime.of(2026, 1, 16, 0, 0)), fires);
+    }
+
+    @Test
+    void unrestrictedDayFieldDefersToTheOther() {
+        Schedule onlyThirteenth = Schedule.cron("0 0 13 * *", ZoneOffset.UTC);
+        assertEquals(LocalDateTime.of(2026, 1, 13, 0, 0), time(onlyThirteenth.first(START)));
+
+        Schedule onlyFriday = Schedule.cron("0 0 * * fri", ZoneOffset.UTC);
+        assertEquals(LocalDateTime.of(2026, 1, 2, 0, 0), time(onlyFriday.first(START)));
+        assertEquals(LocalDateTime.of(2026, 3, 13, 0, 0),
+                time(Schedule.cron("0 0 13 * 5", ZoneOffset.UTC).next(START, epochMillis(
+                        LocalDateTime.of(2026, 3, 12, 0, 0)))));
+
+        // Both 0 and 7 are Sunday
+        assertEquals(Schedule.cron("0 0 * * 0", ZoneOffset.UTC).first(START),
+                Schedule.cron("0 0 * * 7", ZoneOffset.UTC).first(START));
+    }
+
+    @Test
+    void rejectsExpressionsThatNeverMatch() {
+        for (String expression : List.of("0 0 31 2 *", "0 0 30 2 *", "0 0 31 4,6,9,11 *", "0 0 30-31 feb *"))
+            assertThrows(IllegalArgumentException.class, () -> Schedule.cron(expression, ZoneOffset.UTC),
+                    expression);
+
+        // These match rarely, but they do match
+        assertEquals(LocalDateTime.of(2028, 2, 29, 0, 0),
+                time(Schedule.cron("0 0 29 2 *", ZoneOffset.UTC).first(START)));
+        assertEquals(LocalDateTime.of(2026, 2, 1, 0, 0),
+                time(Schedule.cron("0 0 31 2 sun", ZoneOffset.UTC).first(START)));
+    }
+
+    @Test
+    void rejectsMalformedExpressions() {
+        for (String expression : List.of("* * * *", "60 * * * *", "* 24 * * *", "* * 0 * *", "* * * 13 *",
+                "* * * * 8", "5-1 * * * *", "* * * * funday"))
+            assertThrows(IllegalArgumentException.class, () -> Schedule.cron(expression, ZoneOffset.UTC),
+                    expression);
+    }
+
+    @Test
+    void fixedRateSkipsMissedFires() {
+        Schedule schedule = Schedule.fixedRate(10, TimeUnit.SECONDS);
+        assertEquals(START + 10_000, schedule.first(START));
+        assertEquals(START + 20_000, schedule.next(START + 10_000, START + 11_000));
+        // A fire that ran for 35 seconds misses three periods, and picks up on the next one
+        assertEquals(START + 50_000, schedule.next(START + 10_000, START + 45_000));
+        assertEquals(START + 30_000, schedule.next(START + 10_000, START + 20_000));
+    }
+
+    @Test
+    void fixedDelayStartsAfterFinish() {
+        Schedule schedule = Schedule.fixedDelay(10, TimeUnit.SECONDS);
+        assertEquals(START + 10_000, schedule.first(START));
+        assertEquals(START + 55_000, schedule.next(START + 10_000, START + 45_000));
+    }
+
+    @Test
+    void parsesItsOwnDescription() {
+        for (Schedule schedule : List.of(Schedule.fixedRate(1, TimeUnit.MINUTES), Schedule.fixedDelay(5,
+                TimeUnit.SECONDS), Schedule.cron("0 9 * * mon-fri", ZoneOffset.UTC))) {
+            Schedule parsed = Schedule.parse(schedule.toString());
+            assertEquals(schedule.toString(), parsed.toString());
+            assertEquals(schedule.first(START), parsed.first(START));
+        }
+        assertThrows(IllegalArgumentException.class, () -> Schedule.parse("hourly"));
+    }
+}
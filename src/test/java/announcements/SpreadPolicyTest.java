@@ -0,0 +1,104 @@
+package announcements;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpreadPolicyTest {
+    /**
+     * A nominal fire time on a slot boundary, far enough ahead that no slot is cleaned up during the test.
+     */
+    private static final long FIRE_AT = (System.currentTimeMillis() / 60_000 + 60) * 60_000;
+
+    @Test
+    void rateLimitedFillsEachSlotInOrder() {
+        // Ten per second is one fire per 100 ms slot, and a ten second window holds 100 slots
+        SpreadPolicy policy = SpreadPolicy.rateLimited(10_000, 10);
+        Map<Long, Integer> perSlot = new TreeMap<>();
+        for (long channel = 0; channel < 100; channel++) {
+            long offset = policy.offset(channel, FIRE_AT);
+            assertEquals(channel * 100, offset);
+            perSlot.merge(offset / 100, 1, Integer::sum);
+        }
+        assertTrue(perSlot.values().stream().allMatch(count -> count == 1));
+    }
+
+    @Test
+    void rateLimitedSharesSlotsUpToTheRate() {
+        // Forty per second is four fires in each 100 ms slot
+        SpreadPolicy policy = SpreadPolicy.rateLimited(60_000, 40);
+        for (long channel = 0; channel < 400; channel++)
+            assertEquals(channel / 4 * 100, policy.offset(channel, FIRE_AT));
+
+        // A later announcement takes the first slot after its own time that still has room
+        assertEquals(5_000, policy.offset(1_000, FIRE_AT + 5_000));
+        assertEquals(0, policy.offset(1_001, FIRE_AT + 10_050));
+    }
+
+    @Test
+    void rateLimitedSpreadsOverflowAcrossTheWindow() {
+        SpreadPolicy policy = SpreadPolicy.rateLimited(10_000, 10);
+        for (long channel = 0; channel < 100; channel++)
+            policy.offset(channel, FIRE_AT);
+
+        long min = Long.MAX_VALUE, max = Long.MIN_VALUE;
+        for (long channel = 100; channel < 600; channel++) {
+            long offset = policy.offset(channel, FIRE_AT);
+            assertTrue(offset >= 0 && offset <= 10_000, "Offset " + offset);
+            min = Math.min(min, offset);
+            max = Math.max(max, offset);
+        }
+        assertTrue(max - min > 5_000, "Overflow landed between " + min + " and " + max);
+    }
+
+    @Test
+    void neverFiresEarly() {
+        SpreadPolicy policy = SpreadPolicy.rateLimited(1_000, 1);
+        // A fire in the middle of a slot gets the rest of that slot
+        assertEquals(0, policy.offset(1, FIRE_AT + 999));
+        for (long channel = 2; channel < 100; channel++)
+            assertTrue(policy.offset(channel, FIRE_AT + 999) >= 0);
+    }
+
+    @Test
+    void perChannelOffsetIsStableAndEven() {
+        SpreadPolicy policy = SpreadPolicy.perChannel(10_000);
+        int[] buckets = new int[10];
+        // Consecutive snowflakes, as for channels created together
+        long base = 900_000_000_000_000_000L;
+        for (long i = 0; i < 1_000; i++) {
+            long offset = policy.offset(base + i, FIRE_AT);
+            assertEquals(offset, policy.offset(base + i, FIRE_AT + 86_400_000));
+            buckets[(int) Math.min(offset / 1_000, 9)]++;
+        }
+        for (int count : buckets)
+            assertTrue(count > 50 && count < 150, "Uneven spread: " + Arrays.toString(buckets));
+    }
+
+    @Test
+    void jitterStaysInsideTheWindow() {
+        SpreadPolicy policy = SpreadPolicy.jitter(500);
+        for (int i = 0; i < 1_000; i++) {
+            long offset = policy.offset(i, FIRE_AT);
+            assertTrue(offset >= 0 && offset <= 500, "Offset " + offset);
+        }
+    }
+
+    @Test
+    void parsesConfiguration() {
+        assertSame(SpreadPolicy.none(), SpreadPolicy.parse(null));
+        assertSame(SpreadPolicy.none(), SpreadPolicy.parse(""));
+        assertSame(SpreadPolicy.none(), SpreadPolicy.parse("none"));
+        assertEquals(0, SpreadPolicy.none().offset(1, FIRE_AT));
+
+        for (String spec : List.of("jitter:1000", "channel:60000", "rate:120000:10.0"))
+            assertEquals(spec, SpreadPolicy.parse(spec).toString());
+        for (String spec : List.of("rate:1000", "jitter:soon", "channel:0", "rate:1000:0", "burst:1000"))
+            assertThrows(IllegalArgumentException.class, () -> SpreadPolicy.parse(spec), spec);
+    }
+}
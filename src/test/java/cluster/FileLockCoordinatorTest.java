@@ -0,0 +1,58 @@
+package cluster;
+
+import cluster.ClusterCoordinator.Assignment;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileLockCoordinatorTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void nodesInOneJvmJoinTogetherAndRebalance() throws Exception {
+        FileLockCoordinator first = new FileLockCoordinator(dir, "first", 8);
+        FileLockCoordinator second = new FileLockCoordinator(dir, "second", 8);
+        LinkedBlockingQueue<Assignment> rebalanced = new LinkedBlockingQueue<>();
+
+        // Both take cluster.lock at once, which used to throw OverlappingFileLockException in one of them
+        List<CompletableFuture<Assignment>> joins = new ArrayList<>();
+        for (FileLockCoordinator node : List.of(first, second))
+            joins.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return node.join(node == first ? rebalanced::add : assignment -> {
+                    });
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }));
+
+        try {
+            Assignment a = joins.get(0).get(10, TimeUnit.SECONDS);
+            Assignment b = joins.get(1).get(10, TimeUnit.SECONDS);
+            assertEquals(2, a.nodes().size());
+            assertEquals(a.nodes(), b.nodes());
+            assertEquals(8, a.size() + b.size());
+            for (int shard = 0; shard < 8; shard++)
+                assertNotEquals(a.owns(shard), b.owns(shard), "Shard " + shard);
+
+            // Once the second node leaves, the first one takes over every shard
+            second.leave();
+            Assignment alone = rebalanced.poll(10, TimeUnit.SECONDS);
+            assertNotNull(alone);
+            assertEquals(List.of("first"), alone.nodes());
+            assertEquals(8, alone.size());
+        } finally {
+            first.leave();
+            second.leave();
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package commands;
+
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.events.interaction.SlashCommandEvent;
+import net.dv8tion.jda.api.interactions.InteractionHook;
+import net.dv8tion.jda.api.requests.restaction.interactions.ReplyAction;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import utils.Bot;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class CommandExecutorTest {
+    private static final ScheduledExecutorService rateLimitPool = Executors.newSingleThreadScheduledExecutor();
+
+    private long budget;
+
+    @BeforeEach
+    void setBudget() {
+        budget = Bot.COMMAND_DEFER_BUDGET;
+        Bot.COMMAND_DEFER_BUDGET = 200;
+    }
+
+    @AfterEach
+    void resetBudget() {
+        Bot.COMMAND_DEFER_BUDGET = budget;
+    }
+
+    @AfterAll
+    static void stopPool() {
+        rateLimitPool.shutdownNow();
+    }
+
+    /**
+     * Create a command whose replies and deferrals acknowledge it, as they do in JDA.
+     */
+    private static SlashCommandEvent event(String name) {
+        AtomicBoolean acknowledged = new AtomicBoolean();
+        ReplyAction action = mock(ReplyAction.class);
+        when(action.setEphemeral(anyBoolean())).thenReturn(action);
+        when(action.submit()).thenAnswer(invocation -> {
+            acknowledged.set(true);
+            return CompletableFuture.completedFuture(mock(InteractionHook.class));
+        });
+
+        JDA jda = mock(JDA.class);
+        when(jda.getRateLimitPool()).thenReturn(rateLimitPool);
+        SlashCommandEvent event = mock(SlashCommandEvent.class);
+        when(event.getName()).thenReturn(name);
+        when(event.getJDA()).thenReturn(jda);
+        when(event.isAcknowledged()).thenAnswer(invocation -> acknowledged.get());
+        when(event.deferReply(anyBoolean())).thenReturn(action);
+        when(event.reply(anyString())).thenReturn(action);
+        return event;
+    }
+
+    @Test
+    void limitCoversAsyncWork() throws Exception {
+        CommandExecutor.configure("limited", 1, true);
+        CompletableFuture<Void> work = new CompletableFuture<>();
+        CountDownLatch first = new CountDownLatch(1);
+        CountDownLatch second = new CountDownLatch(1);
+
+        CommandExecutor.execute(event("limited"), e -> {
+            first.countDown();
+            return work;
+        });
+        CommandExecutor.execute(event("limited"), e -> {
+            second.countDown();
+            return CompletableFuture.completedFuture(null);
+        });
+
+        // The first handler has returned, but its work is still running
+        assertTrue(first.await(1, TimeUnit.SECONDS));
+        assertFalse(second.await(300, TimeUnit.MILLISECONDS));
+        assertEquals(1, CommandExecutor.getQueueDepth());
+
+        work.complete(null);
+        assertTrue(second.await(1, TimeUnit.SECONDS));
+        assertEquals(0, CommandExecutor.getQueueDepth());
+    }
+
+    @Test
+    void failureReleasesLimitAndReplies() throws Exception {
+        CommandExecutor.configure("failing", 1, true);
+        SlashCommandEvent thrown = event("failing");
+        SlashCommandEvent failed = event("failing");
+        CountDownLatch ran = new CountDownLatch(1);
+
+        CommandExecutor.execute(thrown, e -> {
+            throw new IllegalStateException("broken");
+        });
+        CommandExecutor.execute(failed, e -> CompletableFuture.failedFuture(new IllegalStateException("broken")));
+        CommandExecutor.execute(event("failing"), e -> {
+            ran.countDown();
+            return null;
+        });
+
+        assertTrue(ran.await(1, TimeUnit.SECONDS));
+        verify(thrown).reply(anyString());
+        verify(failed).reply(anyString());
+    }
+
+    @Test
+    void defersSlowCommands() {
+        CommandExecutor.configure("slow", 0, false);
+        SlashCommandEvent event = event("slow");
+        CompletableFuture<Void> work = new CompletableFuture<>();
+
+        CommandExecutor.execute(event, e -> work);
+        verify(event, timeout(1_000)).deferReply(false);
+        work.complete(null);
+    }
+
+    @Test
+    void doesNotDeferCommandsThatReplyInTime() throws Exception {
+        CommandExecutor.configure("fast", 0, true);
+        SlashCommandEvent event = event("fast");
+
+        CommandExecutor.execute(event, e -> {
+            Replies.reply(e, "done", true);
+            return CompletableFuture.completedFuture(null);
+        });
+
+        Thread.sleep(2 * Bot.COMMAND_DEFER_BUDGET);
+        verify(event).reply("done");
+        verify(event, never()).deferReply(anyBoolean());
+    }
+}
@@ -0,0 +1,86 @@
+package commands;
+
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.exceptions.ErrorResponseException;
+import net.dv8tion.jda.api.interactions.commands.Command;
+import net.dv8tion.jda.api.interactions.commands.build.CommandData;
+import net.dv8tion.jda.api.requests.ErrorResponse;
+import net.dv8tion.jda.api.requests.RestAction;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import utils.Bot;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class CommandSyncTest {
+    @TempDir
+    Path dir;
+
+    @SuppressWarnings("unchecked")
+    private static <T> RestAction<T> action(CompletableFuture<T> result) {
+        RestAction<T> action = mock(RestAction.class);
+        when(action.submit()).thenReturn(result);
+        return action;
+    }
+
+    @Test
+    void failedRequestsDoNotBlockTheRest() throws Exception {
+        // Both global commands changed, and two commands that no longer exist are still recorded
+        Properties stored = new Properties();
+        stored.setProperty("global.synced", "true");
+        stored.setProperty("global.source.id", "1");
+        stored.setProperty("global.source.hash", "stale");
+        stored.setProperty("global.help.id", "2");
+        stored.setProperty("global.help.hash", "stale");
+        stored.setProperty("global.removed.id", "3");
+        stored.setProperty("global.removed.hash", "stale");
+        stored.setProperty("global.forbidden.id", "4");
+        stored.setProperty("global.forbidden.hash", "stale");
+        Path file = dir.resolve("commands.sync");
+        try (OutputStream out = Files.newOutputStream(file)) {
+            stored.store(out, null);
+        }
+        Bot.COMMAND_SYNC_FILE = file.toString();
+        Bot.BOT_NAME = "Test Bot";
+
+        JDA jda = mock(JDA.class);
+        when(jda.upsertCommand(any(CommandData.class))).thenAnswer(invocation -> {
+            CommandData data = invocation.getArgument(0);
+            if (data.getName().equals("source"))
+                return action(CompletableFuture.failedFuture(new IllegalStateException("Rate limited")));
+            Command command = mock(Command.class);
+            when(command.getIdLong()).thenReturn(20L);
+            return action(CompletableFuture.completedFuture(command));
+        });
+        // The removed command was already deleted by hand, so Discord doesn't know it
+        RestAction<Void> unknown = action(CompletableFuture.failedFuture(
+                ErrorResponseException.create(ErrorResponse.UNKNOWN_COMMAND, null)));
+        RestAction<Void> forbidden = action(CompletableFuture.failedFuture(
+                ErrorResponseException.create(ErrorResponse.MISSING_ACCESS, null)));
+        when(jda.deleteCommandById(3L)).thenReturn(unknown);
+        when(jda.deleteCommandById(4L)).thenReturn(forbidden);
+
+        CommandSync.syncGlobal(jda).get(5, TimeUnit.SECONDS);
+
+        Properties saved = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            saved.load(in);
+        }
+        assertNull(saved.getProperty("global.removed.id"));
+        assertEquals("4", saved.getProperty("global.forbidden.id"));
+        assertEquals("20", saved.getProperty("global.help.id"));
+        assertNotEquals("stale", saved.getProperty("global.help.hash"));
+        // The failed upsert keeps its stale hash, so it's tried again next time
+        assertEquals("stale", saved.getProperty("global.source.hash"));
+    }
+}
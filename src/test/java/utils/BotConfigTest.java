@@ -0,0 +1,48 @@
+package utils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BotConfigTest {
+    @TempDir
+    Path dir;
+
+    private final String botName = Bot.BOT_NAME;
+    private final long window = Bot.COALESCE_WINDOW;
+
+    @AfterEach
+    void reset() {
+        System.clearProperty("bot.properties");
+        Bot.BOT_NAME = botName;
+        Bot.COALESCE_WINDOW = window;
+    }
+
+    @Test
+    void removedPropertyResetsItsField() throws Exception {
+        Path file = dir.resolve("bot.properties");
+        Files.writeString(file, "bot_name=Test Bot\ncoalesce_window=250\n");
+        System.setProperty("bot.properties", file.toString());
+
+        BotConfig loaded = BotConfig.load();
+        assertNotNull(loaded);
+        assertEquals(250L, Bot.COALESCE_WINDOW);
+
+        LinkedBlockingQueue<BotConfig> reloads = new LinkedBlockingQueue<>();
+        BotConfig.watch(reloads::add);
+        Files.writeString(file, "bot_name=Renamed Bot\n");
+
+        BotConfig reloaded = reloads.poll(10, TimeUnit.SECONDS);
+        assertNotNull(reloaded);
+        assertEquals("Renamed Bot", Bot.BOT_NAME);
+        assertNull(reloaded.getValue("COALESCE_WINDOW"));
+        assertEquals(0, Bot.COALESCE_WINDOW);
+    }
+}
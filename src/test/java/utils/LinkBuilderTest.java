@@ -0,0 +1,84 @@
+package utils;
+
+import net.dv8tion.jda.api.entities.Message;
+import net.dv8tion.jda.api.entities.MessageEmbed;
+import org.junit.jupiter.api.Test;
+
+import java.awt.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LinkBuilderTest {
+    private static String description(Message message) {
+        return message.getEmbeds().get(0).getDescription();
+    }
+
+    @Test
+    void reusesMessageUntilModified() {
+        LinkBuilder builder = LinkBuilder.of(null, "https://example.com", "Open");
+        builder.setDescription("first");
+
+        Message first = builder.buildMessage();
+        assertSame(first, builder.buildMessage());
+
+        builder.setDescription("second");
+        Message second = builder.buildMessage();
+        assertNotSame(first, second);
+        assertEquals("first", description(first));
+        assertEquals("second", description(second));
+        assertSame(second, builder.buildMessage());
+    }
+
+    @Test
+    void everyMutatorDiscardsCachedMessage() {
+        LinkBuilder builder = new LinkBuilder();
+        builder.setDescription("text");
+
+        Runnable[] mutators = {
+                () -> builder.addButton("https://example.com", "Open"),
+                () -> builder.setTitle("title"),
+                () -> builder.setTitle("title", "https://example.com"),
+                () -> builder.appendDescription(" more"),
+                () -> builder.setColor(Color.RED),
+                () -> builder.setColor(0x123456),
+                () -> builder.setFooter("footer"),
+                () -> builder.setFooter("footer", null),
+                () -> builder.addField("name", "value", false),
+                () -> builder.addField(new MessageEmbed.Field("name", "value", true)),
+                () -> builder.addBlankField(false),
+                () -> builder.clearFields(),
+                () -> builder.setAuthor("author"),
+                () -> builder.setThumbnail("https://example.com/thumbnail.png"),
+                () -> builder.setImage("https://example.com/image.png"),
+                () -> builder.setTimestamp(null),
+                () -> builder.clear()
+        };
+        for (int i = 0; i < mutators.length; i++) {
+            Message before = builder.buildMessage();
+            mutators[i].run();
+            assertNotSame(before, builder.buildMessage(), "Mutator " + i + " kept the cached message");
+        }
+    }
+
+    @Test
+    void alwaysRebuildsOnceMutableStateIsExposed() {
+        LinkBuilder builder = new LinkBuilder();
+        builder.setDescription("start");
+        Message cached = builder.buildMessage();
+
+        StringBuilder description = builder.getDescriptionBuilder();
+        description.append(" and more");
+        Message edited = builder.buildMessage();
+        assertNotSame(cached, edited);
+        assertEquals("start and more", description(edited));
+
+        description.append("!");
+        assertEquals("start and more!", description(builder.buildMessage()));
+        assertNotSame(builder.buildMessage(), builder.buildMessage());
+
+        LinkBuilder fields = new LinkBuilder();
+        fields.addField("name", "value", false);
+        fields.getFields().clear();
+        assertTrue(fields.buildMessage().getEmbeds().get(0).getFields().isEmpty());
+    }
+}
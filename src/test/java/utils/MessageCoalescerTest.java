@@ -0,0 +1,182 @@
+package utils;
+
+import net.dv8tion.jda.api.EmbedBuilder;
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.MessageBuilder;
+import net.dv8tion.jda.api.entities.Message;
+import net.dv8tion.jda.api.entities.MessageChannel;
+import net.dv8tion.jda.api.entities.MessageEmbed;
+import net.dv8tion.jda.api.interactions.components.ActionRow;
+import net.dv8tion.jda.api.interactions.components.Button;
+import net.dv8tion.jda.api.requests.restaction.MessageAction;
+import net.dv8tion.jda.internal.entities.DataMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class MessageCoalescerTest {
+    private final ScheduledExecutorService pool = Executors.newSingleThreadScheduledExecutor();
+    private final List<Message> sent = new ArrayList<>();
+    private long window;
+
+    @BeforeEach
+    void setWindow() {
+        window = Bot.COALESCE_WINDOW;
+        Bot.COALESCE_WINDOW = 100;
+    }
+
+    @AfterEach
+    void resetWindow() {
+        Bot.COALESCE_WINDOW = window;
+        pool.shutdownNow();
+    }
+
+    private MessageChannel channel(long id) {
+        JDA jda = mock(JDA.class);
+        when(jda.getRateLimitPool()).thenReturn(pool);
+        MessageChannel channel = mock(MessageChannel.class);
+        when(channel.getIdLong()).thenReturn(id);
+        when(channel.getJDA()).thenReturn(jda);
+        when(channel.sendMessage(any(Message.class))).thenAnswer(invocation -> {
+            Message message = invocation.getArgument(0);
+            synchronized (sent) {
+                sent.add(message);
+            }
+            MessageAction action = mock(MessageAction.class);
+            when(action.submit()).thenReturn(CompletableFuture.completedFuture(message));
+            return action;
+        });
+        return channel;
+    }
+
+    private static MessageEmbed embed(String description) {
+        return new EmbedBuilder().setDescription(description).build();
+    }
+
+    private static void awaitAll(List<CompletableFuture<Message>> futures) throws Exception {
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get(2, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void mergesEmbedsSentTogether() throws Exception {
+        MessageChannel channel = channel(1);
+        List<CompletableFuture<Message>> futures = new ArrayList<>();
+        for (int i = 0; i < 4; i++)
+            futures.add(MessageCoalescer.send(channel, embed("embed " + i)));
+        assertTrue(sent.isEmpty());
+
+        awaitAll(futures);
+        assertEquals(1, sent.size());
+        assertEquals(List.of("embed 0", "embed 1", "embed 2", "embed 3"),
+                sent.get(0).getEmbeds().stream().map(MessageEmbed::getDescription).toList());
+        for (CompletableFuture<Message> future : futures)
+            assertSame(sent.get(0), future.get());
+    }
+
+    @Test
+    void keepsContentFirstAndButtonsLast() throws Exception {
+        MessageChannel channel = channel(2);
+        Message withContent = new MessageBuilder("heading").setEmbeds(embed("b")).build();
+        Message withButton = new MessageBuilder().setEmbeds(embed("c"))
+                .setActionRows(ActionRow.of(Button.link("https://example.com", "Open"))).build();
+
+        awaitAll(List.of(
+                MessageCoalescer.send(channel, embed("a")),
+                MessageCoalescer.send(channel, withContent, OutboundScheduler.Priority.LOG),
+                MessageCoalescer.send(channel, withButton),
+                MessageCoalescer.send(channel, embed("d"))));
+
+        // Content can't follow an embed, and nothing can follow a button
+        assertEquals(3, sent.size());
+        assertEquals(1, sent.get(0).getEmbeds().size());
+        assertEquals("heading", sent.get(1).getContentRaw());
+        assertEquals(2, sent.get(1).getEmbeds().size());
+        assertEquals(1, sent.get(1).getActionRows().size());
+        assertEquals("d", sent.get(2).getEmbeds().get(0).getDescription());
+    }
+
+    @Test
+    void splitsAtTheEmbedLimit() throws Exception {
+        MessageChannel channel = channel(3);
+        List<CompletableFuture<Message>> futures = new ArrayList<>();
+        for (int i = 0; i < MessageCoalescer.MAX_EMBEDS + 2; i++)
+            futures.add(MessageCoalescer.send(channel, embed("embed " + i)));
+
+        awaitAll(futures);
+        assertEquals(2, sent.size());
+        assertEquals(MessageCoalescer.MAX_EMBEDS, sent.get(0).getEmbeds().size());
+        assertEquals(2, sent.get(1).getEmbeds().size());
+    }
+
+    @Test
+    void keepsChannelsApart() throws Exception {
+        awaitAll(List.of(MessageCoalescer.send(channel(4), embed("a")), MessageCoalescer.send(channel(5), embed("b"))));
+        assertEquals(2, sent.size());
+    }
+
+    @Test
+    void sendsImmediatelyWithoutWindow() throws Exception {
+        Bot.COALESCE_WINDOW = 0;
+        MessageChannel channel = channel(6);
+        CompletableFuture<Message> first = MessageCoalescer.send(channel, embed("a"));
+        CompletableFuture<Message> second = MessageCoalescer.send(channel, embed("b"));
+
+        assertEquals(2, sent.size());
+        assertNotSame(first.get(1, TimeUnit.SECONDS), second.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void mergesOnlyMessagesWithTheSameSettings() throws Exception {
+        MessageChannel channel = channel(7);
+        Message first = new MessageBuilder().setEmbeds(embed("a")).setTTS(true).build();
+        Message second = new MessageBuilder().setEmbeds(embed("b")).setTTS(true).build();
+        Message plain = new MessageBuilder().setEmbeds(embed("c")).build();
+        Message quiet = new MessageBuilder().setEmbeds(embed("d")).setAllowedMentions(List.of()).build();
+
+        awaitAll(List.of(
+                MessageCoalescer.send(channel, first),
+                MessageCoalescer.send(channel, second),
+                MessageCoalescer.send(channel, plain),
+                MessageCoalescer.send(channel, quiet)));
+
+        assertEquals(3, sent.size());
+        assertTrue(sent.get(0).isTTS());
+        assertEquals(2, sent.get(0).getEmbeds().size());
+        assertFalse(sent.get(1).isTTS());
+        assertEquals(EnumSet.noneOf(Message.MentionType.class), ((DataMessage) sent.get(2)).getAllowedMentions());
+    }
+
+    @Test
+    void dropsQueueOnceFlushed() throws Exception {
+        List<MessageChannel> channels = new ArrayList<>();
+        for (long id = 100; id < 200; id++)
+            channels.add(channel(id));
+
+        int before = MessageCoalescer.getWaitingChannels();
+        List<CompletableFuture<Message>> futures = new ArrayList<>();
+        for (MessageChannel channel : channels)
+            futures.add(MessageCoalescer.send(channel, embed("a")));
+        assertEquals(before + 100, MessageCoalescer.getWaitingChannels());
+
+        awaitAll(futures);
+        assertEquals(100, sent.size());
+        assertEquals(before, MessageCoalescer.getWaitingChannels());
+
+        // A channel that is sent to again gets a new queue
+        awaitAll(List.of(MessageCoalescer.send(channels.get(0), embed("b"))));
+        assertEquals(101, sent.size());
+        assertEquals(before, MessageCoalescer.getWaitingChannels());
+    }
+}
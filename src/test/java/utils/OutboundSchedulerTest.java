@@ -0,0 +1,132 @@
+package utils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import utils.OutboundScheduler.Priority;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OutboundSchedulerTest {
+    /**
+     * The requests started so far, in the order they started.
+     */
+    private final List<String> started = new ArrayList<>();
+
+    /**
+     * The futures of the started requests, which finish them when completed.
+     */
+    private final List<CompletableFuture<String>> running = new ArrayList<>();
+
+    @AfterEach
+    void finishEverything() {
+        while (!running.isEmpty())
+            finish(running.size());
+        assertEquals(0, OutboundScheduler.getInFlight());
+    }
+
+    private Supplier<CompletableFuture<String>> request(String name) {
+        return () -> {
+            CompletableFuture<String> future = new CompletableFuture<>();
+            started.add(name);
+            running.add(future);
+            return future;
+        };
+    }
+
+    /**
+     * Finish the oldest requests that are still running.
+     */
+    private void finish(int count) {
+        for (int i = 0; i < count && !running.isEmpty(); i++)
+            running.remove(0).complete("done");
+    }
+
+    private void submit(Priority priority, String name, int count) {
+        for (int i = 0; i < count; i++)
+            OutboundScheduler.submit(priority, request(name));
+    }
+
+    private long count(String name) {
+        return started.stream().filter(name::equals).count();
+    }
+
+    @Test
+    void eachClassIsLimitedToItsShare() {
+        submit(Priority.LOG, "log", 20);
+        assertEquals(OutboundScheduler.MAX_IN_FLIGHT / 2, count("log"));
+
+        submit(Priority.ANNOUNCEMENT, "announcement", 20);
+        assertEquals(OutboundScheduler.MAX_IN_FLIGHT * 3 / 4, OutboundScheduler.getInFlight());
+
+        submit(Priority.MODERATION, "moderation", 20);
+        assertEquals(OutboundScheduler.MAX_IN_FLIGHT, OutboundScheduler.getInFlight());
+        assertArrayEquals(new int[]{0, 16, 16, 12}, OutboundScheduler.getQueueLengths());
+    }
+
+    @Test
+    void startsHigherPrioritiesFirst() {
+        submit(Priority.MODERATION, "blocker", OutboundScheduler.MAX_IN_FLIGHT);
+        submit(Priority.LOG, "log", 3);
+        submit(Priority.ANNOUNCEMENT, "announcement", 3);
+        submit(Priority.MODERATION, "moderation", 3);
+        assertEquals(List.of(0L, 0L, 0L), List.of(count("log"), count("announcement"), count("moderation")));
+
+        // Free up every slot one by one; each goes to the most important request still waiting
+        finish(OutboundScheduler.MAX_IN_FLIGHT);
+        List<String> order = started.subList(OutboundScheduler.MAX_IN_FLIGHT, started.size());
+        assertEquals(List.of("moderation", "moderation", "moderation", "announcement", "announcement",
+                "announcement", "log", "log"), order);
+
+        // Eight requests are still in flight, which is the whole log share
+        assertEquals(OutboundScheduler.MAX_IN_FLIGHT / 2, OutboundScheduler.getInFlight());
+        finish(1);
+        assertEquals(3, count("log"));
+    }
+
+    @Test
+    void lowerClassesWaitWhileHigherOnesAreQueued() {
+        submit(Priority.MODERATION, "moderation", OutboundScheduler.MAX_IN_FLIGHT + 1);
+        submit(Priority.LOG, "log", 1);
+
+        // Announcements have room under their own share, but moderation is still waiting
+        finish(1);
+        assertEquals(0, count("log"));
+        assertEquals(OutboundScheduler.MAX_IN_FLIGHT + 1, count("moderation"));
+
+        // The log request only starts once the in-flight count is under the log share
+        finish(OutboundScheduler.MAX_IN_FLIGHT / 2);
+        assertEquals(0, count("log"));
+        finish(1);
+        assertEquals(1, count("log"));
+    }
+
+    @Test
+    void interactionsStartImmediately() {
+        submit(Priority.MODERATION, "moderation", OutboundScheduler.MAX_IN_FLIGHT + 5);
+        submit(Priority.INTERACTION, "interaction", 2);
+
+        assertEquals(2, count("interaction"));
+        assertEquals(OutboundScheduler.MAX_IN_FLIGHT + 2, OutboundScheduler.getInFlight());
+
+        // Interactions count against the budget, so nothing else starts until the total is back under the limit
+        finish(2);
+        assertEquals(OutboundScheduler.MAX_IN_FLIGHT, count("moderation"));
+        finish(1);
+        assertEquals(OutboundScheduler.MAX_IN_FLIGHT + 1, count("moderation"));
+    }
+
+    @Test
+    void requestThatFailsToStartReleasesItsSlot() {
+        CompletableFuture<String> failed = OutboundScheduler.submit(Priority.ANNOUNCEMENT, () -> {
+            throw new IllegalStateException("Missing permission");
+        });
+
+        assertTrue(failed.isCompletedExceptionally());
+        assertEquals(0, OutboundScheduler.getInFlight());
+    }
+}
@@ -0,0 +1,82 @@
+package utils;
+
+import net.dv8tion.jda.api.OnlineStatus;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PropertyBinderTest {
+    @Test
+    void parsesEachFieldType() {
+        assertEquals("AP Survey Bot", PropertyBinder.parse("bot_name", "AP Survey Bot"));
+        assertEquals(true, PropertyBinder.parse("load_global_commands", "true"));
+        assertEquals(false, PropertyBinder.parse("load_global_commands", "FALSE"));
+        assertEquals(-1, PropertyBinder.parse("shard_count", "-1"));
+        assertEquals(250L, PropertyBinder.parse("coalesce_window", "250"));
+        assertEquals(OnlineStatus.DO_NOT_DISTURB, PropertyBinder.parse("status", "dnd"));
+    }
+
+    @Test
+    void rejectsAnythingButTrueOrFalse() {
+        for (String value : new String[]{"ture", "yes", "1", "", " true"})
+            assertThrows(IllegalArgumentException.class, () -> PropertyBinder.parse("load_local_commands", value),
+                    value);
+    }
+
+    @Test
+    void rejectsUnknownOnlineStatus() {
+        for (String value : new String[]{"busy", "", "unknown"})
+            assertThrows(IllegalArgumentException.class, () -> PropertyBinder.parse("status", value), value);
+    }
+
+    @Test
+    void rejectsUnknownAndUnsupportedProperties() {
+        assertThrows(IllegalArgumentException.class, () -> PropertyBinder.parse("no_such_property", "1"));
+        // The activity is computed from other properties
+        assertThrows(IllegalArgumentException.class, () -> PropertyBinder.parse("activity", "playing"));
+        assertThrows(IllegalArgumentException.class, () -> PropertyBinder.parse("shard_count", "many"));
+    }
+
+    @Test
+    void reportsEveryProblemAtOnce() {
+        Properties properties = new Properties();
+        properties.setProperty("bot_name", "Test Bot");
+        properties.setProperty("shard_count", "4");
+        properties.setProperty("enable_startup_message", "yes");
+        properties.setProperty("status", "away");
+        properties.setProperty("colour", "FF0000");
+
+        PropertyBinder.Parsed parsed = PropertyBinder.parseAll(properties);
+        assertEquals("Test Bot", parsed.values().get("BOT_NAME"));
+        assertEquals(4, parsed.values().get("SHARD_COUNT"));
+        assertEquals(2, parsed.values().size());
+        assertEquals(List.of("colour", "enable_startup_message", "status"),
+                List.copyOf(parsed.problems().keySet()));
+    }
+
+    @Test
+    void setsParsedValue() {
+        long window = Bot.COALESCE_WINDOW;
+        try {
+            PropertyBinder.set("coalesce_window", PropertyBinder.parse("coalesce_window", "125"));
+            assertEquals(125, Bot.COALESCE_WINDOW);
+        } finally {
+            Bot.COALESCE_WINDOW = window;
+        }
+    }
+
+    @Test
+    void resetRestoresInitialValue() {
+        String github = Bot.GITHUB;
+        try {
+            PropertyBinder.set("github", "https://example.com");
+            PropertyBinder.reset("github");
+            assertNull(Bot.GITHUB);
+        } finally {
+            Bot.GITHUB = github;
+        }
+    }
+}